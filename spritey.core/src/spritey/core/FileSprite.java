@@ -0,0 +1,363 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core;
+
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import spritey.core.io.SpriteCache;
+import spritey.core.io.SpriteStore;
+
+/**
+ * Sprite whose image is stored in a file. Only the image header is read when
+ * sprite is created; pixels are decoded the first time the image is needed,
+ * e.g. when sprite is trimmed or drawn onto a sheet.
+ * <p>
+ * The decoded image is softly referenced, so it is reused while memory
+ * allows and decoded again once it has been reclaimed. When sprite has a
+ * cache, decoded pixels are read from and stored to the cache, so the file is
+ * decoded only once across runs.
+ * </p>
+ * <p>
+ * When sprite has a store, decoded pixels are moved into the store instead
+ * and the image returned by {@link #getImage()} is a copy made on each call.
+ * Writers should read pixels through {@link #getRGB(Rectangle, int[])}, which
+ * copies them straight from the store.
+ * </p>
+ */
+public class FileSprite extends Sprite {
+
+    private File file;
+    private SoftReference<BufferedImage> image;
+    private SpriteCache cache;
+    private SpriteStore store;
+    private long offset;
+
+    /**
+     * Creates a new instance of FileSprite named after the file.
+     * 
+     * @param file
+     *        the image file this sprite will represent.
+     * @throws IOException
+     *         when file cannot be read or is not an image.
+     * @throws IllegalArgumentException
+     *         when <code>file</code> is <code>null</code>.
+     */
+    public FileSprite(final File file) throws IOException {
+        this(validateNotNull(file).getName(), file);
+    }
+
+    /**
+     * Creates a new instance of FileSprite with the given name.
+     * 
+     * @param name
+     *        the name to give to the sprite.
+     * @param file
+     *        the image file this sprite will represent.
+     * @throws IOException
+     *         when file cannot be read or is not an image.
+     * @throws IllegalArgumentException
+     *         when <code>file</code> is <code>null</code>.
+     */
+    public FileSprite(final String name, final File file) throws IOException {
+        this(name, file, probe(validateNotNull(file)));
+    }
+
+    /**
+     * Creates a new instance of FileSprite of the specified size.
+     * 
+     * @param name
+     *        the name to give to the sprite.
+     * @param file
+     *        the image file this sprite will represent.
+     * @param size
+     *        the image size.
+     */
+    private FileSprite(final String name, final File file,
+            final Dimension size) {
+        super(name, size.width, size.height);
+        this.file = file;
+        offset = -1;
+    }
+
+    /**
+     * Throws exception when the specified file is <code>null</code>.
+     * 
+     * @param file
+     *        the file to validate.
+     * @return the file.
+     * @throws IllegalArgumentException
+     *         when <code>file</code> is <code>null</code>.
+     */
+    private static File validateNotNull(final File file) {
+        if (null == file) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+        return file;
+    }
+
+    /**
+     * Reads the size of the image stored in the specified file without
+     * decoding its pixels.
+     * 
+     * @param file
+     *        the image file.
+     * @return the image size.
+     * @throws IOException
+     *         when file cannot be read or is not an image.
+     */
+    public static Dimension probe(final File file) throws IOException {
+        ImageInputStream stream = ImageIO.createImageInputStream(file);
+
+        if (null == stream) {
+            throw new IOException(Messages.FILE_SPRITE_CANNOT_READ);
+        }
+
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+
+            if (!readers.hasNext()) {
+                throw new IOException(Messages.FILE_SPRITE_NO_READER_FOUND);
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Returns the file which stores the sprite image.
+     * 
+     * @return the image file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the cache decoded pixels are kept in.
+     * 
+     * @return the cache, or <code>null</code> when pixels aren't cached.
+     */
+    public SpriteCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the cache decoded pixels are kept in.
+     * 
+     * @param cache
+     *        the cache, or <code>null</code> to always decode the file.
+     */
+    public void setCache(final SpriteCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the store decoded pixels are kept in.
+     * 
+     * @return the store, or <code>null</code> when pixels are kept on the
+     *         heap.
+     */
+    public SpriteStore getStore() {
+        return store;
+    }
+
+    /**
+     * Sets the store decoded pixels are kept in. Pixels already in a store are
+     * released rather than moved, the file is decoded again when needed.
+     * 
+     * @param store
+     *        the store, or <code>null</code> to keep pixels on the heap.
+     */
+    public synchronized void setStore(final SpriteStore store) {
+        release();
+        this.store = store;
+        image = null;
+    }
+
+    /**
+     * Releases pixels this sprite keeps in its store, so that the store can
+     * reuse their space. Should be called when sprite is no longer needed;
+     * otherwise the file is decoded into the store again when needed.
+     */
+    public synchronized void release() {
+        if ((null != store) && (offset >= 0)) {
+            store.release(offset, getSourceWidth(), getSourceHeight());
+        }
+        offset = -1;
+    }
+
+    /**
+     * Returns the image this sprite represents, reading it from the store or
+     * the cache, or decoding it, when it is not already in memory.
+     * 
+     * @return the sprite image, or <code>null</code> when file can no longer
+     *         be decoded.
+     * @see #decode()
+     */
+    @Override
+    public synchronized Image getImage() {
+        try {
+            return decode();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the image this sprite represents, reading it from the store or
+     * the cache, or decoding it, when it is not already in memory. Unlike
+     * {@link #getImage()}, fails when file can no longer be decoded, e.g.
+     * when it is truncated past its header.
+     * 
+     * @return the sprite image.
+     * @throws IOException
+     *         when file can no longer be read or decoded.
+     */
+    public synchronized BufferedImage decode() throws IOException {
+        if (null != store) {
+            Rectangle area = new Rectangle(getSourceSize());
+            int[] pixels = getRGB(area, null);
+            BufferedImage copy = new BufferedImage(area.width, area.height,
+                    BufferedImage.TYPE_INT_ARGB);
+            copy.getRaster().setDataElements(0, 0, area.width, area.height,
+                    pixels);
+            return copy;
+        }
+
+        BufferedImage decoded = (null != image) ? image.get() : null;
+
+        if (null == decoded) {
+            decoded = load();
+            image = new SoftReference<BufferedImage>(decoded);
+        }
+        return decoded;
+    }
+
+    /**
+     * Reads non-premultiplied ARGB pixels of the specified area of the sprite
+     * image.
+     * 
+     * @param area
+     *        the area to read.
+     * @param pixels
+     *        the array to read pixels into, row after row, or
+     *        <code>null</code> to allocate a new one.
+     * @return the array of pixels.
+     * @throws IOException
+     *         when file can no longer be read or decoded.
+     */
+    public int[] getRGB(final Rectangle area, int[] pixels)
+            throws IOException {
+        if (null == store) {
+            BufferedImage decoded = decode();
+            return decoded.getRGB(area.x, area.y, area.width, area.height,
+                    pixels, 0, area.width);
+        }
+
+        long stored;
+        synchronized (this) {
+            if (offset < 0) {
+                offset = store.put(load());
+            }
+            stored = offset;
+        }
+        return store.getRGB(stored, getSourceWidth(), area, pixels);
+    }
+
+    /**
+     * Reads the image from the cache, or decodes the file, converts it to
+     * <code>TYPE_INT_ARGB</code> and caches the result.
+     * 
+     * @return the image.
+     * @throws IOException
+     *         when file can't be read or decoded, or when its image is no
+     *         longer of the size probed when sprite was created.
+     */
+    private BufferedImage load() throws IOException {
+        BufferedImage decoded = (null != cache) ? cache.get(file) : null;
+
+        if (null == decoded) {
+            try {
+                decoded = ImageIO.read(file);
+            } catch (IOException e) {
+                throw new IOException(Messages.format(
+                        Messages.FILE_SPRITE_CANNOT_DECODE, file.getPath()), e);
+            }
+            if (null == decoded) {
+                throw new IOException(Messages.FILE_SPRITE_NO_READER_FOUND);
+            }
+            decoded = toIntArgb(decoded);
+            if (null != cache) {
+                cache.put(file, decoded);
+            }
+        }
+
+        // File may have been replaced by an image of another size since it
+        // was probed, e.g. when a frame is exported again.
+        if ((decoded.getWidth() != getSourceWidth())
+                || (decoded.getHeight() != getSourceHeight())) {
+            throw new IOException(Messages.format(
+                    Messages.FILE_SPRITE_CANNOT_DECODE, file.getPath()));
+        }
+        return decoded;
+    }
+
+    /**
+     * Converts the specified image to <code>TYPE_INT_ARGB</code>, whose
+     * pixels writers can copy directly.
+     * 
+     * @param image
+     *        the image to convert.
+     * @return the image itself when it already is of that type, otherwise the
+     *         converted copy.
+     */
+    private static BufferedImage toIntArgb(BufferedImage image) {
+        if (BufferedImage.TYPE_INT_ARGB == image.getType()) {
+            return image;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage converted = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+
+        converted.getRaster().setDataElements(0, 0, width, height,
+                image.getRGB(0, 0, width, height, null, 0, width));
+        return converted;
+    }
+
+}
@@ -43,9 +43,19 @@ public class Messages {
     public static String SHEET_WIDTH_INVALID;
     public static String SHEET_HEIGHT_INVALID;
     public static String SHEET_DESCRIPTION_LENGTH_INVALID;
+    public static String SHEET_PAGE_COUNT_INVALID;
+    public static String SHEET_PAGE_INVALID;
 
     public static String SPRITE_DEFAULT_NAME;
     public static String SPRITE_IMAGE_NOT_FINISHED_LOADING;
+    public static String SPRITE_PAGE_INVALID;
+    public static String SPRITE_SIZE_INVALID;
+    public static String SPRITE_TRIM_INVALID;
+    public static String SPRITE_ORIGINAL_INVALID;
+
+    public static String FILE_SPRITE_CANNOT_READ;
+    public static String FILE_SPRITE_NO_READER_FOUND;
+    public static String FILE_SPRITE_CANNOT_DECODE;
 
     public static String CONSTRAINTS_MAX_WIDTH_INVALID_RANGE;
     public static String CONSTRAINTS_MAX_HEIGHT_INVALID_RANGE;
@@ -53,11 +63,53 @@ public class Messages {
     public static String CONSTRAINTS_MAX_HEIGHT_INVALID_POWER_OF_TWO;
     public static String CONSTRAINTS_WIDTH_INVALID_POWER_OF_TWO;
     public static String CONSTRAINTS_HEIGHT_INVALID_POWER_OF_TWO;
+    public static String CONSTRAINTS_ALGORITHM_INVALID;
+    public static String CONSTRAINTS_FIT_RULE_INVALID;
+    public static String CONSTRAINTS_SPLIT_RULE_INVALID;
+    public static String CONSTRAINTS_ALIGNMENT_INVALID;
+    public static String CONSTRAINTS_PADDING_INVALID;
 
     public static String IMAGE_WRITER_NO_WRITER_FOUND;
+    public static String IMAGE_WRITER_BAND_HEIGHT_INVALID;
+    public static String IMAGE_WRITER_FORMAT_INVALID;
+    public static String IMAGE_WRITER_CANCELLED;
+
+    public static String COMPOSITOR_IMAGE_TYPE_INVALID;
+
+    public static String PNG_WRITER_SIZE_INVALID;
+    public static String PNG_WRITER_TOO_MANY_ROWS;
+    public static String PNG_WRITER_ROWS_MISSING;
+    public static String PNG_WRITER_INDEXED;
+    public static String PNG_WRITER_NOT_INDEXED;
+
+    public static String TEXTURE_WRITER_SIZE_INVALID;
+    public static String TEXTURE_WRITER_FORMAT_INVALID;
+    public static String TEXTURE_WRITER_CONTAINER_INVALID;
+    public static String TEXTURE_WRITER_TOO_MANY_ROWS;
+    public static String TEXTURE_WRITER_ROWS_NOT_ALIGNED;
+    public static String TEXTURE_WRITER_ROWS_MISSING;
+    public static String TEXTURE_WRITER_LEVELS_INVALID;
+
+    public static String MIPMAP_GENERATOR_SIZE_INVALID;
+    public static String MIPMAP_GENERATOR_TOO_MANY_ROWS;
+    public static String MIPMAP_GENERATOR_ROWS_ODD;
+    public static String MIPMAP_GENERATOR_ROWS_MISSING;
+    public static String MIPMAP_GENERATOR_LEVEL_INVALID;
+
+    public static String QUANTIZER_COLORS_INVALID;
+    public static String QUANTIZER_TRANSPARENCY_INVALID;
+    public static String QUANTIZER_PALETTE_BUILT;
+
+    public static String SPRITE_CACHE_BUDGET_INVALID;
+
+    public static String SPRITE_STORE_CHUNK_SIZE_INVALID;
 
     public static String PACKER_SHEET_SIZE_TOO_SMALL;
 
+    public static String REPACKER_THRESHOLD_INVALID;
+
+    public static String STRATEGY_ORDER_INVALID;
+
     /**
      * Creates a formatted string by putting the given <code>args</code> into
      * the specified <code>pattern</code>.
@@ -18,6 +18,8 @@
 package spritey.core;
 
 import java.awt.Color;
+import java.awt.Dimension;
+import java.util.Arrays;
 
 /**
  * Sheet is a top level container which contains sprites.
@@ -26,12 +28,14 @@ public class Sheet extends Node {
 
     public static final int MIN_DESCRIPTION_LENGTH = 0;
     public static final int MAX_DESCRIPTION_LENGTH = 1024;
+    public static final int MIN_PAGE_COUNT = 1;
 
     protected static final String DEFAULT_NAME = Messages.SHEET_DEFAULT_NAME;
     protected static final Color DEFAULT_BACKGROUND = new Color(255, 0, 255);
     protected static final int DEFAULT_WIDTH = 0;
     protected static final int DEFAULT_HEIGHT = 0;
     protected static final String DEFAULT_DESCRIPTION = Messages.SHEET_DEFAULT_DESCRIPTION;
+    protected static final int DEFAULT_PAGE_COUNT = MIN_PAGE_COUNT;
 
     public static final Color TRANSPARENT_BACKGROUND = new Color(0, 0, 0, 0);
 
@@ -40,6 +44,10 @@ public class Sheet extends Node {
     private int height;
     private String description;
 
+    // Sizes of pages following the first one. The size of the first page is
+    // the width and height of the sheet.
+    private Dimension[] pages;
+
     /**
      * Creates a new instance of <code>Sheet</code> with default settings.
      */
@@ -61,6 +69,7 @@ public class Sheet extends Node {
         setDescription(description);
         setWidth(DEFAULT_WIDTH);
         setHeight(DEFAULT_HEIGHT);
+        setPageCount(DEFAULT_PAGE_COUNT);
     }
 
     /**
@@ -174,4 +183,109 @@ public class Sheet extends Node {
         }
     }
 
+    /**
+     * Returns the number of pages sprites are spread across. The first page
+     * is as big as the sheet itself.
+     * 
+     * @return the number of pages.
+     */
+    public int getPageCount() {
+        return pages.length + 1;
+    }
+
+    /**
+     * Sets the number of pages sprites are spread across. Sizes of existing
+     * pages are kept, new pages are empty.
+     * 
+     * @param count
+     *        the number of pages.
+     * @throws IllegalArgumentException
+     *         when <code>count</code> is less than <code>MIN_PAGE_COUNT</code>.
+     */
+    public void setPageCount(final int count) {
+        if ((null == pages) || (getPageCount() != count)) {
+            if (count < MIN_PAGE_COUNT) {
+                throw new IllegalArgumentException(
+                        Messages.SHEET_PAGE_COUNT_INVALID);
+            }
+
+            int oldLength = (null == pages) ? 0 : pages.length;
+            pages = (null == pages) ? new Dimension[count - 1] : Arrays
+                    .copyOf(pages, count - 1);
+
+            for (int i = oldLength; i < pages.length; ++i) {
+                pages[i] = new Dimension();
+            }
+        }
+    }
+
+    /**
+     * Validates that the specified page exists.
+     * 
+     * @param page
+     *        the page index to validate.
+     */
+    private void validatePage(final int page) {
+        if ((page < 0) || (page >= getPageCount())) {
+            throw new IllegalArgumentException(Messages.SHEET_PAGE_INVALID);
+        }
+    }
+
+    /**
+     * Returns the width of the specified page.
+     * 
+     * @param page
+     *        the page index.
+     * @return the page width.
+     * @throws IllegalArgumentException
+     *         when the page doesn't exist.
+     */
+    public int getPageWidth(final int page) {
+        validatePage(page);
+        return (0 == page) ? getWidth() : pages[page - 1].width;
+    }
+
+    /**
+     * Returns the height of the specified page.
+     * 
+     * @param page
+     *        the page index.
+     * @return the page height.
+     * @throws IllegalArgumentException
+     *         when the page doesn't exist.
+     */
+    public int getPageHeight(final int page) {
+        validatePage(page);
+        return (0 == page) ? getHeight() : pages[page - 1].height;
+    }
+
+    /**
+     * Sets the size of the specified page. Setting the size of the first page
+     * is the same as setting the width and height of the sheet.
+     * 
+     * @param page
+     *        the page index.
+     * @param width
+     *        the page width.
+     * @param height
+     *        the page height.
+     * @throws IllegalArgumentException
+     *         when the page doesn't exist, or when either width or height is
+     *         negative.
+     */
+    public void setPageSize(final int page, final int width, final int height) {
+        validatePage(page);
+
+        if (0 == page) {
+            setWidth(width);
+            setHeight(height);
+        } else if (width < 0) {
+            throw new IllegalArgumentException(Messages.SHEET_WIDTH_INVALID);
+        } else if (height < 0) {
+            throw new IllegalArgumentException(Messages.SHEET_HEIGHT_INVALID);
+        } else {
+            pages[page - 1].setSize(width, height);
+        }
+    }
+
 }
@@ -24,15 +24,32 @@ import java.awt.Rectangle;
 
 /**
  * Sprite is an image that can be drawn on a canvas.
+ * <p>
+ * The size of the image is read once, when the image is assigned, and cached.
+ * A sprite may also be created from its size alone, e.g. when the size is
+ * known from image metadata, in which case it has no image to draw.
+ * </p>
+ * <p>
+ * A sprite may be an alias of another, pixel-identical sprite. An alias isn't
+ * packed on its own; it is located, paged and rotated exactly like its
+ * original.
+ * </p>
  */
 public class Sprite extends Node {
 
     public static final String DEFAULT_NAME = Messages.SPRITE_DEFAULT_NAME;
     public static final Point DEFAULT_LOCATION = new Point(-1, -1);
     public static final Dimension DEFAULT_SIZE = new Dimension(0, 0);
+    public static final int DEFAULT_PAGE = 0;
 
     private Point location;
     private Image image;
+    private int width;
+    private int height;
+    private int page;
+    private boolean rotated;
+    private Rectangle trim;
+    private Sprite original;
 
     /**
      * Creates a new instance of Sprite with DEFAULT_NAME.
@@ -56,6 +73,31 @@ public class Sprite extends Node {
         super(name);
         setImage(image);
         setLocation(DEFAULT_LOCATION);
+        setPage(DEFAULT_PAGE);
+    }
+
+    /**
+     * Creates a new instance of Sprite of the specified size, which has no
+     * image.
+     * 
+     * @param name
+     *        the name to give to the sprite.
+     * @param width
+     *        the sprite width.
+     * @param height
+     *        the sprite height.
+     * @throws IllegalArgumentException
+     *         when <code>width</code> or <code>height</code> is negative.
+     */
+    public Sprite(final String name, final int width, final int height) {
+        super(name);
+        if ((width < 0) || (height < 0)) {
+            throw new IllegalArgumentException(Messages.SPRITE_SIZE_INVALID);
+        }
+        this.width = width;
+        this.height = height;
+        setLocation(DEFAULT_LOCATION);
+        setPage(DEFAULT_PAGE);
     }
 
     /**
@@ -64,6 +106,9 @@ public class Sprite extends Node {
      * @return sprite location.
      */
     public Point getLocation() {
+        if (null != original) {
+            return original.getLocation();
+        }
         return location;
     }
 
@@ -74,7 +119,7 @@ public class Sprite extends Node {
      *        the location where sprite is position within a sprite sheet.
      */
     public void setLocation(final Point location) {
-        if ((null == getLocation()) || !getLocation().equals(location)) {
+        if ((null == this.location) || !this.location.equals(location)) {
             if (null == location) {
                 throw new IllegalArgumentException(Messages.NULL);
             }
@@ -82,51 +127,250 @@ public class Sprite extends Node {
         }
     }
 
+    /**
+     * Returns the index of the sheet page where sprite is located.
+     * 
+     * @return the page index.
+     */
+    public int getPage() {
+        if (null != original) {
+            return original.getPage();
+        }
+        return page;
+    }
+
+    /**
+     * Sets the index of the sheet page where sprite is located.
+     * 
+     * @param page
+     *        the page index.
+     * @throws IllegalArgumentException
+     *         when <code>page</code> is negative.
+     */
+    public void setPage(final int page) {
+        if (this.page != page) {
+            if (page < 0) {
+                throw new IllegalArgumentException(Messages.SPRITE_PAGE_INVALID);
+            }
+            this.page = page;
+        }
+    }
+
+    /**
+     * Returns whether sprite is placed onto the sheet rotated by 90 degrees
+     * clockwise.
+     * 
+     * @return <code>true</code> if sprite is rotated, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isRotated() {
+        if (null != original) {
+            return original.isRotated();
+        }
+        return rotated;
+    }
+
+    /**
+     * Sets whether sprite is placed onto the sheet rotated by 90 degrees
+     * clockwise.
+     * 
+     * @param rotated
+     *        specifies whether sprite is rotated.
+     */
+    public void setRotated(final boolean rotated) {
+        if (this.rotated != rotated) {
+            this.rotated = rotated;
+        }
+    }
+
+    /**
+     * Returns the sprite this sprite is an alias of.
+     * 
+     * @return the original sprite, or <code>null</code> when this sprite is
+     *         not an alias.
+     */
+    public Sprite getOriginal() {
+        return original;
+    }
+
+    /**
+     * Makes this sprite an alias of the specified pixel-identical sprite.
+     * 
+     * @param original
+     *        the original sprite, or <code>null</code> to make this sprite
+     *        stand on its own again.
+     * @throws IllegalArgumentException
+     *         when <code>original</code> is this sprite or an alias itself.
+     */
+    public void setOriginal(final Sprite original) {
+        if (this.original != original) {
+            if ((this == original)
+                    || ((null != original) && original.isAlias())) {
+                throw new IllegalArgumentException(
+                        Messages.SPRITE_ORIGINAL_INVALID);
+            }
+            this.original = original;
+        }
+    }
+
+    /**
+     * Returns whether this sprite is an alias of another sprite.
+     * 
+     * @return <code>true</code> if sprite is an alias, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isAlias() {
+        return null != original;
+    }
+
     /**
      * Returns the image this sprite represents.
      * 
-     * @return the sprite image.
+     * @return the sprite image, or <code>null</code> when sprite was created
+     *         from its size alone.
      */
     public Image getImage() {
         return image;
     }
 
     /**
-     * Sets sprite image.
+     * Sets sprite image and caches its size.
      * 
      * @param image
      *        the image to assign to this sprite.
      * @throws IllegalArgumentException
      *         when <code>image</code> or image size is <code>null</code>.
+     * @throws RuntimeException
+     *         when image has not finished loading.
      */
     protected void setImage(final Image image) {
         if ((null == getImage()) || (getImage() != image)) {
             if (null == image) {
                 throw new IllegalArgumentException(Messages.NULL);
             }
+
+            int width = image.getWidth(null);
+            int height = image.getHeight(null);
+
+            if ((-1 == width) || (-1 == height)) {
+                throw new RuntimeException(
+                        Messages.SPRITE_IMAGE_NOT_FINISHED_LOADING);
+            }
+
             this.image = image;
+            this.width = width;
+            this.height = height;
+            this.trim = null;
         }
     }
 
     /**
-     * Returns the sprite size.
+     * Returns the size of the sprite image.
+     * 
+     * @return the image size.
+     */
+    public Dimension getSourceSize() {
+        return new Dimension(width, height);
+    }
+
+    /**
+     * Returns the width of the sprite image.
+     * 
+     * @return the image width.
+     */
+    public int getSourceWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the sprite image.
+     * 
+     * @return the image height.
+     */
+    public int getSourceHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the sprite size, which is the size of the trimmed area when
+     * sprite is trimmed.
      * 
      * @return the size.
      */
     public Dimension getSize() {
-        Image image = getImage();
-        if (null == image) {
-            return DEFAULT_SIZE;
+        return new Dimension(getWidth(), getHeight());
+    }
+
+    /**
+     * Returns the sprite width, which is the width of the trimmed area when
+     * sprite is trimmed.
+     * 
+     * @return the width.
+     */
+    public int getWidth() {
+        return (null != trim) ? trim.width : width;
+    }
+
+    /**
+     * Returns the sprite height, which is the height of the trimmed area when
+     * sprite is trimmed.
+     * 
+     * @return the height.
+     */
+    public int getHeight() {
+        return (null != trim) ? trim.height : height;
+    }
+
+    /**
+     * Returns the area of the image which is drawn onto the sheet. Unless
+     * sprite is trimmed this is the whole image.
+     * 
+     * @return the trimmed area.
+     */
+    public Rectangle getTrim() {
+        if (null != trim) {
+            return new Rectangle(trim);
         }
+        return new Rectangle(getSourceSize());
+    }
 
-        int width = image.getWidth(null);
-        int height = image.getHeight(null);
+    /**
+     * Sets the area of the image which is drawn onto the sheet. Usually this
+     * is the bounding box of opaque pixels.
+     * 
+     * @param trim
+     *        the area within the image.
+     * @throws IllegalArgumentException
+     *         when <code>trim</code> is <code>null</code> or doesn't lie
+     *         within the image.
+     */
+    public void setTrim(final Rectangle trim) {
+        if (null == trim) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
 
-        if ((-1 == width) || (-1 == height)) {
-            throw new RuntimeException(
-                    Messages.SPRITE_IMAGE_NOT_FINISHED_LOADING);
+        Dimension size = getSourceSize();
+        if ((trim.x < 0) || (trim.y < 0) || (trim.width < 0)
+                || (trim.height < 0) || (trim.x + trim.width > size.width)
+                || (trim.y + trim.height > size.height)) {
+            throw new IllegalArgumentException(Messages.SPRITE_TRIM_INVALID);
+        }
+
+        if (new Rectangle(size).equals(trim)) {
+            this.trim = null;
+        } else {
+            this.trim = new Rectangle(trim);
         }
-        return new Dimension(width, height);
+    }
+
+    /**
+     * Returns whether only a part of the image is drawn onto the sheet.
+     * 
+     * @return <code>true</code> if sprite is trimmed, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isTrimmed() {
+        return null != trim;
     }
 
     /**
@@ -135,8 +379,7 @@ public class Sprite extends Node {
      * @return the sprite area.
      */
     public int getArea() {
-        Dimension size = getSize();
-        return size.width * size.height;
+        return getWidth() * getHeight();
     }
 
     /**
@@ -150,12 +393,17 @@ public class Sprite extends Node {
     }
 
     /**
-     * Returns sprite's bounds.
+     * Returns sprite's bounds, i.e. the area sprite occupies on the sheet.
+     * Width and height are swapped when sprite is rotated.
      * 
      * @return sprite's bounds.
      */
     public Rectangle getBounds() {
-        return new Rectangle(getLocation(), getSize());
+        Dimension size = getSize();
+        if (isRotated()) {
+            size = new Dimension(size.height, size.width);
+        }
+        return new Rectangle(getLocation(), size);
     }
 
 }
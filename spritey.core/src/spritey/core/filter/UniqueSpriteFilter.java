@@ -0,0 +1,33 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.filter;
+
+import spritey.core.Node;
+import spritey.core.Sprite;
+
+/**
+ * Filter for extracting sprites which are not aliases of other sprites.
+ */
+public class UniqueSpriteFilter extends SpriteFilter {
+
+    @Override
+    public boolean select(Node node) {
+        return super.select(node) && !((Sprite) node).isAlias();
+    }
+
+}
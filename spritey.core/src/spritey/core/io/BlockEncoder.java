@@ -0,0 +1,1019 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import spritey.core.Messages;
+
+/**
+ * Encodes 4x4 blocks of pixels into the compressed formats GPUs sample
+ * directly: BC1 and BC3, also known as DXT1 and DXT5, and ETC2 RGB8 and RGBA8.
+ * BC1 and BC3 colors are fitted along the principal axis of the block colors.
+ * ETC2 colors are written in the individual and differential modes which ETC2
+ * inherits from ETC1, so the blocks decode as ETC1 as well. BC3 alpha is
+ * interpolated between two endpoints and ETC2 RGBA8 alpha is modulated by EAC
+ * tables.
+ * <p>
+ * The fast mode fits each block once. The quality mode refines BC1 endpoints
+ * by least squares, tries both alpha modes of BC3 and searches around the
+ * base colors and alpha of ETC2 blocks, which is several times slower. Fully
+ * transparent pixels don't take part in fitting colors of formats with
+ * alpha. An encoder isn't thread safe.
+ * </p>
+ */
+class BlockEncoder {
+
+    /**
+     * The width and height of a block.
+     */
+    public static final int BLOCK_SIZE = 4;
+
+    private static final int PIXELS = BLOCK_SIZE * BLOCK_SIZE;
+
+    // Weights of the first endpoint of each BC1 index in the four color mode.
+    private static final float[] BC1_WEIGHTS = { 1, 0, 2 / 3f, 1 / 3f };
+
+    // ETC intensity modifiers of each table, indexed by the 2-bit pixel index.
+    private static final int[][] ETC_MODIFIERS = { { 2, 8, -2, -8 },
+            { 5, 17, -5, -17 }, { 9, 29, -9, -29 }, { 13, 42, -13, -42 },
+            { 18, 60, -18, -60 }, { 24, 80, -24, -80 },
+            { 33, 106, -33, -106 }, { 47, 183, -47, -183 } };
+
+    // EAC alpha modifiers of each table, indexed by the 3-bit pixel index.
+    private static final int[][] EAC_MODIFIERS = {
+            { -3, -6, -9, -15, 2, 5, 8, 14 }, { -3, -7, -10, -13, 2, 6, 9, 12 },
+            { -2, -5, -8, -13, 1, 4, 7, 12 }, { -2, -4, -6, -13, 1, 3, 5, 12 },
+            { -3, -6, -8, -12, 2, 5, 7, 11 }, { -3, -7, -9, -11, 2, 6, 8, 10 },
+            { -4, -7, -8, -11, 3, 6, 7, 10 }, { -3, -5, -8, -11, 2, 4, 7, 10 },
+            { -2, -6, -8, -10, 1, 5, 7, 9 }, { -2, -5, -8, -10, 1, 4, 7, 9 },
+            { -2, -4, -8, -10, 1, 3, 7, 9 }, { -2, -5, -7, -10, 1, 4, 6, 9 },
+            { -3, -4, -7, -10, 2, 3, 6, 9 }, { -1, -2, -3, -10, 0, 1, 2, 9 },
+            { -4, -6, -8, -9, 3, 5, 7, 8 }, { -3, -5, -7, -9, 2, 4, 6, 8 } };
+
+    // The EAC table and index which modify alpha by zero.
+    private static final int EAC_ZERO_TABLE = 13;
+    private static final int EAC_ZERO_INDEX = 4;
+
+    // Offsets of quantized ETC base colors tried by the quality mode.
+    private static final int[][] ETC_NEIGHBOURS = { { 0, 0, 0 },
+            { 1, 1, 1 }, { -1, -1, -1 }, { 1, 0, 0 }, { -1, 0, 0 },
+            { 0, 1, 0 }, { 0, -1, 0 }, { 0, 0, 1 }, { 0, 0, -1 } };
+
+    private static final int POWER_ITERATIONS = 8;
+    private static final int REFINE_ITERATIONS = 4;
+
+    private int format;
+    private boolean quality;
+    private int blockBytes;
+
+    // Channels of the block being encoded, and whether pixels count towards
+    // the fit of colors.
+    private int[] reds = new int[PIXELS];
+    private int[] greens = new int[PIXELS];
+    private int[] blues = new int[PIXELS];
+    private int[] alphas = new int[PIXELS];
+    private boolean[] weighted = new boolean[PIXELS];
+
+    // The best BC1 color block found so far.
+    private long colorError;
+    private int colorEndpoints;
+    private int colorBits;
+    private int[] colorIndices = new int[PIXELS];
+    private int[] trialIndices = new int[PIXELS];
+    private int[] palette = new int[3 * 4];
+
+    // The best alpha block found so far.
+    private long alphaError;
+    private long alphaWord;
+    private int[] alphaPalette = new int[8];
+
+    // The best ETC color block found so far.
+    private long etcError;
+    private long etcWord;
+    private int[][] average = new int[2][3];
+    private int[][] bases = new int[2][3];
+    private int[] tables = new int[2];
+    private int[] modifiers = new int[PIXELS];
+
+    /**
+     * Creates a new instance of BlockEncoder.
+     * 
+     * @param format
+     *        one of the block compressed formats declared in ImageWriter.
+     * @param quality
+     *        <code>true</code> to search for better blocks, <code>false</code>
+     *        to fit each block once.
+     * @throws IllegalArgumentException
+     *         when <code>format</code> is not a block compressed format.
+     */
+    public BlockEncoder(int format, boolean quality) {
+        switch (format) {
+        case ImageWriter.FORMAT_BC1:
+        case ImageWriter.FORMAT_ETC2_RGB:
+            blockBytes = 8;
+            break;
+        case ImageWriter.FORMAT_BC3:
+        case ImageWriter.FORMAT_ETC2_RGBA:
+            blockBytes = 16;
+            break;
+        default:
+            throw new IllegalArgumentException(
+                    Messages.TEXTURE_WRITER_FORMAT_INVALID);
+        }
+
+        this.format = format;
+        this.quality = quality;
+    }
+
+    /**
+     * Returns <code>true</code> if the specified format is one of the block
+     * compressed formats declared in ImageWriter.
+     * 
+     * @param format
+     *        the format to check.
+     * @return <code>true</code> if format is block compressed, otherwise
+     *         <code>false</code>.
+     */
+    public static boolean isBlockCompressed(int format) {
+        return (ImageWriter.FORMAT_BC1 == format)
+                || (ImageWriter.FORMAT_BC3 == format)
+                || (ImageWriter.FORMAT_ETC2_RGB == format)
+                || (ImageWriter.FORMAT_ETC2_RGBA == format);
+    }
+
+    /**
+     * Returns the number of bytes an encoded block takes.
+     * 
+     * @return the block size in bytes.
+     */
+    public int getBlockBytes() {
+        return blockBytes;
+    }
+
+    /**
+     * Encodes a block of pixels.
+     * 
+     * @param block
+     *        the 16 non-premultiplied ARGB pixels of the block, row after row.
+     * @param out
+     *        receives the encoded block.
+     * @param pos
+     *        the index of the first byte of the encoded block.
+     */
+    public void encode(int[] block, byte[] out, int pos) {
+        boolean alpha = (ImageWriter.FORMAT_BC3 == format)
+                || (ImageWriter.FORMAT_ETC2_RGBA == format);
+        int count = 0;
+
+        for (int i = 0; i < PIXELS; ++i) {
+            int argb = block[i];
+            alphas[i] = argb >>> 24;
+            reds[i] = (argb >> 16) & 0xff;
+            greens[i] = (argb >> 8) & 0xff;
+            blues[i] = argb & 0xff;
+            weighted[i] = !alpha || (0 != alphas[i]);
+            if (weighted[i]) {
+                ++count;
+            }
+        }
+
+        if (0 == count) {
+            // Colors of a fully transparent block don't matter, any will do.
+            for (int i = 0; i < PIXELS; ++i) {
+                weighted[i] = true;
+            }
+        }
+
+        switch (format) {
+        case ImageWriter.FORMAT_BC1:
+            encodeColor(out, pos);
+            break;
+        case ImageWriter.FORMAT_BC3:
+            encodeAlpha(out, pos);
+            encodeColor(out, pos + 8);
+            break;
+        case ImageWriter.FORMAT_ETC2_RGB:
+            encodeEtc(out, pos);
+            break;
+        default:
+            encodeEac(out, pos);
+            encodeEtc(out, pos + 8);
+            break;
+        }
+    }
+
+    /**
+     * Encodes colors of the block as a BC1 color block in the four color
+     * mode, which is the only mode BC3 color blocks have.
+     * 
+     * @param out
+     *        receives the encoded block.
+     * @param pos
+     *        the index of the first byte of the encoded block.
+     */
+    private void encodeColor(byte[] out, int pos) {
+        int count = 0;
+        float meanR = 0;
+        float meanG = 0;
+        float meanB = 0;
+
+        for (int i = 0; i < PIXELS; ++i) {
+            if (weighted[i]) {
+                ++count;
+                meanR += reds[i];
+                meanG += greens[i];
+                meanB += blues[i];
+            }
+        }
+        meanR /= count;
+        meanG /= count;
+        meanB /= count;
+
+        float rr = 0, rg = 0, rb = 0, gg = 0, gb = 0, bb = 0;
+        for (int i = 0; i < PIXELS; ++i) {
+            if (weighted[i]) {
+                float r = reds[i] - meanR;
+                float g = greens[i] - meanG;
+                float b = blues[i] - meanB;
+                rr += r * r;
+                rg += r * g;
+                rb += r * b;
+                gg += g * g;
+                gb += g * b;
+                bb += b * b;
+            }
+        }
+
+        // The principal axis is found by power iteration, starting from the
+        // covariance row of the channel which varies the most.
+        float axisR, axisG, axisB;
+        if ((rr >= gg) && (rr >= bb)) {
+            axisR = rr;
+            axisG = rg;
+            axisB = rb;
+        } else if (gg >= bb) {
+            axisR = rg;
+            axisG = gg;
+            axisB = gb;
+        } else {
+            axisR = rb;
+            axisG = gb;
+            axisB = bb;
+        }
+
+        for (int k = 0; k < POWER_ITERATIONS; ++k) {
+            float r = rr * axisR + rg * axisG + rb * axisB;
+            float g = rg * axisR + gg * axisG + gb * axisB;
+            float b = rb * axisR + gb * axisG + bb * axisB;
+            float max = Math.max(Math.abs(r), Math.max(Math.abs(g),
+                    Math.abs(b)));
+
+            if (max < 1e-6f) {
+                break;
+            }
+            axisR = r / max;
+            axisG = g / max;
+            axisB = b / max;
+        }
+
+        float length = axisR * axisR + axisG * axisG + axisB * axisB;
+        float min = 0;
+        float max = 0;
+
+        if (length > 1e-6f) {
+            min = Float.MAX_VALUE;
+            max = -Float.MAX_VALUE;
+            for (int i = 0; i < PIXELS; ++i) {
+                if (weighted[i]) {
+                    float t = ((reds[i] - meanR) * axisR
+                            + (greens[i] - meanG) * axisG + (blues[i] - meanB)
+                            * axisB)
+                            / length;
+                    min = Math.min(min, t);
+                    max = Math.max(max, t);
+                }
+            }
+        }
+
+        colorError = Long.MAX_VALUE;
+        fitColor(meanR + axisR * max, meanG + axisG * max, meanB + axisB
+                * max, meanR + axisR * min, meanG + axisG * min, meanB
+                + axisB * min);
+
+        if (quality) {
+            refineColor();
+        }
+
+        out[pos] = (byte) colorEndpoints;
+        out[pos + 1] = (byte) (colorEndpoints >> 8);
+        out[pos + 2] = (byte) (colorEndpoints >> 16);
+        out[pos + 3] = (byte) (colorEndpoints >> 24);
+        out[pos + 4] = (byte) colorBits;
+        out[pos + 5] = (byte) (colorBits >> 8);
+        out[pos + 6] = (byte) (colorBits >> 16);
+        out[pos + 7] = (byte) (colorBits >> 24);
+    }
+
+    /**
+     * Moves endpoints of the best color block to the least squares solution
+     * for its indices, for as long as that reduces the error.
+     */
+    private void refineColor() {
+        for (int k = 0; k < REFINE_ITERATIONS; ++k) {
+            float aa = 0, ab = 0, bb = 0;
+            float ar = 0, ag = 0, ab2 = 0;
+            float br = 0, bg = 0, bb2 = 0;
+
+            for (int i = 0; i < PIXELS; ++i) {
+                if (weighted[i]) {
+                    float a = BC1_WEIGHTS[colorIndices[i]];
+                    float b = 1 - a;
+                    aa += a * a;
+                    ab += a * b;
+                    bb += b * b;
+                    ar += a * reds[i];
+                    ag += a * greens[i];
+                    ab2 += a * blues[i];
+                    br += b * reds[i];
+                    bg += b * greens[i];
+                    bb2 += b * blues[i];
+                }
+            }
+
+            float det = aa * bb - ab * ab;
+            if (Math.abs(det) < 1e-6f) {
+                return;
+            }
+
+            long previous = colorError;
+            fitColor((ar * bb - br * ab) / det, (ag * bb - bg * ab) / det,
+                    (ab2 * bb - bb2 * ab) / det, (br * aa - ar * ab) / det,
+                    (bg * aa - ag * ab) / det, (bb2 * aa - ab2 * ab) / det);
+            if (colorError >= previous) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Quantizes the specified endpoints, picks the nearest palette color for
+     * each pixel and keeps the result when it is the best so far.
+     * 
+     * @param r0
+     *        the red of the first endpoint.
+     * @param g0
+     *        the green of the first endpoint.
+     * @param b0
+     *        the blue of the first endpoint.
+     * @param r1
+     *        the red of the second endpoint.
+     * @param g1
+     *        the green of the second endpoint.
+     * @param b1
+     *        the blue of the second endpoint.
+     */
+    private void fitColor(float r0, float g0, float b0, float r1, float g1,
+            float b1) {
+        int c0 = to565(r0, g0, b0);
+        int c1 = to565(r1, g1, b1);
+
+        // The four color mode needs the first endpoint to be greater.
+        if (c0 < c1) {
+            int c = c0;
+            c0 = c1;
+            c1 = c;
+        }
+
+        expand565(c0, 0);
+        expand565(c1, 1);
+        for (int c = 0; c < 3; ++c) {
+            int p0 = palette[c];
+            int p1 = palette[3 + c];
+            if (c0 == c1) {
+                // Equal endpoints select the three color mode, whose last
+                // color is black, so only the first endpoint is used.
+                palette[6 + c] = p0;
+                palette[9 + c] = p0;
+            } else {
+                palette[6 + c] = (2 * p0 + p1) / 3;
+                palette[9 + c] = (p0 + 2 * p1) / 3;
+            }
+        }
+
+        long error = 0;
+        int bits = 0;
+        int[] indices = trialIndices;
+
+        for (int i = 0; i < PIXELS; ++i) {
+            int best = 0;
+            int bestDistance = Integer.MAX_VALUE;
+
+            for (int j = 0; j < 4; ++j) {
+                int dr = palette[3 * j] - reds[i];
+                int dg = palette[3 * j + 1] - greens[i];
+                int db = palette[3 * j + 2] - blues[i];
+                int distance = dr * dr + dg * dg + db * db;
+
+                if (distance < bestDistance) {
+                    best = j;
+                    bestDistance = distance;
+                }
+            }
+
+            indices[i] = best;
+            bits |= best << (2 * i);
+            if (weighted[i]) {
+                error += bestDistance;
+            }
+        }
+
+        if (error < colorError) {
+            colorError = error;
+            colorEndpoints = c0 | (c1 << 16);
+            colorBits = bits;
+            trialIndices = colorIndices;
+            colorIndices = indices;
+        }
+    }
+
+    /**
+     * Rounds the specified color to 5 bits of red, 6 bits of green and 5 bits
+     * of blue.
+     * 
+     * @param r
+     *        the red.
+     * @param g
+     *        the green.
+     * @param b
+     *        the blue.
+     * @return the 16-bit color.
+     */
+    private static int to565(float r, float g, float b) {
+        return (quantize(r, 31) << 11) | (quantize(g, 63) << 5)
+                | quantize(b, 31);
+    }
+
+    /**
+     * Rounds an 8-bit channel value to the nearest of fewer levels.
+     * 
+     * @param value
+     *        the channel value, clamped to 0 to 255.
+     * @param max
+     *        the maximum quantized value.
+     * @return the quantized value.
+     */
+    private static int quantize(float value, int max) {
+        int v = Math.round(Math.max(0, Math.min(255, value)) * max / 255);
+        return Math.max(0, Math.min(max, v));
+    }
+
+    /**
+     * Expands a 16-bit color into an entry of the BC1 palette.
+     * 
+     * @param color
+     *        the 16-bit color.
+     * @param entry
+     *        the index of the palette entry.
+     */
+    private void expand565(int color, int entry) {
+        int r = (color >> 11) & 0x1f;
+        int g = (color >> 5) & 0x3f;
+        int b = color & 0x1f;
+        palette[3 * entry] = (r << 3) | (r >> 2);
+        palette[3 * entry + 1] = (g << 2) | (g >> 4);
+        palette[3 * entry + 2] = (b << 3) | (b >> 2);
+    }
+
+    /**
+     * Encodes alpha of the block as a BC3 alpha block.
+     * 
+     * @param out
+     *        receives the encoded block.
+     * @param pos
+     *        the index of the first byte of the encoded block.
+     */
+    private void encodeAlpha(byte[] out, int pos) {
+        int min = 255;
+        int max = 0;
+        int innerMin = 255;
+        int innerMax = 0;
+
+        for (int i = 0; i < PIXELS; ++i) {
+            int a = alphas[i];
+            min = Math.min(min, a);
+            max = Math.max(max, a);
+            if ((0 != a) && (255 != a)) {
+                innerMin = Math.min(innerMin, a);
+                innerMax = Math.max(innerMax, a);
+            }
+        }
+
+        alphaError = Long.MAX_VALUE;
+        if (min == max) {
+            fitAlpha(min, min);
+        } else {
+            fitAlpha(max, min);
+            if (quality) {
+                // Six interpolated values plus exact 0 and 255 suit blocks
+                // mixing fully transparent or opaque pixels with others.
+                if (innerMin > innerMax) {
+                    innerMin = 0;
+                    innerMax = 255;
+                }
+                fitAlpha(innerMin, innerMax);
+            }
+        }
+
+        for (int i = 0; i < 8; ++i) {
+            out[pos + i] = (byte) (alphaWord >>> (8 * i));
+        }
+    }
+
+    /**
+     * Picks the nearest of the alpha values interpolated between the
+     * specified endpoints for each pixel and keeps the result when it is the
+     * best so far.
+     * 
+     * @param a0
+     *        the first endpoint, greater than the second to interpolate eight
+     *        values, otherwise six values plus 0 and 255.
+     * @param a1
+     *        the second endpoint.
+     */
+    private void fitAlpha(int a0, int a1) {
+        alphaPalette[0] = a0;
+        alphaPalette[1] = a1;
+        if (a0 > a1) {
+            for (int k = 1; k < 7; ++k) {
+                alphaPalette[k + 1] = ((7 - k) * a0 + k * a1 + 3) / 7;
+            }
+        } else {
+            for (int k = 1; k < 5; ++k) {
+                alphaPalette[k + 1] = ((5 - k) * a0 + k * a1 + 2) / 5;
+            }
+            alphaPalette[6] = 0;
+            alphaPalette[7] = 255;
+        }
+
+        long error = 0;
+        long word = a0 | (a1 << 8);
+
+        for (int i = 0; i < PIXELS; ++i) {
+            int best = 0;
+            int bestDistance = Integer.MAX_VALUE;
+
+            for (int j = 0; j < 8; ++j) {
+                int distance = Math.abs(alphaPalette[j] - alphas[i]);
+                if (distance < bestDistance) {
+                    best = j;
+                    bestDistance = distance;
+                }
+            }
+
+            word |= (long) best << (16 + 3 * i);
+            error += bestDistance * bestDistance;
+        }
+
+        if (error < alphaError) {
+            alphaError = error;
+            alphaWord = word;
+        }
+    }
+
+    /**
+     * Encodes colors of the block as an ETC2 color block in either the
+     * individual or the differential mode, split in two halves side by side
+     * or one above the other.
+     * 
+     * @param out
+     *        receives the encoded block.
+     * @param pos
+     *        the index of the first byte of the encoded block.
+     */
+    private void encodeEtc(byte[] out, int pos) {
+        etcError = Long.MAX_VALUE;
+
+        for (int flip = 0; flip < 2; ++flip) {
+            for (int half = 0; half < 2; ++half) {
+                averageHalf(flip, half);
+            }
+
+            boolean differential = fitEtc(flip, true);
+            if (quality || !differential) {
+                fitEtc(flip, false);
+            }
+        }
+
+        for (int i = 0; i < 8; ++i) {
+            out[pos + i] = (byte) (etcWord >>> (56 - 8 * i));
+        }
+    }
+
+    /**
+     * Averages the colors of the specified half of the block.
+     * 
+     * @param flip
+     *        0 when halves are side by side, 1 when one is above the other.
+     * @param half
+     *        the index of the half.
+     */
+    private void averageHalf(int flip, int half) {
+        int count = 0;
+        int r = 0, g = 0, b = 0;
+
+        for (int pass = 0; (pass < 2) && (0 == count); ++pass) {
+            for (int i = 0; i < PIXELS; ++i) {
+                if ((half(flip, i) == half) && ((pass > 0) || weighted[i])) {
+                    ++count;
+                    r += reds[i];
+                    g += greens[i];
+                    b += blues[i];
+                }
+            }
+        }
+
+        average[half][0] = (r + count / 2) / count;
+        average[half][1] = (g + count / 2) / count;
+        average[half][2] = (b + count / 2) / count;
+    }
+
+    /**
+     * Returns the half of the block the specified pixel belongs to.
+     * 
+     * @param flip
+     *        0 when halves are side by side, 1 when one is above the other.
+     * @param i
+     *        the index of the pixel, row after row.
+     * @return the index of the half.
+     */
+    private static int half(int flip, int i) {
+        return (0 == flip) ? ((i & 3) >> 1) : (i >> 3);
+    }
+
+    /**
+     * Fits base colors of both halves in the specified mode and keeps the
+     * block when it is the best so far.
+     * 
+     * @param flip
+     *        0 when halves are side by side, 1 when one is above the other.
+     * @param differential
+     *        <code>true</code> for 5-bit base colors, the second one stored as
+     *        a difference from the first, <code>false</code> for two 4-bit
+     *        base colors.
+     * @return <code>false</code> when base colors are too far apart for the
+     *         differential mode.
+     */
+    private boolean fitEtc(int flip, boolean differential) {
+        int max = differential ? 31 : 15;
+        long[] errors = new long[2];
+
+        for (int half = 0; half < 2; ++half) {
+            errors[half] = Long.MAX_VALUE;
+            int neighbours = quality ? ETC_NEIGHBOURS.length : 1;
+
+            for (int n = 0; n < neighbours; ++n) {
+                int[] base = new int[3];
+                for (int c = 0; c < 3; ++c) {
+                    base[c] = Math.max(0, Math.min(max, quantize(
+                            average[half][c], max) + ETC_NEIGHBOURS[n][c]));
+                }
+
+                long fit = fitHalf(flip, half, base, max, null);
+                if ((fit >> 3) < errors[half]) {
+                    errors[half] = fit >> 3;
+                    bases[half] = base;
+                }
+            }
+        }
+
+        if (differential && !isDeltaValid(bases[0], bases[1])) {
+            if (!quality) {
+                return false;
+            }
+
+            // Pull the second base color towards the first, or the first
+            // towards the second, whichever costs less.
+            int[] second = clampDelta(bases[0], bases[1], true);
+            int[] first = clampDelta(bases[1], bases[0], false);
+            long secondError = fitHalf(flip, 1, second, max, null) >> 3;
+            long firstError = fitHalf(flip, 0, first, max, null) >> 3;
+
+            if (errors[0] + secondError <= firstError + errors[1]) {
+                bases[1] = second;
+                errors[1] = secondError;
+            } else {
+                bases[0] = first;
+                errors[0] = firstError;
+            }
+        }
+
+        if (errors[0] + errors[1] < etcError) {
+            etcError = errors[0] + errors[1];
+            for (int half = 0; half < 2; ++half) {
+                tables[half] = (int) (fitHalf(flip, half, bases[half], max,
+                        modifiers) & 7);
+            }
+            etcWord = etcWord(flip, differential);
+        }
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> if the second 5-bit base color can be stored
+     * as a 3-bit signed difference from the first.
+     * 
+     * @param first
+     *        the first base color.
+     * @param second
+     *        the second base color.
+     * @return <code>true</code> if the difference is within range, otherwise
+     *         <code>false</code>.
+     */
+    private static boolean isDeltaValid(int[] first, int[] second) {
+        for (int c = 0; c < 3; ++c) {
+            int delta = second[c] - first[c];
+            if ((delta < -4) || (delta > 3)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the color nearest to the specified one which keeps the
+     * difference between the first and the second base color within range.
+     * 
+     * @param reference
+     *        the base color which is kept.
+     * @param color
+     *        the base color to clamp.
+     * @param second
+     *        <code>true</code> if the clamped color is the second base
+     *        color, <code>false</code> if it is the first.
+     * @return the clamped base color.
+     */
+    private static int[] clampDelta(int[] reference, int[] color,
+            boolean second) {
+        int[] clamped = new int[3];
+        for (int c = 0; c < 3; ++c) {
+            int min = second ? reference[c] - 4 : reference[c] - 3;
+            int max = second ? reference[c] + 3 : reference[c] + 4;
+            clamped[c] = Math.max(min, Math.min(max, color[c]));
+        }
+        return clamped;
+    }
+
+    /**
+     * Finds the modifier table which fits the specified half of the block
+     * best around the specified base color.
+     * 
+     * @param flip
+     *        0 when halves are side by side, 1 when one is above the other.
+     * @param half
+     *        the index of the half.
+     * @param base
+     *        the quantized base color.
+     * @param max
+     *        the maximum quantized value, 15 or 31.
+     * @param indices
+     *        receives the modifier index of each pixel of the half, or
+     *        <code>null</code>.
+     * @return the error shifted left by 3 bits, combined with the index of
+     *         the table.
+     */
+    private long fitHalf(int flip, int half, int[] base, int max,
+            int[] indices) {
+        int r = expand(base[0], max);
+        int g = expand(base[1], max);
+        int b = expand(base[2], max);
+        long bestError = Long.MAX_VALUE;
+        int bestTable = 0;
+
+        for (int t = 0; t < ETC_MODIFIERS.length; ++t) {
+            long error = 0;
+
+            for (int i = 0; (i < PIXELS) && (error < bestError); ++i) {
+                if ((half(flip, i) == half) && weighted[i]) {
+                    error += nearestModifier(ETC_MODIFIERS[t], r, g, b,
+                            i) >>> 2;
+                }
+            }
+
+            if (error < bestError) {
+                bestError = error;
+                bestTable = t;
+            }
+        }
+
+        if (null != indices) {
+            for (int i = 0; i < PIXELS; ++i) {
+                if (half(flip, i) == half) {
+                    indices[i] = nearestModifier(ETC_MODIFIERS[bestTable], r,
+                            g, b, i) & 3;
+                }
+            }
+        }
+        return (bestError << 3) | bestTable;
+    }
+
+    /**
+     * Finds the modifier which brings the base color nearest to the specified
+     * pixel.
+     * 
+     * @param table
+     *        the modifiers to choose from.
+     * @param r
+     *        the red of the base color.
+     * @param g
+     *        the green of the base color.
+     * @param b
+     *        the blue of the base color.
+     * @param i
+     *        the index of the pixel.
+     * @return the squared distance shifted left by 2 bits, combined with the
+     *         index of the modifier.
+     */
+    private int nearestModifier(int[] table, int r, int g, int b, int i) {
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+
+        for (int j = 0; j < table.length; ++j) {
+            int m = table[j];
+            int dr = clamp(r + m) - reds[i];
+            int dg = clamp(g + m) - greens[i];
+            int db = clamp(b + m) - blues[i];
+            int distance = dr * dr + dg * dg + db * db;
+
+            if (distance < bestDistance) {
+                best = j;
+                bestDistance = distance;
+            }
+        }
+        return (bestDistance << 2) | best;
+    }
+
+    /**
+     * Expands a 4-bit or 5-bit base color channel to 8 bits.
+     * 
+     * @param value
+     *        the quantized value.
+     * @param max
+     *        the maximum quantized value, 15 or 31.
+     * @return the 8-bit value.
+     */
+    private static int expand(int value, int max) {
+        return (15 == max) ? (value << 4) | value : (value << 3)
+                | (value >> 2);
+    }
+
+    /**
+     * Packs the best base colors, tables and modifiers into an ETC block.
+     * 
+     * @param flip
+     *        0 when halves are side by side, 1 when one is above the other.
+     * @param differential
+     *        <code>true</code> for the differential mode.
+     * @return the 64-bit block.
+     */
+    private long etcWord(int flip, boolean differential) {
+        int[] first = bases[0];
+        int[] second = bases[1];
+        long high;
+
+        if (differential) {
+            high = (first[0] << 27) | (((second[0] - first[0]) & 7) << 24)
+                    | (first[1] << 19) | (((second[1] - first[1]) & 7) << 16)
+                    | (first[2] << 11) | (((second[2] - first[2]) & 7) << 8)
+                    | 2;
+        } else {
+            high = (first[0] << 28) | (second[0] << 24) | (first[1] << 20)
+                    | (second[1] << 16) | (first[2] << 12) | (second[2] << 8);
+        }
+        high |= (tables[0] << 5) | (tables[1] << 2) | flip;
+
+        // Pixels are numbered column after column, the high bits of their
+        // indices come first.
+        long low = 0;
+        for (int i = 0; i < PIXELS; ++i) {
+            int p = ((i & 3) << 2) | (i >> 2);
+            low |= (long) (modifiers[i] >> 1) << (16 + p);
+            low |= (long) (modifiers[i] & 1) << p;
+        }
+        return ((high & 0xffffffffL) << 32) | low;
+    }
+
+    /**
+     * Encodes alpha of the block as an EAC alpha block.
+     * 
+     * @param out
+     *        receives the encoded block.
+     * @param pos
+     *        the index of the first byte of the encoded block.
+     */
+    private void encodeEac(byte[] out, int pos) {
+        int min = 255;
+        int max = 0;
+
+        for (int i = 0; i < PIXELS; ++i) {
+            min = Math.min(min, alphas[i]);
+            max = Math.max(max, alphas[i]);
+        }
+
+        alphaError = Long.MAX_VALUE;
+        if (min == max) {
+            fitEac(min, 1, EAC_ZERO_TABLE);
+        } else {
+            for (int t = 0; t < EAC_MODIFIERS.length; ++t) {
+                int[] table = EAC_MODIFIERS[t];
+                int range = table[7] - table[3];
+                int multiplier = Math.max(1, Math.min(15, Math.round(
+                        (float) (max - min) / range)));
+                int base = Math.round((min + max - (table[3] + table[7])
+                        * multiplier) / 2f);
+
+                if (quality) {
+                    for (int m = Math.max(1, multiplier - 1); m <= Math.min(
+                            15, multiplier + 1); ++m) {
+                        for (int b = base - 2; b <= base + 2; ++b) {
+                            fitEac(clamp(b), m, t);
+                        }
+                    }
+                } else {
+                    fitEac(clamp(base), multiplier, t);
+                }
+            }
+        }
+
+        for (int i = 0; i < 8; ++i) {
+            out[pos + i] = (byte) (alphaWord >>> (56 - 8 * i));
+        }
+    }
+
+    /**
+     * Picks the nearest of the alpha values the specified table produces for
+     * each pixel and keeps the result when it is the best so far.
+     * 
+     * @param base
+     *        the base alpha.
+     * @param multiplier
+     *        the multiplier of modifiers, from 1 to 15.
+     * @param t
+     *        the index of the table.
+     */
+    private void fitEac(int base, int multiplier, int t) {
+        int[] table = EAC_MODIFIERS[t];
+        long error = 0;
+        long word = ((long) base << 56) | ((long) multiplier << 52)
+                | ((long) t << 48);
+
+        for (int i = 0; (i < PIXELS) && (error < alphaError); ++i) {
+            int best = EAC_ZERO_INDEX;
+            int bestDistance = Integer.MAX_VALUE;
+
+            for (int j = 0; j < table.length; ++j) {
+                int distance = Math.abs(clamp(base + table[j] * multiplier)
+                        - alphas[i]);
+                if (distance < bestDistance) {
+                    best = j;
+                    bestDistance = distance;
+                }
+            }
+
+            // Pixels are numbered column after column.
+            int p = ((i & 3) << 2) | (i >> 2);
+            word |= (long) best << (45 - 3 * p);
+            error += bestDistance * bestDistance;
+        }
+
+        if (error < alphaError) {
+            alphaError = error;
+            alphaWord = word;
+        }
+    }
+
+    /**
+     * Clamps the specified value to 0 to 255.
+     * 
+     * @param value
+     *        the value to clamp.
+     * @return the clamped value.
+     */
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+}
@@ -0,0 +1,403 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+
+import spritey.core.FileSprite;
+import spritey.core.Messages;
+import spritey.core.Sprite;
+
+/**
+ * Composes sprites onto a sheet image by writing its integer pixels directly,
+ * instead of going through Java2D. Runs of opaque pixels are copied with
+ * <code>System.arraycopy</code>; translucent pixels are blended with the same
+ * 8-bit arithmetic Java2D uses for source-over compositing, so the result is
+ * identical to drawing sprites with <code>Graphics.drawImage</code>.
+ * <p>
+ * Only <code>TYPE_INT_ARGB</code> and <code>TYPE_INT_RGB</code> sheet images
+ * are supported. A compositor isn't thread safe, but any number of
+ * compositors may compose into disjoint rows of the same image.
+ * </p>
+ */
+class Compositor {
+
+    private int[] pixels;
+    private int offset;
+    private int scanline;
+    private boolean opaque;
+
+    // Receives pixels of sprites which cannot be read in place.
+    private int[] scratch;
+
+    // The pixels of the sprite being composed.
+    private int[] src;
+    private int srcPos;
+    private int srcScan;
+
+    /**
+     * Creates a new instance of Compositor.
+     * 
+     * @param image
+     *        the sheet image to compose sprites onto.
+     * @throws IllegalArgumentException
+     *         when image is not supported.
+     */
+    public Compositor(BufferedImage image) {
+        this(image, 0);
+    }
+
+    /**
+     * Creates a new instance of Compositor for an image which holds a band of
+     * sheet rows. Sprites are composed at their sheet location, moved up by
+     * <code>originY</code>, and only rows within the image may be composed.
+     * 
+     * @param image
+     *        the band image to compose sprites onto.
+     * @param originY
+     *        the sheet row the first image row corresponds to.
+     * @throws IllegalArgumentException
+     *         when image is not supported.
+     */
+    public Compositor(BufferedImage image, int originY) {
+        if (!supports(image)) {
+            throw new IllegalArgumentException(
+                    Messages.COMPOSITOR_IMAGE_TYPE_INVALID);
+        }
+
+        WritableRaster raster = image.getRaster();
+        pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+        scanline = ((SinglePixelPackedSampleModel) raster.getSampleModel())
+                .getScanlineStride();
+        offset = pixelOffset(raster, 0, 0) - originY * scanline;
+        opaque = (BufferedImage.TYPE_INT_RGB == image.getType());
+    }
+
+    /**
+     * Returns <code>true</code> if sprites can be composed onto the specified
+     * image.
+     * 
+     * @param image
+     *        the sheet image.
+     * @return <code>true</code> if image is supported, otherwise
+     *         <code>false</code>.
+     */
+    public static boolean supports(BufferedImage image) {
+        return (BufferedImage.TYPE_INT_ARGB == image.getType())
+                || (BufferedImage.TYPE_INT_RGB == image.getType());
+    }
+
+    /**
+     * Returns <code>true</code> if pixels of the specified image can be read
+     * in place.
+     * 
+     * @param image
+     *        the sprite image.
+     * @return <code>true</code> if image pixels are directly accessible,
+     *         otherwise <code>false</code>.
+     */
+    private static boolean isDirect(Image image) {
+        return (image instanceof BufferedImage)
+                && (BufferedImage.TYPE_INT_ARGB == ((BufferedImage) image)
+                        .getType());
+    }
+
+    /**
+     * Returns the index of the specified pixel in the data array of a raster
+     * with single pixel packed sample model.
+     * 
+     * @param raster
+     *        the raster.
+     * @param x
+     *        the pixel x coordinate.
+     * @param y
+     *        the pixel y coordinate.
+     * @return the index of the pixel.
+     */
+    private static int pixelOffset(WritableRaster raster, int x, int y) {
+        SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster
+                .getSampleModel();
+        return raster.getDataBuffer().getOffset()
+                + model.getOffset(x - raster.getSampleModelTranslateX(), y
+                        - raster.getSampleModelTranslateY());
+    }
+
+    /**
+     * Returns <code>true</code> if the specified sprite can be composed, i.e.
+     * its pixels can be read without drawing its image.
+     * 
+     * @param sprite
+     *        the sprite to check.
+     * @return <code>true</code> if sprite can be composed, otherwise
+     *         <code>false</code> in which case it has to be drawn.
+     */
+    public static boolean isComposable(Sprite sprite) {
+        // File sprites always decode into buffered images.
+        return (sprite instanceof FileSprite)
+                || (null == sprite.getImage())
+                || (sprite.getImage() instanceof BufferedImage);
+    }
+
+    /**
+     * Composes the trimmed area of the specified sprite onto the sheet image.
+     * Rotated sprites are composed turned by 90 degrees clockwise.
+     * 
+     * @param sprite
+     *        the sprite to compose.
+     * @throws IOException
+     *         when the file of a file sprite can no longer be decoded.
+     */
+    public void composite(Sprite sprite) throws IOException {
+        composite(sprite, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Composes the part of the specified sprite which falls between the
+     * specified rows of the sheet image. Rows outside are left untouched, so
+     * several threads may compose the same sprite into different rows.
+     * 
+     * @param sprite
+     *        the sprite to compose.
+     * @param top
+     *        the first row to compose into, inclusive.
+     * @param bottom
+     *        the last row to compose into, exclusive.
+     * @throws IOException
+     *         when the file of a file sprite can no longer be decoded.
+     */
+    public void composite(Sprite sprite, int top, int bottom)
+            throws IOException {
+        Rectangle trim = sprite.getTrim();
+        Point location = sprite.getLocation();
+        // Sheet rows are source rows, or source columns when rotated.
+        int length = sprite.isRotated() ? trim.width : trim.height;
+        int from = Math.max(0, top - location.y);
+        int to = (int) Math.min(length, (long) bottom - location.y);
+
+        if (from >= to) {
+            return;
+        }
+
+        if (sprite.isRotated()) {
+            if (!read(sprite, new Rectangle(trim.x + from, trim.y, to - from,
+                    trim.height))) {
+                return;
+            }
+
+            // Trimmed pixel (u, v) goes onto (x + height - 1 - v, y + u).
+            int dstStart = offset + (location.y + from) * scanline
+                    + location.x + trim.height - 1;
+
+            for (int v = 0; v < trim.height; ++v) {
+                int s = srcPos + v * srcScan;
+                int d = dstStart - v;
+
+                for (int u = from; u < to; ++u, ++s, d += scanline) {
+                    pixels[d] = blend(src[s], pixels[d]);
+                }
+            }
+        } else {
+            if (!read(sprite, new Rectangle(trim.x, trim.y + from, trim.width,
+                    to - from))) {
+                return;
+            }
+
+            int dstStart = offset + (location.y + from) * scanline
+                    + location.x;
+
+            for (int v = 0; v < to - from; ++v) {
+                compositeRow(src, srcPos + v * srcScan, dstStart + v
+                        * scanline, trim.width);
+            }
+        }
+    }
+
+    /**
+     * Points the source fields at pixels of the specified area of the sprite
+     * image, reading them into the scratch array when they can't be read in
+     * place.
+     * 
+     * @param sprite
+     *        the sprite to read.
+     * @param area
+     *        the area of the sprite image to read.
+     * @return <code>true</code> if pixels were read, or <code>false</code>
+     *         when sprite has no image.
+     * @throws IOException
+     *         when the file of a file sprite can no longer be decoded.
+     */
+    private boolean read(Sprite sprite, Rectangle area) throws IOException {
+        srcPos = 0;
+        srcScan = area.width;
+
+        Image image;
+
+        if (sprite instanceof FileSprite) {
+            FileSprite fileSprite = (FileSprite) sprite;
+
+            if (null != fileSprite.getStore()) {
+                src = fileSprite.getRGB(area, scratch(area));
+                return true;
+            }
+            image = fileSprite.decode();
+        } else {
+            image = sprite.getImage();
+        }
+
+        if (isDirect(image)) {
+            WritableRaster raster = ((BufferedImage) image).getRaster();
+            src = ((DataBufferInt) raster.getDataBuffer()).getData();
+            srcPos = pixelOffset(raster, area.x, area.y);
+            srcScan = ((SinglePixelPackedSampleModel) raster.getSampleModel())
+                    .getScanlineStride();
+            return true;
+        } else if (image instanceof BufferedImage) {
+            src = ((BufferedImage) image).getRGB(area.x, area.y, area.width,
+                    area.height, scratch(area), 0, area.width);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Composes a row of pixels onto the sheet image. Runs of opaque pixels
+     * are copied, other pixels are blended.
+     * 
+     * @param src
+     *        the source pixels.
+     * @param srcPos
+     *        the index of the first source pixel.
+     * @param dstPos
+     *        the index of the first sheet pixel.
+     * @param length
+     *        the number of pixels in the row.
+     */
+    private void compositeRow(int[] src, int srcPos, int dstPos, int length) {
+        int i = 0;
+
+        while (i < length) {
+            int start = i;
+            while ((i < length) && ((src[srcPos + i] >>> 24) == 0xff)) {
+                ++i;
+            }
+            if (i > start) {
+                System.arraycopy(src, srcPos + start, pixels, dstPos + start,
+                        i - start);
+            }
+
+            while ((i < length) && ((src[srcPos + i] >>> 24) != 0xff)) {
+                pixels[dstPos + i] = blend(src[srcPos + i], pixels[dstPos + i]);
+                ++i;
+            }
+        }
+    }
+
+    /**
+     * Blends the source pixel over the sheet pixel.
+     * 
+     * @param src
+     *        the non-premultiplied ARGB source pixel.
+     * @param dst
+     *        the sheet pixel.
+     * @return the blended pixel.
+     */
+    private int blend(int src, int dst) {
+        int srcA = src >>> 24;
+
+        if (0 == srcA) {
+            return dst;
+        } else if (0xff == srcA) {
+            return src;
+        }
+
+        int dstA = opaque ? 0xff : (dst >>> 24);
+        int dstF = mul8(0xff - srcA, dstA);
+        int resA = srcA + dstF;
+
+        int resR = mul8(srcA, (src >> 16) & 0xff)
+                + mul8(dstF, (dst >> 16) & 0xff);
+        int resG = mul8(srcA, (src >> 8) & 0xff)
+                + mul8(dstF, (dst >> 8) & 0xff);
+        int resB = mul8(srcA, src & 0xff) + mul8(dstF, dst & 0xff);
+
+        if (resA < 0xff) {
+            resR = div8(resR, resA);
+            resG = div8(resG, resA);
+            resB = div8(resB, resA);
+        }
+
+        int rgb = (resR << 16) | (resG << 8) | resB;
+        return opaque ? rgb : (resA << 24) | rgb;
+    }
+
+    /**
+     * Multiplies two 8-bit values as fractions of 255, rounding the way
+     * Java2D does.
+     * 
+     * @param a
+     *        the first value.
+     * @param b
+     *        the second value.
+     * @return the product.
+     */
+    private static int mul8(int a, int b) {
+        return (int) ((a * 0x10101L * b + (1 << 23)) >>> 24);
+    }
+
+    /**
+     * Divides an 8-bit value by another as fractions of 255, rounding and
+     * clamping the way Java2D does.
+     * 
+     * @param a
+     *        the dividend.
+     * @param b
+     *        the divisor.
+     * @return the quotient.
+     */
+    private static int div8(int a, int b) {
+        if (a >= b) {
+            return 0xff;
+        }
+        long inc = (0xff000000L + b / 2) / b;
+        return (int) ((a * inc + (1 << 23)) >>> 24);
+    }
+
+    /**
+     * Returns the scratch array, grown to hold the specified area.
+     * 
+     * @param area
+     *        the area to hold.
+     * @return the scratch array.
+     */
+    private int[] scratch(Rectangle area) {
+        int length = area.width * area.height;
+
+        if ((null == scratch) || (scratch.length < length)) {
+            scratch = new int[length];
+        }
+        return scratch;
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Recognises image files by the signature at the start of the file, so files
+ * which are not images can be skipped without instantiating any image reader.
+ * PNG, GIF, JPEG and BMP files are recognised.
+ */
+public class ImageSniffer {
+
+    /**
+     * The number of bytes which have to be read to recognise any supported
+     * format.
+     */
+    public static final int HEADER_LENGTH = 8;
+
+    private static final byte[][] SIGNATURES = {
+            { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' },
+            { 'G', 'I', 'F', '8', '7', 'a' }, { 'G', 'I', 'F', '8', '9', 'a' },
+            { (byte) 0xff, (byte) 0xd8, (byte) 0xff }, { 'B', 'M' } };
+
+    /**
+     * Prevents instantiation.
+     */
+    private ImageSniffer() {
+    }
+
+    /**
+     * Checks whether the specified header starts with a signature of a
+     * supported image format.
+     * 
+     * @param header
+     *        the first bytes of the file.
+     * @param length
+     *        the number of bytes in <code>header</code> which were read.
+     * @return <code>true</code> if header belongs to an image, otherwise
+     *         <code>false</code>.
+     */
+    public static boolean isImage(byte[] header, int length) {
+        for (byte[] signature : SIGNATURES) {
+            if (startsWith(header, length, signature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the specified file starts with a signature of a supported
+     * image format. Only the first {@link #HEADER_LENGTH} bytes are read.
+     * 
+     * @param file
+     *        the file to check.
+     * @return <code>true</code> if file is an image, otherwise
+     *         <code>false</code>.
+     * @throws IOException
+     *         when file cannot be read.
+     */
+    public static boolean isImage(Path file) throws IOException {
+        byte[] header = new byte[HEADER_LENGTH];
+        int length = 0;
+
+        InputStream in = Files.newInputStream(file);
+        try {
+            while (length < header.length) {
+                int read = in.read(header, length, header.length - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+        } finally {
+            in.close();
+        }
+        return isImage(header, length);
+    }
+
+    /**
+     * Checks whether the specified header starts with the signature.
+     * 
+     * @param header
+     *        the first bytes of the file.
+     * @param length
+     *        the number of bytes in <code>header</code> which were read.
+     * @param signature
+     *        the signature to look for.
+     * @return <code>true</code> if header starts with the signature, otherwise
+     *         <code>false</code>.
+     */
+    private static boolean startsWith(byte[] header, int length,
+            byte[] signature) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; ++i) {
+            if (header[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
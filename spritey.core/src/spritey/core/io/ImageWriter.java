@@ -18,16 +18,36 @@
 package spritey.core.io;
 
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.imageio.ImageIO;
 
+import spritey.core.FileSprite;
 import spritey.core.Messages;
 import spritey.core.Node;
 import spritey.core.Sheet;
@@ -39,6 +59,404 @@ import spritey.core.filter.VisibleSpriteFilter;
  */
 public class ImageWriter extends AbstractWriter {
 
+    // The maximum number of rows composed by a single task.
+    private static final int BAND_HEIGHT = 256;
+
+    // The number of texture rows encoded between checks for cancellation.
+    private static final int TEXTURE_SLICE_HEIGHT = 64;
+
+    /**
+     * Composes sprites into a band of rows of the sheet image. Bands taller
+     * than BAND_HEIGHT are split in two and composed in parallel, each half
+     * receiving only the sprites which intersect it. Sprites never overlap,
+     * so the result doesn't depend on the order bands are composed in.
+     * Sprite files which can no longer be decoded fail the band with
+     * <code>UncheckedIOException</code>.
+     */
+    private static class Band extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final BufferedImage image;
+        private final int originY;
+        private final List<Sprite> sprites;
+        private final int top;
+        private final int bottom;
+
+        /**
+         * Creates a new instance of Band.
+         * 
+         * @param image
+         *        the sheet image, or an image holding a band of its rows.
+         * @param originY
+         *        the sheet row the first image row corresponds to.
+         * @param sprites
+         *        the sprites which intersect the band.
+         * @param top
+         *        the first row of the band, inclusive.
+         * @param bottom
+         *        the last row of the band, exclusive.
+         */
+        public Band(BufferedImage image, int originY, List<Sprite> sprites,
+                int top, int bottom) {
+            this.image = image;
+            this.originY = originY;
+            this.sprites = sprites;
+            this.top = top;
+            this.bottom = bottom;
+        }
+
+        /**
+         * Returns the sprites which intersect the specified rows.
+         * 
+         * @param top
+         *        the first row, inclusive.
+         * @param bottom
+         *        the last row, exclusive.
+         * @return the intersecting sprites.
+         */
+        private List<Sprite> intersecting(int top, int bottom) {
+            List<Sprite> intersecting = new ArrayList<Sprite>();
+
+            for (Sprite sprite : sprites) {
+                Rectangle bounds = sprite.getBounds();
+                if ((bounds.y < bottom) && (bounds.y + bounds.height > top)) {
+                    intersecting.add(sprite);
+                }
+            }
+            return intersecting;
+        }
+
+        @Override
+        protected void compute() {
+            if (bottom - top <= BAND_HEIGHT) {
+                Compositor compositor = new Compositor(image, originY);
+
+                try {
+                    for (Sprite sprite : sprites) {
+                        compositor.composite(sprite, top, bottom);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                int middle = (top + bottom) >>> 1;
+                invokeAll(new Band(image, originY, intersecting(top, middle),
+                        top, middle), new Band(image, originY, intersecting(
+                        middle, bottom), middle, bottom));
+            }
+        }
+
+    }
+
+    /**
+     * Writes images in the format implied by the file extension.
+     */
+    public static final int FORMAT_AUTO = 0;
+
+    /**
+     * Writes raw 16-bit pixels with 4 bits of red, green, blue and alpha.
+     */
+    public static final int FORMAT_RGBA4444 = 1;
+
+    /**
+     * Writes raw 16-bit pixels with 5 bits of red, 6 bits of green and 5 bits
+     * of blue.
+     */
+    public static final int FORMAT_RGB565 = 2;
+
+    /**
+     * Writes raw 8-bit alpha of pixels.
+     */
+    public static final int FORMAT_A8 = 3;
+
+    /**
+     * Writes BC1 (DXT1) block compressed textures without alpha.
+     */
+    public static final int FORMAT_BC1 = 4;
+
+    /**
+     * Writes BC3 (DXT5) block compressed textures with interpolated alpha.
+     */
+    public static final int FORMAT_BC3 = 5;
+
+    /**
+     * Writes ETC2 RGB8 block compressed textures without alpha.
+     */
+    public static final int FORMAT_ETC2_RGB = 6;
+
+    /**
+     * Writes ETC2 RGBA8 block compressed textures with EAC alpha.
+     */
+    public static final int FORMAT_ETC2_RGBA = 7;
+
+    /**
+     * The default number of sheet rows held in memory at a time.
+     */
+    public static final int DEFAULT_BAND_HEIGHT = 1024;
+
+    /**
+     * Receives bands of image rows.
+     */
+    private interface BandHandler {
+
+        /**
+         * Handles a band of rows.
+         * 
+         * @param pixels
+         *        the ARGB pixels of the band, rows <code>width</code> apart.
+         * @param offset
+         *        the index of the first pixel of the band.
+         * @param width
+         *        the number of pixels in a row.
+         * @param top
+         *        the image row of the first band row.
+         * @param rows
+         *        the number of rows in the band.
+         * @throws IOException
+         *         when problem occurs during writing.
+         */
+        void handle(int[] pixels, int offset, int width, int top, int rows)
+                throws IOException;
+
+    }
+
+    /**
+     * Produces an image a band of rows at a time, either by composing a page
+     * of the sheet or from a mipmap level held in memory.
+     */
+    private interface BandSource {
+
+        /**
+         * Hands all bands of the image over to the handler, from top to
+         * bottom.
+         * 
+         * @param handler
+         *        the handler of bands.
+         * @throws IOException
+         *         when the handler fails to write a band.
+         */
+        void produce(BandHandler handler) throws IOException;
+
+    }
+
+    private int format = FORMAT_AUTO;
+    private boolean dither;
+    private boolean highQuality;
+    private int bandHeight = DEFAULT_BAND_HEIGHT;
+    private boolean indexedPng;
+    private boolean mipmaps;
+    private volatile boolean cancelled;
+
+    // Receives pixels of sprites kept in a sprite store, grown as needed.
+    private BufferedImage scratch;
+    private int[] scratchPixels;
+
+    /**
+     * Returns the pixel format images are written in, one of the format
+     * constants declared in this class.
+     * 
+     * @return the pixel format.
+     */
+    public int getFormat() {
+        return format;
+    }
+
+    /**
+     * Sets the pixel format images are written in. Images are written in the
+     * format implied by the file extension when FORMAT_AUTO, otherwise as
+     * textures of the specified format regardless of the extension. Raw
+     * textures have no header, rows follow one another from top to bottom
+     * and 16-bit pixels are little endian. Block compressed textures are
+     * written into a DDS container when the file extension is "dds",
+     * otherwise into a KTX container.
+     * 
+     * @param format
+     *        one of the format constants declared in this class.
+     * @throws IllegalArgumentException
+     *         when <code>format</code> is not one of the format constants.
+     */
+    public void setFormat(int format) {
+        if ((format < FORMAT_AUTO) || (format > FORMAT_ETC2_RGBA)) {
+            throw new IllegalArgumentException(
+                    Messages.IMAGE_WRITER_FORMAT_INVALID);
+        }
+        this.format = format;
+    }
+
+    /**
+     * Returns <code>true</code> if reduced precision formats are dithered.
+     * 
+     * @return <code>true</code> if pixels are dithered, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isDither() {
+        return dither;
+    }
+
+    /**
+     * Sets whether channels of reduced precision formats are dithered with a
+     * 4x4 ordered dither, rather than rounded to the nearest value.
+     * 
+     * @param dither
+     *        <code>true</code> to dither pixels.
+     */
+    public void setDither(boolean dither) {
+        this.dither = dither;
+    }
+
+    /**
+     * Returns <code>true</code> if the specified format is one of the block
+     * compressed formats, whose textures are encoded in blocks of 4x4
+     * pixels. Sprites of such textures are best aligned to 4 pixels, so that
+     * blocks don't straddle neighbouring sprites.
+     * 
+     * @param format
+     *        one of the format constants declared in this class.
+     * @return <code>true</code> if format is block compressed, otherwise
+     *         <code>false</code>.
+     */
+    public static boolean isBlockCompressed(int format) {
+        return BlockEncoder.isBlockCompressed(format);
+    }
+
+    /**
+     * Returns <code>true</code> if block compressed textures are encoded in
+     * the quality mode.
+     * 
+     * @return <code>true</code> if blocks are searched for, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isHighQuality() {
+        return highQuality;
+    }
+
+    /**
+     * Sets whether block compressed textures are encoded in the quality
+     * mode, which searches for better blocks and is several times slower,
+     * rather than the fast mode, which fits each block once.
+     * 
+     * @param highQuality
+     *        <code>true</code> to encode in the quality mode.
+     */
+    public void setHighQuality(boolean highQuality) {
+        this.highQuality = highQuality;
+    }
+
+    /**
+     * Returns the number of sheet rows held in memory at a time when writing
+     * PNG images and raw textures.
+     * 
+     * @return the band height.
+     */
+    public int getBandHeight() {
+        return bandHeight;
+    }
+
+    /**
+     * Sets the number of sheet rows held in memory at a time when writing PNG
+     * images and raw textures. Taller bands use more memory but compose
+     * sprites in fewer passes.
+     * 
+     * @param bandHeight
+     *        the band height.
+     * @throws IllegalArgumentException
+     *         when <code>bandHeight</code> is not positive.
+     */
+    public void setBandHeight(int bandHeight) {
+        if (bandHeight <= 0) {
+            throw new IllegalArgumentException(
+                    Messages.IMAGE_WRITER_BAND_HEIGHT_INVALID);
+        }
+        this.bandHeight = bandHeight;
+    }
+
+    /**
+     * Returns <code>true</code> if PNG images are written with a palette of
+     * at most 256 colors.
+     * 
+     * @return <code>true</code> if PNG images are indexed, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isIndexedPng() {
+        return indexedPng;
+    }
+
+    /**
+     * Sets whether PNG images are written with a palette of at most 256
+     * colors, which makes them a quarter of the size of truecolor images.
+     * Indexed images are composed twice, once to build the palette and once
+     * to write them.
+     * 
+     * @param indexedPng
+     *        <code>true</code> to write indexed PNG images.
+     */
+    public void setIndexedPng(boolean indexedPng) {
+        this.indexedPng = indexedPng;
+    }
+
+    /**
+     * Returns <code>true</code> if a full chain of mipmaps is written along
+     * with each page.
+     * 
+     * @return <code>true</code> if mipmaps are written, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isMipmaps() {
+        return mipmaps;
+    }
+
+    /**
+     * Sets whether a full chain of mipmaps is written along with each page,
+     * each level half the size of the previous one down to a single pixel.
+     * Levels are downsampled in linear light while pages are composed, so
+     * pages are still composed once. Block compressed textures hold all
+     * levels in the same file, other formats write each level to a file of
+     * its own named by {@link #getLevelFile(File, int)}. Sprites should be
+     * packed with padding and alignment, so that they don't bleed into one
+     * another in smaller levels.
+     * 
+     * @param mipmaps
+     *        <code>true</code> to write mipmaps.
+     */
+    public void setMipmaps(boolean mipmaps) {
+        this.mipmaps = mipmaps;
+    }
+
+    /**
+     * Returns <code>true</code> if writing has been cancelled.
+     * 
+     * @return <code>true</code> if this writer is cancelled, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels writing. May be called from any thread; an image being written
+     * is abandoned after the band of rows being encoded, and writing it or
+     * any later image fails with <code>InterruptedIOException</code>. The
+     * incomplete file of an abandoned image is deleted, files which haven't
+     * been opened yet are left untouched. A cancelled writer stays
+     * cancelled.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Throws exception when writing has been cancelled.
+     * 
+     * @throws InterruptedIOException
+     *         when this writer is cancelled.
+     */
+    private void checkCancelled() throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException(Messages.IMAGE_WRITER_CANCELLED);
+        }
+    }
+
     /**
      * Returns <code>true</code> if the specified file is GIF.
      * 
@@ -63,6 +481,18 @@ public class ImageWriter extends AbstractWriter {
         return getFileExt(file).equalsIgnoreCase("png");
     }
 
+    /**
+     * Returns <code>true</code> if the specified file is DDS.
+     * 
+     * @param file
+     *        the file to check.
+     * @return <code>true</code> if the file is DDS, otherwise
+     *         <code>false</code>.
+     */
+    protected boolean isDds(File file) {
+        return getFileExt(file).equalsIgnoreCase("dds");
+    }
+
     /**
      * Returns <code>true</code> if the specified file supports transparency.
      * 
@@ -76,41 +506,68 @@ public class ImageWriter extends AbstractWriter {
     }
 
     /**
-     * Creates an index color model for gif images that supports transparency.
-     * This method does exactly what BufferedImage does when TYPE_BYTE_INDEXED
-     * type is specified, except the first color is transparent and the gray
-     * ramp is between 18 and 246.
+     * Returns the file the specified page is written to. When sheet has a
+     * single page, the image is written to the file itself. Otherwise the page
+     * index is appended to the file name, e.g. <code>sheet_0.png</code>,
+     * <code>sheet_1.png</code> and so on.
      * 
-     * @return an instance of index color model.
+     * @param sheet
+     *        the sheet to write.
+     * @param file
+     *        the file sheet is written to.
+     * @param page
+     *        the page index.
+     * @return the page file.
      */
-    protected IndexColorModel createIndexColorModelWithTransparency() {
-        int[] cmap = new int[256];
-
-        // First color is transparent.
-        cmap[0] = 0;
-
-        // Create a 6x6x6 color cube.
-        int i = 1;
-        for (int r = 0; r < 256; r += 51) {
-            for (int g = 0; g < 256; g += 51) {
-                for (int b = 0; b < 256; b += 51) {
-                    cmap[i++] = (r << 16) | (g << 8) | b;
-                }
-            }
+    public File getPageFile(Sheet sheet, File file, int page) {
+        if (sheet.getPageCount() <= 1) {
+            return file;
         }
+        return appendToName(file, "_" + page);
+    }
 
-        // Populate the rest of the cmap with gray values.
-        int grayIncr = 256 / (256 - i);
+    /**
+     * Returns the file the specified mipmap level of an image is written to,
+     * when mipmaps are written to files of their own. The full size image is
+     * written to the file itself, the level is appended to the file name of
+     * the others, e.g. <code>sheet_mip1.png</code>, <code>sheet_mip2.png</code>
+     * and so on.
+     * 
+     * @param file
+     *        the file the full size image is written to.
+     * @param level
+     *        the mipmap level, 0 being the full size image.
+     * @return the level file.
+     */
+    public File getLevelFile(File file, int level) {
+        if (0 == level) {
+            return file;
+        }
+        return appendToName(file, "_mip" + level);
+    }
 
-        // Gray ramp will be between 18 and 246.
-        int gray = grayIncr * 3;
-        for (; i < 256; i++) {
-            cmap[i] = (gray << 16) | (gray << 8) | gray;
-            gray += grayIncr;
+    /**
+     * Returns the file whose name is the name of the specified file with the
+     * suffix inserted in front of the extension.
+     * 
+     * @param file
+     *        the file.
+     * @param suffix
+     *        the suffix to insert.
+     * @return the file with the suffix.
+     */
+    private File appendToName(File file, String suffix) {
+        String name = file.getName();
+        String ext = getFileExt(file);
+        if (!ext.isEmpty()) {
+            name = name.substring(0, name.length() - ext.length() - 1);
         }
 
-        return new IndexColorModel(8, 256, cmap, 0, true, 0,
-                DataBuffer.TYPE_BYTE);
+        name += suffix;
+        if (!ext.isEmpty()) {
+            name += "." + ext;
+        }
+        return new File(file.getParentFile(), name);
     }
 
     @Override
@@ -119,16 +576,56 @@ public class ImageWriter extends AbstractWriter {
         validateNotNull(sheet, Messages.NULL);
         validateNotNull(file, Messages.NULL);
 
-        int width = sheet.getWidth();
-        int height = sheet.getHeight();
+        for (int page = 0; page < sheet.getPageCount(); ++page) {
+            write(sheet, page, getPageFile(sheet, file, page));
+        }
+    }
+
+    /**
+     * Writes the specified page of the sheet to the file, followed by its
+     * mipmaps when they are written to files of their own.
+     * 
+     * @param sheet
+     *        the sheet to write.
+     * @param page
+     *        the index of the page to write.
+     * @param file
+     *        the file to write to.
+     * @throws IllegalArgumentException
+     *         when either <code>sheet</code> or <code>file</code> is null, or
+     *         when the page doesn't exist.
+     * @throws FileNotFoundException
+     *         if the file exists but is a directory rather than a regular file,
+     *         does not exist but cannot be created, or cannot be opened for any
+     *         other reason.
+     * @throws IOException
+     *         when problem occurres during writing, or
+     *         <code>InterruptedIOException</code> when writing is cancelled.
+     */
+    public void write(Sheet sheet, int page, File file)
+            throws IllegalArgumentException, FileNotFoundException,
+            IOException {
+        validateNotNull(sheet, Messages.NULL);
+        validateNotNull(file, Messages.NULL);
+        checkCancelled();
+
+        if (isBlockCompressed(format)) {
+            writeTexture(sheet, page, file);
+            return;
+        } else if (FORMAT_AUTO != format) {
+            writeRaw(sheet, page, file);
+            return;
+        } else if (isPng(file)) {
+            writePng(sheet, page, file);
+            return;
+        }
+
+        int width = sheet.getPageWidth(page);
+        int height = sheet.getPageHeight(page);
         boolean isOpaque = sheet.getBackground().getAlpha() == 255;
 
         BufferedImage image = null;
-        if (isGif(file)) {
-            image = new BufferedImage(width, height,
-                    BufferedImage.TYPE_BYTE_INDEXED,
-                    createIndexColorModelWithTransparency());
-        } else if (!isOpaque && isPng(file)) {
+        if (!isOpaque && isGif(file)) {
             image = new BufferedImage(width, height,
                     BufferedImage.TYPE_INT_ARGB);
         } else {
@@ -142,31 +639,712 @@ public class ImageWriter extends AbstractWriter {
             gfx.fillRect(0, 0, width, height);
         }
 
-        for (Node child : new VisibleSpriteFilter().filter(sheet)) {
-            draw(child, gfx);
+        // Integer images are composed directly, skipping Java2D.
+        boolean compose = Compositor.supports(image);
+        List<Sprite> composable = new ArrayList<Sprite>();
+
+        for (Sprite sprite : new VisibleSpriteFilter().filter(sheet)) {
+            // Aliases share pixels and location with their originals.
+            if ((sprite.getPage() == page) && !sprite.isAlias()) {
+                if (compose && Compositor.isComposable(sprite)) {
+                    composable.add(sprite);
+                } else {
+                    draw(sprite, gfx);
+                }
+            }
         }
 
         gfx.dispose();
 
+        if (!composable.isEmpty()) {
+            invoke(new Band(image, 0, composable, 0, height));
+        }
+
+        checkCancelled();
+
+        MipmapGenerator generator = null;
+        if (mipmaps) {
+            generator = new MipmapGenerator(width, height,
+                    BufferedImage.TYPE_INT_RGB == image.getType());
+            generator.addRows(((DataBufferInt) image.getRaster()
+                    .getDataBuffer()).getData(), 0, width, height);
+        }
+
+        writeImage(image, isOpaque, file);
+        writeLevels(generator, isOpaque, file);
+    }
+
+    /**
+     * Writes the specified integer image to the file with the image writer
+     * registered for the file extension. GIF images are indexed first.
+     * 
+     * @param image
+     *        the integer RGB or ARGB image.
+     * @param isOpaque
+     *        <code>true</code> if the sheet background is opaque.
+     * @param file
+     *        the file to write to.
+     * @throws IOException
+     *         when no writer is registered for the file extension, or problem
+     *         occurres during writing.
+     */
+    private void writeImage(BufferedImage image, boolean isOpaque, File file)
+            throws IOException {
+        if (isGif(file)) {
+            image = toIndexed(image, isOpaque ? Transparency.OPAQUE
+                    : Transparency.BITMASK);
+        }
+
         if (!ImageIO.write(image, getFileExt(file), file)) {
             throw new IOException(Messages.IMAGE_WRITER_NO_WRITER_FOUND);
         }
     }
 
     /**
-     * Draws the specified node onto the specified graphics context.
+     * Writes each mipmap level but the full size image to a file of its own
+     * in the format the full size image is written in.
+     * 
+     * @param generator
+     *        the generator which has been handed the full size image, or
+     *        <code>null</code> when mipmaps aren't written.
+     * @param isOpaque
+     *        <code>true</code> if the sheet background is opaque.
+     * @param file
+     *        the file the full size image is written to.
+     * @throws FileNotFoundException
+     *         if a level file cannot be opened for writing.
+     * @throws IOException
+     *         when problem occurres during writing.
+     */
+    private void writeLevels(MipmapGenerator generator, boolean isOpaque,
+            File file) throws FileNotFoundException, IOException {
+        if (null == generator) {
+            return;
+        }
+
+        for (int level = 1; level < generator.getLevelCount(); ++level) {
+            checkCancelled();
+
+            int width = generator.getWidth(level);
+            int height = generator.getHeight(level);
+            int[] pixels = generator.getLevel(level);
+            File levelFile = getLevelFile(file, level);
+
+            if (FORMAT_AUTO != format) {
+                writeRaw(levelSource(pixels, width, height), levelFile);
+            } else if (isPng(file)) {
+                writePng(levelSource(pixels, width, height), width, height,
+                        !isOpaque, levelFile);
+            } else {
+                BufferedImage image = new BufferedImage(width, height,
+                        (!isOpaque && isGif(file)) ? BufferedImage.TYPE_INT_ARGB
+                                : BufferedImage.TYPE_INT_RGB);
+                image.getRaster().setDataElements(0, 0, width, height, pixels);
+                writeImage(image, isOpaque, levelFile);
+            }
+        }
+    }
+
+    /**
+     * Converts the specified integer image to an indexed image with a palette
+     * of at most 256 colors built for it.
+     * 
+     * @param image
+     *        the integer RGB or ARGB image.
+     * @param transparency
+     *        the transparency of the palette.
+     * @return the indexed image.
+     */
+    private BufferedImage toIndexed(BufferedImage image, int transparency) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer())
+                .getData();
+
+        Quantizer quantizer = new Quantizer(Quantizer.MAX_COLORS,
+                transparency);
+        quantizer.add(pixels, 0, width, width, height);
+
+        IndexColorModel model = quantizer.getColorModel();
+        WritableRaster raster = model.createCompatibleWritableRaster(width,
+                height);
+        quantizer.map(pixels, 0, width, width, height,
+                ((DataBufferByte) raster.getDataBuffer()).getData(), 0);
+
+        return new BufferedImage(model, raster, false, null);
+    }
+
+    /**
+     * Writes the specified page of the sheet to a PNG file a band of rows at
+     * a time, so the whole page is never held in memory. Indexed images are
+     * composed twice, the first pass only building the palette.
+     * 
+     * @param sheet
+     *        the sheet to write.
+     * @param page
+     *        the index of the page to write.
+     * @param file
+     *        the file to write to.
+     * @throws FileNotFoundException
+     *         if the file cannot be opened for writing.
+     * @throws IOException
+     *         when problem occurres during writing.
+     */
+    protected void writePng(Sheet sheet, int page, File file)
+            throws FileNotFoundException, IOException {
+        boolean isOpaque = sheet.getBackground().getAlpha() == 255;
+        MipmapGenerator generator = createGenerator(sheet, page);
+
+        writePng(sheetSource(sheet, page, generator), sheet
+                .getPageWidth(page), sheet.getPageHeight(page), !isOpaque,
+                file);
+        writeLevels(generator, isOpaque, file);
+    }
+
+    /**
+     * Writes the image produced by the specified source to a PNG file a band
+     * of rows at a time. Indexed images are produced twice, the first pass
+     * only building the palette.
+     * 
+     * @param source
+     *        the source of image bands.
+     * @param width
+     *        the image width.
+     * @param height
+     *        the image height.
+     * @param alpha
+     *        <code>true</code> to keep the alpha channel.
+     * @param file
+     *        the file to write to.
+     * @throws FileNotFoundException
+     *         if the file cannot be opened for writing.
+     * @throws IOException
+     *         when problem occurres during writing.
+     */
+    private void writePng(BandSource source, int width, int height,
+            boolean alpha, File file) throws FileNotFoundException,
+            IOException {
+        final Quantizer quantizer;
+        if (indexedPng) {
+            quantizer = new Quantizer(Quantizer.MAX_COLORS,
+                    alpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE);
+            source.produce(new BandHandler() {
+                @Override
+                public void handle(int[] pixels, int offset, int width,
+                        int top, int rows) {
+                    quantizer.add(pixels, offset, width, width, rows);
+                }
+            });
+        } else {
+            quantizer = null;
+        }
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            final PngWriter png = indexedPng ? new PngWriter(
+                    out.getChannel(), width, height,
+                    quantizer.getColorModel()) : new PngWriter(
+                    out.getChannel(), width, height, alpha);
+            final byte[] indices = indexedPng ? new byte[width
+                    * getBandRows(height)] : null;
+
+            source.produce(new BandHandler() {
+                @Override
+                public void handle(int[] pixels, int offset, int width,
+                        int top, int rows) throws IOException {
+                    if (null != quantizer) {
+                        quantizer.map(pixels, offset, width, width, rows,
+                                indices, 0);
+                        png.writeIndices(indices, 0, width, rows);
+                    } else {
+                        png.writeRows(pixels, offset, width, rows);
+                    }
+                }
+            });
+            png.finish();
+        } catch (InterruptedIOException e) {
+            abandon(out, file);
+            throw e;
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the specified page of the sheet to a raw texture file in the
+     * selected pixel format, a band of rows at a time.
+     * 
+     * @param sheet
+     *        the sheet to write.
+     * @param page
+     *        the index of the page to write.
+     * @param file
+     *        the file to write to.
+     * @throws FileNotFoundException
+     *         if the file cannot be opened for writing.
+     * @throws IOException
+     *         when problem occurres during writing.
+     */
+    protected void writeRaw(Sheet sheet, int page, File file)
+            throws FileNotFoundException, IOException {
+        MipmapGenerator generator = createGenerator(sheet, page);
+
+        writeRaw(sheetSource(sheet, page, generator), file);
+        writeLevels(generator, sheet.getBackground().getAlpha() == 255, file);
+    }
+
+    /**
+     * Writes the image produced by the specified source to a raw texture
+     * file in the selected pixel format, a band of rows at a time.
+     * 
+     * @param source
+     *        the source of image bands.
+     * @param file
+     *        the file to write to.
+     * @throws FileNotFoundException
+     *         if the file cannot be opened for writing.
+     * @throws IOException
+     *         when problem occurres during writing.
+     */
+    private void writeRaw(BandSource source, File file)
+            throws FileNotFoundException, IOException {
+        final PixelConverter converter = new PixelConverter(format, dither);
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            final FileChannel channel = out.getChannel();
+
+            source.produce(new BandHandler() {
+                @Override
+                public void handle(int[] pixels, int offset, int width,
+                        int top, int rows) throws IOException {
+                    ByteBuffer buffer = ByteBuffer.wrap(converter.convert(
+                            pixels, offset, width, width, rows, top));
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            });
+        } catch (InterruptedIOException e) {
+            abandon(out, file);
+            throw e;
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the specified page of the sheet to a block compressed texture
+     * file in the selected format, a band of rows at a time. Mipmaps are
+     * written into the same file, following the full size texture.
+     * 
+     * @param sheet
+     *        the sheet to write.
+     * @param page
+     *        the index of the page to write.
+     * @param file
+     *        the file to write to.
+     * @throws FileNotFoundException
+     *         if the file cannot be opened for writing.
+     * @throws IOException
+     *         when the container implied by the file extension doesn't hold
+     *         the format, or problem occurres during writing.
+     */
+    protected void writeTexture(Sheet sheet, int page, File file)
+            throws FileNotFoundException, IOException {
+        int container = isDds(file) ? TextureWriter.CONTAINER_DDS
+                : TextureWriter.CONTAINER_KTX;
+
+        if (!TextureWriter.supports(format, container)) {
+            throw new IOException(Messages.IMAGE_WRITER_NO_WRITER_FOUND);
+        }
+
+        MipmapGenerator generator = createGenerator(sheet, page);
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            final TextureWriter writer = new TextureWriter(out.getChannel(),
+                    sheet.getPageWidth(page), sheet.getPageHeight(page),
+                    format, container, (null != generator) ? generator
+                            .getLevelCount() : 1, highQuality);
+            BandHandler handler = new BandHandler() {
+                @Override
+                public void handle(int[] pixels, int offset, int width,
+                        int top, int rows) throws IOException {
+                    // Blocks are slow to encode, so bands are encoded a
+                    // slice at a time.
+                    for (int y = 0; y < rows; y += TEXTURE_SLICE_HEIGHT) {
+                        checkCancelled();
+                        writer.writeRows(pixels, offset + y * width, width,
+                                Math.min(TEXTURE_SLICE_HEIGHT, rows - y));
+                    }
+                }
+            };
+
+            sheetSource(sheet, page, generator).produce(handler);
+            if (null != generator) {
+                for (int level = 1; level < generator.getLevelCount();
+                        ++level) {
+                    levelSource(generator.getLevel(level),
+                            generator.getWidth(level),
+                            generator.getHeight(level)).produce(handler);
+                }
+            }
+            writer.finish();
+        } catch (InterruptedIOException e) {
+            abandon(out, file);
+            throw e;
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Closes and deletes the file of an image whose writing was cancelled.
+     * 
+     * @param out
+     *        the stream the image was written to.
+     * @param file
+     *        the incomplete file.
+     * @throws IOException
+     *         when the stream cannot be closed.
+     */
+    private void abandon(FileOutputStream out, File file) throws IOException {
+        out.close();
+        file.delete();
+    }
+
+    /**
+     * Creates the generator of mipmaps of the specified page of the sheet.
+     * 
+     * @param sheet
+     *        the sheet to write.
+     * @param page
+     *        the index of the page to write.
+     * @return the generator, or <code>null</code> when mipmaps aren't
+     *         written.
+     */
+    private MipmapGenerator createGenerator(Sheet sheet, int page) {
+        if (!mipmaps) {
+            return null;
+        }
+        return new MipmapGenerator(sheet.getPageWidth(page),
+                sheet.getPageHeight(page),
+                sheet.getBackground().getAlpha() == 255);
+    }
+
+    /**
+     * Returns the number of rows in a band of an image. Bands of block
+     * compressed textures are a multiple of four rows, bands downsampled into
+     * mipmaps a multiple of two.
+     * 
+     * @param height
+     *        the image height.
+     * @return the number of rows in a band.
+     */
+    private int getBandRows(int height) {
+        int rows = bandHeight;
+
+        if (isBlockCompressed(format)) {
+            rows = (rows + 3) & ~3;
+        } else if (mipmaps) {
+            rows = (rows + 1) & ~1;
+        }
+        return Math.min(rows, height);
+    }
+
+    /**
+     * Returns the source which composes the specified page of the sheet a band
+     * at a time, handing each band to the generator of mipmaps as well.
+     * 
+     * @param sheet
+     *        the sheet to compose.
+     * @param page
+     *        the index of the page to compose.
+     * @param generator
+     *        the generator of mipmaps, or <code>null</code> when mipmaps
+     *        aren't written.
+     * @return the source of page bands.
+     */
+    private BandSource sheetSource(final Sheet sheet, final int page,
+            final MipmapGenerator generator) {
+        return new BandSource() {
+            @Override
+            public void produce(final BandHandler handler) throws IOException {
+                composeBands(sheet, page, new BandHandler() {
+                    @Override
+                    public void handle(int[] pixels, int offset, int width,
+                            int top, int rows) throws IOException {
+                        // Pages composed twice are downsampled only once.
+                        if ((null != generator) && !generator.isComplete()) {
+                            generator.addRows(pixels, offset, width, rows);
+                        }
+                        handler.handle(pixels, offset, width, top, rows);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Returns the source which hands over bands of an image held in memory.
+     * 
+     * @param pixels
+     *        the ARGB pixels of the image, rows <code>width</code> apart.
+     * @param width
+     *        the image width.
+     * @param height
+     *        the image height.
+     * @return the source of image bands.
+     */
+    private BandSource levelSource(final int[] pixels, final int width,
+            final int height) {
+        return new BandSource() {
+            @Override
+            public void produce(BandHandler handler) throws IOException {
+                int rows = getBandRows(height);
+
+                for (int top = 0; top < height; top += rows) {
+                    checkCancelled();
+                    handler.handle(pixels, top * width, width, top, Math.min(
+                            rows, height - top));
+                }
+            }
+        };
+    }
+
+    /**
+     * Composes the specified page of the sheet a band of rows at a time into
+     * the same integer image, handing each band over before the next one is
+     * composed. Only sprites which intersect a band are composed into it.
+     * 
+     * @param sheet
+     *        the sheet to compose.
+     * @param page
+     *        the index of the page to compose.
+     * @param handler
+     *        the handler of composed bands.
+     * @throws IOException
+     *         when the handler fails to write a band, or writing is
+     *         cancelled.
+     */
+    private void composeBands(Sheet sheet, int page, BandHandler handler)
+            throws IOException {
+        int width = sheet.getPageWidth(page);
+        int height = sheet.getPageHeight(page);
+        boolean isOpaque = sheet.getBackground().getAlpha() == 255;
+        int rows = getBandRows(height);
+
+        BufferedImage band = new BufferedImage(width, rows,
+                isOpaque ? BufferedImage.TYPE_INT_RGB
+                        : BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) band.getRaster().getDataBuffer())
+                .getData();
+        int background = isOpaque ? sheet.getBackground().getRGB() : 0;
+
+        // Sprites are ordered by their top row, so that each band only has
+        // to look at sprites up to its bottom row.
+        List<Sprite> sprites = new ArrayList<Sprite>();
+        for (Sprite sprite : new VisibleSpriteFilter().filter(sheet)) {
+            if ((sprite.getPage() == page) && !sprite.isAlias()) {
+                sprites.add(sprite);
+            }
+        }
+        Collections.sort(sprites, new Comparator<Sprite>() {
+            @Override
+            public int compare(Sprite s1, Sprite s2) {
+                int y1 = s1.getLocation().y;
+                int y2 = s2.getLocation().y;
+                return (y1 < y2) ? -1 : ((y1 == y2) ? 0 : 1);
+            }
+        });
+
+        for (int top = 0; top < height; top += rows) {
+            int bottom = Math.min(top + rows, height);
+
+            checkCancelled();
+            Arrays.fill(pixels, background);
+            compose(band, top, bottom, intersecting(sprites, top, bottom));
+            if (isOpaque) {
+                // Blended pixels of RGB images are left without alpha.
+                for (int i = width * (bottom - top) - 1; i >= 0; --i) {
+                    pixels[i] |= 0xff000000;
+                }
+            }
+            handler.handle(pixels, 0, width, top, bottom - top);
+        }
+    }
+
+    /**
+     * Returns the sprites which intersect the specified rows.
+     * 
+     * @param sprites
+     *        the sprites ordered by their top row.
+     * @param top
+     *        the first row, inclusive.
+     * @param bottom
+     *        the last row, exclusive.
+     * @return the intersecting sprites.
+     */
+    private List<Sprite> intersecting(List<Sprite> sprites, int top,
+            int bottom) {
+        List<Sprite> intersecting = new ArrayList<Sprite>();
+
+        for (Sprite sprite : sprites) {
+            Rectangle bounds = sprite.getBounds();
+            if (bounds.y >= bottom) {
+                break;
+            }
+            if (bounds.y + bounds.height > top) {
+                intersecting.add(sprite);
+            }
+        }
+        return intersecting;
+    }
+
+    /**
+     * Composes the specified sprites into an image holding a band of sheet
+     * rows. Sprites which cannot be composed are drawn.
+     * 
+     * @param band
+     *        the band image.
+     * @param top
+     *        the first row of the band, inclusive.
+     * @param bottom
+     *        the last row of the band, exclusive.
+     * @param sprites
+     *        the sprites which intersect the band.
+     * @throws IOException
+     *         when a sprite file can no longer be decoded.
+     */
+    private void compose(BufferedImage band, int top, int bottom,
+            List<Sprite> sprites) throws IOException {
+        List<Sprite> composable = new ArrayList<Sprite>();
+        Graphics gfx = null;
+
+        for (Sprite sprite : sprites) {
+            if (Compositor.isComposable(sprite)) {
+                composable.add(sprite);
+            } else {
+                if (null == gfx) {
+                    gfx = band.getGraphics();
+                    gfx.translate(0, -top);
+                }
+                draw(sprite, gfx);
+            }
+        }
+
+        if (null != gfx) {
+            gfx.dispose();
+        }
+
+        if (!composable.isEmpty()) {
+            invoke(new Band(band, top, composable, top, bottom));
+        }
+    }
+
+    /**
+     * Composes the specified band in the common pool.
+     * 
+     * @param band
+     *        the band to compose.
+     * @throws IOException
+     *         when a sprite file can no longer be decoded.
+     */
+    private static void invoke(Band band) throws IOException {
+        try {
+            ForkJoinPool.commonPool().invoke(band);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Draws the specified node onto the specified graphics context. Only the
+     * trimmed area of sprite image is drawn. Rotated sprites are drawn turned
+     * by 90 degrees clockwise.
      * 
      * @param model
      *        the node to draw.
      * @param gfx
      *        graphics context to draw on.
+     * @throws IOException
+     *         when the file of a file sprite can no longer be decoded.
      */
-    protected void draw(Node node, Graphics gfx) {
+    protected void draw(Node node, Graphics gfx) throws IOException {
         if (node instanceof Sprite) {
             Sprite sprite = (Sprite) node;
             Point location = sprite.getLocation();
-            gfx.drawImage(sprite.getImage(), location.x, location.y, null);
+            Rectangle trim = sprite.getTrim();
+            Image image;
+            int sx = trim.x;
+            int sy = trim.y;
+
+            if ((sprite instanceof FileSprite)
+                    && (null != ((FileSprite) sprite).getStore())) {
+                // Copy trimmed pixels straight from the store rather than
+                // making a heap copy of the whole image.
+                image = copyToScratch((FileSprite) sprite, trim);
+                sx = 0;
+                sy = 0;
+            } else if (sprite instanceof FileSprite) {
+                image = ((FileSprite) sprite).decode();
+            } else {
+                image = sprite.getImage();
+            }
+
+            if (null == image) {
+                return;
+            }
+
+            if (sprite.isRotated()) {
+                // Maps trimmed pixel (u, v) onto (x + height - 1 - v, y + u).
+                // The matrix is built explicitly so that no rounding error
+                // creeps into the quarter turn.
+                Graphics2D rotated = (Graphics2D) gfx.create();
+                rotated.transform(new AffineTransform(0, 1, -1, 0, location.x
+                        + trim.height, location.y));
+                rotated.drawImage(image, 0, 0, trim.width, trim.height, sx,
+                        sy, sx + trim.width, sy + trim.height, null);
+                rotated.dispose();
+            } else {
+                gfx.drawImage(image, location.x, location.y, location.x
+                        + trim.width, location.y + trim.height, sx, sy, sx
+                        + trim.width, sy + trim.height, null);
+            }
         }
     }
 
+    /**
+     * Copies pixels of the specified area of the sprite image into the top
+     * left corner of the scratch image.
+     * 
+     * @param sprite
+     *        the sprite to copy.
+     * @param area
+     *        the area of the sprite image to copy.
+     * @return the scratch image.
+     * @throws IOException
+     *         when sprite file can no longer be decoded.
+     */
+    private BufferedImage copyToScratch(FileSprite sprite, Rectangle area)
+            throws IOException {
+        if ((null == scratch) || (scratch.getWidth() < area.width)
+                || (scratch.getHeight() < area.height)) {
+            int width = Math.max(area.width, (null != scratch) ? scratch
+                    .getWidth() : 1);
+            int height = Math.max(area.height, (null != scratch) ? scratch
+                    .getHeight() : 1);
+
+            scratch = new BufferedImage(width, height,
+                    BufferedImage.TYPE_INT_ARGB);
+            scratchPixels = new int[width * height];
+        }
+
+        sprite.getRGB(area, scratchPixels);
+        scratch.getRaster().setDataElements(0, 0, area.width, area.height,
+                scratchPixels);
+        return scratch;
+    }
+
 }
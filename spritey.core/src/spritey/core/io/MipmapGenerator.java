@@ -0,0 +1,372 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import spritey.core.Messages;
+
+/**
+ * Generates the chain of mipmaps of an image, each level half the width and
+ * height of the previous one, rounded down, until a single pixel is left.
+ * <p>
+ * Each pixel of a level is the average of a 2x2 box of the previous level.
+ * Colors are averaged in linear light rather than as sRGB values, so that
+ * downsampled images keep their brightness, and weighted by alpha, so that
+ * transparent pixels don't darken the edges of sprites. The last row or
+ * column of a level with an odd height or width is left out, except when it
+ * is the only one.
+ * </p>
+ * <p>
+ * The full size image is never held in memory; it is handed over a band of
+ * rows at a time and downsampled into the first level as it comes. The
+ * remaining levels are a third of the size of the first one at most and are
+ * generated from it on demand. Rows are downsampled in parallel.
+ * </p>
+ */
+public class MipmapGenerator {
+
+    // The number of downsampled pixels generated by a single task.
+    private static final int PIXELS_PER_TASK = 64 * 1024;
+
+    // Linear intensities of sRGB values, 0 to 65535.
+    private static final int[] TO_LINEAR = new int[256];
+
+    // sRGB values of linear intensities.
+    private static final byte[] TO_SRGB = new byte[65536];
+
+    static {
+        for (int i = 0; i < TO_LINEAR.length; ++i) {
+            double c = i / 255.0;
+            double linear = (c <= 0.04045) ? c / 12.92 : Math.pow(
+                    (c + 0.055) / 1.055, 2.4);
+            TO_LINEAR[i] = (int) Math.round(linear * 65535);
+        }
+        for (int i = 0; i < TO_SRGB.length; ++i) {
+            double linear = i / 65535.0;
+            double c = (linear <= 0.0031308) ? linear * 12.92 : 1.055 * Math
+                    .pow(linear, 1 / 2.4) - 0.055;
+            TO_SRGB[i] = (byte) Math.round(c * 255);
+        }
+    }
+
+    /**
+     * Downsamples a run of rows. Runs bigger than a task may downsample are
+     * split in two and downsampled in parallel.
+     */
+    private class Downsample extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] src;
+        private final int srcOffset;
+        private final int srcScan;
+        private final int srcWidth;
+        private final int srcRows;
+        private final int[] dst;
+        private final int dstOffset;
+        private final int dstWidth;
+        private final int rows;
+
+        /**
+         * Creates a new instance of Downsample.
+         * 
+         * @param src
+         *        the pixels of the previous level.
+         * @param srcOffset
+         *        the index of the first pixel of the first source row.
+         * @param srcScan
+         *        the distance between the first pixels of consecutive source
+         *        rows.
+         * @param srcWidth
+         *        the number of pixels in a source row.
+         * @param srcRows
+         *        the number of source rows available from the first one.
+         * @param dst
+         *        receives the downsampled pixels.
+         * @param dstOffset
+         *        the index of the first downsampled pixel.
+         * @param dstWidth
+         *        the number of pixels in a downsampled row.
+         * @param rows
+         *        the number of rows to downsample.
+         */
+        public Downsample(int[] src, int srcOffset, int srcScan,
+                int srcWidth, int srcRows, int[] dst, int dstOffset,
+                int dstWidth, int rows) {
+            this.src = src;
+            this.srcOffset = srcOffset;
+            this.srcScan = srcScan;
+            this.srcWidth = srcWidth;
+            this.srcRows = srcRows;
+            this.dst = dst;
+            this.dstOffset = dstOffset;
+            this.dstWidth = dstWidth;
+            this.rows = rows;
+        }
+
+        @Override
+        protected void compute() {
+            if ((rows > 1) && ((long) rows * dstWidth > PIXELS_PER_TASK)) {
+                int half = rows >>> 1;
+                invokeAll(new Downsample(src, srcOffset, srcScan, srcWidth,
+                        srcRows, dst, dstOffset, dstWidth, half),
+                        new Downsample(src, srcOffset + 2 * half * srcScan,
+                                srcScan, srcWidth, srcRows - 2 * half, dst,
+                                dstOffset + half * dstWidth, dstWidth, rows
+                                        - half));
+                return;
+            }
+
+            for (int y = 0; y < rows; ++y) {
+                int row0 = srcOffset + 2 * y * srcScan;
+                int row1 = srcOffset + Math.min(2 * y + 1, srcRows - 1)
+                        * srcScan;
+                int d = dstOffset + y * dstWidth;
+
+                for (int x = 0; x < dstWidth; ++x) {
+                    int x0 = 2 * x;
+                    int x1 = Math.min(x0 + 1, srcWidth - 1);
+                    dst[d + x] = average(src[row0 + x0], src[row0 + x1],
+                            src[row1 + x0], src[row1 + x1]);
+                }
+            }
+        }
+
+    }
+
+    private int[] widths;
+    private int[] heights;
+    private boolean opaque;
+    private int[][] levels;
+    private int rowsAdded;
+
+    /**
+     * Creates a new instance of MipmapGenerator.
+     * 
+     * @param width
+     *        the width of the full size image.
+     * @param height
+     *        the height of the full size image.
+     * @param opaque
+     *        <code>true</code> if alpha of the image is to be ignored and all
+     *        levels made opaque.
+     * @throws IllegalArgumentException
+     *         when image size isn't positive.
+     */
+    public MipmapGenerator(int width, int height, boolean opaque) {
+        if ((width <= 0) || (height <= 0)) {
+            throw new IllegalArgumentException(
+                    Messages.MIPMAP_GENERATOR_SIZE_INVALID);
+        }
+
+        int count = getLevelCount(width, height);
+        widths = new int[count];
+        heights = new int[count];
+        levels = new int[count][];
+
+        for (int level = 0; level < count; ++level) {
+            widths[level] = Math.max(1, width >> level);
+            heights[level] = Math.max(1, height >> level);
+        }
+
+        this.opaque = opaque;
+        if (count > 1) {
+            levels[1] = new int[widths[1] * heights[1]];
+        }
+    }
+
+    /**
+     * Returns the number of levels of the full chain of mipmaps of an image,
+     * including the full size image.
+     * 
+     * @param width
+     *        the image width.
+     * @param height
+     *        the image height.
+     * @return the number of levels.
+     */
+    public static int getLevelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    /**
+     * Returns the number of levels, including the full size image.
+     * 
+     * @return the number of levels.
+     */
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * Returns the width of the specified level.
+     * 
+     * @param level
+     *        the level, 0 being the full size image.
+     * @return the level width.
+     */
+    public int getWidth(int level) {
+        return widths[level];
+    }
+
+    /**
+     * Returns the height of the specified level.
+     * 
+     * @param level
+     *        the level, 0 being the full size image.
+     * @return the level height.
+     */
+    public int getHeight(int level) {
+        return heights[level];
+    }
+
+    /**
+     * Returns <code>true</code> if all rows of the full size image have been
+     * added.
+     * 
+     * @return <code>true</code> if the image is complete, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isComplete() {
+        return rowsAdded == heights[0];
+    }
+
+    /**
+     * Adds the next rows of the full size image and downsamples them into the
+     * first level. Rows have to be added an even number at a time, except
+     * for the rows which complete the image.
+     * 
+     * @param pixels
+     *        the non-premultiplied ARGB pixels.
+     * @param offset
+     *        the index of the first pixel of the first row.
+     * @param scanline
+     *        the distance between the first pixels of consecutive rows.
+     * @param rows
+     *        the number of rows to add.
+     * @throws IllegalArgumentException
+     *         when adding more rows than the image has, or an odd number of
+     *         rows which doesn't complete it.
+     */
+    public void addRows(int[] pixels, int offset, int scanline, int rows) {
+        if (rowsAdded + rows > heights[0]) {
+            throw new IllegalArgumentException(
+                    Messages.MIPMAP_GENERATOR_TOO_MANY_ROWS);
+        }
+        if ((0 != rows % 2) && (rowsAdded + rows < heights[0])) {
+            throw new IllegalArgumentException(
+                    Messages.MIPMAP_GENERATOR_ROWS_ODD);
+        }
+        if ((rows <= 0) || (levels.length < 2)) {
+            rowsAdded += Math.max(0, rows);
+            return;
+        }
+
+        int from = rowsAdded / 2;
+        int to = (rowsAdded + rows < heights[0]) ? (rowsAdded + rows) / 2
+                : heights[1];
+
+        if (from < to) {
+            ForkJoinPool.commonPool().invoke(
+                    new Downsample(pixels, offset, scanline, widths[0], rows,
+                            levels[1], from * widths[1], widths[1], to - from));
+        }
+        rowsAdded += rows;
+    }
+
+    /**
+     * Returns pixels of the specified level, generating it from the previous
+     * one when needed. Rows of a level follow one another, its width apart.
+     * 
+     * @param level
+     *        the level from 1 to the number of levels less one.
+     * @return the non-premultiplied ARGB pixels of the level.
+     * @throws IllegalArgumentException
+     *         when level is out of range.
+     * @throws IllegalStateException
+     *         when not all rows of the full size image have been added.
+     */
+    public int[] getLevel(int level) {
+        if ((level < 1) || (level >= levels.length)) {
+            throw new IllegalArgumentException(
+                    Messages.MIPMAP_GENERATOR_LEVEL_INVALID);
+        }
+        if (!isComplete()) {
+            throw new IllegalStateException(
+                    Messages.MIPMAP_GENERATOR_ROWS_MISSING);
+        }
+
+        if (null == levels[level]) {
+            int[] src = getLevel(level - 1);
+            int width = widths[level];
+            int height = heights[level];
+
+            levels[level] = new int[width * height];
+            ForkJoinPool.commonPool().invoke(
+                    new Downsample(src, 0, widths[level - 1],
+                            widths[level - 1], heights[level - 1],
+                            levels[level], 0, width, height));
+        }
+        return levels[level];
+    }
+
+    /**
+     * Averages four pixels in linear light, weighting colors by alpha.
+     * 
+     * @param p0
+     *        the first ARGB pixel.
+     * @param p1
+     *        the second ARGB pixel.
+     * @param p2
+     *        the third ARGB pixel.
+     * @param p3
+     *        the fourth ARGB pixel.
+     * @return the average ARGB pixel.
+     */
+    private int average(int p0, int p1, int p2, int p3) {
+        int a0 = opaque ? 0xff : p0 >>> 24;
+        int a1 = opaque ? 0xff : p1 >>> 24;
+        int a2 = opaque ? 0xff : p2 >>> 24;
+        int a3 = opaque ? 0xff : p3 >>> 24;
+        int alpha = a0 + a1 + a2 + a3;
+
+        if (0 == alpha) {
+            return 0;
+        }
+
+        int r = a0 * TO_LINEAR[(p0 >> 16) & 0xff] + a1
+                * TO_LINEAR[(p1 >> 16) & 0xff] + a2
+                * TO_LINEAR[(p2 >> 16) & 0xff] + a3
+                * TO_LINEAR[(p3 >> 16) & 0xff];
+        int g = a0 * TO_LINEAR[(p0 >> 8) & 0xff] + a1
+                * TO_LINEAR[(p1 >> 8) & 0xff] + a2
+                * TO_LINEAR[(p2 >> 8) & 0xff] + a3
+                * TO_LINEAR[(p3 >> 8) & 0xff];
+        int b = a0 * TO_LINEAR[p0 & 0xff] + a1 * TO_LINEAR[p1 & 0xff] + a2
+                * TO_LINEAR[p2 & 0xff] + a3 * TO_LINEAR[p3 & 0xff];
+        int half = alpha >> 1;
+
+        return (((alpha + 2) >> 2) << 24)
+                | ((TO_SRGB[(r + half) / alpha] & 0xff) << 16)
+                | ((TO_SRGB[(g + half) / alpha] & 0xff) << 8)
+                | (TO_SRGB[(b + half) / alpha] & 0xff);
+    }
+
+}
@@ -0,0 +1,147 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects files and directories to load while walking a directory, by glob
+ * patterns such as <code>*.png</code> or <code>exports/**</code>. A pattern is
+ * matched against the file name and against the path relative to the
+ * directory where the walk started.
+ */
+public class PathFilter {
+
+    private List<PathMatcher> includes;
+    private List<PathMatcher> excludes;
+
+    /**
+     * Creates a new instance of PathFilter which accepts all paths.
+     */
+    public PathFilter() {
+        includes = new ArrayList<PathMatcher>();
+        excludes = new ArrayList<PathMatcher>();
+    }
+
+    /**
+     * Sets glob patterns of files to accept. When no patterns are set all
+     * files are accepted.
+     * 
+     * @param globs
+     *        the glob patterns of files to accept.
+     * @throws IllegalArgumentException
+     *         when a pattern is not a valid glob.
+     */
+    public void setIncludes(String... globs) {
+        includes = toMatchers(globs);
+    }
+
+    /**
+     * Sets glob patterns of files and directories to skip. Excludes take
+     * precedence over includes.
+     * 
+     * @param globs
+     *        the glob patterns of files and directories to skip.
+     * @throws IllegalArgumentException
+     *         when a pattern is not a valid glob.
+     */
+    public void setExcludes(String... globs) {
+        excludes = toMatchers(globs);
+    }
+
+    /**
+     * Checks whether the specified file should be loaded.
+     * 
+     * @param file
+     *        the file to check.
+     * @param start
+     *        the path where the walk started.
+     * @return <code>true</code> if file is accepted, otherwise
+     *         <code>false</code>.
+     */
+    public boolean acceptFile(Path file, Path start) {
+        return !matches(excludes, file, start)
+                && (includes.isEmpty() || matches(includes, file, start));
+    }
+
+    /**
+     * Checks whether the specified directory should be walked. The directory
+     * where the walk started is always walked.
+     * 
+     * @param dir
+     *        the directory to check.
+     * @param start
+     *        the path where the walk started.
+     * @return <code>true</code> if directory is accepted, otherwise
+     *         <code>false</code>.
+     */
+    public boolean acceptDirectory(Path dir, Path start) {
+        return dir.equals(start) || !matches(excludes, dir, start);
+    }
+
+    /**
+     * Creates path matchers for the specified glob patterns.
+     * 
+     * @param globs
+     *        the glob patterns, <code>null</code> ones are ignored.
+     * @return the path matchers.
+     */
+    static List<PathMatcher> toMatchers(String... globs) {
+        List<PathMatcher> matchers = new ArrayList<PathMatcher>();
+
+        if (null != globs) {
+            for (String glob : globs) {
+                if (null != glob) {
+                    matchers.add(FileSystems.getDefault().getPathMatcher(
+                            "glob:" + glob));
+                }
+            }
+        }
+        return matchers;
+    }
+
+    /**
+     * Checks whether the specified path matches any of the matchers, either
+     * by its name or by its path relative to the start of the walk.
+     * 
+     * @param matchers
+     *        the matchers to test.
+     * @param path
+     *        the path to test.
+     * @param start
+     *        the path where the walk started.
+     * @return <code>true</code> if path matches, otherwise <code>false</code>.
+     */
+    static boolean matches(List<PathMatcher> matchers, Path path, Path start) {
+        Path name = path.getFileName();
+        Path relative = start.relativize(path);
+
+        for (PathMatcher matcher : matchers) {
+            if (((null != name) && matcher.matches(name))
+                    || matcher.matches(relative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
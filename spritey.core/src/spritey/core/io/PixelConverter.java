@@ -0,0 +1,247 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import spritey.core.Messages;
+
+/**
+ * Converts ARGB pixels to the reduced precision formats of raw textures.
+ * 16-bit pixels are stored little endian. Channels are either rounded to the
+ * nearest value or dithered with a 4x4 ordered dither, which trades banding
+ * of gradients for a fine regular pattern. Rows are converted in parallel.
+ */
+class PixelConverter {
+
+    // The number of pixels converted by a single task.
+    private static final int PIXELS_PER_TASK = 256 * 1024;
+
+    // 4x4 Bayer matrix, thresholds from 0 to 15.
+    private static final int[] BAYER = { 0, 8, 2, 10, 12, 4, 14, 6, 3, 11, 1,
+            9, 15, 7, 13, 5 };
+
+    /**
+     * Converts a run of rows. Runs taller than a task may convert are split in
+     * two and converted in parallel.
+     */
+    private class Rows extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] pixels;
+        private final int offset;
+        private final int scanline;
+        private final int width;
+        private final int rows;
+        private final int top;
+        private final byte[] bytes;
+        private final int byteOffset;
+
+        /**
+         * Creates a new instance of Rows.
+         * 
+         * @param pixels
+         *        the ARGB pixels.
+         * @param offset
+         *        the index of the first pixel of the first row.
+         * @param scanline
+         *        the distance between the first pixels of consecutive rows.
+         * @param width
+         *        the number of pixels in a row.
+         * @param rows
+         *        the number of rows.
+         * @param top
+         *        the image row of the first row, which aligns the dither.
+         * @param bytes
+         *        receives the converted pixels.
+         * @param byteOffset
+         *        the index of the first byte of the first row.
+         */
+        public Rows(int[] pixels, int offset, int scanline, int width,
+                int rows, int top, byte[] bytes, int byteOffset) {
+            this.pixels = pixels;
+            this.offset = offset;
+            this.scanline = scanline;
+            this.width = width;
+            this.rows = rows;
+            this.top = top;
+            this.bytes = bytes;
+            this.byteOffset = byteOffset;
+        }
+
+        @Override
+        protected void compute() {
+            if ((rows > 1) && ((long) rows * width > PIXELS_PER_TASK)) {
+                int half = rows >>> 1;
+                invokeAll(new Rows(pixels, offset, scanline, width, half, top,
+                        bytes, byteOffset), new Rows(pixels, offset + half
+                        * scanline, scanline, width, rows - half, top + half,
+                        bytes, byteOffset + half * width * bytesPerPixel));
+                return;
+            }
+
+            for (int y = 0; y < rows; ++y) {
+                convertRow(pixels, offset + y * scanline, width, top + y,
+                        bytes, byteOffset + y * width * bytesPerPixel);
+            }
+        }
+
+    }
+
+    private int format;
+    private boolean dither;
+    private int bytesPerPixel;
+
+    /**
+     * Creates a new instance of PixelConverter.
+     * 
+     * @param format
+     *        one of the raw pixel formats declared in ImageWriter.
+     * @param dither
+     *        <code>true</code> to dither channels, <code>false</code> to round
+     *        them.
+     * @throws IllegalArgumentException
+     *         when <code>format</code> is not a raw pixel format.
+     */
+    public PixelConverter(int format, boolean dither) {
+        switch (format) {
+        case ImageWriter.FORMAT_RGBA4444:
+        case ImageWriter.FORMAT_RGB565:
+            bytesPerPixel = 2;
+            break;
+        case ImageWriter.FORMAT_A8:
+            bytesPerPixel = 1;
+            break;
+        default:
+            throw new IllegalArgumentException(
+                    Messages.IMAGE_WRITER_FORMAT_INVALID);
+        }
+
+        this.format = format;
+        this.dither = dither;
+    }
+
+    /**
+     * Returns the number of bytes a converted pixel takes.
+     * 
+     * @return the pixel size.
+     */
+    public int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+
+    /**
+     * Converts the specified rows of pixels.
+     * 
+     * @param pixels
+     *        the non-premultiplied ARGB pixels.
+     * @param offset
+     *        the index of the first pixel of the first row.
+     * @param scanline
+     *        the distance between the first pixels of consecutive rows.
+     * @param width
+     *        the number of pixels in a row.
+     * @param rows
+     *        the number of rows.
+     * @param top
+     *        the image row of the first row, which aligns the dither of
+     *        images converted a band of rows at a time.
+     * @return the converted pixels, row after row.
+     */
+    public byte[] convert(int[] pixels, int offset, int scanline, int width,
+            int rows, int top) {
+        byte[] bytes = new byte[width * rows * bytesPerPixel];
+
+        if ((width > 0) && (rows > 0)) {
+            ForkJoinPool.commonPool().invoke(
+                    new Rows(pixels, offset, scanline, width, rows, top,
+                            bytes, 0));
+        }
+        return bytes;
+    }
+
+    /**
+     * Converts a row of pixels.
+     * 
+     * @param pixels
+     *        the pixels.
+     * @param offset
+     *        the index of the first pixel of the row.
+     * @param width
+     *        the number of pixels in the row.
+     * @param y
+     *        the image row.
+     * @param bytes
+     *        receives the converted pixels.
+     * @param byteOffset
+     *        the index of the first byte of the row.
+     */
+    private void convertRow(int[] pixels, int offset, int width, int y,
+            byte[] bytes, int byteOffset) {
+        int b = byteOffset;
+
+        for (int x = 0; x < width; ++x) {
+            int argb = pixels[offset + x];
+            // Twice the threshold plus one, from 1 to 31 in 32nds.
+            int threshold = dither ? 2 * BAYER[((y & 3) << 2) | (x & 3)] + 1
+                    : 16;
+
+            switch (format) {
+            case ImageWriter.FORMAT_RGBA4444: {
+                int value = (reduce((argb >> 16) & 0xff, 15, threshold) << 12)
+                        | (reduce((argb >> 8) & 0xff, 15, threshold) << 8)
+                        | (reduce(argb & 0xff, 15, threshold) << 4)
+                        | reduce(argb >>> 24, 15, threshold);
+                bytes[b++] = (byte) value;
+                bytes[b++] = (byte) (value >> 8);
+                break;
+            }
+            case ImageWriter.FORMAT_RGB565: {
+                int value = (reduce((argb >> 16) & 0xff, 31, threshold) << 11)
+                        | (reduce((argb >> 8) & 0xff, 63, threshold) << 5)
+                        | reduce(argb & 0xff, 31, threshold);
+                bytes[b++] = (byte) value;
+                bytes[b++] = (byte) (value >> 8);
+                break;
+            }
+            default:
+                bytes[b++] = (byte) (argb >>> 24);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reduces an 8-bit channel value to fewer bits.
+     * 
+     * @param value
+     *        the 8-bit value.
+     * @param max
+     *        the maximum reduced value.
+     * @param threshold
+     *        the fraction at which the value is rounded up, in 32nds and
+     *        always odd.
+     * @return the reduced value.
+     */
+    static int reduce(int value, int max, int threshold) {
+        return (value * max * 32 + (32 - threshold) * 255) / (255 * 32);
+    }
+
+}
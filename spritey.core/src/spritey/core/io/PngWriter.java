@@ -0,0 +1,907 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import spritey.core.Messages;
+
+/**
+ * Writes 8-bit truecolor or indexed PNG images a few rows at a time, so an
+ * image never has to be held in memory as a whole. Rows are filtered as they
+ * arrive, the filter producing the smallest sum of absolute differences being
+ * chosen for each truecolor row, and deflated into IDAT chunks written
+ * straight to the channel. Indexed rows are left unfiltered, as recommended
+ * by the PNG specification.
+ * <p>
+ * Rows are split into segments which are filtered and deflated in parallel.
+ * Each segment is compressed on its own, primed with the tail of the segment
+ * before it, and ends on a byte boundary with a sync flush, so compressed
+ * segments simply follow one another in the zlib stream. Their checksums are
+ * combined into the checksum of the whole stream.
+ * </p>
+ */
+public class PngWriter {
+
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G',
+            '\r', '\n', 0x1a, '\n' };
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // The number of filtered bytes deflated by a single task.
+    private static final int SEGMENT_SIZE = 256 * 1024;
+
+    // The size of the deflate window, which primes each segment.
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int ADLER_BASE = 65521;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+
+    /**
+     * A run of consecutive rows, filtered and deflated independently of other
+     * segments.
+     */
+    private static class Segment {
+
+        // The index of the first pixel of the first row.
+        int offset;
+        int rows;
+
+        // The filtered rows, each prefixed by its filter type.
+        byte[] filtered;
+        long adler;
+
+        byte[] deflated;
+        int length;
+
+        /**
+         * Creates a new instance of Segment.
+         * 
+         * @param offset
+         *        the index of the first pixel of the first row.
+         * @param rows
+         *        the number of rows.
+         */
+        Segment(int offset, int rows) {
+            this.offset = offset;
+            this.rows = rows;
+        }
+
+    }
+
+    /**
+     * Filters or deflates a range of segments. Ranges of more than one segment
+     * are split in two and processed in parallel.
+     */
+    private class Encode extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Segment[] segments;
+        private final int from;
+        private final int to;
+        private final boolean deflate;
+        private final int[] pixels;
+        private final byte[] indices;
+        private final int scanline;
+
+        /**
+         * Creates a new instance of Encode.
+         * 
+         * @param segments
+         *        the segments of the rows being written.
+         * @param from
+         *        the index of the first segment, inclusive.
+         * @param to
+         *        the index of the last segment, exclusive.
+         * @param deflate
+         *        <code>true</code> to deflate filtered segments,
+         *        <code>false</code> to filter them.
+         * @param pixels
+         *        the pixels of the rows being written, or <code>null</code>
+         *        when writing palette indices.
+         * @param indices
+         *        the palette indices of the rows being written, or
+         *        <code>null</code> when writing pixels.
+         * @param scanline
+         *        the distance between the first pixels of consecutive rows.
+         */
+        public Encode(Segment[] segments, int from, int to, boolean deflate,
+                int[] pixels, byte[] indices, int scanline) {
+            this.segments = segments;
+            this.from = from;
+            this.to = to;
+            this.deflate = deflate;
+            this.pixels = pixels;
+            this.indices = indices;
+            this.scanline = scanline;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                if (deflate) {
+                    deflate(segments, from);
+                } else {
+                    filter(segments, from, pixels, indices, scanline);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Encode(segments, from, middle, deflate, pixels,
+                        indices, scanline), new Encode(segments, middle, to,
+                        deflate, pixels, indices, scanline));
+            }
+        }
+
+    }
+
+    private WritableByteChannel channel;
+    private int width;
+    private int height;
+    private boolean alpha;
+    private IndexColorModel palette;
+    private int level;
+    private int bytesPerPixel;
+    private int rowLength;
+    private int rowsWritten;
+
+    // Raw bytes of the last row written, all zeros before the first row.
+    private byte[] previous;
+    // The tail of the filtered data written so far, which primes the next
+    // segment.
+    private byte[] dictionary;
+    // The checksum of the filtered data written so far.
+    private long adler;
+
+    private byte[] deflated;
+    // The number of compressed bytes waiting in the output buffer.
+    private int pending;
+    private CRC32 crc;
+
+    /**
+     * Creates a new instance of PngWriter with default compression level and
+     * writes the PNG signature and header to the specified channel.
+     * 
+     * @param channel
+     *        the channel to write to.
+     * @param width
+     *        the image width.
+     * @param height
+     *        the image height.
+     * @param alpha
+     *        specifies whether the image has an alpha channel.
+     * @throws IOException
+     *         when problem occurs during writing.
+     * @throws IllegalArgumentException
+     *         when <code>channel</code> is <code>null</code>, or image size
+     *         isn't positive.
+     */
+    public PngWriter(WritableByteChannel channel, int width, int height,
+            boolean alpha) throws IOException {
+        this(channel, width, height, alpha, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a new instance of PngWriter and writes the PNG signature and
+     * header to the specified channel.
+     * 
+     * @param channel
+     *        the channel to write to.
+     * @param width
+     *        the image width.
+     * @param height
+     *        the image height.
+     * @param alpha
+     *        specifies whether the image has an alpha channel.
+     * @param level
+     *        the compression level, from 0 to 9, or -1 for default.
+     * @throws IOException
+     *         when problem occurs during writing.
+     * @throws IllegalArgumentException
+     *         when <code>channel</code> is <code>null</code>, or image size
+     *         isn't positive.
+     */
+    public PngWriter(WritableByteChannel channel, int width, int height,
+            boolean alpha, int level) throws IOException {
+        this(channel, width, height, alpha, null, level);
+    }
+
+    /**
+     * Creates a new instance of indexed PngWriter with default compression
+     * level and writes the PNG signature, header and palette to the specified
+     * channel.
+     * 
+     * @param channel
+     *        the channel to write to.
+     * @param width
+     *        the image width.
+     * @param height
+     *        the image height.
+     * @param palette
+     *        the palette of at most 256 colors.
+     * @throws IOException
+     *         when problem occurs during writing.
+     * @throws IllegalArgumentException
+     *         when either <code>channel</code> or <code>palette</code> is
+     *         <code>null</code>, or image size isn't positive.
+     */
+    public PngWriter(WritableByteChannel channel, int width, int height,
+            IndexColorModel palette) throws IOException {
+        this(channel, width, height, palette, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a new instance of indexed PngWriter and writes the PNG
+     * signature, header and palette to the specified channel.
+     * 
+     * @param channel
+     *        the channel to write to.
+     * @param width
+     *        the image width.
+     * @param height
+     *        the image height.
+     * @param palette
+     *        the palette of at most 256 colors.
+     * @param level
+     *        the compression level, from 0 to 9, or -1 for default.
+     * @throws IOException
+     *         when problem occurs during writing.
+     * @throws IllegalArgumentException
+     *         when either <code>channel</code> or <code>palette</code> is
+     *         <code>null</code>, or image size isn't positive.
+     */
+    public PngWriter(WritableByteChannel channel, int width, int height,
+            IndexColorModel palette, int level) throws IOException {
+        this(channel, width, height, false, validateNotNull(palette), level);
+    }
+
+    /**
+     * Creates a new instance of PngWriter and writes the PNG signature,
+     * header and palette, if any, to the specified channel.
+     * 
+     * @param channel
+     *        the channel to write to.
+     * @param width
+     *        the image width.
+     * @param height
+     *        the image height.
+     * @param alpha
+     *        specifies whether a truecolor image has an alpha channel.
+     * @param palette
+     *        the palette of an indexed image, or <code>null</code> for a
+     *        truecolor image.
+     * @param level
+     *        the compression level, from 0 to 9, or -1 for default.
+     * @throws IOException
+     *         when problem occurs during writing.
+     */
+    private PngWriter(WritableByteChannel channel, int width, int height,
+            boolean alpha, IndexColorModel palette, int level)
+            throws IOException {
+        if (null == channel) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+        if ((width <= 0) || (height <= 0)) {
+            throw new IllegalArgumentException(
+                    Messages.PNG_WRITER_SIZE_INVALID);
+        }
+
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        this.palette = palette;
+        this.level = level;
+        bytesPerPixel = (null != palette) ? 1 : (alpha ? 4 : 3);
+        rowLength = width * bytesPerPixel;
+
+        previous = new byte[rowLength];
+        dictionary = new byte[0];
+        adler = 1;
+
+        deflated = new byte[CHUNK_SIZE];
+        crc = new CRC32();
+
+        writeFully(ByteBuffer.wrap(SIGNATURE));
+
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(width).putInt(height);
+        header.put((byte) 8); // Bit depth.
+        // Indexed, or truecolor with alpha or not.
+        header.put((byte) ((null != palette) ? 3 : (alpha ? 6 : 2)));
+        header.put((byte) 0); // Deflate compression.
+        header.put((byte) 0); // Adaptive filtering.
+        header.put((byte) 0); // No interlace.
+        writeChunk("IHDR", header.array(), header.position());
+
+        if (null != palette) {
+            writePalette();
+        }
+
+        // Segments are raw deflate data, the zlib wrapper is written here.
+        deflated[pending++] = 0x78;
+        deflated[pending++] = zlibFlags(level);
+    }
+
+    /**
+     * Writes the specified rows of ARGB pixels. Alpha is ignored when image
+     * has no alpha channel.
+     * 
+     * @param pixels
+     *        the non-premultiplied ARGB pixels.
+     * @param offset
+     *        the index of the first pixel of the first row.
+     * @param scanline
+     *        the distance between the first pixels of consecutive rows.
+     * @param rows
+     *        the number of rows to write.
+     * @throws IOException
+     *         when problem occurs during writing.
+     * @throws IllegalArgumentException
+     *         when writing more rows than the image has.
+     * @throws IllegalStateException
+     *         when the image is indexed.
+     */
+    public void writeRows(int[] pixels, int offset, int scanline, int rows)
+            throws IOException {
+        if (null != palette) {
+            throw new IllegalStateException(Messages.PNG_WRITER_INDEXED);
+        }
+        write(pixels, null, offset, scanline, rows);
+    }
+
+    /**
+     * Writes the specified rows of palette indices.
+     * 
+     * @param indices
+     *        the palette indices.
+     * @param offset
+     *        the index of the first palette index of the first row.
+     * @param scanline
+     *        the distance between the first indices of consecutive rows.
+     * @param rows
+     *        the number of rows to write.
+     * @throws IOException
+     *         when problem occurs during writing.
+     * @throws IllegalArgumentException
+     *         when writing more rows than the image has.
+     * @throws IllegalStateException
+     *         when the image isn't indexed.
+     */
+    public void writeIndices(byte[] indices, int offset, int scanline,
+            int rows) throws IOException {
+        if (null == palette) {
+            throw new IllegalStateException(Messages.PNG_WRITER_NOT_INDEXED);
+        }
+        write(null, indices, offset, scanline, rows);
+    }
+
+    /**
+     * Writes the specified rows of either pixels or palette indices.
+     * 
+     * @param pixels
+     *        the pixels, or <code>null</code> when writing palette indices.
+     * @param indices
+     *        the palette indices, or <code>null</code> when writing pixels.
+     * @param offset
+     *        the index of the first pixel of the first row.
+     * @param scanline
+     *        the distance between the first pixels of consecutive rows.
+     * @param rows
+     *        the number of rows to write.
+     * @throws IOException
+     *         when problem occurs during writing.
+     * @throws IllegalArgumentException
+     *         when writing more rows than the image has.
+     */
+    private void write(int[] pixels, byte[] indices, int offset,
+            int scanline, int rows) throws IOException {
+        if (rowsWritten + rows > height) {
+            throw new IllegalArgumentException(
+                    Messages.PNG_WRITER_TOO_MANY_ROWS);
+        }
+        if (rows <= 0) {
+            return;
+        }
+
+        int segmentRows = Math.max(1, SEGMENT_SIZE / (rowLength + 1));
+        Segment[] segments = new Segment[(rows + segmentRows - 1)
+                / segmentRows];
+
+        for (int i = 0; i < segments.length; ++i) {
+            int first = i * segmentRows;
+            segments[i] = new Segment(offset + first * scanline, Math.min(
+                    segmentRows, rows - first));
+        }
+
+        // Segments are primed with the filtered data of the segment before,
+        // so all of them are filtered before any is deflated.
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        pool.invoke(new Encode(segments, 0, segments.length, false, pixels,
+                indices, scanline));
+        pool.invoke(new Encode(segments, 0, segments.length, true, pixels,
+                indices, scanline));
+
+        for (Segment segment : segments) {
+            adler = combineAdler(adler, segment.adler,
+                    segment.filtered.length);
+            output(segment.deflated, segment.length);
+        }
+
+        Segment last = segments[segments.length - 1];
+        dictionary = tail(last.filtered);
+        toBytes(pixels, indices, last.offset + (last.rows - 1) * scanline,
+                previous);
+        rowsWritten += rows;
+    }
+
+    /**
+     * Writes the remaining compressed data and the end of the image. The
+     * channel is left open.
+     * 
+     * @throws IOException
+     *         when problem occurs during writing.
+     * @throws IllegalStateException
+     *         when not all rows have been written.
+     */
+    public void finish() throws IOException {
+        if (rowsWritten < height) {
+            throw new IllegalStateException(Messages.PNG_WRITER_ROWS_MISSING);
+        }
+
+        // An empty final block ends the stream, followed by the checksum.
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.finish();
+            byte[] end = new byte[16];
+            int length = 0;
+            while (!deflater.finished()) {
+                length += deflater.deflate(end, length, end.length - length);
+            }
+            output(end, length);
+        } finally {
+            deflater.end();
+        }
+
+        byte[] checksum = ByteBuffer.allocate(4).putInt((int) adler).array();
+        output(checksum, checksum.length);
+        flush();
+
+        writeChunk("IEND", deflated, 0);
+    }
+
+    /**
+     * Filters rows of the specified segment and computes their checksum.
+     * 
+     * @param segments
+     *        the segments of the rows being written.
+     * @param index
+     *        the index of the segment to filter.
+     * @param pixels
+     *        the pixels of the rows being written, or <code>null</code> when
+     *        writing palette indices.
+     * @param indices
+     *        the palette indices of the rows being written, or
+     *        <code>null</code> when writing pixels.
+     * @param scanline
+     *        the distance between the first pixels of consecutive rows.
+     */
+    private void filter(Segment[] segments, int index, int[] pixels,
+            byte[] indices, int scanline) {
+        Segment segment = segments[index];
+        byte[] row = new byte[rowLength];
+        byte[] above = new byte[rowLength];
+        byte[][] filtered = new byte[5][rowLength];
+        long[] sums = new long[filtered.length];
+
+        if (0 == index) {
+            System.arraycopy(previous, 0, above, 0, rowLength);
+        } else {
+            toBytes(pixels, indices, segment.offset - scanline, above);
+        }
+
+        segment.filtered = new byte[segment.rows * (rowLength + 1)];
+
+        for (int y = 0; y < segment.rows; ++y) {
+            toBytes(pixels, indices, segment.offset + y * scanline, row);
+
+            int start = y * (rowLength + 1);
+
+            if (null != palette) {
+                segment.filtered[start] = FILTER_NONE;
+                System.arraycopy(row, 0, segment.filtered, start + 1,
+                        rowLength);
+            } else {
+                int best = filter(row, above, filtered, sums);
+                segment.filtered[start] = (byte) best;
+                System.arraycopy(filtered[best], 0, segment.filtered,
+                        start + 1, rowLength);
+            }
+
+            byte[] swap = above;
+            above = row;
+            row = swap;
+        }
+
+        Adler32 checksum = new Adler32();
+        checksum.update(segment.filtered);
+        segment.adler = checksum.getValue();
+    }
+
+    /**
+     * Deflates the specified filtered segment into a run of raw deflate
+     * blocks ending on a byte boundary.
+     * 
+     * @param segments
+     *        the segments of the rows being written.
+     * @param index
+     *        the index of the segment to deflate.
+     */
+    private void deflate(Segment[] segments, int index) {
+        Segment segment = segments[index];
+        Deflater deflater = new Deflater(level, true);
+
+        try {
+            byte[] primer = (0 == index) ? dictionary
+                    : tail(segments[index - 1].filtered);
+            if (primer.length > 0) {
+                deflater.setDictionary(primer);
+            }
+            deflater.setInput(segment.filtered);
+
+            byte[] out = new byte[segment.filtered.length / 2 + 64];
+            int length = 0;
+
+            while (true) {
+                length += deflater.deflate(out, length, out.length - length,
+                        Deflater.SYNC_FLUSH);
+                if (length < out.length) {
+                    break;
+                }
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+
+            segment.deflated = out;
+            segment.length = length;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Filters the specified row with every filter type and returns the type
+     * which is likely to compress best.
+     * 
+     * @param row
+     *        the raw bytes of the row.
+     * @param above
+     *        the raw bytes of the previous row, all zeros for the first row.
+     * @param filtered
+     *        receives the row filtered by each filter type.
+     * @param sums
+     *        receives the sums of absolute filtered values.
+     * @return the best filter type.
+     */
+    private int filter(byte[] row, byte[] above, byte[][] filtered,
+            long[] sums) {
+        byte[] none = filtered[FILTER_NONE];
+        byte[] sub = filtered[FILTER_SUB];
+        byte[] up = filtered[FILTER_UP];
+        byte[] average = filtered[FILTER_AVERAGE];
+        byte[] paeth = filtered[FILTER_PAETH];
+
+        Arrays.fill(sums, 0);
+
+        for (int i = 0; i < row.length; ++i) {
+            int x = row[i] & 0xff;
+            int a = (i >= bytesPerPixel) ? row[i - bytesPerPixel] & 0xff : 0;
+            int b = above[i] & 0xff;
+            int c = (i >= bytesPerPixel) ? above[i - bytesPerPixel] & 0xff
+                    : 0;
+
+            none[i] = (byte) x;
+            sub[i] = (byte) (x - a);
+            up[i] = (byte) (x - b);
+            average[i] = (byte) (x - ((a + b) >>> 1));
+            paeth[i] = (byte) (x - paethPredictor(a, b, c));
+
+            sums[FILTER_NONE] += Math.abs(none[i]);
+            sums[FILTER_SUB] += Math.abs(sub[i]);
+            sums[FILTER_UP] += Math.abs(up[i]);
+            sums[FILTER_AVERAGE] += Math.abs(average[i]);
+            sums[FILTER_PAETH] += Math.abs(paeth[i]);
+        }
+
+        int best = FILTER_NONE;
+        for (int i = 1; i < sums.length; ++i) {
+            if (sums[i] < sums[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Converts a row of ARGB pixels or palette indices to raw PNG bytes.
+     * 
+     * @param pixels
+     *        the pixels, or <code>null</code> when converting palette
+     *        indices.
+     * @param indices
+     *        the palette indices, or <code>null</code> when converting
+     *        pixels.
+     * @param offset
+     *        the index of the first pixel of the row.
+     * @param row
+     *        receives the raw bytes.
+     */
+    private void toBytes(int[] pixels, byte[] indices, int offset, byte[] row) {
+        if (null != indices) {
+            System.arraycopy(indices, offset, row, 0, width);
+            return;
+        }
+
+        int b = 0;
+
+        for (int x = 0; x < width; ++x) {
+            int argb = pixels[offset + x];
+            row[b++] = (byte) (argb >> 16);
+            row[b++] = (byte) (argb >> 8);
+            row[b++] = (byte) argb;
+            if (alpha) {
+                row[b++] = (byte) (argb >>> 24);
+            }
+        }
+    }
+
+    /**
+     * Writes the palette and, when any of its colors isn't opaque, the alpha
+     * of its colors up to the last translucent one.
+     * 
+     * @throws IOException
+     *         when problem occurs during writing.
+     */
+    private void writePalette() throws IOException {
+        int size = palette.getMapSize();
+        byte[] colors = new byte[3 * size];
+        byte[] alphas = new byte[size];
+        int translucent = 0;
+
+        for (int i = 0; i < size; ++i) {
+            colors[3 * i] = (byte) palette.getRed(i);
+            colors[3 * i + 1] = (byte) palette.getGreen(i);
+            colors[3 * i + 2] = (byte) palette.getBlue(i);
+            alphas[i] = (byte) palette.getAlpha(i);
+            if (palette.getAlpha(i) < 0xff) {
+                translucent = i + 1;
+            }
+        }
+
+        writeChunk("PLTE", colors, colors.length);
+        if (translucent > 0) {
+            writeChunk("tRNS", alphas, translucent);
+        }
+    }
+
+    /**
+     * Throws exception when the specified palette is <code>null</code>.
+     * 
+     * @param palette
+     *        the palette to validate.
+     * @return the palette.
+     * @throws IllegalArgumentException
+     *         when <code>palette</code> is <code>null</code>.
+     */
+    private static IndexColorModel validateNotNull(IndexColorModel palette) {
+        if (null == palette) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+        return palette;
+    }
+
+    /**
+     * Returns the Paeth predictor of a byte.
+     * 
+     * @param a
+     *        the byte to the left.
+     * @param b
+     *        the byte above.
+     * @param c
+     *        the byte above and to the left.
+     * @return the predictor.
+     */
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+
+        if ((pa <= pb) && (pa <= pc)) {
+            return a;
+        } else if (pb <= pc) {
+            return b;
+        }
+        return c;
+    }
+
+    /**
+     * Returns the last bytes of the specified data which fit into the deflate
+     * window.
+     * 
+     * @param data
+     *        the data.
+     * @return the tail of the data.
+     */
+    private static byte[] tail(byte[] data) {
+        return Arrays.copyOfRange(data,
+                Math.max(0, data.length - DICTIONARY_SIZE), data.length);
+    }
+
+    /**
+     * Returns the second byte of the zlib header for the specified compression
+     * level. The level is informative only, but the header has to be a
+     * multiple of 31.
+     * 
+     * @param level
+     *        the compression level.
+     * @return the flags byte.
+     */
+    private static byte zlibFlags(int level) {
+        if ((level >= 0) && (level < 2)) {
+            return 0x01;
+        } else if ((level >= 2) && (level < 6)) {
+            return 0x5e;
+        } else if (level > 6) {
+            return (byte) 0xda;
+        }
+        return (byte) 0x9c;
+    }
+
+    /**
+     * Combines the checksums of two consecutive runs of data into the checksum
+     * of both, the way zlib's <code>adler32_combine</code> does.
+     * 
+     * @param adler1
+     *        the checksum of the first run.
+     * @param adler2
+     *        the checksum of the second run.
+     * @param length2
+     *        the length of the second run.
+     * @return the combined checksum.
+     */
+    static long combineAdler(long adler1, long adler2, long length2) {
+        long rem = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff)
+                + ADLER_BASE - rem;
+
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= (ADLER_BASE << 1)) {
+            sum2 -= (ADLER_BASE << 1);
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    /**
+     * Appends compressed bytes to the output buffer, writing it out as an
+     * IDAT chunk whenever it fills up.
+     * 
+     * @param bytes
+     *        the compressed bytes.
+     * @param length
+     *        the number of bytes to append.
+     * @throws IOException
+     *         when problem occurs during writing.
+     */
+    private void output(byte[] bytes, int length) throws IOException {
+        int position = 0;
+
+        while (position < length) {
+            int count = Math.min(length - position, deflated.length - pending);
+            System.arraycopy(bytes, position, deflated, pending, count);
+            pending += count;
+            position += count;
+            if (pending == deflated.length) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the compressed bytes in the output buffer as an IDAT chunk.
+     * 
+     * @throws IOException
+     *         when problem occurs during writing.
+     */
+    private void flush() throws IOException {
+        if (pending > 0) {
+            writeChunk("IDAT", deflated, pending);
+            pending = 0;
+        }
+    }
+
+    /**
+     * Writes a chunk of the specified type.
+     * 
+     * @param type
+     *        the four letter chunk type.
+     * @param data
+     *        the chunk data.
+     * @param length
+     *        the number of bytes of <code>data</code> to write.
+     * @throws IOException
+     *         when problem occurs during writing.
+     */
+    private void writeChunk(String type, byte[] data, int length)
+            throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(length).put(typeBytes).flip();
+        writeFully(header);
+        writeFully(ByteBuffer.wrap(data, 0, length));
+
+        ByteBuffer trailer = ByteBuffer.allocate(4);
+        trailer.putInt((int) crc.getValue()).flip();
+        writeFully(trailer);
+    }
+
+    /**
+     * Writes all remaining bytes of the buffer to the channel.
+     * 
+     * @param buffer
+     *        the bytes to write.
+     * @throws IOException
+     *         when problem occurs during writing.
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
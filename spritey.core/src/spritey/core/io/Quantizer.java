@@ -0,0 +1,820 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import java.awt.Transparency;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import spritey.core.Messages;
+
+/**
+ * Reduces colors of an image to a palette of at most 256 entries. Pixels are
+ * first added to a histogram, a band of rows at a time if need be, then the
+ * palette is built once and pixels are mapped to palette indices through a
+ * lookup table. Both the histogram and the mapping are computed in parallel.
+ * <p>
+ * When the image has no more distinct colors than the palette may hold, the
+ * palette holds exactly those colors. Otherwise colors are grouped by median
+ * cut of a histogram with 5 bits per color channel and 3 bits of alpha.
+ * Fully transparent pixels always map to a transparent entry of their own.
+ * </p>
+ */
+public class Quantizer {
+
+    public static final int MAX_COLORS = 256;
+
+    // Bits of the histogram key taken by alpha, red, green and blue.
+    private static final int ALPHA_BITS = 3;
+    private static final int COLOR_BITS = 5;
+    private static final int BINS = 1 << (ALPHA_BITS + 3 * COLOR_BITS);
+
+    // The number of pixels counted or mapped by a single task.
+    private static final int PIXELS_PER_TASK = 1024 * 1024;
+
+    // The capacity of the set of distinct colors, more than twice MAX_COLORS
+    // so that it never gets full.
+    private static final int SET_SIZE = 1024;
+
+    // Channel values to their bins and bins to the values they stand for.
+    private static final int[] ALPHA_KEY = keys(ALPHA_BITS);
+    private static final int[] COLOR_KEY = keys(COLOR_BITS);
+    private static final int[] ALPHA_VALUE = values(ALPHA_BITS);
+    private static final int[] COLOR_VALUE = values(COLOR_BITS);
+
+    /**
+     * The histogram of a run of rows.
+     */
+    private static class Histogram {
+
+        int[] counts = new int[BINS];
+        // Distinct colors while there are few of them, otherwise null.
+        int[] colors = new int[SET_SIZE];
+        int size;
+        boolean transparent;
+
+        /**
+         * Adds distinct colors and counts of the other histogram to this one.
+         * 
+         * @param other
+         *        the histogram to add.
+         * @param limit
+         *        the number of distinct colors to keep track of.
+         */
+        void add(Histogram other, int limit) {
+            for (int i = 0; i < BINS; ++i) {
+                counts[i] += other.counts[i];
+            }
+            transparent |= other.transparent;
+
+            if ((null != colors) && (null != other.colors)) {
+                for (int color : other.colors) {
+                    if ((0 != color) && !addColor(color, limit)) {
+                        break;
+                    }
+                }
+            } else {
+                colors = null;
+            }
+        }
+
+        /**
+         * Adds the specified color to the set of distinct colors.
+         * 
+         * @param color
+         *        the color, not 0.
+         * @param limit
+         *        the number of distinct colors to keep track of.
+         * @return <code>false</code> when there are more distinct colors than
+         *         the limit and they are no longer tracked.
+         */
+        boolean addColor(int color, int limit) {
+            int slot = find(colors, color);
+
+            if (colors[slot] != color) {
+                if (size == limit) {
+                    colors = null;
+                    return false;
+                }
+                colors[slot] = color;
+                ++size;
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * A range of histogram bins grouped into one palette entry.
+     */
+    private static class Box {
+
+        final int from;
+        final int to;
+        final long population;
+        // The channel with the widest range of values.
+        final int widest;
+        // The box with the highest score is split next, 0 if it can't be.
+        final long score;
+
+        /**
+         * Creates a new instance of Box.
+         * 
+         * @param bins
+         *        the occupied bins.
+         * @param counts
+         *        the pixel count of each bin.
+         * @param from
+         *        the index of the first bin, inclusive.
+         * @param to
+         *        the index of the last bin, exclusive.
+         */
+        Box(int[] bins, int[] counts, int from, int to) {
+            this.from = from;
+            this.to = to;
+
+            int[] min = { 255, 255, 255, 255 };
+            int[] max = { 0, 0, 0, 0 };
+            long sum = 0;
+
+            for (int j = from; j < to; ++j) {
+                for (int c = 0; c < 4; ++c) {
+                    int value = channel(bins[j], c);
+                    min[c] = Math.min(min[c], value);
+                    max[c] = Math.max(max[c], value);
+                }
+                sum += counts[bins[j]];
+            }
+
+            int channel = 0;
+            for (int c = 1; c < 4; ++c) {
+                if (max[c] - min[c] > max[channel] - min[channel]) {
+                    channel = c;
+                }
+            }
+
+            population = sum;
+            widest = channel;
+            score = (to - from < 2) ? 0 : population
+                    * (max[channel] - min[channel] + 1);
+        }
+
+        /**
+         * Returns the mean color of the pixels in the box.
+         * 
+         * @param bins
+         *        the occupied bins.
+         * @param counts
+         *        the pixel count of each bin.
+         * @return the color.
+         */
+        int mean(int[] bins, int[] counts) {
+            long[] sums = new long[4];
+
+            for (int j = from; j < to; ++j) {
+                int n = counts[bins[j]];
+                for (int c = 0; c < 4; ++c) {
+                    sums[c] += (long) n * channel(bins[j], c);
+                }
+            }
+
+            int color = 0;
+            for (int c = 0; c < 4; ++c) {
+                color = (color << 8)
+                        | (int) ((sums[c] + population / 2) / population);
+            }
+            return color;
+        }
+
+    }
+
+    /**
+     * Counts pixels of a run of rows. Runs taller than a task may count are
+     * split in two and counted in parallel.
+     */
+    private class Count extends RecursiveTask<Histogram> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] pixels;
+        private final int offset;
+        private final int scanline;
+        private final int width;
+        private final int rows;
+
+        /**
+         * Creates a new instance of Count.
+         * 
+         * @param pixels
+         *        the ARGB pixels.
+         * @param offset
+         *        the index of the first pixel of the first row.
+         * @param scanline
+         *        the distance between the first pixels of consecutive rows.
+         * @param width
+         *        the number of pixels in a row.
+         * @param rows
+         *        the number of rows.
+         */
+        public Count(int[] pixels, int offset, int scanline, int width,
+                int rows) {
+            this.pixels = pixels;
+            this.offset = offset;
+            this.scanline = scanline;
+            this.width = width;
+            this.rows = rows;
+        }
+
+        @Override
+        protected Histogram compute() {
+            if ((rows > 1) && ((long) rows * width > PIXELS_PER_TASK)) {
+                int half = rows >>> 1;
+                Count top = new Count(pixels, offset, scanline, width, half);
+                Count bottom = new Count(pixels, offset + half * scanline,
+                        scanline, width, rows - half);
+
+                top.fork();
+                Histogram histogram = bottom.compute();
+                histogram.add(top.join(), limit);
+                return histogram;
+            }
+
+            Histogram histogram = new Histogram();
+            int[] counts = histogram.counts;
+            int last = 0;
+
+            for (int y = 0; y < rows; ++y) {
+                int p = offset + y * scanline;
+
+                for (int x = 0; x < width; ++x, ++p) {
+                    int color = normalize(pixels[p]);
+
+                    if (0 == color) {
+                        histogram.transparent = true;
+                        continue;
+                    }
+
+                    ++counts[key(color)];
+
+                    // Sheets are mostly runs of the same color.
+                    if ((color != last) && (null != histogram.colors)) {
+                        histogram.addColor(color, limit);
+                        last = color;
+                    }
+                }
+            }
+            return histogram;
+        }
+
+    }
+
+    /**
+     * Maps pixels of a run of rows to palette indices. Runs taller than a task
+     * may map are split in two and mapped in parallel.
+     */
+    private class Lookup extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] pixels;
+        private final int offset;
+        private final int scanline;
+        private final int width;
+        private final int rows;
+        private final byte[] indices;
+        private final int indexOffset;
+
+        /**
+         * Creates a new instance of Lookup.
+         * 
+         * @param pixels
+         *        the ARGB pixels.
+         * @param offset
+         *        the index of the first pixel of the first row.
+         * @param scanline
+         *        the distance between the first pixels of consecutive rows.
+         * @param width
+         *        the number of pixels in a row.
+         * @param rows
+         *        the number of rows.
+         * @param indices
+         *        receives palette indices, rows <code>width</code> apart.
+         * @param indexOffset
+         *        the index of the first palette index of the first row.
+         */
+        public Lookup(int[] pixels, int offset, int scanline, int width,
+                int rows, byte[] indices, int indexOffset) {
+            this.pixels = pixels;
+            this.offset = offset;
+            this.scanline = scanline;
+            this.width = width;
+            this.rows = rows;
+            this.indices = indices;
+            this.indexOffset = indexOffset;
+        }
+
+        @Override
+        protected void compute() {
+            if ((rows > 1) && ((long) rows * width > PIXELS_PER_TASK)) {
+                int half = rows >>> 1;
+                invokeAll(new Lookup(pixels, offset, scanline, width, half,
+                        indices, indexOffset), new Lookup(pixels, offset + half
+                        * scanline, scanline, width, rows - half, indices,
+                        indexOffset + half * width));
+                return;
+            }
+
+            int last = 0;
+            byte index = lookup(0);
+
+            for (int y = 0; y < rows; ++y) {
+                int p = offset + y * scanline;
+                int i = indexOffset + y * width;
+
+                for (int x = 0; x < width; ++x, ++p, ++i) {
+                    int color = normalize(pixels[p]);
+
+                    if (color != last) {
+                        index = lookup(color);
+                        last = color;
+                    }
+                    indices[i] = index;
+                }
+            }
+        }
+
+    }
+
+    private int colors;
+    private int transparency;
+    private Histogram histogram;
+    // The number of distinct colors worth keeping track of.
+    private int limit;
+
+    private IndexColorModel model;
+    private int[] palette;
+    private int transparentIndex;
+    // Bins to palette indices, -1 until looked up.
+    private int[] lut;
+    // Colors to palette indices when palette holds colors exactly.
+    private int[] exactColors;
+    private int[] exactIndices;
+
+    /**
+     * Creates a new instance of Quantizer.
+     * 
+     * @param colors
+     *        the maximum number of palette entries, from 2 to MAX_COLORS.
+     * @param transparency
+     *        the transparency of the palette, one of the constants defined in
+     *        <code>java.awt.Transparency</code>. Alpha of pixels is ignored
+     *        when <code>OPAQUE</code>, and pixels less than half opaque become
+     *        transparent when <code>BITMASK</code>.
+     * @throws IllegalArgumentException
+     *         when either <code>colors</code> or <code>transparency</code>
+     *         is invalid.
+     */
+    public Quantizer(int colors, int transparency) {
+        if ((colors < 2) || (colors > MAX_COLORS)) {
+            throw new IllegalArgumentException(
+                    Messages.QUANTIZER_COLORS_INVALID);
+        }
+        if ((Transparency.OPAQUE != transparency)
+                && (Transparency.BITMASK != transparency)
+                && (Transparency.TRANSLUCENT != transparency)) {
+            throw new IllegalArgumentException(
+                    Messages.QUANTIZER_TRANSPARENCY_INVALID);
+        }
+
+        this.colors = colors;
+        this.transparency = transparency;
+        histogram = new Histogram();
+        limit = colors;
+    }
+
+    /**
+     * Adds the specified rows of ARGB pixels to the histogram.
+     * 
+     * @param pixels
+     *        the non-premultiplied ARGB pixels.
+     * @param offset
+     *        the index of the first pixel of the first row.
+     * @param scanline
+     *        the distance between the first pixels of consecutive rows.
+     * @param width
+     *        the number of pixels in a row.
+     * @param rows
+     *        the number of rows.
+     * @throws IllegalStateException
+     *         when the palette has already been built.
+     */
+    public void add(int[] pixels, int offset, int scanline, int width,
+            int rows) {
+        if (null != model) {
+            throw new IllegalStateException(Messages.QUANTIZER_PALETTE_BUILT);
+        }
+        if ((width <= 0) || (rows <= 0)) {
+            return;
+        }
+
+        histogram.add(
+                ForkJoinPool.commonPool().invoke(
+                        new Count(pixels, offset, scanline, width, rows)),
+                limit);
+    }
+
+    /**
+     * Returns the palette of the pixels added so far, building it the first
+     * time. No more pixels may be added afterwards.
+     * 
+     * @return the palette.
+     */
+    public synchronized IndexColorModel getColorModel() {
+        if (null == model) {
+            buildPalette();
+
+            int size = palette.length;
+            byte[] a = new byte[size];
+            byte[] r = new byte[size];
+            byte[] g = new byte[size];
+            byte[] b = new byte[size];
+
+            for (int i = 0; i < size; ++i) {
+                a[i] = (byte) (palette[i] >>> 24);
+                r[i] = (byte) (palette[i] >> 16);
+                g[i] = (byte) (palette[i] >> 8);
+                b[i] = (byte) palette[i];
+            }
+            model = new IndexColorModel(8, size, r, g, b, a);
+        }
+        return model;
+    }
+
+    /**
+     * Maps the specified rows of ARGB pixels to palette indices. Pixels which
+     * haven't been added map to the nearest palette entry.
+     * 
+     * @param pixels
+     *        the non-premultiplied ARGB pixels.
+     * @param offset
+     *        the index of the first pixel of the first row.
+     * @param scanline
+     *        the distance between the first pixels of consecutive rows.
+     * @param width
+     *        the number of pixels in a row.
+     * @param rows
+     *        the number of rows.
+     * @param indices
+     *        receives palette indices, rows <code>width</code> apart.
+     * @param indexOffset
+     *        the index of the first palette index of the first row.
+     */
+    public void map(int[] pixels, int offset, int scanline, int width,
+            int rows, byte[] indices, int indexOffset) {
+        getColorModel();
+
+        if ((width > 0) && (rows > 0)) {
+            ForkJoinPool.commonPool().invoke(
+                    new Lookup(pixels, offset, scanline, width, rows,
+                            indices, indexOffset));
+        }
+    }
+
+    /**
+     * Builds the palette from the histogram.
+     */
+    private void buildPalette() {
+        List<Integer> entries = new ArrayList<Integer>();
+
+        transparentIndex = -1;
+        if (histogram.transparent) {
+            transparentIndex = 0;
+            entries.add(0);
+        }
+
+        int available = colors - entries.size();
+
+        if ((null != histogram.colors) && (histogram.size <= available)) {
+            int[] distinct = new int[histogram.size];
+            int n = 0;
+            for (int color : histogram.colors) {
+                if (0 != color) {
+                    distinct[n++] = color;
+                }
+            }
+            Arrays.sort(distinct);
+
+            exactColors = new int[SET_SIZE];
+            exactIndices = new int[SET_SIZE];
+            for (int color : distinct) {
+                int slot = find(exactColors, color);
+                exactColors[slot] = color;
+                exactIndices[slot] = entries.size();
+                entries.add(color);
+            }
+        } else {
+            for (int color : medianCut(available)) {
+                entries.add(color);
+            }
+        }
+
+        if (entries.isEmpty()) {
+            entries.add(0xff000000);
+        }
+
+        palette = new int[entries.size()];
+        for (int i = 0; i < palette.length; ++i) {
+            palette[i] = entries.get(i);
+        }
+
+        lut = new int[BINS];
+        Arrays.fill(lut, -1);
+        histogram = null;
+    }
+
+    /**
+     * Groups histogram bins into boxes by repeatedly splitting the box with
+     * the most pixels spread over the widest range at the median of its
+     * widest channel.
+     * 
+     * @param count
+     *        the maximum number of boxes.
+     * @return the mean color of each box.
+     */
+    private int[] medianCut(int count) {
+        int[] counts = histogram.counts;
+        int occupied = 0;
+        for (int i = 0; i < BINS; ++i) {
+            if (counts[i] > 0) {
+                ++occupied;
+            }
+        }
+
+        int[] bins = new int[occupied];
+        for (int i = 0, n = 0; i < BINS; ++i) {
+            if (counts[i] > 0) {
+                bins[n++] = i;
+            }
+        }
+
+        List<Box> boxes = new ArrayList<Box>();
+        if (occupied > 0) {
+            boxes.add(new Box(bins, counts, 0, occupied));
+        }
+
+        long[] sortKeys = new long[occupied];
+
+        while (boxes.size() < count) {
+            Box box = null;
+            for (Box candidate : boxes) {
+                if ((candidate.score > 0)
+                        && ((null == box) || (candidate.score > box.score))) {
+                    box = candidate;
+                }
+            }
+
+            if (null == box) {
+                break;
+            }
+
+            // Sort bins of the box by its widest channel.
+            for (int j = box.from; j < box.to; ++j) {
+                sortKeys[j] = ((long) channel(bins[j], box.widest) << 32)
+                        | bins[j];
+            }
+            Arrays.sort(sortKeys, box.from, box.to);
+            for (int j = box.from; j < box.to; ++j) {
+                bins[j] = (int) sortKeys[j];
+            }
+
+            long half = 0;
+            int middle = box.from + 1;
+            for (int j = box.from; j < box.to - 1; ++j) {
+                half += counts[bins[j]];
+                middle = j + 1;
+                if (2 * half >= box.population) {
+                    break;
+                }
+            }
+
+            int to = box.to;
+            boxes.remove(box);
+            boxes.add(new Box(bins, counts, box.from, middle));
+            boxes.add(new Box(bins, counts, middle, to));
+        }
+
+        int[] means = new int[boxes.size()];
+        for (int i = 0; i < means.length; ++i) {
+            means[i] = boxes.get(i).mean(bins, counts);
+        }
+        return means;
+    }
+
+    /**
+     * Returns the palette index of the specified normalized color.
+     * 
+     * @param color
+     *        the color.
+     * @return the palette index.
+     */
+    private byte lookup(int color) {
+        if (0 == color) {
+            return (byte) ((transparentIndex >= 0) ? transparentIndex
+                    : nearest(0));
+        }
+
+        if (null != exactColors) {
+            int slot = find(exactColors, color);
+            if (exactColors[slot] == color) {
+                return (byte) exactIndices[slot];
+            }
+            return (byte) nearest(color);
+        }
+
+        int key = key(color);
+        int index = lut[key];
+
+        // Lookups of the same bin always agree, so racing tasks are harmless.
+        if (index < 0) {
+            index = nearest(value(key));
+            lut[key] = index;
+        }
+        return (byte) index;
+    }
+
+    /**
+     * Returns the index of the palette entry nearest to the specified color,
+     * other than the transparent entry.
+     * 
+     * @param color
+     *        the color.
+     * @return the palette index.
+     */
+    private int nearest(int color) {
+        int best = 0;
+        long bestDistance = Long.MAX_VALUE;
+
+        for (int i = 0; i < palette.length; ++i) {
+            if ((i == transparentIndex) && (0 != color)) {
+                continue;
+            }
+
+            long distance = 0;
+            for (int shift = 0; shift < 32; shift += 8) {
+                int d = ((color >>> shift) & 0xff)
+                        - ((palette[i] >>> shift) & 0xff);
+                distance += d * d;
+            }
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Normalizes the alpha of the specified pixel according to transparency.
+     * 
+     * @param argb
+     *        the pixel.
+     * @return the pixel, or 0 when it is transparent.
+     */
+    private int normalize(int argb) {
+        int alpha = argb >>> 24;
+
+        switch (transparency) {
+        case Transparency.OPAQUE:
+            return argb | 0xff000000;
+        case Transparency.BITMASK:
+            return (alpha < 0x80) ? 0 : argb | 0xff000000;
+        default:
+            return (0 == alpha) ? 0 : argb;
+        }
+    }
+
+    /**
+     * Returns the histogram bin of the specified color.
+     * 
+     * @param argb
+     *        the color.
+     * @return the bin.
+     */
+    private static int key(int argb) {
+        return (ALPHA_KEY[argb >>> 24] << (3 * COLOR_BITS))
+                | (COLOR_KEY[(argb >> 16) & 0xff] << (2 * COLOR_BITS))
+                | (COLOR_KEY[(argb >> 8) & 0xff] << COLOR_BITS)
+                | COLOR_KEY[argb & 0xff];
+    }
+
+    /**
+     * Returns the color the specified histogram bin stands for.
+     * 
+     * @param key
+     *        the bin.
+     * @return the color.
+     */
+    private static int value(int key) {
+        return (channel(key, 0) << 24) | (channel(key, 1) << 16)
+                | (channel(key, 2) << 8) | channel(key, 3);
+    }
+
+    /**
+     * Returns a channel of the color the specified histogram bin stands for.
+     * 
+     * @param key
+     *        the bin.
+     * @param channel
+     *        the channel, 0 for alpha, 1 for red, 2 for green and 3 for blue.
+     * @return the channel value.
+     */
+    private static int channel(int key, int channel) {
+        int mask = (1 << COLOR_BITS) - 1;
+
+        switch (channel) {
+        case 0:
+            return ALPHA_VALUE[key >>> (3 * COLOR_BITS)];
+        case 1:
+            return COLOR_VALUE[(key >> (2 * COLOR_BITS)) & mask];
+        case 2:
+            return COLOR_VALUE[(key >> COLOR_BITS) & mask];
+        default:
+            return COLOR_VALUE[key & mask];
+        }
+    }
+
+    /**
+     * Returns the slot of the specified color in an open addressing set of
+     * colors, either the slot holding it or the empty slot it would go to.
+     * 
+     * @param set
+     *        the set, 0 marking empty slots.
+     * @param color
+     *        the color, not 0.
+     * @return the slot.
+     */
+    private static int find(int[] set, int color) {
+        int mask = set.length - 1;
+        int slot = (color * 0x9e3779b9) >>> 22 & mask;
+
+        while ((0 != set[slot]) && (set[slot] != color)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the table of bins of 8-bit channel values.
+     * 
+     * @param bits
+     *        the number of bits of a bin.
+     * @return the table.
+     */
+    private static int[] keys(int bits) {
+        int max = (1 << bits) - 1;
+        int[] keys = new int[256];
+
+        for (int v = 0; v < 256; ++v) {
+            keys[v] = (v * max + 127) / 255;
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the table of 8-bit channel values bins stand for.
+     * 
+     * @param bits
+     *        the number of bits of a bin.
+     * @return the table.
+     */
+    private static int[] values(int bits) {
+        int max = (1 << bits) - 1;
+        int[] values = new int[max + 1];
+
+        for (int k = 0; k <= max; ++k) {
+            values[k] = (k * 255 + max / 2) / max;
+        }
+        return values;
+    }
+
+}
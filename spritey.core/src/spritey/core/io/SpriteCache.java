@@ -0,0 +1,383 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import spritey.core.Messages;
+
+/**
+ * Persistent cache of decoded sprite images. Each entry holds raw ARGB pixels
+ * of one image file and is mapped into memory when read, so a cached image is
+ * loaded without running its decoder.
+ * <p>
+ * Entries are keyed by the path, modification time and size of the image
+ * file, so changing the file invalidates its entry. Entries are evicted least
+ * recently used first when the cache outgrows its disk budget. The directory
+ * is listed once, when the cache is created; after that the order in which
+ * entries were used is kept in memory.
+ * </p>
+ */
+public class SpriteCache {
+
+    public static final long DEFAULT_BUDGET = 512L * 1024 * 1024;
+
+    private static final int MAGIC = 0x53505243; // "SPRC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final String EXTENSION = ".argb";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File directory;
+    private long budget;
+    private long usage;
+    private LinkedHashMap<File, Long> lengths;
+
+    /**
+     * Creates a new instance of SpriteCache with DEFAULT_BUDGET.
+     * 
+     * @param directory
+     *        the directory to keep entries in, created when it doesn't exist.
+     */
+    public SpriteCache(File directory) {
+        this(directory, DEFAULT_BUDGET);
+    }
+
+    /**
+     * Creates a new instance of SpriteCache.
+     * 
+     * @param directory
+     *        the directory to keep entries in, created when it doesn't exist.
+     * @param budget
+     *        the number of bytes entries may take on disk.
+     * @throws IllegalArgumentException
+     *         when <code>directory</code> is <code>null</code> or
+     *         <code>budget</code> is negative.
+     */
+    public SpriteCache(File directory, long budget) {
+        if (null == directory) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+        this.directory = directory;
+        lengths = new LinkedHashMap<File, Long>(16, 0.75f, true);
+        setBudget(budget);
+
+        directory.mkdirs();
+
+        // Entries are indexed least recently used first. Modification times
+        // are read once, they change while sorting otherwise.
+        File[] entries = listEntries();
+        final long[] lastUsed = new long[entries.length];
+        Integer[] order = new Integer[entries.length];
+
+        for (int i = 0; i < entries.length; ++i) {
+            lastUsed[i] = entries[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i, Integer j) {
+                return (lastUsed[i] < lastUsed[j]) ? -1
+                        : ((lastUsed[i] == lastUsed[j]) ? 0 : 1);
+            }
+        });
+
+        for (Integer i : order) {
+            long length = entries[i].length();
+            lengths.put(entries[i], length);
+            usage += length;
+        }
+        evict();
+    }
+
+    /**
+     * Returns the directory entries are kept in.
+     * 
+     * @return the cache directory.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the number of bytes entries may take on disk.
+     * 
+     * @return the disk budget.
+     */
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the number of bytes entries may take on disk. Entries are evicted
+     * straight away when the cache is over the new budget.
+     * 
+     * @param budget
+     *        the disk budget.
+     * @throws IllegalArgumentException
+     *         when <code>budget</code> is negative.
+     */
+    public synchronized void setBudget(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException(
+                    Messages.SPRITE_CACHE_BUDGET_INVALID);
+        }
+        this.budget = budget;
+        evict();
+    }
+
+    /**
+     * Returns the number of bytes entries currently take on disk.
+     * 
+     * @return the disk usage.
+     */
+    public synchronized long getUsage() {
+        return usage;
+    }
+
+    /**
+     * Reads the cached image of the specified file.
+     * 
+     * @param file
+     *        the image file.
+     * @return the image, or <code>null</code> when file is not cached or its
+     *         entry is out of date or damaged.
+     */
+    public BufferedImage get(File file) {
+        File entry = getEntry(file);
+
+        if (null == entry) {
+            return null;
+        }
+
+        try {
+            FileChannel channel = FileChannel.open(entry.toPath(),
+                    StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                if (size < HEADER_SIZE) {
+                    return null;
+                }
+
+                MappedByteBuffer buffer = channel.map(
+                        FileChannel.MapMode.READ_ONLY, 0, size);
+                IntBuffer ints = buffer.asIntBuffer();
+
+                if ((MAGIC != ints.get()) || (VERSION != ints.get())) {
+                    return null;
+                }
+
+                int width = ints.get();
+                int height = ints.get();
+
+                if ((width <= 0) || (height <= 0)
+                        || (size != HEADER_SIZE + 4L * width * height)) {
+                    return null;
+                }
+
+                BufferedImage image = new BufferedImage(width, height,
+                        BufferedImage.TYPE_INT_ARGB);
+                ints.get(((DataBufferInt) image.getRaster().getDataBuffer())
+                        .getData());
+
+                // Entries are evicted in the order they were last used. The
+                // time is kept on disk for caches created later.
+                entry.setLastModified(System.currentTimeMillis());
+                synchronized (this) {
+                    lengths.get(entry);
+                }
+                return image;
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Caches the specified image of the file. Failing to write the entry is
+     * not an error, the image is simply not cached.
+     * 
+     * @param file
+     *        the image file.
+     * @param image
+     *        the decoded image.
+     * @throws IllegalArgumentException
+     *         when <code>image</code> is <code>null</code>.
+     */
+    public void put(File file, BufferedImage image) {
+        if (null == image) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+
+        File entry = getEntry(file);
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        if ((null == entry) || (0 == width) || (0 == height)) {
+            return;
+        }
+
+        long size = HEADER_SIZE + 4L * width * height;
+        if (size > Integer.MAX_VALUE) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height);
+        buffer.asIntBuffer().put(image.getRGB(0, 0, width, height, null, 0,
+                width));
+        buffer.rewind();
+
+        try {
+            // Write to a temporary file first, so readers never map a partly
+            // written entry.
+            File temp = File.createTempFile("entry", ".tmp", directory);
+            try {
+                FileChannel channel = FileChannel.open(temp.toPath(),
+                        StandardOpenOption.WRITE);
+                try {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                } finally {
+                    channel.close();
+                }
+
+                Files.move(temp.toPath(), entry.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+
+                synchronized (this) {
+                    Long previous = lengths.remove(entry);
+                    usage += size - ((null != previous) ? previous : 0);
+                    lengths.put(entry, size);
+                    evict();
+                }
+            } finally {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            // Do nothing.
+        }
+    }
+
+    /**
+     * Deletes all entries.
+     */
+    public synchronized void clear() {
+        for (File entry : listEntries()) {
+            entry.delete();
+        }
+        lengths.clear();
+        usage = 0;
+    }
+
+    /**
+     * Deletes least recently used entries until the cache fits its budget.
+     * Entries which were already deleted, e.g. by hand, are dropped from the
+     * index all the same.
+     */
+    private synchronized void evict() {
+        Iterator<Entry<File, Long>> it = lengths.entrySet().iterator();
+
+        while ((usage > budget) && it.hasNext()) {
+            Entry<File, Long> entry = it.next();
+
+            entry.getKey().delete();
+            usage -= entry.getValue();
+            it.remove();
+        }
+    }
+
+    /**
+     * Returns all entry files in the cache directory.
+     * 
+     * @return the entry files.
+     */
+    private File[] listEntries() {
+        File[] entries = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(EXTENSION);
+            }
+        });
+        return (null != entries) ? entries : new File[0];
+    }
+
+    /**
+     * Returns the entry file of the specified image file. The entry name is a
+     * digest of the image file's path, modification time and size.
+     * 
+     * @param file
+     *        the image file.
+     * @return the entry file, or <code>null</code> when image file doesn't
+     *         exist.
+     * @throws IllegalArgumentException
+     *         when <code>file</code> is <code>null</code>.
+     */
+    private File getEntry(File file) {
+        if (null == file) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+
+        long modified = file.lastModified();
+        if (0 == modified) {
+            return null;
+        }
+
+        String key = file.getAbsolutePath() + '\0' + modified + '\0'
+                + file.length();
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(
+                    key.getBytes(UTF8));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-1.
+            throw new RuntimeException(e);
+        }
+
+        StringBuilder name = new StringBuilder(digest.length * 2
+                + EXTENSION.length());
+        for (byte b : digest) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16));
+            name.append(Character.forDigit(b & 0xf, 16));
+        }
+        return new File(directory, name.append(EXTENSION).toString());
+    }
+
+}
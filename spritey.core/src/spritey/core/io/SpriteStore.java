@@ -0,0 +1,272 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import spritey.core.Messages;
+
+/**
+ * Off-heap store of sprite pixels. Pixels are kept as non-premultiplied ARGB
+ * ints in direct buffers allocated in large chunks, so millions of pixels
+ * cost the heap a handful of objects and the garbage collector never has to
+ * copy them.
+ * <p>
+ * Each image is stored at an offset returned by {@link #put(BufferedImage)}
+ * and stays there until it is released or the store is cleared. Space of
+ * released images is reused by images stored later, so a store whose sprites
+ * are replaced doesn't keep growing. The amount of memory available is
+ * limited by <code>-XX:MaxDirectMemorySize</code> rather than the heap size.
+ * </p>
+ */
+public class SpriteStore {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private int chunkInts;
+    private List<IntBuffer> chunks;
+    private IntBuffer current;
+    private int currentIndex;
+    private TreeMap<Long, Integer> free;
+    private long size;
+
+    /**
+     * Creates a new instance of SpriteStore with DEFAULT_CHUNK_SIZE.
+     */
+    public SpriteStore() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new instance of SpriteStore.
+     * 
+     * @param chunkSize
+     *        the number of bytes allocated at a time. Images bigger than a
+     *        chunk get a chunk of their own.
+     * @throws IllegalArgumentException
+     *         when <code>chunkSize</code> is less than 4 bytes.
+     */
+    public SpriteStore(int chunkSize) {
+        if (chunkSize < 4) {
+            throw new IllegalArgumentException(
+                    Messages.SPRITE_STORE_CHUNK_SIZE_INVALID);
+        }
+        chunkInts = chunkSize / 4;
+        chunks = new ArrayList<IntBuffer>();
+        free = new TreeMap<Long, Integer>();
+    }
+
+    /**
+     * Copies pixels of the specified image into the store. The image takes
+     * released space when there is enough of it in one place.
+     * 
+     * @param image
+     *        the image to store.
+     * @return the offset of the image, which is passed to
+     *         {@link #getRGB(long, int, Rectangle, int[])} to read it back.
+     * @throws IllegalArgumentException
+     *         when <code>image</code> is <code>null</code>.
+     */
+    public synchronized long put(BufferedImage image) {
+        if (null == image) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long length = (long) width * height;
+
+        long offset;
+
+        if (length > chunkInts) {
+            // Keep filling the current chunk with smaller images.
+            offset = (long) chunks.size() << 32;
+            chunks.add(allocate((int) length));
+        } else {
+            offset = reuse((int) length);
+
+            if (offset < 0) {
+                if ((null == current) || (current.remaining() < length)) {
+                    currentIndex = chunks.size();
+                    current = allocate(chunkInts);
+                    chunks.add(current);
+                }
+                offset = ((long) currentIndex << 32) | current.position();
+                current.position(current.position() + (int) length);
+            }
+        }
+
+        IntBuffer chunk = chunks.get((int) (offset >>> 32)).duplicate();
+        chunk.position((int) offset);
+
+        // Copy a row at a time, so only a row is ever on the heap.
+        int[] row = new int[width];
+        for (int y = 0; y < height; ++y) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            chunk.put(row);
+        }
+
+        size += 4 * length;
+        return offset;
+    }
+
+    /**
+     * Reads pixels of the specified area of a stored image.
+     * 
+     * @param offset
+     *        the offset returned when image was stored.
+     * @param width
+     *        the width of the stored image.
+     * @param area
+     *        the area to read.
+     * @param pixels
+     *        the array to read pixels into, row after row, or
+     *        <code>null</code> to allocate a new one.
+     * @return the array of pixels.
+     */
+    public int[] getRGB(long offset, int width, Rectangle area, int[] pixels) {
+        if (null == pixels) {
+            pixels = new int[area.width * area.height];
+        }
+
+        IntBuffer chunk;
+        synchronized (this) {
+            // Readers get their own position, the contents are shared.
+            chunk = chunks.get((int) (offset >>> 32)).duplicate();
+        }
+
+        int start = (int) offset + area.y * width + area.x;
+        for (int y = 0; y < area.height; ++y) {
+            chunk.position(start + y * width);
+            chunk.get(pixels, y * area.width, area.width);
+        }
+        return pixels;
+    }
+
+    /**
+     * Releases pixels of a stored image, so that its space is reused. The
+     * offset is no longer valid afterwards.
+     * 
+     * @param offset
+     *        the offset returned when image was stored.
+     * @param width
+     *        the width of the stored image.
+     * @param height
+     *        the height of the stored image.
+     */
+    public synchronized void release(long offset, int width, int height) {
+        long length = (long) width * height;
+
+        if (0 == length) {
+            return;
+        }
+
+        size -= 4 * length;
+
+        if (length > chunkInts) {
+            // Images with a chunk of their own give the chunk back.
+            chunks.set((int) (offset >>> 32), null);
+            return;
+        }
+
+        int merged = (int) length;
+
+        // Merge with free blocks right before and right after the image.
+        Entry<Long, Integer> before = free.lowerEntry(offset);
+        if ((null != before)
+                && (before.getKey() + before.getValue() == offset)) {
+            free.remove(before.getKey());
+            offset = before.getKey();
+            merged += before.getValue();
+        }
+
+        Integer after = free.remove(offset + merged);
+        if (null != after) {
+            merged += after;
+        }
+
+        free.put(offset, merged);
+    }
+
+    /**
+     * Returns the number of bytes taken by stored pixels.
+     * 
+     * @return the store size.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Releases all stored pixels. Offsets returned before are no longer
+     * valid.
+     */
+    public synchronized void clear() {
+        chunks.clear();
+        free.clear();
+        current = null;
+        size = 0;
+    }
+
+    /**
+     * Takes room for the specified number of ints out of the first released
+     * block big enough to hold them.
+     * 
+     * @param length
+     *        the number of ints.
+     * @return the offset of the room, or -1 when no released block is big
+     *         enough.
+     */
+    private long reuse(int length) {
+        for (Entry<Long, Integer> block : free.entrySet()) {
+            int remaining = block.getValue() - length;
+
+            if (remaining >= 0) {
+                long offset = block.getKey();
+
+                free.remove(offset);
+                if (remaining > 0) {
+                    free.put(offset + length, remaining);
+                }
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Allocates a direct buffer of the specified number of ints.
+     * 
+     * @param length
+     *        the number of ints.
+     * @return the buffer.
+     */
+    private static IntBuffer allocate(int length) {
+        return ByteBuffer.allocateDirect(4 * length)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+}
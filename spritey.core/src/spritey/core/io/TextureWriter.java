@@ -0,0 +1,509 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import spritey.core.Messages;
+
+/**
+ * Writes block compressed textures a few rows at a time, so a texture never
+ * has to be held in memory as a whole. Pixels are encoded on the CPU in 4x4
+ * blocks of BC1, BC3, ETC2 RGB8 or ETC2 RGBA8 and written into a KTX or DDS
+ * container, which GPUs upload without decoding. DDS only holds BC1 and BC3
+ * textures.
+ * <p>
+ * Blocks are encoded in parallel. Rows are written four at a time, the rows
+ * and columns of blocks overhanging the texture are filled with copies of its
+ * last row and column.
+ * </p>
+ * <p>
+ * A texture may hold a chain of mipmaps, each level half the width and height
+ * of the previous one down to a single pixel. Levels are written one after
+ * another starting with the full size texture, the rows of each level from
+ * top to bottom.
+ * </p>
+ */
+public class TextureWriter {
+
+    /**
+     * Writes textures into a KTX 1.1 container.
+     */
+    public static final int CONTAINER_KTX = 0;
+
+    /**
+     * Writes textures into a DDS container.
+     */
+    public static final int CONTAINER_DDS = 1;
+
+    /**
+     * The width and height of a block of pixels.
+     */
+    public static final int BLOCK_SIZE = BlockEncoder.BLOCK_SIZE;
+
+    // The number of blocks encoded by a single task.
+    private static final int BLOCKS_PER_TASK = 1024;
+
+    private static final byte[] KTX_IDENTIFIER = { (byte) 0xab, 'K', 'T',
+            'X', ' ', '1', '1', (byte) 0xbb, '\r', '\n', 0x1a, '\n' };
+
+    private static final int GL_RGB = 0x1907;
+    private static final int GL_RGBA = 0x1908;
+    private static final int GL_COMPRESSED_RGB_S3TC_DXT1 = 0x83f0;
+    private static final int GL_COMPRESSED_RGBA_S3TC_DXT5 = 0x83f3;
+    private static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+    private static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+
+    private static final int DDS_MAGIC = 0x20534444; // "DDS "
+    private static final int DDS_HEADER_SIZE = 124;
+    private static final int DDS_PIXEL_FORMAT_SIZE = 32;
+    // Caps, height, width, pixel format and linear size are valid.
+    private static final int DDS_FLAGS = 0x1 | 0x2 | 0x4 | 0x1000 | 0x80000;
+    private static final int DDSD_MIPMAPCOUNT = 0x20000;
+    private static final int DDPF_FOURCC = 0x4;
+    private static final int DDSCAPS_COMPLEX = 0x8;
+    private static final int DDSCAPS_TEXTURE = 0x1000;
+    private static final int DDSCAPS_MIPMAP = 0x400000;
+    private static final int FOURCC_DXT1 = 0x31545844; // "DXT1"
+    private static final int FOURCC_DXT5 = 0x35545844; // "DXT5"
+
+    /**
+     * Encodes a run of blocks. Runs longer than a task may encode are split
+     * in two and encoded in parallel.
+     */
+    private class Encode extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] pixels;
+        private final int offset;
+        private final int scanline;
+        private final int rows;
+        private final int from;
+        private final int to;
+        private final byte[] out;
+
+        /**
+         * Creates a new instance of Encode.
+         * 
+         * @param pixels
+         *        the pixels of the rows being written.
+         * @param offset
+         *        the index of the first pixel of the first row.
+         * @param scanline
+         *        the distance between the first pixels of consecutive rows.
+         * @param rows
+         *        the number of rows being written.
+         * @param from
+         *        the index of the first block to encode, inclusive.
+         * @param to
+         *        the index of the last block to encode, exclusive.
+         * @param out
+         *        receives the encoded blocks.
+         */
+        public Encode(int[] pixels, int offset, int scanline, int rows,
+                int from, int to, byte[] out) {
+            this.pixels = pixels;
+            this.offset = offset;
+            this.scanline = scanline;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BLOCKS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Encode(pixels, offset, scanline, rows, from,
+                        middle, out), new Encode(pixels, offset, scanline,
+                        rows, middle, to, out));
+                return;
+            }
+
+            BlockEncoder encoder = new BlockEncoder(format, quality);
+            int[] block = new int[BLOCK_SIZE * BLOCK_SIZE];
+
+            for (int i = from; i < to; ++i) {
+                int left = (i % blocksWide) * BLOCK_SIZE;
+                int top = (i / blocksWide) * BLOCK_SIZE;
+
+                for (int y = 0; y < BLOCK_SIZE; ++y) {
+                    int row = offset + Math.min(top + y, rows - 1) * scanline;
+                    for (int x = 0; x < BLOCK_SIZE; ++x) {
+                        block[y * BLOCK_SIZE + x] = pixels[row
+                                + Math.min(left + x, width - 1)];
+                    }
+                }
+                encoder.encode(block, out, i * blockBytes);
+            }
+        }
+
+    }
+
+    private WritableByteChannel channel;
+    private int container;
+    private int width;
+    private int height;
+    private int format;
+    private boolean quality;
+    private int levels;
+    private int level;
+    private int blocksWide;
+    private int blockBytes;
+    private int rowsWritten;
+
+    /**
+     * Creates a new instance of TextureWriter for a texture without mipmaps
+     * and writes the container header to the specified channel.
+     * 
+     * @param channel
+     *        the channel to write to.
+     * @param width
+     *        the texture width.
+     * @param height
+     *        the texture height.
+     * @param format
+     *        one of the block compressed formats declared in ImageWriter.
+     * @param container
+     *        one of the container constants declared in this class.
+     * @param quality
+     *        <code>true</code> to search for better blocks, which is several
+     *        times slower, <code>false</code> to fit each block once.
+     * @throws IOException
+     *         when problem occurs during writing.
+     * @throws IllegalArgumentException
+     *         when <code>channel</code> is <code>null</code>, texture size
+     *         isn't positive, or the container doesn't hold the format.
+     */
+    public TextureWriter(WritableByteChannel channel, int width, int height,
+            int format, int container, boolean quality) throws IOException {
+        this(channel, width, height, format, container, 1, quality);
+    }
+
+    /**
+     * Creates a new instance of TextureWriter and writes the container header
+     * to the specified channel.
+     * 
+     * @param channel
+     *        the channel to write to.
+     * @param width
+     *        the texture width.
+     * @param height
+     *        the texture height.
+     * @param format
+     *        one of the block compressed formats declared in ImageWriter.
+     * @param container
+     *        one of the container constants declared in this class.
+     * @param levels
+     *        the number of mipmap levels, from 1 for the full size texture
+     *        alone to the full chain returned by
+     *        {@link MipmapGenerator#getLevelCount(int, int)}.
+     * @param quality
+     *        <code>true</code> to search for better blocks, which is several
+     *        times slower, <code>false</code> to fit each block once.
+     * @throws IOException
+     *         when problem occurs during writing.
+     * @throws IllegalArgumentException
+     *         when <code>channel</code> is <code>null</code>, texture size
+     *         isn't positive, the container doesn't hold the format, or the
+     *         number of levels is out of range.
+     */
+    public TextureWriter(WritableByteChannel channel, int width, int height,
+            int format, int container, int levels, boolean quality)
+            throws IOException {
+        if (null == channel) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+        if ((width <= 0) || (height <= 0)) {
+            throw new IllegalArgumentException(
+                    Messages.TEXTURE_WRITER_SIZE_INVALID);
+        }
+        if ((container < CONTAINER_KTX) || (container > CONTAINER_DDS)) {
+            throw new IllegalArgumentException(
+                    Messages.TEXTURE_WRITER_CONTAINER_INVALID);
+        }
+        if (!supports(format, container)) {
+            throw new IllegalArgumentException(
+                    Messages.TEXTURE_WRITER_FORMAT_INVALID);
+        }
+        if ((levels < 1)
+                || (levels > MipmapGenerator.getLevelCount(width, height))) {
+            throw new IllegalArgumentException(
+                    Messages.TEXTURE_WRITER_LEVELS_INVALID);
+        }
+
+        this.channel = channel;
+        this.container = container;
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.quality = quality;
+        this.levels = levels;
+        blocksWide = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        blockBytes = new BlockEncoder(format, quality).getBlockBytes();
+
+        if (CONTAINER_KTX == container) {
+            writeKtxHeader();
+        } else {
+            writeDdsHeader();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the specified container holds textures of
+     * the specified format.
+     * 
+     * @param format
+     *        one of the format constants declared in ImageWriter.
+     * @param container
+     *        one of the container constants declared in this class.
+     * @return <code>true</code> if the format is supported, otherwise
+     *         <code>false</code>.
+     */
+    public static boolean supports(int format, int container) {
+        if (CONTAINER_DDS == container) {
+            return (ImageWriter.FORMAT_BC1 == format)
+                    || (ImageWriter.FORMAT_BC3 == format);
+        }
+        return BlockEncoder.isBlockCompressed(format);
+    }
+
+    /**
+     * Returns the mipmap level rows are written to, 0 being the full size
+     * texture.
+     * 
+     * @return the current level.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the width of the mipmap level rows are written to.
+     * 
+     * @return the width of the current level.
+     */
+    public int getLevelWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the mipmap level rows are written to.
+     * 
+     * @return the height of the current level.
+     */
+    public int getLevelHeight() {
+        return height;
+    }
+
+    /**
+     * Writes the specified rows of ARGB pixels to the current mipmap level.
+     * Rows have to be written a multiple of four at a time, except for the
+     * rows which complete the level. Once a level is complete, rows are
+     * written to the next one.
+     * 
+     * @param pixels
+     *        the non-premultiplied ARGB pixels.
+     * @param offset
+     *        the index of the first pixel of the first row.
+     * @param scanline
+     *        the distance between the first pixels of consecutive rows.
+     * @param rows
+     *        the number of rows to write.
+     * @throws IOException
+     *         when problem occurs during writing.
+     * @throws IllegalArgumentException
+     *         when writing more rows than the texture has, or rows which
+     *         don't make up whole blocks.
+     */
+    public void writeRows(int[] pixels, int offset, int scanline, int rows)
+            throws IOException {
+        if ((rowsWritten == height) && (level + 1 < levels)) {
+            nextLevel();
+        }
+        if (rowsWritten + rows > height) {
+            throw new IllegalArgumentException(
+                    Messages.TEXTURE_WRITER_TOO_MANY_ROWS);
+        }
+        if ((0 != rows % BLOCK_SIZE) && (rowsWritten + rows < height)) {
+            throw new IllegalArgumentException(
+                    Messages.TEXTURE_WRITER_ROWS_NOT_ALIGNED);
+        }
+        if (rows <= 0) {
+            return;
+        }
+
+        int blocks = blocksWide * ((rows + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        byte[] out = new byte[blocks * blockBytes];
+
+        ForkJoinPool.commonPool().invoke(
+                new Encode(pixels, offset, scanline, rows, 0, blocks, out));
+        writeFully(ByteBuffer.wrap(out));
+        rowsWritten += rows;
+    }
+
+    /**
+     * Checks that the whole texture has been written. The channel is left
+     * open.
+     * 
+     * @throws IllegalStateException
+     *         when not all rows of all levels have been written.
+     */
+    public void finish() {
+        if ((rowsWritten < height) || (level + 1 < levels)) {
+            throw new IllegalStateException(
+                    Messages.TEXTURE_WRITER_ROWS_MISSING);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of compressed blocks of the current level.
+     * 
+     * @return the level size.
+     */
+    private int getLevelSize() {
+        return blocksWide * ((height + BLOCK_SIZE - 1) / BLOCK_SIZE)
+                * blockBytes;
+    }
+
+    /**
+     * Moves on to the next mipmap level. KTX containers store the size of
+     * each level in front of it.
+     * 
+     * @throws IOException
+     *         when problem occurs during writing.
+     */
+    private void nextLevel() throws IOException {
+        ++level;
+        width = Math.max(1, width >> 1);
+        height = Math.max(1, height >> 1);
+        blocksWide = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        rowsWritten = 0;
+
+        if (CONTAINER_KTX == container) {
+            ByteBuffer size = ByteBuffer.allocate(4).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            size.putInt(getLevelSize());
+            size.flip();
+            writeFully(size);
+        }
+    }
+
+    /**
+     * Writes the KTX header, followed by the size of the full size texture.
+     * Blocks are a multiple of 4 bytes, so levels need no padding.
+     * 
+     * @throws IOException
+     *         when problem occurs during writing.
+     */
+    private void writeKtxHeader() throws IOException {
+        boolean alpha = (ImageWriter.FORMAT_BC3 == format)
+                || (ImageWriter.FORMAT_ETC2_RGBA == format);
+        int internalFormat;
+
+        switch (format) {
+        case ImageWriter.FORMAT_BC1:
+            internalFormat = GL_COMPRESSED_RGB_S3TC_DXT1;
+            break;
+        case ImageWriter.FORMAT_BC3:
+            internalFormat = GL_COMPRESSED_RGBA_S3TC_DXT5;
+            break;
+        case ImageWriter.FORMAT_ETC2_RGB:
+            internalFormat = GL_COMPRESSED_RGB8_ETC2;
+            break;
+        default:
+            internalFormat = GL_COMPRESSED_RGBA8_ETC2_EAC;
+            break;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(68).order(
+                ByteOrder.LITTLE_ENDIAN);
+        header.put(KTX_IDENTIFIER);
+        header.putInt(0x04030201); // Endianness.
+        header.putInt(0); // Type, none for compressed textures.
+        header.putInt(1); // Type size.
+        header.putInt(0); // Format, none for compressed textures.
+        header.putInt(internalFormat);
+        header.putInt(alpha ? GL_RGBA : GL_RGB);
+        header.putInt(width).putInt(height);
+        header.putInt(0); // Depth.
+        header.putInt(0); // Array elements.
+        header.putInt(1); // Faces.
+        header.putInt(levels); // Mipmap levels.
+        header.putInt(0); // Key and value data.
+        header.putInt(getLevelSize());
+        header.flip();
+        writeFully(header);
+    }
+
+    /**
+     * Writes the DDS header. Textures without mipmaps leave the number of
+     * levels out.
+     * 
+     * @throws IOException
+     *         when problem occurs during writing.
+     */
+    private void writeDdsHeader() throws IOException {
+        boolean mipmaps = levels > 1;
+
+        ByteBuffer header = ByteBuffer.allocate(4 + DDS_HEADER_SIZE).order(
+                ByteOrder.LITTLE_ENDIAN);
+        header.putInt(DDS_MAGIC);
+        header.putInt(DDS_HEADER_SIZE);
+        header.putInt(mipmaps ? DDS_FLAGS | DDSD_MIPMAPCOUNT : DDS_FLAGS);
+        header.putInt(height).putInt(width);
+        header.putInt(getLevelSize()); // Linear size of the top level.
+        header.putInt(0); // Depth.
+        header.putInt(mipmaps ? levels : 0); // Mipmap levels.
+        header.position(header.position() + 11 * 4); // Reserved.
+
+        header.putInt(DDS_PIXEL_FORMAT_SIZE);
+        header.putInt(DDPF_FOURCC);
+        header.putInt((ImageWriter.FORMAT_BC1 == format) ? FOURCC_DXT1
+                : FOURCC_DXT5);
+        header.position(header.position() + 5 * 4); // Bit count and masks.
+
+        header.putInt(mipmaps ? DDSCAPS_COMPLEX | DDSCAPS_TEXTURE
+                | DDSCAPS_MIPMAP : DDSCAPS_TEXTURE);
+        header.position(header.capacity()); // Other caps and reserved.
+        header.flip();
+        writeFully(header);
+    }
+
+    /**
+     * Writes all remaining bytes of the buffer to the channel.
+     * 
+     * @param buffer
+     *        the bytes to write.
+     * @throws IOException
+     *         when problem occurs during writing.
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
@@ -18,8 +18,8 @@
 package spritey.core.io;
 
 import java.awt.Color;
-import java.awt.Dimension;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -50,6 +50,11 @@ public class XmlWriter implements Writer {
     private static final String SHEET = "sheet";
     private static final String SPRITE = "sprite";
     private static final String GROUP = "group";
+    private static final String PAGE = "page";
+
+    // Page attributes are only written when sprites are spread across
+    // multiple pages, so single page sheets look exactly as they used to.
+    private boolean multiplePages;
 
     @Override
     public void write(Sheet sheet, File file) throws FileNotFoundException,
@@ -85,14 +90,34 @@ public class XmlWriter implements Writer {
             Point location = sprite.getLocation();
 
             if (sprite.isVisible()) {
-                Dimension size = sprite.getSize();
                 String name = sprite.getName();
 
-                builder = builder.e(SPRITE).a("name", name)
-                        .a("x", String.valueOf(location.x))
+                builder = builder.e(SPRITE).a("name", name);
+                if (multiplePages) {
+                    builder = builder.a(PAGE, String.valueOf(sprite.getPage()));
+                }
+                builder = builder.a("x", String.valueOf(location.x))
                         .a("y", String.valueOf(location.y))
-                        .a("width", String.valueOf(size.width))
-                        .a("height", String.valueOf(size.height)).up();
+                        .a("width", String.valueOf(sprite.getWidth()))
+                        .a("height", String.valueOf(sprite.getHeight()));
+                // Width and height are always those of the sprite image, a
+                // rotated sprite occupies height by width pixels on the sheet.
+                if (sprite.isRotated()) {
+                    builder = builder.a("rotated", "true");
+                }
+                // Trimmed sprites also carry the size of the whole image and
+                // the position of the trimmed area within it.
+                if (sprite.isTrimmed()) {
+                    Rectangle trim = sprite.getTrim();
+
+                    builder = builder.a("offsetX", String.valueOf(trim.x))
+                            .a("offsetY", String.valueOf(trim.y))
+                            .a("sourceWidth",
+                                    String.valueOf(sprite.getSourceWidth()))
+                            .a("sourceHeight",
+                                    String.valueOf(sprite.getSourceHeight()));
+                }
+                builder = builder.up();
             }
         } else if (node instanceof Group) {
             // Skip group when it doesn't contain at least one visible sprite.
@@ -130,6 +155,18 @@ public class XmlWriter implements Writer {
             .a("description", sheet.getDescription());
         // @formatter:on
 
+        multiplePages = sheet.getPageCount() > 1;
+        if (multiplePages) {
+            builder = builder.a("pages", String.valueOf(sheet.getPageCount()));
+
+            for (int page = 0; page < sheet.getPageCount(); ++page) {
+                builder = builder.e(PAGE).a("index", String.valueOf(page))
+                        .a("width", String.valueOf(sheet.getPageWidth(page)))
+                        .a("height", String.valueOf(sheet.getPageHeight(page)))
+                        .up();
+            }
+        }
+
         for (Node child : sheet.getChildren()) {
             buildNode(builder, child);
         }
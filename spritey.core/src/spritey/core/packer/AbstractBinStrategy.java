@@ -0,0 +1,289 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import static spritey.core.packer.Constraints.isPowerOfTwo;
+import static spritey.core.packer.Constraints.nextPowerOfTwo;
+
+import java.awt.Dimension;
+import java.awt.Point;
+
+import spritey.core.Messages;
+
+/**
+ * This strategy packs sprites into a bin of a fixed size. The bin starts at the
+ * smallest size which could possibly fit all sprites and is grown, obeying the
+ * constraints, until clients manage to place every sprite. The sprite sheet is
+ * then shrunk to the area actually occupied by sprites.
+ */
+public abstract class AbstractBinStrategy extends AbstractStrategy {
+
+    /**
+     * The number of steps it takes the bin to double its size when power of
+     * two is not maintained.
+     */
+    private static final int GROWTH_STEPS = 16;
+
+    protected Constraints constraints;
+
+    /**
+     * Rounds the specified value up to the power of two.
+     * 
+     * @param value
+     *        the value to round.
+     * @return the value rounded to the power of two.
+     */
+    private static int roundUpToPowerOfTwo(int value) {
+        return isPowerOfTwo(value) ? value : nextPowerOfTwo(value);
+    }
+
+    /**
+     * Adjusts the specified size to satisfy the aspect ratio and power of two
+     * constraints. The adjusted size is never bigger than the maximum size.
+     * 
+     * @param width
+     *        the width to adjust.
+     * @param height
+     *        the height to adjust.
+     * @param constraints
+     *        the constraints to satisfy.
+     * @return the adjusted size.
+     */
+    static Dimension adjustSize(int width, int height,
+            Constraints constraints) {
+        if (constraints.maintainAspectRatio()) {
+            float ratio = constraints.getAspectRatio();
+
+            if ((width / ratio) >= height) {
+                height = (int) Math.ceil(width / ratio);
+            } else {
+                width = (int) Math.ceil(height * ratio);
+            }
+        }
+        if (constraints.maintainPowerOfTwo()) {
+            width = roundUpToPowerOfTwo(width);
+            height = roundUpToPowerOfTwo(height);
+        }
+        return new Dimension(Math.min(width, constraints.getMaxWidth()),
+                Math.min(height, constraints.getMaxHeight()));
+    }
+
+    /**
+     * Adjusts the specified size to satisfy the aspect ratio and power of two
+     * constraints. The adjusted size is never bigger than the maximum size.
+     * 
+     * @param width
+     *        the width to adjust.
+     * @param height
+     *        the height to adjust.
+     * @return the adjusted size.
+     */
+    protected Dimension adjustSize(int width, int height) {
+        return adjustSize(width, height, constraints);
+    }
+
+    /**
+     * Returns the first bin size to try. It is the smallest size whose area is
+     * not less than the total area of sprites and which fits the widest and
+     * the tallest sprite.
+     * 
+     * @param layout
+     *        the layout of sprites.
+     * @return the initial bin size.
+     * @throws SizeTooSmallException
+     *         when the widest or the tallest sprite is bigger than the
+     *         maximum size.
+     */
+    protected Dimension initialSize(Layout layout)
+            throws SizeTooSmallException {
+        long area = 0;
+        int minWidth = 1;
+        int minHeight = 1;
+
+        for (int i = 0; i < layout.size(); ++i) {
+            int width = layout.getSpriteWidth(i);
+            int height = layout.getSpriteHeight(i);
+
+            area += (long) width * height;
+            minWidth = Math.max(minWidth, width);
+            minHeight = Math.max(minHeight, height);
+        }
+
+        int maxWidth = constraints.getMaxWidth();
+        int maxHeight = constraints.getMaxHeight();
+
+        if ((minWidth > maxWidth) || (minHeight > maxHeight)) {
+            throw new SizeTooSmallException(
+                    Messages.PACKER_SHEET_SIZE_TOO_SMALL);
+        }
+
+        int width = Math.min(maxWidth,
+                Math.max(minWidth, (int) Math.ceil(Math.sqrt(area))));
+        int height = (int) Math.min(maxHeight,
+                Math.max(minHeight, (area + width - 1) / width));
+
+        return adjustSize(width, height);
+    }
+
+    /**
+     * Returns the next bin size to try. The shorter side is grown, unless it
+     * has already reached the maximum size.
+     * 
+     * @param size
+     *        the size of the bin which failed to fit all sprites.
+     * @return the bigger size, or <code>null</code> when the bin cannot grow
+     *         any further.
+     */
+    protected Dimension growSize(Dimension size) {
+        int maxWidth = constraints.getMaxWidth();
+        int maxHeight = constraints.getMaxHeight();
+
+        if ((size.width >= maxWidth) && (size.height >= maxHeight)) {
+            return null;
+        }
+
+        int width = size.width;
+        int height = size.height;
+        boolean growWidth = (width < maxWidth)
+                && ((width <= height) || (height >= maxHeight));
+
+        if (growWidth) {
+            width += constraints.maintainPowerOfTwo() ? width : Math.max(1,
+                    width / GROWTH_STEPS);
+        } else {
+            height += constraints.maintainPowerOfTwo() ? height : Math.max(1,
+                    height / GROWTH_STEPS);
+        }
+
+        Dimension next = adjustSize(width, height);
+
+        if ((next.width <= size.width) && (next.height <= size.height)) {
+            // Adjusting the size undid the growth, e.g. because the aspect
+            // ratio pins the other side to its maximum. Try the biggest bin
+            // there is.
+            next.setSize(maxWidth, maxHeight);
+        }
+        return next;
+    }
+
+    /**
+     * By default sprites are ordered by their longer side.
+     */
+    @Override
+    protected int naturalSortKey(int width, int height) {
+        return Math.max(width, height);
+    }
+
+    /**
+     * Tries to place all sprites into a bin of the specified size.
+     * 
+     * @param size
+     *        the size of the bin.
+     * @param order
+     *        the order in which sprites are placed.
+     * @param layout
+     *        the layout which receives locations of sprites.
+     * @return <code>true</code> if all sprites fit, otherwise
+     *         <code>false</code>.
+     */
+    private boolean placeAll(Dimension size, int[] order, Layout layout) {
+        reset(size.width, size.height);
+
+        Point location = new Point();
+
+        for (int i : order) {
+            int width = layout.getSpriteWidth(i);
+            int height = layout.getSpriteHeight(i);
+
+            if ((0 == width) || (0 == height)) {
+                // Empty sprites take no space.
+                layout.setLocation(i, 0, 0);
+            } else if (place(width, height, location)) {
+                layout.setLocation(i, location.x, location.y);
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Clients should implement this method to discard all placements and
+     * start over with an empty bin of the specified size.
+     * 
+     * @param width
+     *        the bin width.
+     * @param height
+     *        the bin height.
+     */
+    protected abstract void reset(int width, int height);
+
+    /**
+     * Clients should implement this method to find a location for a rectangle
+     * of the specified size and to mark that area as occupied.
+     * 
+     * @param width
+     *        the rectangle width.
+     * @param height
+     *        the rectangle height.
+     * @param location
+     *        receives the location of the rectangle.
+     * @return <code>true</code> if rectangle was placed, or
+     *         <code>false</code> when there is no room left for it.
+     */
+    protected abstract boolean place(int width, int height, Point location);
+
+    @Override
+    public void arrange(Layout layout, Constraints constraints)
+            throws IllegalArgumentException, SizeTooSmallException {
+        validateNotNull(layout, Messages.NULL);
+        validateNotNull(constraints, Messages.NULL);
+
+        if (0 == layout.size()) {
+            return;
+        }
+
+        this.constraints = constraints;
+
+        int[] order = sortSprites(layout);
+        Dimension size = initialSize(layout);
+
+        while (!placeAll(size, order, layout)) {
+            size = growSize(size);
+            if (null == size) {
+                throw new SizeTooSmallException(
+                        Messages.PACKER_SHEET_SIZE_TOO_SMALL);
+            }
+        }
+
+        int usedWidth = 0;
+        int usedHeight = 0;
+
+        for (int i = 0; i < layout.size(); ++i) {
+            usedWidth = Math.max(usedWidth,
+                    layout.getX(i) + layout.getSpriteWidth(i));
+            usedHeight = Math.max(usedHeight,
+                    layout.getY(i) + layout.getSpriteHeight(i));
+        }
+
+        // Shrink the sheet to the area actually occupied by sprites.
+        size = adjustSize(usedWidth, usedHeight);
+        layout.setSize(size.width, size.height);
+    }
+
+}
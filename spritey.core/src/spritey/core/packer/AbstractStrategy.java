@@ -0,0 +1,196 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import java.util.Arrays;
+
+import spritey.core.Messages;
+import spritey.core.Sheet;
+import spritey.core.Sprite;
+import spritey.core.filter.UniqueSpriteFilter;
+
+/**
+ * Abstract implementation of Strategy. Sprites of the sheet are copied into a
+ * layout, the layout is arranged and then applied back to sprites.
+ * <p>
+ * Subclasses must implement the <code>arrange</code> method.
+ * </p>
+ */
+public abstract class AbstractStrategy implements Strategy {
+
+    /**
+     * Sprites are packed in the order preferred by the strategy.
+     */
+    public static final int NATURAL_ORDER = 0;
+
+    /**
+     * Sprites are packed starting with the widest.
+     */
+    public static final int WIDTH_ORDER = 1;
+
+    /**
+     * Sprites are packed starting with the tallest.
+     */
+    public static final int HEIGHT_ORDER = 2;
+
+    /**
+     * Sprites are packed starting with the biggest area.
+     */
+    public static final int AREA_ORDER = 3;
+
+    /**
+     * Sprites are packed starting with the longest side.
+     */
+    public static final int LONGER_SIDE_ORDER = 4;
+
+    /**
+     * Sprites are packed starting with the biggest perimeter.
+     */
+    public static final int PERIMETER_ORDER = 5;
+
+    private int order;
+
+    /**
+     * Validates that the specified object is not null.
+     * 
+     * @param o
+     *        the object to validate.
+     * @param msg
+     *        the exception message.
+     */
+    protected void validateNotNull(Object o, String msg) {
+        if (null == o) {
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    /**
+     * Returns the order in which sprites are packed.
+     * 
+     * @return one of the order constants declared in this class.
+     */
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Sets the order in which sprites are packed.
+     * 
+     * @param order
+     *        one of the order constants declared in this class.
+     * @throws IllegalArgumentException
+     *         when <code>order</code> is not one of the order constants.
+     */
+    public void setOrder(int order) {
+        if ((order < NATURAL_ORDER) || (order > PERIMETER_ORDER)) {
+            throw new IllegalArgumentException(
+                    Messages.STRATEGY_ORDER_INVALID);
+        }
+        this.order = order;
+    }
+
+    /**
+     * Clients should implement this method to define the key by which sprites
+     * are ordered when <code>NATURAL_ORDER</code> is used.
+     * 
+     * @param width
+     *        the sprite width.
+     * @param height
+     *        the sprite height.
+     * @return the sort key.
+     */
+    protected abstract int naturalSortKey(int width, int height);
+
+    /**
+     * Returns the key by which sprites are ordered before packing. Sprites
+     * with the biggest key are packed first.
+     * 
+     * @param width
+     *        the sprite width.
+     * @param height
+     *        the sprite height.
+     * @return the sort key.
+     */
+    protected int sortKey(int width, int height) {
+        switch (order) {
+        case WIDTH_ORDER:
+            return width;
+        case HEIGHT_ORDER:
+            return height;
+        case AREA_ORDER:
+            return width * height;
+        case LONGER_SIDE_ORDER:
+            return Math.max(width, height);
+        case PERIMETER_ORDER:
+            return width + height;
+        default:
+            return naturalSortKey(width, height);
+        }
+    }
+
+    /**
+     * Returns the order in which sprites of the specified layout are packed.
+     * Sprites are sorted by <code>sortKey()</code> in descending order;
+     * sprites with equal keys keep their original order.
+     * 
+     * @param layout
+     *        the layout to sort.
+     * @return indices of sprites in the order they are packed.
+     */
+    protected int[] sortSprites(Layout layout) {
+        // Each key is packed together with the sprite index into a long, so
+        // sorting doesn't need a comparator nor boxing.
+        long[] keys = new long[layout.size()];
+        for (int i = 0; i < keys.length; ++i) {
+            long key = Integer.MAX_VALUE
+                    - sortKey(layout.getSpriteWidth(i),
+                            layout.getSpriteHeight(i));
+            keys[i] = (key << 32) | i;
+        }
+
+        Arrays.sort(keys);
+
+        int[] order = new int[keys.length];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    @Override
+    public void pack(Sheet sheet, Constraints constraints)
+            throws IllegalArgumentException, SizeTooSmallException {
+        validateNotNull(sheet, Messages.NULL);
+        validateNotNull(constraints, Messages.NULL);
+
+        // Aliases follow their originals, so they aren't packed.
+        Sprite[] sprites = new UniqueSpriteFilter().filter(sheet);
+        if (0 == sprites.length) {
+            return;
+        }
+
+        Layout layout = new Layout(sprites, constraints);
+        arrange(layout, constraints);
+        layout.apply(sheet);
+    }
+
+    @Override
+    public abstract void arrange(Layout layout, Constraints constraints)
+            throws IllegalArgumentException, SizeTooSmallException;
+
+}
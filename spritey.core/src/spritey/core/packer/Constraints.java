@@ -30,16 +30,86 @@ public class Constraints {
     public static final int MAX_MAXIMUM_WIDTH = 8192;
     public static final int MIN_MAXIMUM_HEIGHT = 1;
     public static final int MAX_MAXIMUM_HEIGHT = 8192;
+    public static final int MIN_ALIGNMENT = 1;
+    public static final int MAX_ALIGNMENT = 256;
+    public static final int MIN_PADDING = 0;
+    public static final int MAX_PADDING = 256;
+
+    /**
+     * Packs sprites with the widest first strategy selected by the power of
+     * two and aspect ratio flags.
+     */
+    public static final int WIDEST_FIRST = 0;
+
+    /**
+     * Packs sprites with the maximal rectangles strategy.
+     */
+    public static final int MAX_RECTS = 1;
+
+    /**
+     * Packs sprites with the skyline bottom-left strategy.
+     */
+    public static final int SKYLINE = 2;
+
+    /**
+     * Packs sprites with the guillotine strategy.
+     */
+    public static final int GUILLOTINE = 3;
+
+    /**
+     * Races all strategies in parallel and keeps the smallest sheet.
+     */
+    public static final int AUTO = 4;
+
+    /**
+     * Guillotine fit rule which picks the smallest zone fitting a sprite.
+     */
+    public static final int BEST_AREA_FIT = 0;
+
+    /**
+     * Guillotine fit rule which picks the zone leaving the shortest leftover
+     * side.
+     */
+    public static final int BEST_SHORT_SIDE_FIT = 1;
+
+    /**
+     * Guillotine split rule which cuts a zone along its shorter axis.
+     */
+    public static final int SHORTER_AXIS_SPLIT = 0;
+
+    /**
+     * Guillotine split rule which cuts a zone along the shorter axis of the
+     * area left after a sprite is put into it.
+     */
+    public static final int SHORTER_LEFTOVER_AXIS_SPLIT = 1;
 
     protected static final int DEFAULT_MAXIMUM_WIDTH = MAX_MAXIMUM_WIDTH;
     protected static final int DEFAULT_MAXIMUM_HEIGHT = MAX_MAXIMUM_HEIGHT;
     protected static final boolean DEFAULT_MAINTAIN_POWER_OF_TWO = false;
     protected static final boolean DEFAULT_MAINTAIN_ASPECT_RATIO = false;
+    protected static final boolean DEFAULT_MULTIPLE_PAGES = false;
+    protected static final boolean DEFAULT_ALLOW_ROTATION = false;
+    protected static final boolean DEFAULT_TRIM_TRANSPARENCY = false;
+    protected static final boolean DEFAULT_REMOVE_DUPLICATES = false;
+    protected static final int DEFAULT_ALGORITHM = WIDEST_FIRST;
+    protected static final int DEFAULT_FIT_RULE = BEST_AREA_FIT;
+    protected static final int DEFAULT_SPLIT_RULE = SHORTER_LEFTOVER_AXIS_SPLIT;
+    protected static final int DEFAULT_ALIGNMENT = MIN_ALIGNMENT;
+    protected static final int DEFAULT_PADDING = MIN_PADDING;
 
     private int maxWidth;
     private int maxHeight;
     private boolean maintainPowerOfTwo;
     private boolean maintainAspectRatio;
+    private boolean multiplePages;
+    private boolean rotation;
+    private boolean trimTransparency;
+    private boolean removeDuplicates;
+    private int algorithm;
+    private int fitRule;
+    private int splitRule;
+    private int alignment;
+    private int padding;
 
     /**
      * Creates a new instance of Constraints with default values.
@@ -67,6 +137,44 @@ public class Constraints {
         setMaxHeight(maxHeight);
         setMaintainPowerOfTwo(maintainPowerOfTwo);
         setMaintainAspectRatio(maintainAspectRatio);
+        setMultiplePages(DEFAULT_MULTIPLE_PAGES);
+        setAllowRotation(DEFAULT_ALLOW_ROTATION);
+        setTrimTransparency(DEFAULT_TRIM_TRANSPARENCY);
+        setRemoveDuplicates(DEFAULT_REMOVE_DUPLICATES);
+        setAlgorithm(DEFAULT_ALGORITHM);
+        setFitRule(DEFAULT_FIT_RULE);
+        setSplitRule(DEFAULT_SPLIT_RULE);
+        setAlignment(DEFAULT_ALIGNMENT);
+        setPadding(DEFAULT_PADDING);
+    }
+
+    /**
+     * Creates a new instance of Constraints with values copied from the
+     * specified constraints.
+     * 
+     * @param constraints
+     *        the constraints to copy.
+     * @throws IllegalArgumentException
+     *         when <code>constraints</code> is null.
+     */
+    public Constraints(Constraints constraints) {
+        if (null == constraints) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+
+        maxWidth = constraints.maxWidth;
+        maxHeight = constraints.maxHeight;
+        maintainPowerOfTwo = constraints.maintainPowerOfTwo;
+        maintainAspectRatio = constraints.maintainAspectRatio;
+        multiplePages = constraints.multiplePages;
+        rotation = constraints.rotation;
+        trimTransparency = constraints.trimTransparency;
+        removeDuplicates = constraints.removeDuplicates;
+        algorithm = constraints.algorithm;
+        fitRule = constraints.fitRule;
+        splitRule = constraints.splitRule;
+        alignment = constraints.alignment;
+        padding = constraints.padding;
     }
 
     /**
@@ -203,6 +311,273 @@ public class Constraints {
         }
     }
 
+    /**
+     * Returns <code>true</code> if sprites which don't fit the maximum size
+     * are spilled onto additional pages.
+     * 
+     * @return <code>true</code> if multiple pages are allowed, otherwise
+     *         <code>false</code>.
+     */
+    public boolean allowMultiplePages() {
+        return multiplePages;
+    }
+
+    /**
+     * Sets whether sprites which don't fit the maximum size are spilled onto
+     * additional pages.
+     * 
+     * @param multiplePages
+     *        specifies whether to allow multiple pages.
+     */
+    public void setMultiplePages(final boolean multiplePages) {
+        if (allowMultiplePages() != multiplePages) {
+            this.multiplePages = multiplePages;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if sprites may be rotated by 90 degrees when
+     * that fits them better.
+     * 
+     * @return <code>true</code> if rotation is allowed, otherwise
+     *         <code>false</code>.
+     */
+    public boolean allowRotation() {
+        return rotation;
+    }
+
+    /**
+     * Sets whether sprites may be rotated by 90 degrees when that fits them
+     * better.
+     * 
+     * @param rotation
+     *        specifies whether to allow rotation.
+     */
+    public void setAllowRotation(final boolean rotation) {
+        if (allowRotation() != rotation) {
+            this.rotation = rotation;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if transparent borders are trimmed off
+     * sprites before packing.
+     * 
+     * @return <code>true</code> if sprites are trimmed, otherwise
+     *         <code>false</code>.
+     */
+    public boolean trimTransparency() {
+        return trimTransparency;
+    }
+
+    /**
+     * Sets whether transparent borders are trimmed off sprites before
+     * packing.
+     * 
+     * @param trim
+     *        specifies whether to trim sprites.
+     */
+    public void setTrimTransparency(final boolean trim) {
+        if (trimTransparency() != trim) {
+            trimTransparency = trim;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if pixel-identical sprites are packed only
+     * once and share the same location.
+     * 
+     * @return <code>true</code> if duplicates are removed, otherwise
+     *         <code>false</code>.
+     */
+    public boolean removeDuplicates() {
+        return removeDuplicates;
+    }
+
+    /**
+     * Sets whether pixel-identical sprites are packed only once and share the
+     * same location.
+     * 
+     * @param remove
+     *        specifies whether to remove duplicates.
+     */
+    public void setRemoveDuplicates(final boolean remove) {
+        if (removeDuplicates() != remove) {
+            removeDuplicates = remove;
+        }
+    }
+
+    /**
+     * Returns the packing algorithm, one of the algorithm constants declared
+     * in this class.
+     * 
+     * @return the packing algorithm.
+     */
+    public int getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Sets the packing algorithm.
+     * 
+     * @param algorithm
+     *        one of the algorithm constants declared in this class.
+     * @throws IllegalArgumentException
+     *         when <code>algorithm</code> is not one of the algorithm
+     *         constants.
+     */
+    public void setAlgorithm(final int algorithm) {
+        if (getAlgorithm() != algorithm) {
+            if ((algorithm < WIDEST_FIRST) || (algorithm > AUTO)) {
+                throw new IllegalArgumentException(
+                        Messages.CONSTRAINTS_ALGORITHM_INVALID);
+            }
+            this.algorithm = algorithm;
+        }
+    }
+
+    /**
+     * Returns the rule used by the guillotine strategy to pick a zone for a
+     * sprite.
+     * 
+     * @return one of the fit rule constants declared in this class.
+     */
+    public int getFitRule() {
+        return fitRule;
+    }
+
+    /**
+     * Sets the rule used by the guillotine strategy to pick a zone for a
+     * sprite.
+     * 
+     * @param fitRule
+     *        one of the fit rule constants declared in this class.
+     * @throws IllegalArgumentException
+     *         when <code>fitRule</code> is not one of the fit rule constants.
+     */
+    public void setFitRule(final int fitRule) {
+        if (getFitRule() != fitRule) {
+            if ((fitRule < BEST_AREA_FIT) || (fitRule > BEST_SHORT_SIDE_FIT)) {
+                throw new IllegalArgumentException(
+                        Messages.CONSTRAINTS_FIT_RULE_INVALID);
+            }
+            this.fitRule = fitRule;
+        }
+    }
+
+    /**
+     * Returns the rule used by the guillotine strategy to split a zone.
+     * 
+     * @return one of the split rule constants declared in this class.
+     */
+    public int getSplitRule() {
+        return splitRule;
+    }
+
+    /**
+     * Sets the rule used by the guillotine strategy to split a zone.
+     * 
+     * @param splitRule
+     *        one of the split rule constants declared in this class.
+     * @throws IllegalArgumentException
+     *         when <code>splitRule</code> is not one of the split rule
+     *         constants.
+     */
+    public void setSplitRule(final int splitRule) {
+        if (getSplitRule() != splitRule) {
+            if ((splitRule < SHORTER_AXIS_SPLIT)
+                    || (splitRule > SHORTER_LEFTOVER_AXIS_SPLIT)) {
+                throw new IllegalArgumentException(
+                        Messages.CONSTRAINTS_SPLIT_RULE_INVALID);
+            }
+            this.splitRule = splitRule;
+        }
+    }
+
+    /**
+     * Returns the number of pixels sprite locations are multiples of.
+     * 
+     * @return the alignment.
+     */
+    public int getAlignment() {
+        return alignment;
+    }
+
+    /**
+     * Sets the number of pixels sprite locations are multiples of. Sprites
+     * are packed as if their width and height were rounded up to multiples
+     * of the alignment, e.g. 4 keeps every sprite in whole blocks of block
+     * compressed textures.
+     * 
+     * @param alignment
+     *        the alignment.
+     * @throws IllegalArgumentException
+     *         when <code>alignment</code> is not a power of two within the
+     *         MIN_ALIGNMENT and MAX_ALIGNMENT range.
+     */
+    public void setAlignment(final int alignment) {
+        if (getAlignment() != alignment) {
+            if ((alignment < MIN_ALIGNMENT) || (alignment > MAX_ALIGNMENT)
+                    || !isPowerOfTwo(alignment)) {
+                throw new IllegalArgumentException(Messages.format(
+                        Messages.CONSTRAINTS_ALIGNMENT_INVALID, MIN_ALIGNMENT,
+                        MAX_ALIGNMENT));
+            }
+            this.alignment = alignment;
+        }
+    }
+
+    /**
+     * Returns the number of transparent pixels kept between sprites.
+     * 
+     * @return the padding.
+     */
+    public int getPadding() {
+        return padding;
+    }
+
+    /**
+     * Sets the number of transparent pixels kept between sprites. Sprites are
+     * packed as if they were wider and taller by the padding, so that
+     * filtering a sheet, e.g. downsampling it into mipmaps, doesn't bleed
+     * pixels of one sprite into another. The space a sprite takes includes
+     * its padding rounded up to the alignment, so a sprite aligned to 2^n
+     * pixels with at least 2^n pixels of padding stays apart from its
+     * neighbours in the first n levels of mipmaps.
+     * 
+     * @param padding
+     *        the padding.
+     * @throws IllegalArgumentException
+     *         when <code>padding</code> is not within the MIN_PADDING and
+     *         MAX_PADDING range.
+     */
+    public void setPadding(final int padding) {
+        if (getPadding() != padding) {
+            if ((padding < MIN_PADDING) || (padding > MAX_PADDING)) {
+                throw new IllegalArgumentException(Messages.format(
+                        Messages.CONSTRAINTS_PADDING_INVALID, MIN_PADDING,
+                        MAX_PADDING));
+            }
+            this.padding = padding;
+        }
+    }
+
+    /**
+     * Returns the space the specified sprite width or height takes, which is
+     * the size and the padding rounded up to a multiple of the alignment.
+     * Empty sprites take no space.
+     * 
+     * @param size
+     *        the width or height to round.
+     * @return the aligned size.
+     */
+    public int align(final int size) {
+        if (0 == size) {
+            return 0;
+        }
+        return (size + padding + alignment - 1) & -alignment;
+    }
+
     /**
      * Returns the aspect ratio <code>maxWidth:maxHeight</code>.
      * 
@@ -212,6 +587,45 @@ public class Constraints {
         return ((float) maxWidth) / maxHeight;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Constraints)) {
+            return false;
+        }
+
+        Constraints other = (Constraints) obj;
+        return (maxWidth == other.maxWidth) && (maxHeight == other.maxHeight)
+                && (maintainPowerOfTwo == other.maintainPowerOfTwo)
+                && (maintainAspectRatio == other.maintainAspectRatio)
+                && (multiplePages == other.multiplePages)
+                && (rotation == other.rotation)
+                && (trimTransparency == other.trimTransparency)
+                && (removeDuplicates == other.removeDuplicates)
+                && (algorithm == other.algorithm)
+                && (fitRule == other.fitRule) && (splitRule == other.splitRule)
+                && (alignment == other.alignment)
+                && (padding == other.padding);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 31 * maxWidth + maxHeight;
+        hash = 31 * hash + algorithm;
+        hash = 31 * hash + fitRule;
+        hash = 31 * hash + splitRule;
+        hash = 31 * hash + alignment;
+        hash = 31 * hash + padding;
+        hash = 31 * hash + (maintainPowerOfTwo ? 1 : 0);
+        hash = 31 * hash + (maintainAspectRatio ? 1 : 0);
+        hash = 31 * hash + (multiplePages ? 1 : 0);
+        hash = 31 * hash + (rotation ? 1 : 0);
+        hash = 31 * hash + (trimTransparency ? 1 : 0);
+        return 31 * hash + (removeDuplicates ? 1 : 0);
+    }
+
     /**
      * Returns <code>true</code> if specified value is power of two.
      * 
@@ -0,0 +1,471 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import spritey.core.FileSprite;
+import spritey.core.Messages;
+import spritey.core.Sprite;
+
+/**
+ * Finds pixel-identical sprites and makes all but the first of them aliases,
+ * so that only one copy is packed and drawn. The trimmed area of every sprite
+ * is hashed in parallel into a 64-bit value; sprites with equal hashes are
+ * then compared pixel by pixel, so hash collisions never alias different
+ * sprites. Pixels of sprites kept in a store are read from the store a row at
+ * a time, rather than from a heap copy of the whole image.
+ * <p>
+ * Deduplicator remembers the hash of every sprite it has hashed, and which
+ * sprites it has found identical, so that deduplicating the same sprites
+ * again reads only pixels of sprites whose pixels or trim have changed.
+ * </p>
+ */
+public class Deduplicator {
+
+    /**
+     * The number of sprites below which sprites are hashed sequentially.
+     */
+    private static final int THRESHOLD = 16;
+
+    /**
+     * The number of bytes a pixel takes in an uncompressed 32-bit image.
+     */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    // Primes of the 64-bit xxHash.
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+
+    private Map<Sprite, Hashed> hashed;
+
+    /**
+     * The hash computed from a version of sprite pixels and a trim.
+     */
+    private static class Hashed {
+
+        private final SpriteVersion version;
+        private final Rectangle trim;
+        private final long hash;
+        private Hashed original;
+
+        /**
+         * Creates a new instance of Hashed.
+         * 
+         * @param version
+         *        the version of sprite pixels.
+         * @param trim
+         *        the trimmed area of the sprite.
+         * @param hash
+         *        the hash computed from them.
+         */
+        public Hashed(SpriteVersion version, Rectangle trim, long hash) {
+            this.version = version;
+            this.trim = trim;
+            this.hash = hash;
+        }
+
+    }
+
+    /**
+     * Hashes a range of sprites, splitting the range in halves until it is
+     * small enough.
+     */
+    private class Hash extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Sprite[] sprites;
+        private final long[] hashes;
+        private final int from;
+        private final int to;
+
+        /**
+         * Creates a new instance of Hash.
+         * 
+         * @param sprites
+         *        the sprites to hash.
+         * @param hashes
+         *        receives the hash of every sprite.
+         * @param from
+         *        the index of the first sprite, inclusive.
+         * @param to
+         *        the index of the last sprite, exclusive.
+         */
+        public Hash(Sprite[] sprites, long[] hashes, int from, int to) {
+            this.sprites = sprites;
+            this.hashes = hashes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; ++i) {
+                    hashes[i] = hash(sprites[i]);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Hash(sprites, hashes, from, middle), new Hash(
+                        sprites, hashes, middle, to));
+            }
+        }
+
+    }
+
+    /**
+     * Reads rows of the trimmed area of a sprite as non-premultiplied ARGB
+     * pixels.
+     */
+    private static class Rows {
+
+        private final FileSprite stored;
+        private final BufferedImage image;
+        private final Rectangle area;
+        private final int top;
+
+        /**
+         * Creates a new instance of Rows.
+         * 
+         * @param sprite
+         *        the readable sprite to read.
+         * @throws IOException
+         *         when the file of a file sprite can no longer be decoded.
+         */
+        public Rows(Sprite sprite) throws IOException {
+            if (isStored(sprite)) {
+                stored = (FileSprite) sprite;
+                image = null;
+            } else if (sprite instanceof FileSprite) {
+                stored = null;
+                image = ((FileSprite) sprite).decode();
+            } else {
+                stored = null;
+                image = (BufferedImage) sprite.getImage();
+            }
+
+            Rectangle trim = sprite.getTrim();
+            area = new Rectangle(trim.x, trim.y, trim.width, 1);
+            top = trim.y;
+        }
+
+        /**
+         * Reads a row of the trimmed area. Stored pixels are copied straight
+         * from the store, ARGB images are read straight from their int
+         * arrays.
+         * 
+         * @param y
+         *        the row within the trimmed area.
+         * @param row
+         *        receives the pixels.
+         * @throws IOException
+         *         when the file of a stored sprite can no longer be decoded.
+         */
+        public void read(int y, int[] row) throws IOException {
+            if (null != stored) {
+                area.y = top + y;
+                stored.getRGB(area, row);
+                return;
+            }
+
+            Raster raster = image.getRaster();
+
+            if ((BufferedImage.TYPE_INT_ARGB == image.getType())
+                    && (raster.getDataBuffer() instanceof DataBufferInt)
+                    && (raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+                DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+                int stride = ((SinglePixelPackedSampleModel) raster
+                        .getSampleModel()).getScanlineStride();
+                int offset = buffer.getOffset()
+                        + (top + y - raster.getSampleModelTranslateY())
+                        * stride + area.x - raster.getSampleModelTranslateX();
+
+                System.arraycopy(buffer.getData(), offset, row, 0, row.length);
+            } else {
+                image.getRGB(area.x, top + y, row.length, 1, row, 0,
+                        row.length);
+            }
+        }
+
+    }
+
+    /**
+     * Returns <code>true</code> if pixels of the specified sprite are kept in
+     * a store.
+     * 
+     * @param sprite
+     *        the sprite to check.
+     * @return <code>true</code> if sprite is stored, otherwise
+     *         <code>false</code>.
+     */
+    private static boolean isStored(Sprite sprite) {
+        return (sprite instanceof FileSprite)
+                && (null != ((FileSprite) sprite).getStore());
+    }
+
+    /**
+     * Returns <code>true</code> if pixels of the specified sprite can be read
+     * without drawing its image. File sprites are readable without decoding
+     * their file, reading them fails when file can't be decoded.
+     * 
+     * @param sprite
+     *        the sprite to check.
+     * @return <code>true</code> if sprite is readable, otherwise
+     *         <code>false</code>.
+     */
+    private static boolean isReadable(Sprite sprite) {
+        return (sprite instanceof FileSprite)
+                || (sprite.getImage() instanceof BufferedImage);
+    }
+
+    /**
+     * Creates a new instance of Deduplicator.
+     */
+    public Deduplicator() {
+        hashed = new WeakHashMap<Sprite, Hashed>();
+    }
+
+    /**
+     * Makes pixel-identical sprites aliases of the first one of them. Sprites
+     * which were aliases before are made unique first. Only sprites whose
+     * pixels or trim have changed since they were last deduplicated are
+     * hashed, and only sprites not already found identical are compared.
+     * 
+     * @param sprites
+     *        the sprites to deduplicate.
+     * @return the number of bytes saved, counting 4 bytes per pixel of every
+     *         alias.
+     * @throws IllegalArgumentException
+     *         when <code>sprites</code> is null.
+     */
+    public long deduplicate(Sprite[] sprites) {
+        restore(sprites);
+
+        Hashed[] entries = new Hashed[sprites.length];
+        SpriteVersion[] versions = new SpriteVersion[sprites.length];
+        int[] stale = new int[sprites.length];
+        int count = 0;
+
+        for (int i = 0; i < sprites.length; ++i) {
+            versions[i] = new SpriteVersion(sprites[i]);
+
+            Hashed entry = hashed.get(sprites[i]);
+            if ((null != entry) && entry.version.equals(versions[i])
+                    && entry.trim.equals(sprites[i].getTrim())) {
+                entries[i] = entry;
+            } else {
+                stale[count++] = i;
+            }
+        }
+
+        Sprite[] pending = new Sprite[count];
+        for (int i = 0; i < count; ++i) {
+            pending[i] = sprites[stale[i]];
+        }
+
+        long[] hashes = new long[count];
+        ForkJoinPool.commonPool().invoke(new Hash(pending, hashes, 0, count));
+
+        for (int i = 0; i < count; ++i) {
+            Hashed entry = new Hashed(versions[stale[i]], pending[i].getTrim(),
+                    hashes[i]);
+            entries[stale[i]] = entry;
+            hashed.put(pending[i], entry);
+        }
+
+        Map<Long, List<Integer>> originals = new HashMap<Long, List<Integer>>();
+        long bytes = 0;
+
+        for (int i = 0; i < sprites.length; ++i) {
+            Sprite sprite = sprites[i];
+            if (!isReadable(sprite)) {
+                continue;
+            }
+
+            List<Integer> candidates = originals.get(entries[i].hash);
+            if (null == candidates) {
+                candidates = new ArrayList<Integer>(1);
+                originals.put(entries[i].hash, candidates);
+            }
+
+            Integer original = null;
+            for (Integer candidate : candidates) {
+                // Entries are replaced when pixels change, so sprites found
+                // identical before still are while both entries are current.
+                if ((entries[i].original == entries[candidate])
+                        || equal(sprites[candidate], sprite)) {
+                    original = candidate;
+                    break;
+                }
+            }
+
+            if (null == original) {
+                candidates.add(i);
+                entries[i].original = null;
+            } else {
+                sprite.setOriginal(sprites[original]);
+                entries[i].original = entries[original];
+                bytes += (long) BYTES_PER_PIXEL * sprite.getArea();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Makes the specified sprites unique again.
+     * 
+     * @param sprites
+     *        the sprites to restore.
+     * @throws IllegalArgumentException
+     *         when <code>sprites</code> is null.
+     */
+    public void restore(Sprite[] sprites) {
+        if (null == sprites) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+
+        for (Sprite sprite : sprites) {
+            if (sprite.isAlias()) {
+                sprite.setOriginal(null);
+            }
+        }
+    }
+
+    /**
+     * Computes the 64-bit hash of the trimmed area of the specified sprite.
+     * The hash follows the round and avalanche steps of xxHash, fed with
+     * pairs of ARGB pixels. Sprites whose image can't be read hash to zero.
+     * 
+     * @param sprite
+     *        the sprite to hash.
+     * @return the hash.
+     */
+    public long hash(Sprite sprite) {
+        if (!isReadable(sprite)) {
+            return 0;
+        }
+
+        Rectangle trim = sprite.getTrim();
+        int[] row = new int[trim.width];
+
+        long hash = PRIME3 + ((long) trim.width << 32 | trim.height);
+
+        Rows rows;
+        try {
+            rows = new Rows(sprite);
+        } catch (IOException e) {
+            return 0;
+        }
+
+        for (int y = 0; y < trim.height; ++y) {
+            try {
+                rows.read(y, row);
+            } catch (IOException e) {
+                return 0;
+            }
+
+            int x = 0;
+            for (; x + 1 < row.length; x += 2) {
+                hash = round(hash, ((long) row[x] << 32)
+                        | (row[x + 1] & 0xffffffffL));
+            }
+            if (x < row.length) {
+                hash = round(hash, row[x] & 0xffffffffL);
+            }
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    /**
+     * Mixes a lane into the hash.
+     * 
+     * @param hash
+     *        the hash so far.
+     * @param lane
+     *        the lane to mix in.
+     * @return the new hash.
+     */
+    private long round(long hash, long lane) {
+        hash += lane * PRIME2;
+        hash = Long.rotateLeft(hash, 31);
+        return hash * PRIME1;
+    }
+
+    /**
+     * Returns <code>true</code> if trimmed areas of the specified sprites are
+     * pixel-identical. Sprites whose file can no longer be decoded are never
+     * identical.
+     * 
+     * @param s1
+     *        the first readable sprite.
+     * @param s2
+     *        the second readable sprite.
+     * @return <code>true</code> if sprites are identical, otherwise
+     *         <code>false</code>.
+     */
+    public boolean equal(Sprite s1, Sprite s2) {
+        Rectangle trim1 = s1.getTrim();
+        Rectangle trim2 = s2.getTrim();
+
+        if (!trim1.getSize().equals(trim2.getSize())) {
+            return false;
+        }
+
+        int[] row1 = new int[trim1.width];
+        int[] row2 = new int[trim2.width];
+
+        try {
+            Rows rows1 = new Rows(s1);
+            Rows rows2 = new Rows(s2);
+
+            for (int y = 0; y < trim1.height; ++y) {
+                rows1.read(y, row1);
+                rows2.read(y, row2);
+
+                if (!Arrays.equals(row1, row2)) {
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+}
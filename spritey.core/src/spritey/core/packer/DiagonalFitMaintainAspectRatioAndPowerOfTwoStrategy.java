@@ -18,7 +18,6 @@
 package spritey.core.packer;
 
 import java.awt.Dimension;
-import java.awt.Rectangle;
 
 import spritey.core.Messages;
 
@@ -33,61 +32,71 @@ public class DiagonalFitMaintainAspectRatioAndPowerOfTwoStrategy extends
         DiagonalFitMaintainPowerOfTwoStrategy {
 
     @Override
-    protected Dimension expandBy(Rectangle rect) throws SizeTooSmallException {
-        Dimension maxSize = constraints.getMaxSize();
+    protected void expandBy(int width, int height, Dimension expansion)
+            throws SizeTooSmallException {
+        int maxWidth = constraints.getMaxWidth();
+        int maxHeight = constraints.getMaxHeight();
         float ratio = constraints.getAspectRatio();
 
-        for (Rectangle zone : freeZones) {
-            boolean canExpandWidth = (zone.x + zone.width == currentSize.width);
-            boolean canExpandHeight = (zone.y + zone.height == currentSize.height);
+        for (int i = 0; i < freeZones.size(); ++i) {
+            int zoneWidth = freeZones.getWidth(i);
+            int zoneHeight = freeZones.getHeight(i);
+            int zoneRight = freeZones.getX(i) + zoneWidth;
+            int zoneBottom = freeZones.getY(i) + zoneHeight;
+            boolean canExpandWidth = (zoneRight == currentSize.width);
+            boolean canExpandHeight = (zoneBottom == currentSize.height);
 
-            if ((zone.height >= rect.height) && canExpandWidth) {
+            if ((zoneHeight >= height) && canExpandWidth) {
                 // Zone height is big enough for rectangle and zone width can be
                 // expanded.
-                int expandWidthBy = adjustWidth(rect.width - zone.width);
+                int expandWidthBy = adjustWidth(width - zoneWidth);
 
-                if (currentSize.width + expandWidthBy <= maxSize.width) {
+                if (currentSize.width + expandWidthBy <= maxWidth) {
                     // Adjust height to maintain aspect ratio.
                     int expandHeightBy = (int) (expandWidthBy / ratio);
 
-                    if ((currentSize.height + expandHeightBy <= maxSize.height)) {
-                        return new Dimension(expandWidthBy, expandHeightBy);
+                    if ((currentSize.height + expandHeightBy <= maxHeight)) {
+                        expansion.setSize(expandWidthBy, expandHeightBy);
+                        return;
                     }
                 }
-            } else if ((zone.width >= rect.width) && canExpandHeight) {
-                int expandHeightBy = adjustHeight(rect.height - zone.height);
+            } else if ((zoneWidth >= width) && canExpandHeight) {
+                int expandHeightBy = adjustHeight(height - zoneHeight);
 
-                if (currentSize.height + expandHeightBy <= maxSize.height) {
+                if (currentSize.height + expandHeightBy <= maxHeight) {
                     int expandWidthBy = (int) (expandHeightBy * ratio);
 
-                    if ((currentSize.width + expandWidthBy <= maxSize.width)) {
-                        return new Dimension(expandWidthBy, expandHeightBy);
+                    if ((currentSize.width + expandWidthBy <= maxWidth)) {
+                        expansion.setSize(expandWidthBy, expandHeightBy);
+                        return;
                     }
                 }
             } else if (canExpandWidth && canExpandHeight) {
                 // Zone width and height are not big enough to fit rectangle but
                 // both dimensions can be expanded.
-                int expandWidthBy = adjustWidth(rect.width - zone.width);
-                int expandHeightBy = adjustHeight(rect.height - zone.height);
+                int expandWidthBy = adjustWidth(width - zoneWidth);
+                int expandHeightBy = adjustHeight(height - zoneHeight);
 
                 // For optimisation sake check if expanding width and height
                 // without maintaining aspect ratio doesn't break maximum size
                 // constraints.
-                if ((currentSize.width + expandWidthBy <= maxSize.width)
-                        && (currentSize.height + expandHeightBy <= maxSize.height)) {
+                if ((currentSize.width + expandWidthBy <= maxWidth)
+                        && (currentSize.height + expandHeightBy <= maxHeight)) {
 
                     if ((expandWidthBy / ratio) >= expandHeightBy) {
                         // Height has to be adjusted to maintain aspect ratio.
                         expandHeightBy = (int) (expandWidthBy / ratio);
 
-                        if (currentSize.height + expandHeightBy <= maxSize.height) {
-                            return new Dimension(expandWidthBy, expandHeightBy);
+                        if (currentSize.height + expandHeightBy <= maxHeight) {
+                            expansion.setSize(expandWidthBy, expandHeightBy);
+                            return;
                         }
                     } else {
                         expandWidthBy = (int) (expandHeightBy * ratio);
 
-                        if ((currentSize.width + expandWidthBy <= maxSize.width)) {
-                            return new Dimension(expandWidthBy, expandHeightBy);
+                        if ((currentSize.width + expandWidthBy <= maxWidth)) {
+                            expansion.setSize(expandWidthBy, expandHeightBy);
+                            return;
                         }
                     }
                 }
@@ -97,27 +106,29 @@ public class DiagonalFitMaintainAspectRatioAndPowerOfTwoStrategy extends
         // of zones can be expanded or expanding a zone will break the maximum
         // size constraint. Try to expand either width or height, it could be
         // the case that there are no expandable zones.
-        int expandWidthBy = adjustWidth(rect.width);
-        int expandHeightBy = adjustHeight(rect.height);
+        int expandWidthBy = adjustWidth(width);
+        int expandHeightBy = adjustHeight(height);
 
-        if ((currentSize.width + expandWidthBy <= maxSize.width)
+        if ((currentSize.width + expandWidthBy <= maxWidth)
                 && ((expandWidthBy / ratio) >= expandHeightBy)) {
             // Adjust height to maintain aspect ratio.
             expandHeightBy = (int) (expandWidthBy / ratio);
 
-            if (currentSize.height + expandHeightBy <= maxSize.height) {
-                return new Dimension(expandWidthBy, expandHeightBy);
+            if (currentSize.height + expandHeightBy <= maxHeight) {
+                expansion.setSize(expandWidthBy, expandHeightBy);
+                return;
             }
             // Rectangle width fits but adjusted height breaks the maximum size
             // constraint.
             throw new SizeTooSmallException(
                     Messages.PACKER_SHEET_SIZE_TOO_SMALL);
-        } else if ((currentSize.height + expandHeightBy <= maxSize.height)
+        } else if ((currentSize.height + expandHeightBy <= maxHeight)
                 && ((expandHeightBy * ratio) >= expandWidthBy)) {
             expandWidthBy = (int) (expandHeightBy * ratio);
 
-            if ((currentSize.width + expandWidthBy <= maxSize.width)) {
-                return new Dimension(expandWidthBy, expandHeightBy);
+            if ((currentSize.width + expandWidthBy <= maxWidth)) {
+                expansion.setSize(expandWidthBy, expandHeightBy);
+                return;
             }
             throw new SizeTooSmallException(
                     Messages.PACKER_SHEET_SIZE_TOO_SMALL);
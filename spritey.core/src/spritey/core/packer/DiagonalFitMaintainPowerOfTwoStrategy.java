@@ -21,10 +21,6 @@ import static spritey.core.packer.Constraints.isPowerOfTwo;
 import static spritey.core.packer.Constraints.nextPowerOfTwo;
 
 import java.awt.Dimension;
-import java.awt.Rectangle;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 import spritey.core.Messages;
 
@@ -69,20 +65,11 @@ public class DiagonalFitMaintainPowerOfTwoStrategy extends WidestFirstStrategy {
     }
 
     /**
-     * Sorts the specified list of rectangles by the closest to the top-left
-     * corner.
-     * 
-     * @param zones
-     *        the list of zones to sort.
+     * Orders zones by the closest to the top-left corner.
      */
     @Override
-    protected void sortZones(List<Rectangle> zones) {
-        Collections.sort(zones, new Comparator<Rectangle>() {
-            @Override
-            public int compare(Rectangle r1, Rectangle r2) {
-                return (r1.x + r1.y) - (r2.x + r2.y);
-            }
-        });
+    protected int zoneSortKey(int x, int y, int width, int height) {
+        return x + y;
     }
 
     /**
@@ -90,43 +77,56 @@ public class DiagonalFitMaintainPowerOfTwoStrategy extends WidestFirstStrategy {
      * expanded either width or height is expanded. Size is then adjusted to
      * power of two.
      * 
-     * @param rect
-     *        the rectangle that has to fit after the expansion.
+     * @param width
+     *        the width of the rectangle that has to fit after the expansion.
+     * @param height
+     *        the height of the rectangle that has to fit after the expansion.
+     * @param expansion
+     *        receives the width and height to expand by.
      * @throws SizeTooSmallException
      *         when sheet size is too small to fit all sprites.
      */
     @Override
-    protected Dimension expandBy(Rectangle rect) throws SizeTooSmallException {
-        Dimension maxSize = constraints.getMaxSize();
-
-        for (Rectangle zone : freeZones) {
-            boolean canExpandWidth = (zone.x + zone.width == currentSize.width);
-            boolean canExpandHeight = (zone.y + zone.height == currentSize.height);
-
-            if ((zone.height >= rect.height) && canExpandWidth) {
+    protected void expandBy(int width, int height, Dimension expansion)
+            throws SizeTooSmallException {
+        int maxWidth = constraints.getMaxWidth();
+        int maxHeight = constraints.getMaxHeight();
+
+        for (int i = 0; i < freeZones.size(); ++i) {
+            int zoneWidth = freeZones.getWidth(i);
+            int zoneHeight = freeZones.getHeight(i);
+            int zoneRight = freeZones.getX(i) + zoneWidth;
+            int zoneBottom = freeZones.getY(i) + zoneHeight;
+            boolean canExpandWidth = (zoneRight == currentSize.width);
+            boolean canExpandHeight = (zoneBottom == currentSize.height);
+
+            if ((zoneHeight >= height) && canExpandWidth) {
                 // Zone height is big enough for rectangle and zone width can be
                 // expanded, but will sheet size be still within maximum size
                 // constraints?
-                int expandWidthBy = adjustWidth(rect.width - zone.width);
+                int expandWidthBy = adjustWidth(width - zoneWidth);
 
-                if (currentSize.width + expandWidthBy <= maxSize.width) {
-                    return new Dimension(expandWidthBy, 0);
+                if (currentSize.width + expandWidthBy <= maxWidth) {
+                    expansion.setSize(expandWidthBy, 0);
+                    return;
                 }
-            } else if ((zone.width >= rect.width) && canExpandHeight) {
-                int expandHeightBy = adjustHeight(rect.height - zone.height);
+            } else if ((zoneWidth >= width) && canExpandHeight) {
+                int expandHeightBy = adjustHeight(height - zoneHeight);
 
-                if (currentSize.height + expandHeightBy <= maxSize.height) {
-                    return new Dimension(0, expandHeightBy);
+                if (currentSize.height + expandHeightBy <= maxHeight) {
+                    expansion.setSize(0, expandHeightBy);
+                    return;
                 }
             } else if (canExpandWidth && canExpandHeight) {
                 // Zone width and height are not big enough for rectangle but
                 // both dimensions can be expanded.
-                int expandWidthBy = adjustWidth(rect.width - zone.width);
-                int expandHeightBy = adjustHeight(rect.height - zone.height);
+                int expandWidthBy = adjustWidth(width - zoneWidth);
+                int expandHeightBy = adjustHeight(height - zoneHeight);
 
-                if ((currentSize.width + expandWidthBy <= maxSize.width)
-                        && (currentSize.height + expandHeightBy <= maxSize.height)) {
-                    return new Dimension(expandWidthBy, expandHeightBy);
+                if ((currentSize.width + expandWidthBy <= maxWidth)
+                        && (currentSize.height + expandHeightBy <= maxHeight)) {
+                    expansion.setSize(expandWidthBy, expandHeightBy);
+                    return;
                 }
             }
         }
@@ -136,33 +136,35 @@ public class DiagonalFitMaintainPowerOfTwoStrategy extends WidestFirstStrategy {
         // height, what ever is the smallest, one last time. It could be the
         // case that we almost reached the maximum size of one dimension and the
         // other dimension does not have any expandable zones.
-        boolean canExpandWidth = (currentSize.width + adjustWidth(rect.width) <= maxSize.width);
+        boolean canExpandWidth = (currentSize.width
+                + adjustWidth(width) <= maxWidth);
         boolean canExpandHeight = (currentSize.height
-                + adjustHeight(rect.height) <= maxSize.height);
+                + adjustHeight(height) <= maxHeight);
         boolean shouldExpandHeight = currentSize.width > currentSize.height;
 
         if ((canExpandHeight && shouldExpandHeight)
                 || (canExpandHeight && !canExpandWidth)) {
-            if (rect.width > currentSize.width) {
-                int expandWidthBy = adjustWidth(rect.width - currentSize.width);
+            if (width > currentSize.width) {
+                int expandWidthBy = adjustWidth(width - currentSize.width);
 
-                if (currentSize.width + expandWidthBy <= maxSize.width) {
-                    return new Dimension(expandWidthBy,
-                            adjustHeight(rect.height));
+                if (currentSize.width + expandWidthBy <= maxWidth) {
+                    expansion.setSize(expandWidthBy, adjustHeight(height));
+                    return;
                 }
                 // Rectangle width is bigger than maximum width.
                 throw new SizeTooSmallException(
                         Messages.PACKER_SHEET_SIZE_TOO_SMALL);
             }
-            return new Dimension(0, adjustHeight(rect.height));
+            expansion.setSize(0, adjustHeight(height));
+            return;
         } else if (canExpandWidth) {
-            if (rect.height > currentSize.height) {
-                int expandHeightBy = adjustHeight(rect.height
+            if (height > currentSize.height) {
+                int expandHeightBy = adjustHeight(height
                         - currentSize.height);
 
-                if (currentSize.height + expandHeightBy <= maxSize.height) {
-                    return new Dimension(adjustWidth(rect.width),
-                            expandHeightBy);
+                if (currentSize.height + expandHeightBy <= maxHeight) {
+                    expansion.setSize(adjustWidth(width), expandHeightBy);
+                    return;
                 }
                 // Rectangle height is bigger than maximum height. We have to
                 // terminate packing as not all sprites can fit into sprite
@@ -170,7 +172,8 @@ public class DiagonalFitMaintainPowerOfTwoStrategy extends WidestFirstStrategy {
                 throw new SizeTooSmallException(
                         Messages.PACKER_SHEET_SIZE_TOO_SMALL);
             }
-            return new Dimension(adjustWidth(rect.width), 0);
+            expansion.setSize(adjustWidth(width), 0);
+            return;
         }
         throw new SizeTooSmallException(Messages.PACKER_SHEET_SIZE_TOO_SMALL);
     }
@@ -0,0 +1,497 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A spatial index over free zones of a bin. Zones are bucketed into a uniform
+ * grid of cells, so only zones around a rectangle are visited when that
+ * rectangle becomes occupied. Zones are also kept sorted by the highest and
+ * left most position, both all together and in buckets of zones whose width
+ * and height round down to the same powers of two. The highest zone which
+ * fits a rectangle is looked up only in buckets of zones big enough, and in
+ * buckets of zones bigger in both directions the first zone always fits.
+ * <p>
+ * The index keeps zones maximal, i.e. zones completely covered by other zones
+ * are never stored.
+ * </p>
+ */
+public class FreeZoneIndex {
+
+    /**
+     * The maximum number of cells along each axis.
+     */
+    private static final int MAX_CELLS = 64;
+
+    /**
+     * The number of size classes along each axis, one per power of two.
+     */
+    private static final int SIZE_CLASSES = 32;
+
+    private static final Comparator<Rectangle> HIGHEST_FIRST = new Comparator<Rectangle>() {
+        @Override
+        public int compare(Rectangle r1, Rectangle r2) {
+            int difference = r1.y - r2.y;
+
+            if (0 == difference) {
+                difference = r1.x - r2.x;
+            }
+            if (0 == difference) {
+                difference = r1.width - r2.width;
+            }
+            if (0 == difference) {
+                difference = r1.height - r2.height;
+            }
+            return difference;
+        }
+    };
+
+    private static final Comparator<Rectangle> BIGGEST_FIRST = new Comparator<Rectangle>() {
+        @Override
+        public int compare(Rectangle r1, Rectangle r2) {
+            long a1 = (long) r1.width * r1.height;
+            long a2 = (long) r2.width * r2.height;
+            return (a1 < a2) ? 1 : ((a1 > a2) ? -1 : 0);
+        }
+    };
+
+    private final int cellWidth;
+    private final int cellHeight;
+    private final int columns;
+    private final int rows;
+    private final List<List<Rectangle>> cells;
+    private final TreeSet<Rectangle> zones;
+    private final List<TreeSet<Rectangle>> buckets;
+    private int maxWidthClass;
+    private int maxHeightClass;
+
+    /**
+     * Creates a new instance of FreeZoneIndex covering a bin of the specified
+     * size. The index is initially empty.
+     * 
+     * @param width
+     *        the bin width.
+     * @param height
+     *        the bin height.
+     */
+    public FreeZoneIndex(int width, int height) {
+        cellWidth = Math.max(1, (width + MAX_CELLS - 1) / MAX_CELLS);
+        cellHeight = Math.max(1, (height + MAX_CELLS - 1) / MAX_CELLS);
+        columns = Math.max(1, (width + cellWidth - 1) / cellWidth);
+        rows = Math.max(1, (height + cellHeight - 1) / cellHeight);
+
+        cells = new ArrayList<List<Rectangle>>(columns * rows);
+        for (int i = 0; i < columns * rows; ++i) {
+            cells.add(null);
+        }
+        zones = new TreeSet<Rectangle>(HIGHEST_FIRST);
+
+        buckets = new ArrayList<TreeSet<Rectangle>>(SIZE_CLASSES
+                * SIZE_CLASSES);
+        for (int i = 0; i < SIZE_CLASSES * SIZE_CLASSES; ++i) {
+            buckets.add(null);
+        }
+    }
+
+    /**
+     * Returns the size class of the specified length, i.e. the exponent of
+     * the greatest power of two not greater than the length.
+     * 
+     * @param length
+     *        the length.
+     * @return the size class, 0 for lengths less than 2.
+     */
+    private static int sizeClass(int length) {
+        return Math.max(0, 31 - Integer.numberOfLeadingZeros(length));
+    }
+
+    /**
+     * Returns the bucket of zones of the specified size classes, creating it
+     * on demand.
+     * 
+     * @param widthClass
+     *        the size class of zone width.
+     * @param heightClass
+     *        the size class of zone height.
+     * @return a mutable set of zones sorted by the highest and left most
+     *         position.
+     */
+    private TreeSet<Rectangle> bucket(int widthClass, int heightClass) {
+        int i = widthClass * SIZE_CLASSES + heightClass;
+        TreeSet<Rectangle> bucket = buckets.get(i);
+
+        if (null == bucket) {
+            bucket = new TreeSet<Rectangle>(HIGHEST_FIRST);
+            buckets.set(i, bucket);
+        }
+        return bucket;
+    }
+
+    /**
+     * Returns the column of the cell containing the specified x coordinate.
+     * 
+     * @param x
+     *        the x coordinate.
+     * @return the column.
+     */
+    private int column(int x) {
+        return Math.max(0, Math.min(columns - 1, x / cellWidth));
+    }
+
+    /**
+     * Returns the row of the cell containing the specified y coordinate.
+     * 
+     * @param y
+     *        the y coordinate.
+     * @return the row.
+     */
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, y / cellHeight));
+    }
+
+    /**
+     * Returns the cell at the specified column and row, creating it on demand.
+     * 
+     * @param column
+     *        the cell column.
+     * @param row
+     *        the cell row.
+     * @return a mutable list of zones overlapping the cell.
+     */
+    private List<Rectangle> cell(int column, int row) {
+        int i = row * columns + column;
+        List<Rectangle> cell = cells.get(i);
+
+        if (null == cell) {
+            cell = new ArrayList<Rectangle>();
+            cells.set(i, cell);
+        }
+        return cell;
+    }
+
+    /**
+     * Returns <code>true</code> if the specified rectangle is completely
+     * covered by one of the zones. Any such zone contains the top-left corner
+     * of the rectangle, therefore, only one cell has to be visited.
+     * 
+     * @param rect
+     *        the rectangle to check.
+     * @return <code>true</code> if rectangle is covered.
+     */
+    private boolean isCovered(Rectangle rect) {
+        for (Rectangle zone : cell(column(rect.x), row(rect.y))) {
+            if (zone.contains(rect)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the specified zone to the index, unless it is completely covered by
+     * one of the zones already in the index.
+     * 
+     * @param zone
+     *        the zone to add.
+     * @return <code>true</code> if zone was added.
+     */
+    public boolean add(Rectangle zone) {
+        if (zone.isEmpty() || isCovered(zone)) {
+            return false;
+        }
+
+        zones.add(zone);
+
+        int widthClass = sizeClass(zone.width);
+        int heightClass = sizeClass(zone.height);
+        bucket(widthClass, heightClass).add(zone);
+        maxWidthClass = Math.max(maxWidthClass, widthClass);
+        maxHeightClass = Math.max(maxHeightClass, heightClass);
+
+        int right = column(zone.x + zone.width - 1);
+        int bottom = row(zone.y + zone.height - 1);
+
+        for (int r = row(zone.y); r <= bottom; ++r) {
+            for (int c = column(zone.x); c <= right; ++c) {
+                cell(c, r).add(zone);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the specified zone to the index and removes zones which become
+     * completely covered by it.
+     * 
+     * @param zone
+     *        the zone to add.
+     * @return <code>true</code> if zone was added.
+     */
+    private boolean addMaximal(Rectangle zone) {
+        if (zone.isEmpty() || isCovered(zone)) {
+            return false;
+        }
+
+        for (Rectangle covered : intersecting(zone)) {
+            if (zone.contains(covered)) {
+                remove(covered);
+            }
+        }
+        return add(zone);
+    }
+
+    /**
+     * Removes the specified zone from the index.
+     * 
+     * @param zone
+     *        the zone to remove.
+     */
+    private void remove(Rectangle zone) {
+        zones.remove(zone);
+        bucket(sizeClass(zone.width), sizeClass(zone.height)).remove(zone);
+
+        int right = column(zone.x + zone.width - 1);
+        int bottom = row(zone.y + zone.height - 1);
+
+        for (int r = row(zone.y); r <= bottom; ++r) {
+            for (int c = column(zone.x); c <= right; ++c) {
+                cell(c, r).remove(zone);
+            }
+        }
+    }
+
+    /**
+     * Returns zones intersecting the specified rectangle.
+     * 
+     * @param rect
+     *        the rectangle to test against.
+     * @return a list of intersecting zones.
+     */
+    public List<Rectangle> intersecting(Rectangle rect) {
+        List<Rectangle> out = new ArrayList<Rectangle>();
+
+        int right = column(rect.x + rect.width - 1);
+        int bottom = row(rect.y + rect.height - 1);
+
+        for (int r = row(rect.y); r <= bottom; ++r) {
+            for (int c = column(rect.x); c <= right; ++c) {
+                for (Rectangle zone : cell(c, r)) {
+                    // A zone spanning several cells is reported only by the
+                    // cell holding the top-left corner of the intersection.
+                    if (zone.intersects(rect)
+                            && (column(Math.max(zone.x, rect.x)) == c)
+                            && (row(Math.max(zone.y, rect.y)) == r)) {
+                        out.add(zone);
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Returns the highest and left most zone which can fit a rectangle of the
+     * specified size.
+     * 
+     * @param width
+     *        the rectangle width.
+     * @param height
+     *        the rectangle height.
+     * @return the zone, or <code>null</code> if none of zones can fit the
+     *         rectangle.
+     */
+    public Rectangle findHighest(int width, int height) {
+        Rectangle best = null;
+
+        for (int w = sizeClass(width); w <= maxWidthClass; ++w) {
+            for (int h = sizeClass(height); h <= maxHeightClass; ++h) {
+                TreeSet<Rectangle> bucket = buckets.get(w * SIZE_CLASSES + h);
+
+                if (null == bucket) {
+                    continue;
+                }
+
+                // Zones further in the bucket are never higher than the best
+                // zone found so far.
+                for (Rectangle zone : bucket) {
+                    if ((null != best)
+                            && (HIGHEST_FIRST.compare(zone, best) >= 0)) {
+                        break;
+                    }
+                    if ((zone.width >= width) && (zone.height >= height)) {
+                        best = zone;
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the zone which can fit a rectangle of the specified size and
+     * grows the used area the least. Among zones which don't grow the used
+     * area, the highest and left most zone is returned.
+     * 
+     * @param width
+     *        the rectangle width.
+     * @param height
+     *        the rectangle height.
+     * @param usedWidth
+     *        the width of the area used so far.
+     * @param usedHeight
+     *        the height of the area used so far.
+     * @return the zone, or <code>null</code> if none of zones can fit the
+     *         rectangle.
+     */
+    public Rectangle findLeastGrowth(int width, int height, int usedWidth,
+            int usedHeight) {
+        long usedArea = (long) usedWidth * usedHeight;
+        long bestArea = Long.MAX_VALUE;
+        Rectangle best = null;
+
+        for (Rectangle zone : zones) {
+            if ((zone.width >= width) && (zone.height >= height)) {
+                long area = (long) Math.max(usedWidth, zone.x + width)
+                        * Math.max(usedHeight, zone.y + height);
+
+                if (area < bestArea) {
+                    bestArea = area;
+                    best = zone;
+
+                    if (area <= usedArea) {
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Marks the specified rectangle as occupied. Each zone intersecting the
+     * rectangle is replaced with up to four maximal zones surrounding the
+     * rectangle. Zones far from the rectangle are not visited.
+     * 
+     * @param rect
+     *        the occupied rectangle.
+     */
+    public void occupy(Rectangle rect) {
+        List<Rectangle> pieces = new ArrayList<Rectangle>();
+
+        for (Rectangle zone : intersecting(rect)) {
+            remove(zone);
+
+            int left = Math.max(zone.x, rect.x);
+            int top = Math.max(zone.y, rect.y);
+            int right = Math.min(zone.x + zone.width, rect.x + rect.width);
+            int bottom = Math.min(zone.y + zone.height, rect.y + rect.height);
+
+            if (left > zone.x) {
+                pieces.add(new Rectangle(zone.x, zone.y, left - zone.x,
+                        zone.height));
+            }
+            if (right < zone.x + zone.width) {
+                pieces.add(new Rectangle(right, zone.y, zone.x + zone.width
+                        - right, zone.height));
+            }
+            if (top > zone.y) {
+                pieces.add(new Rectangle(zone.x, zone.y, zone.width, top
+                        - zone.y));
+            }
+            if (bottom < zone.y + zone.height) {
+                pieces.add(new Rectangle(zone.x, bottom, zone.width, zone.y
+                        + zone.height - bottom));
+            }
+        }
+
+        // Adding bigger pieces first ensures that pieces covered by other
+        // pieces are dropped.
+        Collections.sort(pieces, BIGGEST_FIRST);
+
+        for (Rectangle piece : pieces) {
+            add(piece);
+        }
+    }
+
+    /**
+     * Marks the specified rectangle as free again. The rectangle is merged
+     * with zones it touches along their common span, and so are the merged
+     * zones, until zones are maximal again.
+     * 
+     * @param rect
+     *        the rectangle to free.
+     */
+    public void release(Rectangle rect) {
+        Deque<Rectangle> pieces = new ArrayDeque<Rectangle>();
+        pieces.add(rect);
+
+        while (!pieces.isEmpty()) {
+            Rectangle piece = pieces.poll();
+
+            if (!addMaximal(piece)) {
+                continue;
+            }
+
+            int pieceRight = piece.x + piece.width;
+            int pieceBottom = piece.y + piece.height;
+            Rectangle border = new Rectangle(piece.x - 1, piece.y - 1,
+                    piece.width + 2, piece.height + 2);
+
+            for (Rectangle zone : intersecting(border)) {
+                int zoneRight = zone.x + zone.width;
+                int zoneBottom = zone.y + zone.height;
+                int left = Math.max(zone.x, piece.x);
+                int top = Math.max(zone.y, piece.y);
+                int right = Math.min(zoneRight, pieceRight);
+                int bottom = Math.min(zoneBottom, pieceBottom);
+
+                // Both zones are free, so is their union over the rows, or the
+                // columns, they have in common.
+                if ((top < bottom) && (left <= right)) {
+                    int x = Math.min(zone.x, piece.x);
+                    pieces.add(new Rectangle(x, top, Math.max(zoneRight,
+                            pieceRight) - x, bottom - top));
+                }
+                if ((left < right) && (top <= bottom)) {
+                    int y = Math.min(zone.y, piece.y);
+                    pieces.add(new Rectangle(left, y, right - left, Math.max(
+                            zoneBottom, pieceBottom) - y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of zones in the index.
+     * 
+     * @return the number of zones.
+     */
+    public int size() {
+        return zones.size();
+    }
+
+}
@@ -0,0 +1,242 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import java.awt.Point;
+
+/**
+ * This strategy implements the guillotine algorithm. Free area of the bin is
+ * described by a set of disjoint zones. Each sprite is put into the top-left
+ * corner of the zone chosen by the fit rule, and that zone alone is split by a
+ * single straight cut into at most two smaller zones. Zones never have to be
+ * subtracted from each other, so the number of zones grows at most by one per
+ * sprite.
+ */
+public class GuillotineStrategy extends AbstractBinStrategy {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int fitRule;
+    private final int splitRule;
+
+    // Zone i is the rectangle (zoneX[i], zoneY[i], zoneWidth[i],
+    // zoneHeight[i]).
+    private int[] zoneX;
+    private int[] zoneY;
+    private int[] zoneWidth;
+    private int[] zoneHeight;
+    private int count;
+
+    /**
+     * Creates a new instance of GuillotineStrategy which uses best area fit
+     * and splits zones along the shorter leftover axis.
+     */
+    public GuillotineStrategy() {
+        this(Constraints.BEST_AREA_FIT,
+                Constraints.SHORTER_LEFTOVER_AXIS_SPLIT);
+    }
+
+    /**
+     * Creates a new instance of GuillotineStrategy.
+     * 
+     * @param fitRule
+     *        one of the fit rule constants declared in Constraints.
+     * @param splitRule
+     *        one of the split rule constants declared in Constraints.
+     */
+    public GuillotineStrategy(int fitRule, int splitRule) {
+        this.fitRule = fitRule;
+        this.splitRule = splitRule;
+    }
+
+    /**
+     * Orders sprites by area, so big sprites get the pick of zones.
+     */
+    @Override
+    protected int naturalSortKey(int width, int height) {
+        return width * height;
+    }
+
+    @Override
+    protected void reset(int width, int height) {
+        if (null == zoneX) {
+            zoneX = new int[INITIAL_CAPACITY];
+            zoneY = new int[INITIAL_CAPACITY];
+            zoneWidth = new int[INITIAL_CAPACITY];
+            zoneHeight = new int[INITIAL_CAPACITY];
+        }
+
+        count = 0;
+        addZone(0, 0, width, height);
+    }
+
+    /**
+     * Adds a zone. Empty zones are ignored.
+     * 
+     * @param x
+     *        the x coordinate of the zone.
+     * @param y
+     *        the y coordinate of the zone.
+     * @param width
+     *        the zone width.
+     * @param height
+     *        the zone height.
+     */
+    private void addZone(int x, int y, int width, int height) {
+        if ((width <= 0) || (height <= 0)) {
+            return;
+        }
+
+        if (count == zoneX.length) {
+            int length = count * 2;
+
+            int[] copy = new int[length];
+            System.arraycopy(zoneX, 0, copy, 0, count);
+            zoneX = copy;
+
+            copy = new int[length];
+            System.arraycopy(zoneY, 0, copy, 0, count);
+            zoneY = copy;
+
+            copy = new int[length];
+            System.arraycopy(zoneWidth, 0, copy, 0, count);
+            zoneWidth = copy;
+
+            copy = new int[length];
+            System.arraycopy(zoneHeight, 0, copy, 0, count);
+            zoneHeight = copy;
+        }
+
+        zoneX[count] = x;
+        zoneY[count] = y;
+        zoneWidth[count] = width;
+        zoneHeight[count] = height;
+        ++count;
+    }
+
+    /**
+     * Removes the specified zone by moving the last zone into its place.
+     * 
+     * @param zone
+     *        the index of the zone.
+     */
+    private void removeZone(int zone) {
+        --count;
+        zoneX[zone] = zoneX[count];
+        zoneY[zone] = zoneY[count];
+        zoneWidth[zone] = zoneWidth[count];
+        zoneHeight[zone] = zoneHeight[count];
+    }
+
+    /**
+     * Returns how well a rectangle of the specified size fits the specified
+     * zone according to the fit rule. The smaller the score the better. The
+     * primary score is stored in the high half of the returned value and the
+     * tie breaker in the low half.
+     * 
+     * @param zone
+     *        the index of the zone.
+     * @param width
+     *        the rectangle width.
+     * @param height
+     *        the rectangle height.
+     * @return the fit score.
+     */
+    private long score(int zone, int width, int height) {
+        int leftoverWidth = zoneWidth[zone] - width;
+        int leftoverHeight = zoneHeight[zone] - height;
+        int shortSide = Math.min(leftoverWidth, leftoverHeight);
+        int longSide = Math.max(leftoverWidth, leftoverHeight);
+
+        if (Constraints.BEST_SHORT_SIDE_FIT == fitRule) {
+            return ((long) shortSide << 32) | longSide;
+        }
+
+        long area = (long) zoneWidth[zone] * zoneHeight[zone];
+        return (area << 32) | shortSide;
+    }
+
+    /**
+     * Splits the remainder of the specified zone, after a rectangle of the
+     * specified size is put into its top-left corner, into two zones.
+     * 
+     * @param zone
+     *        the index of the zone.
+     * @param width
+     *        the rectangle width.
+     * @param height
+     *        the rectangle height.
+     */
+    private void split(int zone, int width, int height) {
+        int x = zoneX[zone];
+        int y = zoneY[zone];
+        int leftoverWidth = zoneWidth[zone] - width;
+        int leftoverHeight = zoneHeight[zone] - height;
+
+        boolean cutHorizontally;
+        if (Constraints.SHORTER_AXIS_SPLIT == splitRule) {
+            cutHorizontally = zoneWidth[zone] <= zoneHeight[zone];
+        } else {
+            cutHorizontally = leftoverWidth <= leftoverHeight;
+        }
+
+        removeZone(zone);
+
+        if (cutHorizontally) {
+            // The zone below the rectangle spans the whole zone width.
+            addZone(x + width, y, leftoverWidth, height);
+            addZone(x, y + height, width + leftoverWidth, leftoverHeight);
+        } else {
+            // The zone to the right of the rectangle spans the whole zone
+            // height.
+            addZone(x + width, y, leftoverWidth, height + leftoverHeight);
+            addZone(x, y + height, width, leftoverHeight);
+        }
+    }
+
+    @Override
+    protected boolean place(int width, int height, Point location) {
+        int bestZone = -1;
+        long bestScore = Long.MAX_VALUE;
+
+        for (int i = 0; i < count; ++i) {
+            if ((zoneWidth[i] >= width) && (zoneHeight[i] >= height)) {
+                long score = score(i, width, height);
+
+                if (score < bestScore) {
+                    bestZone = i;
+                    bestScore = score;
+
+                    if ((zoneWidth[i] == width) && (zoneHeight[i] == height)) {
+                        // Nothing fits better than a perfect fit.
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (bestZone < 0) {
+            return false;
+        }
+
+        location.setLocation(zoneX[bestZone], zoneY[bestZone]);
+        split(bestZone, width, height);
+        return true;
+    }
+
+}
@@ -18,10 +18,6 @@
 package spritey.core.packer;
 
 import java.awt.Dimension;
-import java.awt.Rectangle;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 import spritey.core.Messages;
 
@@ -33,68 +29,69 @@ import spritey.core.Messages;
 public class HighestFitStrategy extends WidestFirstStrategy {
 
     /**
-     * Sorts the specified list of rectangles by the highest and left most
-     * position.
-     * 
-     * @param zones
-     *        the list to sort.
+     * Orders zones by the highest and left most position. Coordinates never
+     * exceed the maximum sheet size, so the x coordinate fits in the lower 16
+     * bits of the key.
      */
     @Override
-    protected void sortZones(List<Rectangle> zones) {
-        Collections.sort(zones, new Comparator<Rectangle>() {
-            @Override
-            public int compare(Rectangle r1, Rectangle r2) {
-                int difference = r1.y - r2.y;
-
-                if (0 == difference) {
-                    difference = r1.x - r2.x;
-                }
-                return difference;
-            }
-        });
+    protected int zoneSortKey(int x, int y, int width, int height) {
+        return (y << 16) | x;
     }
 
     /**
      * Tries to expand the highest zone which can fit the specified rectangle.
      * When no zones can be expanded either width or height is expanded.
      * 
-     * @param rect
-     *        the rectangle that has to fit after the expansion.
+     * @param width
+     *        the width of the rectangle that has to fit after the expansion.
+     * @param height
+     *        the height of the rectangle that has to fit after the expansion.
+     * @param expansion
+     *        receives the width and height to expand by.
      * @throws SizeTooSmallException
      *         when sheet size is too small to fit all sprites.
      */
     @Override
-    protected Dimension expandBy(Rectangle rect) throws SizeTooSmallException {
-        Dimension maxSize = constraints.getMaxSize();
+    protected void expandBy(int width, int height, Dimension expansion)
+            throws SizeTooSmallException {
+        int maxWidth = constraints.getMaxWidth();
+        int maxHeight = constraints.getMaxHeight();
 
-        for (Rectangle zone : freeZones) {
-            boolean canExpandWidth = (zone.x + zone.width == currentSize.width);
-            boolean canExpandHeight = (zone.y + zone.height == currentSize.height);
+        for (int i = 0; i < freeZones.size(); ++i) {
+            int zoneWidth = freeZones.getWidth(i);
+            int zoneHeight = freeZones.getHeight(i);
+            int zoneRight = freeZones.getX(i) + zoneWidth;
+            int zoneBottom = freeZones.getY(i) + zoneHeight;
+            boolean canExpandWidth = (zoneRight == currentSize.width);
+            boolean canExpandHeight = (zoneBottom == currentSize.height);
 
-            if ((zone.height >= rect.height) && canExpandWidth) {
+            if ((zoneHeight >= height) && canExpandWidth) {
                 // Zone height is big enough for rectangle and zone width can be
                 // expanded, but will sheet size be still within maximum size
                 // constraints?
-                int expandWidthBy = rect.width - zone.width;
+                int expandWidthBy = width - zoneWidth;
 
-                if (currentSize.width + expandWidthBy <= maxSize.width) {
-                    return new Dimension(expandWidthBy, 0);
+                if (currentSize.width + expandWidthBy <= maxWidth) {
+                    expansion.setSize(expandWidthBy, 0);
+                    return;
                 }
-            } else if ((zone.width >= rect.width) && canExpandHeight) {
-                int expandHeightBy = rect.height - zone.height;
+            } else if ((zoneWidth >= width) && canExpandHeight) {
+                int expandHeightBy = height - zoneHeight;
 
-                if (currentSize.height + expandHeightBy <= maxSize.height) {
-                    return new Dimension(0, expandHeightBy);
+                if (currentSize.height + expandHeightBy <= maxHeight) {
+                    expansion.setSize(0, expandHeightBy);
+                    return;
                 }
             } else if (canExpandWidth && canExpandHeight) {
                 // Zone width and height are not big enough for rectangle but
                 // both dimensions can be expanded.
-                int expandWidthBy = rect.width - zone.width;
-                int expandHeightBy = rect.height - zone.height;
+                int expandWidthBy = width - zoneWidth;
+                int expandHeightBy = height - zoneHeight;
 
-                if ((currentSize.width + expandWidthBy <= maxSize.width)
-                        && (currentSize.height + expandHeightBy <= maxSize.height)) {
-                    return new Dimension(expandWidthBy, expandHeightBy);
+                if ((currentSize.width + expandWidthBy <= maxWidth)
+                        && (currentSize.height + expandHeightBy <= maxHeight)) {
+                    expansion.setSize(expandWidthBy, expandHeightBy);
+                    return;
                 }
             }
         }
@@ -104,27 +101,28 @@ public class HighestFitStrategy extends WidestFirstStrategy {
         // height, what ever is the smallest, one last time. It could be the
         // case that we almost reached the maximum size of one dimension and the
         // other dimension does not have any expandable zones.
-        boolean canExpandWidth = (currentSize.width + rect.width <= maxSize.width);
-        boolean canExpandHeight = (currentSize.height + rect.height <= maxSize.height);
+        boolean canExpandWidth = (currentSize.width + width <= maxWidth);
+        boolean canExpandHeight = (currentSize.height + height <= maxHeight);
         boolean shouldExpandHeight = currentSize.width > currentSize.height;
 
         if ((canExpandHeight && shouldExpandHeight)
                 || (canExpandHeight && !canExpandWidth)) {
-            if (rect.width > currentSize.width) {
-                if (rect.width <= maxSize.width) {
-                    return new Dimension(rect.width - currentSize.width,
-                            rect.height);
+            if (width > currentSize.width) {
+                if (width <= maxWidth) {
+                    expansion.setSize(width - currentSize.width, height);
+                    return;
                 }
                 // Rectangle width is bigger than maximum width.
                 throw new SizeTooSmallException(
                         Messages.PACKER_SHEET_SIZE_TOO_SMALL);
             }
-            return new Dimension(0, rect.height);
+            expansion.setSize(0, height);
+            return;
         } else if (canExpandWidth) {
-            if (rect.height > currentSize.height) {
-                if (rect.height <= maxSize.height) {
-                    return new Dimension(rect.width, rect.height
-                            - currentSize.height);
+            if (height > currentSize.height) {
+                if (height <= maxHeight) {
+                    expansion.setSize(width, height - currentSize.height);
+                    return;
                 }
                 // Rectangle height is bigger than maximum height. We have to
                 // terminate packing as not all sprites can fit into sprite
@@ -132,7 +130,8 @@ public class HighestFitStrategy extends WidestFirstStrategy {
                 throw new SizeTooSmallException(
                         Messages.PACKER_SHEET_SIZE_TOO_SMALL);
             }
-            return new Dimension(rect.width, 0);
+            expansion.setSize(width, 0);
+            return;
         }
         throw new SizeTooSmallException(Messages.PACKER_SHEET_SIZE_TOO_SMALL);
     }
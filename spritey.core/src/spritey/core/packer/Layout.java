@@ -0,0 +1,312 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import java.awt.Dimension;
+import java.awt.Point;
+
+import spritey.core.Messages;
+import spritey.core.Sheet;
+import spritey.core.Sprite;
+
+/**
+ * A copy of sprite geometry which strategies arrange instead of the sprites
+ * themselves. Strategies write locations into the layout only, so several
+ * strategies can arrange private copies of the same layout at the same time.
+ * The chosen layout is then applied to sprites and the sheet.
+ */
+public class Layout {
+
+    private final Sprite[] sprites;
+    private final int[] widths;
+    private final int[] heights;
+    private final int[] xs;
+    private final int[] ys;
+    private final boolean[] rotated;
+    private int width;
+    private int height;
+
+    /**
+     * Creates a new instance of Layout capturing the size of the specified
+     * sprites. All sprites are initially located at the origin.
+     * 
+     * @param sprites
+     *        the sprites to lay out.
+     * @throws IllegalArgumentException
+     *         when <code>sprites</code> is null.
+     */
+    public Layout(Sprite[] sprites) {
+        this(sprites, new Constraints());
+    }
+
+    /**
+     * Creates a new instance of Layout capturing the space the specified
+     * sprites take, i.e. their size and padding rounded up to multiples of
+     * the alignment. Strategies place sprites next to one another, so every
+     * sprite ends up at a location which is a multiple of the alignment too.
+     * All sprites are initially located at the origin.
+     * 
+     * @param sprites
+     *        the sprites to lay out.
+     * @param constraints
+     *        the constraints which specify the alignment and padding.
+     * @throws IllegalArgumentException
+     *         when either <code>sprites</code> or <code>constraints</code>
+     *         is null.
+     */
+    public Layout(Sprite[] sprites, Constraints constraints) {
+        if ((null == sprites) || (null == constraints)) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+
+        this.sprites = sprites;
+        widths = new int[sprites.length];
+        heights = new int[sprites.length];
+        xs = new int[sprites.length];
+        ys = new int[sprites.length];
+        rotated = new boolean[sprites.length];
+
+        for (int i = 0; i < sprites.length; ++i) {
+            Dimension size = sprites[i].getSize();
+            widths[i] = constraints.align(size.width);
+            heights[i] = constraints.align(size.height);
+        }
+    }
+
+    /**
+     * Creates a new instance of Layout which is a copy of the specified
+     * layout.
+     * 
+     * @param layout
+     *        the layout to copy.
+     */
+    private Layout(Layout layout) {
+        sprites = layout.sprites;
+        widths = layout.widths.clone();
+        heights = layout.heights.clone();
+        xs = layout.xs.clone();
+        ys = layout.ys.clone();
+        rotated = layout.rotated.clone();
+        width = layout.width;
+        height = layout.height;
+    }
+
+    /**
+     * Returns a copy of this layout which can be arranged independently.
+     * 
+     * @return a copy of this layout.
+     */
+    public Layout copy() {
+        return new Layout(this);
+    }
+
+    /**
+     * Returns the number of sprites in this layout.
+     * 
+     * @return the number of sprites.
+     */
+    public int size() {
+        return widths.length;
+    }
+
+    /**
+     * Returns the width of the area the specified sprite occupies, which is
+     * the sprite height when sprite is rotated.
+     * 
+     * @param i
+     *        the index of the sprite.
+     * @return the sprite width.
+     */
+    public int getSpriteWidth(int i) {
+        return widths[i];
+    }
+
+    /**
+     * Returns the height of the area the specified sprite occupies, which is
+     * the sprite width when sprite is rotated.
+     * 
+     * @param i
+     *        the index of the sprite.
+     * @return the sprite height.
+     */
+    public int getSpriteHeight(int i) {
+        return heights[i];
+    }
+
+    /**
+     * Returns the x coordinate of the specified sprite.
+     * 
+     * @param i
+     *        the index of the sprite.
+     * @return the x coordinate.
+     */
+    public int getX(int i) {
+        return xs[i];
+    }
+
+    /**
+     * Returns the y coordinate of the specified sprite.
+     * 
+     * @param i
+     *        the index of the sprite.
+     * @return the y coordinate.
+     */
+    public int getY(int i) {
+        return ys[i];
+    }
+
+    /**
+     * Sets the location of the specified sprite.
+     * 
+     * @param i
+     *        the index of the sprite.
+     * @param x
+     *        the x coordinate.
+     * @param y
+     *        the y coordinate.
+     */
+    public void setLocation(int i, int x, int y) {
+        xs[i] = x;
+        ys[i] = y;
+    }
+
+    /**
+     * Returns whether the specified sprite is rotated by 90 degrees.
+     * 
+     * @param i
+     *        the index of the sprite.
+     * @return <code>true</code> if sprite is rotated, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isRotated(int i) {
+        return rotated[i];
+    }
+
+    /**
+     * Sets whether the specified sprite is rotated by 90 degrees. Rotating a
+     * sprite swaps the width and height of the area it occupies.
+     * 
+     * @param i
+     *        the index of the sprite.
+     * @param rotated
+     *        specifies whether sprite is rotated.
+     */
+    public void setRotated(int i, boolean rotated) {
+        if (this.rotated[i] != rotated) {
+            this.rotated[i] = rotated;
+
+            int width = widths[i];
+            widths[i] = heights[i];
+            heights[i] = width;
+        }
+    }
+
+    /**
+     * Returns the width of the sheet.
+     * 
+     * @return the sheet width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the sheet.
+     * 
+     * @return the sheet height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Sets the size of the sheet.
+     * 
+     * @param width
+     *        the sheet width.
+     * @param height
+     *        the sheet height.
+     */
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the area of the sheet.
+     * 
+     * @return the sheet area.
+     */
+    public long getArea() {
+        return (long) width * height;
+    }
+
+    /**
+     * Returns the total area of sprites.
+     * 
+     * @return the area of sprites.
+     */
+    public long getSpriteArea() {
+        long area = 0;
+        for (int i = 0; i < widths.length; ++i) {
+            area += (long) widths[i] * heights[i];
+        }
+        return area;
+    }
+
+    /**
+     * Returns the fraction of the sheet covered by sprites.
+     * 
+     * @return the occupancy between 0 and 1.
+     */
+    public float getOccupancy() {
+        long area = getArea();
+        return (0 == area) ? 0 : ((float) getSpriteArea()) / area;
+    }
+
+    /**
+     * Moves and rotates sprites as described by this layout and puts them
+     * onto the specified page.
+     * 
+     * @param page
+     *        the index of the page sprites are located on.
+     */
+    public void applyToSprites(int page) {
+        for (int i = 0; i < sprites.length; ++i) {
+            sprites[i].setLocation(new Point(xs[i], ys[i]));
+            sprites[i].setPage(page);
+            sprites[i].setRotated(rotated[i]);
+        }
+    }
+
+    /**
+     * Moves sprites to their locations in this layout and resizes the
+     * specified sheet to a single page.
+     * 
+     * @param sheet
+     *        the sheet containing sprites of this layout.
+     */
+    public void apply(Sheet sheet) {
+        applyToSprites(0);
+
+        sheet.setPageCount(1);
+        sheet.setWidth(width);
+        sheet.setHeight(height);
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+
+/**
+ * This strategy implements the maximal rectangles algorithm. Free area of the
+ * bin is described by a set of maximal, possibly overlapping, zones. Each
+ * sprite is put into the highest and left most zone which fits it, and only
+ * zones intersecting the sprite are split. Zones are kept in a spatial index,
+ * so the cost of placing a sprite depends on the number of zones around it
+ * rather than on the total number of zones.
+ */
+public class MaxRectsStrategy extends AbstractBinStrategy {
+
+    protected FreeZoneIndex freeZones;
+
+    /**
+     * Orders sprites by height, so sprites of similar height end up side by
+     * side.
+     */
+    @Override
+    protected int naturalSortKey(int width, int height) {
+        return height;
+    }
+
+    @Override
+    protected void reset(int width, int height) {
+        freeZones = new FreeZoneIndex(width, height);
+        freeZones.add(new Rectangle(0, 0, width, height));
+    }
+
+    @Override
+    protected boolean place(int width, int height, Point location) {
+        Rectangle zone = freeZones.findHighest(width, height);
+        if (null == zone) {
+            return false;
+        }
+
+        location.setLocation(zone.x, zone.y);
+        freeZones.occupy(new Rectangle(zone.x, zone.y, width, height));
+        return true;
+    }
+
+}
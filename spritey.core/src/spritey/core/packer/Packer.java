@@ -17,13 +17,535 @@
  */
 package spritey.core.packer;
 
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import spritey.core.Messages;
 import spritey.core.Sheet;
+import spritey.core.Sprite;
+import spritey.core.filter.SpriteFilter;
+import spritey.core.filter.UniqueSpriteFilter;
 
 /**
  * A packer for packing sprites.
+ * <p>
+ * When <code>Constraints.AUTO</code> algorithm is requested, a number of
+ * strategies and sprite orders are raced in parallel. Each contender arranges
+ * its own copy of sprite geometry, and only the layout with the smallest sheet
+ * area is applied to sprites.
+ * </p>
+ * <p>
+ * Transparent borders may be trimmed off sprites before packing, in which
+ * case only the opaque part of every sprite is packed.
+ * </p>
+ * <p>
+ * Pixel-identical sprites may be packed only once, in which case the
+ * duplicates become aliases sharing the location of the first copy.
+ * </p>
+ * <p>
+ * When multiple pages are allowed and sprites don't fit the maximum size, the
+ * sprites are distributed across as many pages as needed. Each page is then
+ * packed independently and in parallel with the others.
+ * </p>
+ * <p>
+ * Packer remembers the trim and hash of every sprite it has packed, so that
+ * packing the same sheet again reads only pixels of sprites which were added
+ * or have changed.
+ * </p>
+ * <p>
+ * An incremental packer keeps the result of the last full pack between calls.
+ * As long as constraints stay the same, added sprites are placed around the
+ * sprites already on the sheet, until the sheet becomes too sparse and a full
+ * pack is due.
+ * </p>
  */
 public class Packer {
 
+    /**
+     * The number of sprites above which widest first strategies are left out
+     * of the race, as their running time grows quadratically.
+     */
+    private static final int WIDEST_FIRST_LIMIT = 1000;
+
+    /**
+     * The orders in which bin strategies are raced.
+     */
+    private static final int[] ORDERS = { AbstractStrategy.HEIGHT_ORDER,
+            AbstractStrategy.WIDTH_ORDER, AbstractStrategy.AREA_ORDER,
+            AbstractStrategy.LONGER_SIDE_ORDER,
+            AbstractStrategy.PERIMETER_ORDER };
+
+    /**
+     * The fit rules with which guillotine strategy is raced.
+     */
+    private static final int[] FIT_RULES = { Constraints.BEST_AREA_FIT,
+            Constraints.BEST_SHORT_SIDE_FIT };
+
+    /**
+     * The split rules with which guillotine strategy is raced.
+     */
+    private static final int[] SPLIT_RULES = { Constraints.SHORTER_AXIS_SPLIT,
+            Constraints.SHORTER_LEFTOVER_AXIS_SPLIT };
+
+    private long deduplicatedBytes;
+    private boolean incremental;
+    private Repacker repacker;
+    private Trimmer trimmer;
+    private Deduplicator deduplicator;
+
+    /**
+     * Arranges a private copy of the layout with a single strategy. The task
+     * yields <code>null</code> when sprites don't fit.
+     */
+    private static class Contender extends RecursiveTask<Layout> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Strategy strategy;
+        private final Layout layout;
+        private final Constraints constraints;
+
+        /**
+         * Creates a new instance of Contender.
+         * 
+         * @param strategy
+         *        the strategy to arrange layout with.
+         * @param layout
+         *        the layout to arrange.
+         * @param constraints
+         *        the set of constraints to obey.
+         */
+        public Contender(Strategy strategy, Layout layout,
+                Constraints constraints) {
+            this.strategy = strategy;
+            this.layout = layout;
+            this.constraints = constraints;
+        }
+
+        @Override
+        protected Layout compute() {
+            try {
+                strategy.arrange(layout, constraints);
+                return layout;
+            } catch (SizeTooSmallException e) {
+                return null;
+            }
+        }
+
+    }
+
+    /**
+     * Runs all contenders and picks the layout with the smallest sheet area.
+     * When areas are equal the contender created first wins, so the outcome
+     * doesn't depend on thread scheduling.
+     */
+    private static class Race extends RecursiveTask<Layout> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Contender> contenders;
+
+        /**
+         * Creates a new instance of Race.
+         * 
+         * @param contenders
+         *        the contenders to run.
+         */
+        public Race(List<Contender> contenders) {
+            this.contenders = contenders;
+        }
+
+        @Override
+        protected Layout compute() {
+            ForkJoinTask.invokeAll(contenders);
+
+            Layout best = null;
+            for (Contender contender : contenders) {
+                Layout layout = contender.join();
+                if ((null != layout)
+                        && ((null == best) || (layout.getArea() < best
+                                .getArea()))) {
+                    best = layout;
+                }
+            }
+            return best;
+        }
+
+    }
+
+    /**
+     * Creates the widest first strategy which satisfies the constraints.
+     * 
+     * @param constraints
+     *        the set of constraints to obey.
+     * @return the widest first strategy.
+     */
+    private WidestFirstStrategy createWidestFirstStrategy(
+            Constraints constraints) {
+        boolean maintainAspectRatio = constraints.maintainAspectRatio();
+        boolean maintainPowerOfTwo = constraints.maintainPowerOfTwo();
+
+        if (maintainAspectRatio && maintainPowerOfTwo) {
+            return new DiagonalFitMaintainAspectRatioAndPowerOfTwoStrategy();
+        } else if (maintainAspectRatio) {
+            return new HighestFitMaintainAspectRatioStrategy();
+        } else if (maintainPowerOfTwo) {
+            return new DiagonalFitMaintainPowerOfTwoStrategy();
+        }
+        return new HighestFitStrategy();
+    }
+
+    /**
+     * Sets the order of the specified strategy and adds it to the list.
+     * 
+     * @param strategies
+     *        the list to add strategy to.
+     * @param strategy
+     *        the strategy to add.
+     * @param order
+     *        the order in which strategy packs sprites.
+     */
+    private void addContender(List<AbstractStrategy> strategies,
+            AbstractStrategy strategy, int order) {
+        strategy.setOrder(order);
+        strategies.add(strategy);
+    }
+
+    /**
+     * Creates the strategies raced when the algorithm is chosen
+     * automatically. Every strategy is a new instance, so contenders don't
+     * share any state.
+     * 
+     * @param constraints
+     *        the set of constraints to obey.
+     * @param count
+     *        the number of sprites to pack.
+     * @return the list of strategies.
+     */
+    private List<AbstractStrategy> createContenders(Constraints constraints,
+            int count) {
+        List<AbstractStrategy> strategies = new ArrayList<AbstractStrategy>();
+
+        if (count <= WIDEST_FIRST_LIMIT) {
+            strategies.add(createWidestFirstStrategy(constraints));
+        }
+        for (int order : ORDERS) {
+            addContender(strategies, new MaxRectsStrategy(), order);
+            addContender(strategies, new SkylineStrategy(), order);
+
+            for (int fitRule : FIT_RULES) {
+                for (int splitRule : SPLIT_RULES) {
+                    addContender(strategies, new GuillotineStrategy(fitRule,
+                            splitRule), order);
+                }
+            }
+        }
+        return strategies;
+    }
+
+    /**
+     * Arranges a single page of sprites. When the requested algorithm fails,
+     * the page is arranged with max rects strategy, which is guaranteed to fit
+     * the sprites distributed onto the page. The task yields <code>null</code>
+     * when sprites don't fit.
+     */
+    private class Page extends RecursiveTask<Layout> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Layout layout;
+        private final Constraints constraints;
+
+        /**
+         * Creates a new instance of Page.
+         * 
+         * @param layout
+         *        the layout of sprites on the page.
+         * @param constraints
+         *        the set of constraints to obey.
+         */
+        public Page(Layout layout, Constraints constraints) {
+            this.layout = layout;
+            this.constraints = constraints;
+        }
+
+        @Override
+        protected Layout compute() {
+            try {
+                return arrange(layout.copy(), constraints);
+            } catch (SizeTooSmallException e) {
+                // Fall back to the strategy sprites were distributed with.
+            }
+
+            try {
+                new MaxRectsStrategy().arrange(layout, constraints);
+                return layout;
+            } catch (SizeTooSmallException e) {
+                return null;
+            }
+        }
+
+    }
+
+    /**
+     * Arranges all pages in parallel.
+     */
+    private static class Book extends RecursiveTask<Layout[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Page> pages;
+
+        /**
+         * Creates a new instance of Book.
+         * 
+         * @param pages
+         *        the pages to arrange.
+         */
+        public Book(List<Page> pages) {
+            this.pages = pages;
+        }
+
+        @Override
+        protected Layout[] compute() {
+            ForkJoinTask.invokeAll(pages);
+
+            Layout[] layouts = new Layout[pages.size()];
+            for (int i = 0; i < layouts.length; ++i) {
+                layouts[i] = pages.get(i).join();
+            }
+            return layouts;
+        }
+
+    }
+
+    /**
+     * Creates the race of strategies which arrange copies of the specified
+     * layout.
+     * 
+     * @param layout
+     *        the layout to arrange.
+     * @param constraints
+     *        the set of constraints to obey.
+     * @return the race.
+     */
+    private Race createRace(Layout layout, Constraints constraints) {
+        List<Contender> contenders = new ArrayList<Contender>();
+        for (Strategy strategy : createContenders(constraints, layout.size())) {
+            contenders.add(new Contender(strategy, layout.copy(), constraints));
+        }
+        return new Race(contenders);
+    }
+
+    /**
+     * Creates the strategy for the algorithm specified by constraints.
+     * 
+     * @param constraints
+     *        the set of constraints to obey.
+     * @return the strategy.
+     */
+    private Strategy createStrategy(Constraints constraints) {
+        if (Constraints.MAX_RECTS == constraints.getAlgorithm()) {
+            return new MaxRectsStrategy();
+        } else if (Constraints.SKYLINE == constraints.getAlgorithm()) {
+            return new SkylineStrategy();
+        } else if (Constraints.GUILLOTINE == constraints.getAlgorithm()) {
+            return new GuillotineStrategy(constraints.getFitRule(),
+                    constraints.getSplitRule());
+        }
+        return createWidestFirstStrategy(constraints);
+    }
+
+    /**
+     * Arranges the specified layout with the algorithm specified by
+     * constraints. This method may be called from within a fork/join
+     * computation.
+     * 
+     * @param layout
+     *        the layout to arrange.
+     * @param constraints
+     *        the set of constraints to obey.
+     * @return the arranged layout, which may be a copy of the specified one.
+     * @throws SizeTooSmallException
+     *         when sheet size is too small to fit all sprites.
+     */
+    private Layout arrange(Layout layout, Constraints constraints)
+            throws SizeTooSmallException {
+        if (Constraints.AUTO == constraints.getAlgorithm()) {
+            Layout best = createRace(layout, constraints).invoke();
+            if (null == best) {
+                throw new SizeTooSmallException(
+                        Messages.PACKER_SHEET_SIZE_TOO_SMALL);
+            }
+            return best;
+        }
+
+        createStrategy(constraints).arrange(layout, constraints);
+        return layout;
+    }
+
+    /**
+     * Distributes sprites across pages of the maximum size. Sprites are
+     * placed with max rects strategy; sprites which don't fit the current
+     * page are carried over to the next one.
+     * 
+     * @param sprites
+     *        the sprites to distribute.
+     * @param layout
+     *        the layout of sprites.
+     * @param constraints
+     *        the set of constraints to obey.
+     * @return the sprites of each page.
+     * @throws SizeTooSmallException
+     *         when a sprite doesn't fit even an empty page.
+     */
+    private List<Sprite[]> distribute(Sprite[] sprites, Layout layout,
+            Constraints constraints) throws SizeTooSmallException {
+        MaxRectsStrategy bin = new MaxRectsStrategy();
+        List<Sprite[]> pages = new ArrayList<Sprite[]>();
+        Point location = new Point();
+
+        int[] remaining = bin.sortSprites(layout);
+
+        while (remaining.length > 0) {
+            bin.reset(constraints.getMaxWidth(), constraints.getMaxHeight());
+
+            List<Sprite> page = new ArrayList<Sprite>();
+            int[] next = new int[remaining.length];
+            int count = 0;
+
+            for (int i : remaining) {
+                int width = layout.getSpriteWidth(i);
+                int height = layout.getSpriteHeight(i);
+
+                if ((0 == width) || (0 == height)
+                        || bin.place(width, height, location)) {
+                    page.add(sprites[i]);
+                } else {
+                    next[count++] = i;
+                }
+            }
+
+            if (page.isEmpty()) {
+                throw new SizeTooSmallException(
+                        Messages.PACKER_SHEET_SIZE_TOO_SMALL);
+            }
+
+            pages.add(page.toArray(new Sprite[page.size()]));
+            remaining = Arrays.copyOf(next, count);
+        }
+        return pages;
+    }
+
+    /**
+     * Spreads sprites across multiple pages and packs each page in parallel.
+     * 
+     * @param sheet
+     *        a sprite sheet to pack.
+     * @param sprites
+     *        the sprites to pack.
+     * @param layout
+     *        the layout of sprites.
+     * @param constraints
+     *        the set of constraints to obey.
+     * @throws SizeTooSmallException
+     *         when a sprite doesn't fit even an empty page.
+     */
+    private void paginate(Sheet sheet, Sprite[] sprites, Layout layout,
+            Constraints constraints) throws SizeTooSmallException {
+        List<Page> pages = new ArrayList<Page>();
+        for (Sprite[] page : distribute(sprites, layout, constraints)) {
+            pages.add(new Page(new Layout(page, constraints), constraints));
+        }
+
+        Layout[] layouts = ForkJoinPool.commonPool().invoke(new Book(pages));
+        for (Layout page : layouts) {
+            if (null == page) {
+                throw new SizeTooSmallException(
+                        Messages.PACKER_SHEET_SIZE_TOO_SMALL);
+            }
+        }
+
+        sheet.setPageCount(layouts.length);
+        for (int i = 0; i < layouts.length; ++i) {
+            layouts[i].applyToSprites(i);
+            sheet.setPageSize(i, layouts[i].getWidth(), layouts[i].getHeight());
+        }
+    }
+
+    /**
+     * Creates a new instance of Packer, which is not incremental.
+     */
+    public Packer() {
+        repacker = new Repacker();
+        trimmer = new Trimmer();
+        deduplicator = new Deduplicator();
+    }
+
+    /**
+     * Returns whether this packer keeps the result of the last full pack and
+     * places only added sprites when possible.
+     * 
+     * @return <code>true</code> if packer is incremental, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Sets whether this packer keeps the result of the last full pack and
+     * places only added sprites when possible.
+     * 
+     * @param incremental
+     *        specifies whether packer is incremental.
+     */
+    public void setIncremental(final boolean incremental) {
+        if (isIncremental() != incremental) {
+            this.incremental = incremental;
+            repacker.clear();
+        }
+    }
+
+    /**
+     * Returns the fraction of the last full pack occupancy below which an
+     * incremental packer packs the sheet from scratch.
+     * 
+     * @return the repack threshold.
+     */
+    public float getRepackThreshold() {
+        return repacker.getThreshold();
+    }
+
+    /**
+     * Sets the fraction of the last full pack occupancy below which an
+     * incremental packer packs the sheet from scratch.
+     * 
+     * @param threshold
+     *        the threshold, greater than 0 and not greater than 1.
+     * @throws IllegalArgumentException
+     *         when <code>threshold</code> is out of range.
+     */
+    public void setRepackThreshold(final float threshold) {
+        repacker.setThreshold(threshold);
+    }
+
+    /**
+     * Returns the number of bytes saved by packing pixel-identical sprites
+     * only once during the last <code>pack()</code>. Every pixel of an
+     * uncompressed image takes 4 bytes.
+     * 
+     * @return the number of deduplicated bytes.
+     */
+    public long getDeduplicatedBytes() {
+        return deduplicatedBytes;
+    }
+
     /**
      * Packs the specified sheet while obeying the constraints.
      * 
@@ -36,26 +558,80 @@ public class Packer {
      *         when either <code>sheet</code> or <code>constraints</code> is
      *         null.
      * @throws SizeTooSmallException
-     *         when sheet size is too small to fit all sprites.
+     *         when sheet size is too small to fit all sprites, or when
+     *         multiple pages are allowed but a sprite is bigger than the
+     *         maximum size.
      */
     public void pack(Sheet sheet, Constraints constraints)
             throws IllegalArgumentException, SizeTooSmallException {
-        boolean maintainAspectRatio = constraints.maintainAspectRatio();
-        boolean maintainPowerOfTwo = constraints.maintainPowerOfTwo();
+        if ((null == sheet) || (null == constraints)) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
 
-        Strategy strategy = null;
+        Sprite[] sprites = new SpriteFilter().filter(sheet);
 
-        if (maintainAspectRatio && maintainPowerOfTwo) {
-            strategy = new DiagonalFitMaintainAspectRatioAndPowerOfTwoStrategy();
-        } else if (maintainAspectRatio) {
-            strategy = new HighestFitMaintainAspectRatioStrategy();
-        } else if (maintainPowerOfTwo) {
-            strategy = new DiagonalFitMaintainPowerOfTwoStrategy();
+        if (constraints.trimTransparency()) {
+            trimmer.trim(sprites);
         } else {
-            strategy = new HighestFitStrategy();
+            trimmer.untrim(sprites);
         }
 
-        strategy.pack(sheet, constraints);
+        // Duplicates are found after trimming, so that sprites which only
+        // differ in transparent borders are shared too.
+        if (constraints.removeDuplicates()) {
+            deduplicatedBytes = deduplicator.deduplicate(sprites);
+        } else {
+            deduplicator.restore(sprites);
+            deduplicatedBytes = 0;
+        }
+
+        Sprite[] unique = new UniqueSpriteFilter().filter(sprites);
+
+        if (incremental && repacker.repack(sheet, unique, constraints)) {
+            return;
+        }
+
+        packFully(sheet, unique, constraints);
+
+        if (incremental) {
+            repacker.record(sheet, unique, constraints);
+        }
+    }
+
+    /**
+     * Packs the specified sprites from scratch.
+     * 
+     * @param sheet
+     *        a sprite sheet to pack.
+     * @param sprites
+     *        the sprites to pack, not including aliases.
+     * @param constraints
+     *        the set of constraints that have to be obeyed.
+     * @throws SizeTooSmallException
+     *         when sprites don't fit.
+     */
+    private void packFully(Sheet sheet, Sprite[] sprites,
+            Constraints constraints) throws SizeTooSmallException {
+        if ((Constraints.AUTO != constraints.getAlgorithm())
+                && !constraints.allowMultiplePages()) {
+            createStrategy(constraints).pack(sheet, constraints);
+            return;
+        }
+
+        if (0 == sprites.length) {
+            return;
+        }
+
+        Layout layout = new Layout(sprites, constraints);
+
+        try {
+            arrange(layout.copy(), constraints).apply(sheet);
+        } catch (SizeTooSmallException e) {
+            if (!constraints.allowMultiplePages()) {
+                throw e;
+            }
+            paginate(sheet, sprites, layout, constraints);
+        }
     }
 
 }
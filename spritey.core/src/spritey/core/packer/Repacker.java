@@ -0,0 +1,373 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import spritey.core.Messages;
+import spritey.core.Sheet;
+import spritey.core.Sprite;
+
+/**
+ * Repacks a sprite sheet incrementally. The repacker remembers where every
+ * sprite was placed by the last full pack, along with the free zones left
+ * around them. When sprites are added, only the new sprites are placed into
+ * the free zones; when sprites are removed, their areas are returned to the
+ * free zones. Sprites already on the sheet are never moved.
+ * <p>
+ * Incremental placement leaves more gaps than a full pack. Once the occupancy
+ * of the sheet falls below a fraction of the occupancy achieved by the last
+ * full pack, the repacker gives up and a full pack is due.
+ * </p>
+ */
+public class Repacker {
+
+    /**
+     * The default fraction of the last full pack occupancy below which a full
+     * pack is due.
+     */
+    public static final float DEFAULT_THRESHOLD = 0.9f;
+
+    private static final Comparator<Sprite> BIGGEST_FIRST = new Comparator<Sprite>() {
+        @Override
+        public int compare(Sprite s1, Sprite s2) {
+            return s2.getArea() - s1.getArea();
+        }
+    };
+
+    private float threshold;
+
+    private Constraints constraints;
+    private Map<Sprite, Rectangle> placements;
+    private FreeZoneIndex freeZones;
+    private float occupancy;
+
+    /**
+     * Creates a new instance of Repacker with DEFAULT_THRESHOLD.
+     */
+    public Repacker() {
+        placements = new IdentityHashMap<Sprite, Rectangle>();
+        setThreshold(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Returns the fraction of the last full pack occupancy below which a full
+     * pack is due.
+     * 
+     * @return the threshold.
+     */
+    public float getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Sets the fraction of the last full pack occupancy below which a full
+     * pack is due. The threshold of 1 allows incremental packing only while
+     * it doesn't make the sheet any sparser.
+     * 
+     * @param threshold
+     *        the threshold, greater than 0 and not greater than 1.
+     * @throws IllegalArgumentException
+     *         when <code>threshold</code> is out of range.
+     */
+    public void setThreshold(final float threshold) {
+        if (getThreshold() != threshold) {
+            if (!((threshold > 0) && (threshold <= 1))) {
+                throw new IllegalArgumentException(
+                        Messages.REPACKER_THRESHOLD_INVALID);
+            }
+            this.threshold = threshold;
+        }
+    }
+
+    /**
+     * Forgets the last full pack, so the next pack has to be a full one.
+     */
+    public void clear() {
+        constraints = null;
+        placements.clear();
+        freeZones = null;
+        occupancy = 0;
+    }
+
+    /**
+     * Remembers the result of a full pack. Only sheets of a single page are
+     * remembered.
+     * 
+     * @param sheet
+     *        the packed sheet.
+     * @param sprites
+     *        the packed sprites, not including aliases.
+     * @param constraints
+     *        the constraints sheet was packed with.
+     * @throws IllegalArgumentException
+     *         when any of the arguments is null.
+     */
+    public void record(Sheet sheet, Sprite[] sprites, Constraints constraints) {
+        if ((null == sheet) || (null == sprites) || (null == constraints)) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+
+        clear();
+
+        if ((0 == sprites.length) || (1 != sheet.getPageCount())) {
+            return;
+        }
+
+        freeZones = new FreeZoneIndex(constraints.getMaxWidth(),
+                constraints.getMaxHeight());
+        freeZones.add(new Rectangle(constraints.getMaxSize()));
+
+        long area = 0;
+
+        for (Sprite sprite : sprites) {
+            Rectangle bounds = align(sprite.getBounds(), constraints);
+            placements.put(sprite, bounds);
+
+            if (!bounds.isEmpty()) {
+                freeZones.occupy(bounds);
+                area += sprite.getArea();
+            }
+        }
+
+        occupancy = (float) area
+                / ((long) sheet.getWidth() * sheet.getHeight());
+        this.constraints = new Constraints(constraints);
+    }
+
+    /**
+     * Tries to pack the sheet incrementally, starting from the last full
+     * pack. Nothing is changed when the attempt fails, but the last full pack
+     * is forgotten.
+     * 
+     * @param sheet
+     *        the sheet to pack.
+     * @param sprites
+     *        the sprites to pack, not including aliases.
+     * @param constraints
+     *        the constraints to obey.
+     * @return <code>true</code> if sheet was packed, or <code>false</code> if
+     *         constraints changed since the last full pack, a sprite doesn't
+     *         fit or the sheet became too sparse.
+     * @throws IllegalArgumentException
+     *         when any of the arguments is null.
+     */
+    public boolean repack(Sheet sheet, Sprite[] sprites,
+            Constraints constraints) {
+        if ((null == sheet) || (null == sprites) || (null == constraints)) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+
+        if ((null == this.constraints)
+                || !this.constraints.equals(constraints)) {
+            clear();
+            return false;
+        }
+
+        Set<Sprite> current = Collections
+                .newSetFromMap(new IdentityHashMap<Sprite, Boolean>());
+        List<Sprite> added = new ArrayList<Sprite>();
+
+        for (Sprite sprite : sprites) {
+            current.add(sprite);
+
+            Rectangle placement = placements.get(sprite);
+            if (null == placement) {
+                added.add(sprite);
+            } else if (!placement.getSize().equals(
+                    align(sprite.getBounds(), constraints).getSize())) {
+                // Sprite was trimmed differently or its image was replaced.
+                freeZones.release(placements.remove(sprite));
+                added.add(sprite);
+            }
+        }
+
+        Iterator<Entry<Sprite, Rectangle>> it = placements.entrySet()
+                .iterator();
+        while (it.hasNext()) {
+            Entry<Sprite, Rectangle> entry = it.next();
+            if (!current.contains(entry.getKey())) {
+                freeZones.release(entry.getValue());
+                it.remove();
+            }
+        }
+
+        int usedWidth = 0;
+        int usedHeight = 0;
+
+        for (Rectangle placement : placements.values()) {
+            usedWidth = Math.max(usedWidth, placement.x + placement.width);
+            usedHeight = Math.max(usedHeight, placement.y + placement.height);
+        }
+
+        Collections.sort(added, BIGGEST_FIRST);
+
+        Map<Sprite, Boolean> rotations = new IdentityHashMap<Sprite, Boolean>();
+
+        for (Sprite sprite : added) {
+            Rectangle placement = place(sprite, usedWidth, usedHeight);
+            if (null == placement) {
+                clear();
+                return false;
+            }
+
+            placements.put(sprite, placement);
+            rotations.put(sprite,
+                    placement.width != constraints.align(sprite.getWidth()));
+            usedWidth = Math.max(usedWidth, placement.x + placement.width);
+            usedHeight = Math.max(usedHeight, placement.y + placement.height);
+        }
+
+        Dimension size = AbstractBinStrategy.adjustSize(usedWidth, usedHeight,
+                constraints);
+        long area = 0;
+
+        for (Sprite sprite : placements.keySet()) {
+            area += sprite.getArea();
+        }
+
+        long sheetArea = (long) size.width * size.height;
+        if ((0 == sheetArea) || (area < threshold * occupancy * sheetArea)) {
+            clear();
+            return false;
+        }
+
+        for (Entry<Sprite, Boolean> entry : rotations.entrySet()) {
+            Sprite sprite = entry.getKey();
+            Rectangle placement = placements.get(sprite);
+
+            sprite.setLocation(new Point(placement.x, placement.y));
+            sprite.setPage(0);
+            sprite.setRotated(entry.getValue());
+        }
+
+        sheet.setPageCount(1);
+        sheet.setWidth(size.width);
+        sheet.setHeight(size.height);
+        return true;
+    }
+
+    /**
+     * Finds the place for the specified sprite which grows the used area the
+     * least, and marks that place as occupied. When rotation is allowed, the
+     * sprite may be placed rotated by 90 degrees. The size of the place
+     * includes the padding and is rounded up to multiples of the alignment.
+     * 
+     * @param sprite
+     *        the sprite to place.
+     * @param usedWidth
+     *        the width of the area used so far.
+     * @param usedHeight
+     *        the height of the area used so far.
+     * @return the area occupied by the sprite, or <code>null</code> when
+     *         there is no room left for it.
+     */
+    private Rectangle place(Sprite sprite, int usedWidth, int usedHeight) {
+        int width = constraints.align(sprite.getWidth());
+        int height = constraints.align(sprite.getHeight());
+
+        if ((0 == width) || (0 == height)) {
+            // Empty sprites take no space.
+            return new Rectangle(0, 0, width, height);
+        }
+
+        Rectangle placement = find(width, height, usedWidth, usedHeight);
+
+        if (constraints.allowRotation() && (width != height)) {
+            Rectangle rotated = find(height, width, usedWidth, usedHeight);
+
+            if ((null != rotated)
+                    && ((null == placement) || (usedArea(rotated, usedWidth,
+                            usedHeight) < usedArea(placement, usedWidth,
+                            usedHeight)))) {
+                placement = rotated;
+            }
+        }
+
+        if (null != placement) {
+            freeZones.occupy(placement);
+        }
+        return placement;
+    }
+
+    /**
+     * Returns the area the specified bounds of a sprite occupy, which
+     * includes the padding and is rounded up to multiples of the alignment.
+     * 
+     * @param bounds
+     *        the bounds of a sprite.
+     * @param constraints
+     *        the constraints which specify the alignment and padding.
+     * @return the occupied area.
+     */
+    private static Rectangle align(Rectangle bounds, Constraints constraints) {
+        return new Rectangle(bounds.x, bounds.y,
+                constraints.align(bounds.width),
+                constraints.align(bounds.height));
+    }
+
+    /**
+     * Finds the place for a rectangle of the specified size which grows the
+     * used area the least.
+     * 
+     * @param width
+     *        the rectangle width.
+     * @param height
+     *        the rectangle height.
+     * @param usedWidth
+     *        the width of the area used so far.
+     * @param usedHeight
+     *        the height of the area used so far.
+     * @return the place, or <code>null</code> when there is no room left.
+     */
+    private Rectangle find(int width, int height, int usedWidth,
+            int usedHeight) {
+        Rectangle zone = freeZones.findLeastGrowth(width, height, usedWidth,
+                usedHeight);
+        return (null == zone) ? null : new Rectangle(zone.x, zone.y, width,
+                height);
+    }
+
+    /**
+     * Returns the area used after the specified rectangle is placed.
+     * 
+     * @param rect
+     *        the placed rectangle.
+     * @param usedWidth
+     *        the width of the area used so far.
+     * @param usedHeight
+     *        the height of the area used so far.
+     * @return the used area.
+     */
+    private long usedArea(Rectangle rect, int usedWidth, int usedHeight) {
+        return (long) Math.max(usedWidth, rect.x + rect.width)
+                * Math.max(usedHeight, rect.y + rect.height);
+    }
+
+}
@@ -0,0 +1,226 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import java.awt.Point;
+
+/**
+ * This strategy implements the skyline bottom-left algorithm. Only the lower
+ * edge of the packed area, the skyline, is tracked. The skyline is a list of
+ * horizontal segments stored in plain int arrays. Each sprite is put where its
+ * bottom edge ends up the highest, i.e. on top of the skyline, and the skyline
+ * is raised underneath it. The cost of placing a sprite is linear in the
+ * number of segments and no objects are allocated per candidate location.
+ */
+public class SkylineStrategy extends AbstractBinStrategy {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int binWidth;
+    private int binHeight;
+
+    // Segment i starts at segmentX[i], is segmentWidth[i] pixels wide, and
+    // everything above segmentY[i] is occupied.
+    private int[] segmentX;
+    private int[] segmentY;
+    private int[] segmentWidth;
+    private int count;
+
+    /**
+     * Orders sprites by height, so sprites of similar height build an even
+     * skyline.
+     */
+    @Override
+    protected int naturalSortKey(int width, int height) {
+        return height;
+    }
+
+    @Override
+    protected void reset(int width, int height) {
+        binWidth = width;
+        binHeight = height;
+
+        if (null == segmentX) {
+            segmentX = new int[INITIAL_CAPACITY];
+            segmentY = new int[INITIAL_CAPACITY];
+            segmentWidth = new int[INITIAL_CAPACITY];
+        }
+
+        segmentX[0] = 0;
+        segmentY[0] = 0;
+        segmentWidth[0] = width;
+        count = 1;
+    }
+
+    /**
+     * Returns the y coordinate at which a rectangle of the specified width
+     * rests on the skyline when its left edge is at the start of the specified
+     * segment.
+     * 
+     * @param segment
+     *        the index of the segment.
+     * @param width
+     *        the rectangle width.
+     * @return the y coordinate, or <code>-1</code> when rectangle sticks out
+     *         of the bin on the right.
+     */
+    private int restingY(int segment, int width) {
+        if (segmentX[segment] + width > binWidth) {
+            return -1;
+        }
+
+        int y = 0;
+        int remaining = width;
+
+        for (int i = segment; remaining > 0; ++i) {
+            y = Math.max(y, segmentY[i]);
+            remaining -= segmentWidth[i];
+        }
+        return y;
+    }
+
+    /**
+     * Ensures the segment arrays can hold the specified number of segments.
+     * 
+     * @param capacity
+     *        the required capacity.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > segmentX.length) {
+            int length = Math.max(capacity, segmentX.length * 2);
+
+            int[] x = new int[length];
+            int[] y = new int[length];
+            int[] width = new int[length];
+
+            System.arraycopy(segmentX, 0, x, 0, count);
+            System.arraycopy(segmentY, 0, y, 0, count);
+            System.arraycopy(segmentWidth, 0, width, 0, count);
+
+            segmentX = x;
+            segmentY = y;
+            segmentWidth = width;
+        }
+    }
+
+    /**
+     * Raises the skyline under the rectangle placed at the start of the
+     * specified segment.
+     * 
+     * @param segment
+     *        the index of the segment the rectangle starts at.
+     * @param width
+     *        the rectangle width.
+     * @param bottom
+     *        the y coordinate of the rectangle's bottom edge.
+     */
+    private void raise(int segment, int width, int bottom) {
+        int left = segmentX[segment];
+        int right = left + width;
+
+        // Find the segment partially covered by the rectangle, if any.
+        // Segments in between are swallowed by the new segment.
+        int last = segment;
+        while ((last < count)
+                && (segmentX[last] + segmentWidth[last] <= right)) {
+            ++last;
+        }
+
+        boolean split = (last < count) && (segmentX[last] < right);
+        if (split) {
+            segmentWidth[last] -= right - segmentX[last];
+            segmentX[last] = right;
+        }
+
+        // Replace segments [segment, last) with a single one.
+        int removed = last - segment - 1;
+        if (removed < 0) {
+            ensureCapacity(count + 1);
+        }
+        System.arraycopy(segmentX, last, segmentX, segment + 1, count - last);
+        System.arraycopy(segmentY, last, segmentY, segment + 1, count - last);
+        System.arraycopy(segmentWidth, last, segmentWidth, segment + 1, count
+                - last);
+        count -= removed;
+
+        segmentX[segment] = left;
+        segmentY[segment] = bottom;
+        segmentWidth[segment] = width;
+
+        merge(segment);
+    }
+
+    /**
+     * Merges the specified segment with neighbours at the same height.
+     * 
+     * @param segment
+     *        the index of the segment.
+     */
+    private void merge(int segment) {
+        if ((segment + 1 < count)
+                && (segmentY[segment + 1] == segmentY[segment])) {
+            segmentWidth[segment] += segmentWidth[segment + 1];
+            remove(segment + 1);
+        }
+        if ((segment > 0) && (segmentY[segment - 1] == segmentY[segment])) {
+            segmentWidth[segment - 1] += segmentWidth[segment];
+            remove(segment);
+        }
+    }
+
+    /**
+     * Removes the specified segment.
+     * 
+     * @param segment
+     *        the index of the segment.
+     */
+    private void remove(int segment) {
+        int moved = count - segment - 1;
+
+        System.arraycopy(segmentX, segment + 1, segmentX, segment, moved);
+        System.arraycopy(segmentY, segment + 1, segmentY, segment, moved);
+        System.arraycopy(segmentWidth, segment + 1, segmentWidth, segment,
+                moved);
+        --count;
+    }
+
+    @Override
+    protected boolean place(int width, int height, Point location) {
+        int bestSegment = -1;
+        int bestBottom = Integer.MAX_VALUE;
+
+        for (int i = 0; i < count; ++i) {
+            int y = restingY(i, width);
+
+            if ((y >= 0) && (y + height <= binHeight)
+                    && (y + height < bestBottom)) {
+                bestSegment = i;
+                bestBottom = y + height;
+            }
+        }
+
+        if (bestSegment < 0) {
+            return false;
+        }
+
+        location.setLocation(segmentX[bestSegment], bestBottom - height);
+        raise(bestSegment, width, bestBottom);
+        return true;
+    }
+
+}
@@ -0,0 +1,80 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import java.awt.Image;
+import java.io.File;
+
+import spritey.core.FileSprite;
+import spritey.core.Sprite;
+
+/**
+ * Identifies the pixels of a sprite, so that trims and hashes computed from
+ * them are reused until they change. Pixels of a file sprite change with the
+ * modification time or length of its file; pixels of any other sprite change
+ * with its image. Images drawn onto in place are not told apart.
+ */
+class SpriteVersion {
+
+    private final Image image;
+    private final long modified;
+    private final long length;
+
+    /**
+     * Creates a new instance of SpriteVersion holding the current version of
+     * the specified sprite. The file of a file sprite is not decoded.
+     * 
+     * @param sprite
+     *        the sprite.
+     */
+    public SpriteVersion(Sprite sprite) {
+        if (sprite instanceof FileSprite) {
+            File file = ((FileSprite) sprite).getFile();
+
+            image = null;
+            modified = file.lastModified();
+            length = file.length();
+        } else {
+            image = sprite.getImage();
+            modified = 0;
+            length = 0;
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SpriteVersion)) {
+            return false;
+        }
+
+        SpriteVersion other = (SpriteVersion) obj;
+        return (image == other.image) && (modified == other.modified)
+                && (length == other.length);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = System.identityHashCode(image);
+        hash = 31 * hash + (int) (modified ^ (modified >>> 32));
+        return 31 * hash + (int) (length ^ (length >>> 32));
+    }
+
+}
@@ -43,4 +43,24 @@ public interface Strategy {
     public void pack(Sheet sheet, Constraints constraints)
             throws IllegalArgumentException, SizeTooSmallException;
 
+    /**
+     * Arranges sprites of the specified layout according to the rules
+     * implemented by clients. Neither sprites nor the sheet are modified,
+     * therefore, several strategies can arrange copies of the same layout at
+     * the same time.
+     * 
+     * @param layout
+     *        the layout to arrange.
+     * @param constraints
+     *        the set of constraints that have to be obeyed when packing sprite
+     *        sheet.
+     * @throws IllegalArgumentException
+     *         when either <code>layout</code> or <code>constraints</code> is
+     *         null.
+     * @throws SizeTooSmallException
+     *         when sheet size is too small to fit all sprites.
+     */
+    public void arrange(Layout layout, Constraints constraints)
+            throws IllegalArgumentException, SizeTooSmallException;
+
 }
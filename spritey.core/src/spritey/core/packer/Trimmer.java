@@ -0,0 +1,503 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import spritey.core.FileSprite;
+import spritey.core.Messages;
+import spritey.core.Sprite;
+
+/**
+ * Trims transparent borders off sprites. Alpha channel of every sprite is
+ * scanned once, directly on raster data, to find the bounding box of pixels
+ * which aren't fully transparent. Sprites are scanned in parallel. Pixels of
+ * sprites kept in a store are copied from the store into an array reused by
+ * every sprite scanned on the same thread, rather than into a heap image.
+ * <p>
+ * Trimmer remembers the trim of every sprite it has scanned, so that trimming
+ * the same sprites again scans only sprites whose pixels have changed.
+ * </p>
+ */
+public class Trimmer {
+
+    /**
+     * The number of sprites below which sprites are scanned sequentially.
+     */
+    private static final int THRESHOLD = 16;
+
+    private Map<Sprite, Trimmed> trimmed;
+
+    /**
+     * The trim computed from a version of sprite pixels.
+     */
+    private static class Trimmed {
+
+        private final SpriteVersion version;
+        private final Rectangle trim;
+
+        /**
+         * Creates a new instance of Trimmed.
+         * 
+         * @param version
+         *        the version of sprite pixels.
+         * @param trim
+         *        the trim computed from them.
+         */
+        public Trimmed(SpriteVersion version, Rectangle trim) {
+            this.version = version;
+            this.trim = trim;
+        }
+
+    }
+
+    /**
+     * Scans a range of sprites, splitting the range in halves until it is
+     * small enough.
+     */
+    private class Scan extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Sprite[] sprites;
+        private final Rectangle[] trims;
+        private final int from;
+        private final int to;
+
+        /**
+         * Creates a new instance of Scan.
+         * 
+         * @param sprites
+         *        the sprites to scan.
+         * @param trims
+         *        receives the trim of every sprite, or <code>null</code>
+         *        when sprite has no pixels to scan.
+         * @param from
+         *        the index of the first sprite, inclusive.
+         * @param to
+         *        the index of the last sprite, exclusive.
+         */
+        public Scan(Sprite[] sprites, Rectangle[] trims, int from, int to) {
+            this.sprites = sprites;
+            this.trims = trims;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                int[] scratch = null;
+
+                for (int i = from; i < to; ++i) {
+                    Sprite sprite = sprites[i];
+
+                    if ((sprite instanceof FileSprite)
+                            && (null != ((FileSprite) sprite).getStore())) {
+                        Rectangle area = new Rectangle(sprite.getSourceSize());
+                        int length = area.width * area.height;
+
+                        if ((null == scratch) || (scratch.length < length)) {
+                            scratch = new int[length];
+                        }
+
+                        try {
+                            ((FileSprite) sprite).getRGB(area, scratch);
+                        } catch (IOException e) {
+                            // Sprite is left untrimmed, writing it fails.
+                            continue;
+                        }
+                        trims[i] = computeTrim(new PackedAlphaRows(scratch,
+                                0, area.width), area.width, area.height);
+                    } else {
+                        Image image = sprite.getImage();
+
+                        // Sprites without image have no pixels to scan.
+                        if (null != image) {
+                            trims[i] = computeTrim(image);
+                        }
+                    }
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Scan(sprites, trims, from, middle), new Scan(
+                        sprites, trims, middle, to));
+            }
+        }
+
+    }
+
+    /**
+     * Creates a new instance of Trimmer.
+     */
+    public Trimmer() {
+        trimmed = new WeakHashMap<Sprite, Trimmed>();
+    }
+
+    /**
+     * Trims transparent borders off the specified sprites. Only sprites whose
+     * pixels have changed since they were last trimmed are scanned.
+     * 
+     * @param sprites
+     *        the sprites to trim.
+     * @throws IllegalArgumentException
+     *         when <code>sprites</code> is null.
+     */
+    public void trim(Sprite[] sprites) {
+        if (null == sprites) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+
+        SpriteVersion[] versions = new SpriteVersion[sprites.length];
+        int[] stale = new int[sprites.length];
+        int count = 0;
+
+        for (int i = 0; i < sprites.length; ++i) {
+            versions[i] = new SpriteVersion(sprites[i]);
+
+            Trimmed entry = trimmed.get(sprites[i]);
+            if ((null != entry) && entry.version.equals(versions[i])) {
+                sprites[i].setTrim(entry.trim);
+            } else {
+                stale[count++] = i;
+            }
+        }
+
+        Sprite[] pending = new Sprite[count];
+        for (int i = 0; i < count; ++i) {
+            pending[i] = sprites[stale[i]];
+        }
+
+        Rectangle[] trims = new Rectangle[count];
+        ForkJoinPool.commonPool().invoke(new Scan(pending, trims, 0, count));
+
+        for (int i = 0; i < count; ++i) {
+            // Sprites which couldn't be scanned are left as they are and
+            // scanned again next time.
+            if (null != trims[i]) {
+                pending[i].setTrim(trims[i]);
+                trimmed.put(pending[i], new Trimmed(versions[stale[i]],
+                        trims[i]));
+            }
+        }
+    }
+
+    /**
+     * Restores the specified sprites, so that whole images are packed again.
+     * 
+     * @param sprites
+     *        the sprites to restore.
+     * @throws IllegalArgumentException
+     *         when <code>sprites</code> is null.
+     */
+    public void untrim(Sprite[] sprites) {
+        if (null == sprites) {
+            throw new IllegalArgumentException(Messages.NULL);
+        }
+
+        for (Sprite sprite : sprites) {
+            if (sprite.isTrimmed()) {
+                sprite.setTrim(new Rectangle(sprite.getSourceSize()));
+            }
+        }
+    }
+
+    /**
+     * Computes the bounding box of pixels which aren't fully transparent.
+     * Images without alpha channel are not trimmed. Fully transparent images
+     * are trimmed to the top left pixel, so that they still take some room.
+     * 
+     * @param image
+     *        the image to scan.
+     * @return the bounding box within the image.
+     */
+    public Rectangle computeTrim(Image image) {
+        if (!(image instanceof BufferedImage)) {
+            // Pixels of other images can't be reached without drawing them.
+            return new Rectangle(image.getWidth(null), image.getHeight(null));
+        }
+
+        BufferedImage buffered = (BufferedImage) image;
+        int width = buffered.getWidth();
+        int height = buffered.getHeight();
+
+        if (!buffered.getColorModel().hasAlpha()) {
+            return new Rectangle(width, height);
+        }
+        return computeTrim(createAlphaRows(buffered), width, height);
+    }
+
+    /**
+     * Computes the bounding box of pixels which aren't fully transparent
+     * within an image of the specified size.
+     * 
+     * @param rows
+     *        the alpha access to the image.
+     * @param width
+     *        the image width.
+     * @param height
+     *        the image height.
+     * @return the bounding box within the image.
+     */
+    private Rectangle computeTrim(AlphaRows rows, int width, int height) {
+        if ((0 == width) || (0 == height)) {
+            return new Rectangle(width, height);
+        }
+
+        int top = 0;
+        while ((top < height) && (rows.first(top, 0, width) < 0)) {
+            ++top;
+        }
+        if (top == height) {
+            return new Rectangle(Math.min(1, width), Math.min(1, height));
+        }
+
+        int bottom = height - 1;
+        while (rows.first(bottom, 0, width) < 0) {
+            --bottom;
+        }
+
+        // Each row only has to be checked outside the columns already known
+        // to be opaque.
+        int left = width;
+        int right = -1;
+        for (int y = top; y <= bottom; ++y) {
+            int x = rows.first(y, 0, left);
+            if (x >= 0) {
+                left = x;
+            }
+            x = rows.last(y, right + 1, width);
+            if (x >= 0) {
+                right = x;
+            }
+        }
+
+        return new Rectangle(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    /**
+     * Creates the fastest alpha access for the specified image.
+     * 
+     * @param image
+     *        the image to read.
+     * @return the alpha access.
+     */
+    private AlphaRows createAlphaRows(BufferedImage image) {
+        Raster raster = image.getRaster();
+        ColorModel model = image.getColorModel();
+
+        if ((raster.getDataBuffer() instanceof DataBufferInt)
+                && (raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+                && (DataBuffer.TYPE_INT == model.getTransferType())) {
+            int[] masks = ((SinglePixelPackedSampleModel) raster
+                    .getSampleModel()).getBitMasks();
+
+            if ((4 == masks.length) && (0xff000000 == masks[3])) {
+                return new PackedAlphaRows(raster);
+            }
+        }
+        return new RasterAlphaRows(image);
+    }
+
+    /**
+     * Finds pixels which aren't fully transparent within a row.
+     */
+    private static abstract class AlphaRows {
+
+        /**
+         * Returns the first column within the range whose pixel isn't fully
+         * transparent.
+         * 
+         * @param y
+         *        the row.
+         * @param from
+         *        the first column, inclusive.
+         * @param to
+         *        the last column, exclusive.
+         * @return the column, or -1 when all pixels are transparent.
+         */
+        public abstract int first(int y, int from, int to);
+
+        /**
+         * Returns the last column within the range whose pixel isn't fully
+         * transparent.
+         * 
+         * @param y
+         *        the row.
+         * @param from
+         *        the first column, inclusive.
+         * @param to
+         *        the last column, exclusive.
+         * @return the column, or -1 when all pixels are transparent.
+         */
+        public abstract int last(int y, int from, int to);
+
+    }
+
+    /**
+     * Reads alpha straight from the int array of ARGB images, or of ARGB
+     * pixels copied from a store.
+     */
+    private static class PackedAlphaRows extends AlphaRows {
+
+        private final int[] data;
+        private final int offset;
+        private final int stride;
+
+        /**
+         * Creates a new instance of PackedAlphaRows.
+         * 
+         * @param raster
+         *        the raster backed by packed ARGB integers.
+         */
+        public PackedAlphaRows(Raster raster) {
+            DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+            SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster
+                    .getSampleModel();
+
+            data = buffer.getData();
+            stride = model.getScanlineStride();
+            offset = buffer.getOffset()
+                    - raster.getSampleModelTranslateY() * stride
+                    - raster.getSampleModelTranslateX();
+        }
+
+        /**
+         * Creates a new instance of PackedAlphaRows.
+         * 
+         * @param data
+         *        the packed ARGB integers.
+         * @param offset
+         *        the index of the top left pixel.
+         * @param stride
+         *        the distance between rows.
+         */
+        public PackedAlphaRows(int[] data, int offset, int stride) {
+            this.data = data;
+            this.offset = offset;
+            this.stride = stride;
+        }
+
+        @Override
+        public int first(int y, int from, int to) {
+            int row = offset + y * stride;
+            for (int x = from; x < to; ++x) {
+                if (0 != (data[row + x] >>> 24)) {
+                    return x;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int last(int y, int from, int to) {
+            int row = offset + y * stride;
+            for (int x = to - 1; x >= from; --x) {
+                if (0 != (data[row + x] >>> 24)) {
+                    return x;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+    /**
+     * Reads alpha of any other image a row of samples at a time.
+     */
+    private static class RasterAlphaRows extends AlphaRows {
+
+        private final Raster raster;
+        private final ColorModel model;
+        private final int band;
+        private final int[] samples;
+        private final Object pixel;
+        private int cachedRow;
+
+        /**
+         * Creates a new instance of RasterAlphaRows.
+         * 
+         * @param image
+         *        the image to read.
+         */
+        public RasterAlphaRows(BufferedImage image) {
+            raster = image.getRaster();
+            model = image.getColorModel();
+            // Alpha is the last band of images with a separate alpha channel,
+            // indexed images have a single band of palette indices.
+            band = raster.getNumBands() - 1;
+            samples = new int[raster.getWidth()];
+            pixel = raster.getDataElements(0, 0, null);
+            cachedRow = -1;
+        }
+
+        /**
+         * Returns the alpha of the specified pixel.
+         * 
+         * @param x
+         *        the column.
+         * @param y
+         *        the row.
+         * @return the alpha.
+         */
+        private int alpha(int x, int y) {
+            if (model.getNumComponents() == raster.getNumBands()) {
+                if (cachedRow != y) {
+                    raster.getSamples(0, y, samples.length, 1, band, samples);
+                    cachedRow = y;
+                }
+                return samples[x];
+            }
+            return model.getAlpha(raster.getDataElements(x, y, pixel));
+        }
+
+        @Override
+        public int first(int y, int from, int to) {
+            for (int x = from; x < to; ++x) {
+                if (0 != alpha(x, y)) {
+                    return x;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int last(int y, int from, int to) {
+            for (int x = to - 1; x >= from; --x) {
+                if (0 != alpha(x, y)) {
+                    return x;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+}
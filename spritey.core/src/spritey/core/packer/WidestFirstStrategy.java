@@ -18,18 +18,8 @@
 package spritey.core.packer;
 
 import java.awt.Dimension;
-import java.awt.Point;
-import java.awt.Rectangle;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 import spritey.core.Messages;
-import spritey.core.Sheet;
-import spritey.core.Sprite;
-import spritey.core.filter.SpriteFilter;
 
 /**
  * This packer tries to pack sprites starting with the widest. When sprite is
@@ -38,19 +28,36 @@ import spritey.core.filter.SpriteFilter;
  * against each zone, when sprite doesn't fist into any zone the sprite sheet is
  * expanded according to the client's implementation. Redundant zones i.e. zones
  * completely covered by other zones, are removed.
+ * <p>
+ * Zones are kept in primitive arrays and all working objects are reused, so
+ * arranging sprites produces next to no garbage.
+ * </p>
  */
-public abstract class WidestFirstStrategy implements Strategy {
+public abstract class WidestFirstStrategy extends AbstractStrategy {
 
     protected Constraints constraints;
     protected Dimension currentSize;
-    protected List<Rectangle> freeZones;
+    protected ZoneList freeZones;
+
+    // Receives the zones left after a sprite is positioned, then swapped with
+    // freeZones.
+    private ZoneList newZones;
+
+    // The size of the sprite being positioned, swapped when sprite is rotated.
+    private final Dimension size;
+    private final Dimension expansion;
+    private final Dimension rotatedExpansion;
 
     /**
      * Creates a new instance of AbstractStragety.
      */
     protected WidestFirstStrategy() {
         currentSize = new Dimension();
-        freeZones = new ArrayList<Rectangle>();
+        freeZones = new ZoneList();
+        newZones = new ZoneList();
+        size = new Dimension();
+        expansion = new Dimension();
+        rotatedExpansion = new Dimension();
     }
 
     /**
@@ -61,23 +68,28 @@ public abstract class WidestFirstStrategy implements Strategy {
      *        be expanded.
      */
     private void expandZones(Dimension expandBy) {
-        for (Rectangle zone : freeZones) {
-            if (zone.x + zone.width + expandBy.width == currentSize.width) {
-                zone.width += expandBy.width;
+        for (int i = 0; i < freeZones.size(); ++i) {
+            int width = freeZones.getWidth(i);
+            int height = freeZones.getHeight(i);
+
+            if (freeZones.getX(i) + width + expandBy.width
+                    == currentSize.width) {
+                width += expandBy.width;
             }
-            if (zone.y + zone.height + expandBy.height == currentSize.height) {
-                zone.height += expandBy.height;
+            if (freeZones.getY(i) + height + expandBy.height
+                    == currentSize.height) {
+                height += expandBy.height;
             }
+            freeZones.setSize(i, width, height);
         }
 
         if (expandBy.width > 0) {
-            freeZones.add(new Rectangle(currentSize.width - expandBy.width, 0,
-                    expandBy.width, currentSize.height));
+            freeZones.add(currentSize.width - expandBy.width, 0,
+                    expandBy.width, currentSize.height);
         }
         if (expandBy.height > 0) {
-            freeZones.add(new Rectangle(0,
-                    currentSize.height - expandBy.height, currentSize.width,
-                    expandBy.height));
+            freeZones.add(0, currentSize.height - expandBy.height,
+                    currentSize.width, expandBy.height);
         }
         // For the sake of optimisation there's no need to sort and filter zones
         // because they will be sorted and filtered after the next sprite is
@@ -93,310 +105,231 @@ public abstract class WidestFirstStrategy implements Strategy {
     }
 
     /**
-     * Validates that the specified object is not null.
-     * 
-     * @param o
-     *        the object to validate.
-     * @param msg
-     *        the exception message.
-     */
-    private void validateNotNull(Object o, String msg) {
-        if (null == o) {
-            throw new IllegalArgumentException(msg);
-        }
-    }
-
-    /**
-     * Sorts sprites by their width in descending order.
-     * 
-     * @param sprites
-     *        a list of sprites to sort.
-     */
-    private void sortSprites(List<Sprite> sprites) {
-        Collections.sort(sprites, new Comparator<Sprite>() {
-            @Override
-            public int compare(Sprite s1, Sprite s2) {
-                return s2.getSize().width - s1.getSize().width;
-            }
-        });
-    }
-
-    /**
-     * Calculates the location where specified rectangle fits. When rectangle
-     * doesn't fit <code>null</code> is returned;
+     * Finds the zone where rectangle of the specified size fits. When rotation
+     * is allowed the rectangle may be turned by 90 degrees, in which case its
+     * width and height are swapped. The first zone the rectangle fits in
+     * either way is used; when it fits both ways, the orientation leaving the
+     * shorter leftover side is chosen.
      * 
      * @param rect
-     *        the rectangle to position.
-     * @return the location where rectangle fits, if <code>null</code> is
-     *         returned the rectangle does not fit.
+     *        the size of the rectangle to position.
+     * @param rotate
+     *        specifies whether the rectangle may be rotated.
+     * @return the index of the zone where rectangle fits, or -1 when the
+     *         rectangle does not fit.
      */
-    private Point computeLocation(Rectangle rect) {
-        for (Rectangle zone : freeZones) {
-            rect.setLocation(zone.getLocation());
+    private int computeLocation(Dimension rect, boolean rotate) {
+        rotate = rotate && (rect.width != rect.height);
+
+        for (int i = 0; i < freeZones.size(); ++i) {
+            int zoneWidth = freeZones.getWidth(i);
+            int zoneHeight = freeZones.getHeight(i);
+            boolean fits = (zoneWidth >= rect.width)
+                    && (zoneHeight >= rect.height);
+            boolean fitsRotated = rotate && (zoneWidth >= rect.height)
+                    && (zoneHeight >= rect.width);
+
+            if (fits && fitsRotated) {
+                int leftover = Math.min(zoneWidth - rect.width, zoneHeight
+                        - rect.height);
+                int leftoverRotated = Math.min(zoneWidth - rect.height,
+                        zoneHeight - rect.width);
+
+                fits = leftover <= leftoverRotated;
+            }
 
-            if (zone.contains(rect)) {
-                return zone.getLocation();
+            if (fits || fitsRotated) {
+                if (!fits) {
+                    rect.setSize(rect.height, rect.width);
+                }
+                return i;
             }
         }
-        return null;
+        return -1;
     }
 
     /**
-     * Subtracts one rectangle from another. The returned rectangles may look
-     * like r1, r2, r3, r4 below,
-     * 
-     * <pre>
-     * +---------+------------+------------+
-     * |         |            |            |
-     * |         |            |            |
-     * |         |            |            |
-     * |         +------------+            |
-     * |         |            |            |
-     * |   r1    | subtrahend |     r2     |
-     * |         |            |            |
-     * |         +------------+            |
-     * |         |            |            |
-     * |         |            |            |
-     * |         |            |            |
-     * +---------+------------+------------+
-     * 
-     * +-----------------------------------+
-     * |                                   |
-     * |               r3                  |
-     * |                                   |
-     * +---------+------------+------------+
-     * |         |            |            |
-     * |         | subtrahend |            |
-     * |         |            |            |
-     * +---------+------------+------------+
-     * |                                   |
-     * |               r4                  |
-     * |                                   |
-     * +-----------------------------------+
-     * </pre>
-     * 
-     * When two rectangles are not intersecting the <code>minuend</code>
-     * rectangle is returned.
+     * Calculates the width and height by which sheet has to be expanded to fit
+     * the rectangle of the specified size. When rotation is allowed and
+     * expanding for the rotated rectangle adds less area, the rectangle is
+     * rotated, i.e. its width and height are swapped.
      * 
-     * @param minuend
-     *        the rectangle to subtract from.
-     * @param subtrahend
-     *        the rectangle to subtract.
-     * @return the difference.
+     * @param rect
+     *        the size of the rectangle that has to fit after the expansion.
+     * @param rotate
+     *        specifies whether the rectangle may be rotated.
+     * @return the expansion.
+     * @throws SizeTooSmallException
+     *         when sheet size is too small to fit all sprites.
      */
-    protected List<Rectangle> subtract(Rectangle minuend, Rectangle subtrahend) {
-        validateNotNull(minuend, Messages.NULL);
-        validateNotNull(subtrahend, Messages.NULL);
-
-        List<Rectangle> differences = new ArrayList<Rectangle>();
-
-        if (!subtrahend.intersects(minuend)) {
-            // The subtrahend rectangle does not intersect minuend rectangle
-            // therefore the difference will be minuend rectangle. This is
-            // similar to 5 - 0 = 5.
-            differences.add(minuend);
-        } else if (subtrahend.contains(minuend)) {
-            // If subtrahend rectangle entirely covers the minuend rectangle
-            // then there's no need for subtraction as there'll be no difference
-            // left. This is similar to 4 - 6 = -2, but instead of the negative
-            // rectangle we return an empty list of differences to indicate that
-            // minuend has been completely "eaten" by subtrahend rectangle.
-        } else {
-            // The subtrahend intersects the minuend, therefore, we need to get
-            // the intersection and subtract that intersection from minuend.
-            // Note that if subtrahend is completely contained within minuend
-            // rectangle then intersection == minuend.
-            Rectangle intersection = minuend.intersection(subtrahend);
-
-            // @formatter:off
-            // +---------+------------+------------+
-            // |         |            |            |
-            // |         |            |            |
-            // |         |            |            |
-            // |         +------------+            |
-            // |         |            |            |
-            // |   r1    | subtrahend |     r2     |
-            // |         |            |            |
-            // |         +------------+            |
-            // |         |            |            |
-            // |         |            |            |
-            // |         |            |            |
-            // +---------+------------+------------+
-            // @formatter:on
-            int width = intersection.x - minuend.x;
-            if (width > 0) {
-                differences.add(new Rectangle(minuend.x, minuend.y, width,
-                        minuend.height));
-            }
-
-            width = minuend.x + minuend.width - intersection.x
-                    - intersection.width;
-            if (width > 0) {
-                differences
-                        .add(new Rectangle(intersection.x + intersection.width,
-                                minuend.y, width, minuend.height));
-            }
+    private Dimension expandBy(Dimension rect, boolean rotate)
+            throws SizeTooSmallException {
+        if (!rotate || (rect.width == rect.height)) {
+            expandBy(rect.width, rect.height, expansion);
+            return expansion;
+        }
 
-            // @formatter:off
-            // +-----------------------------------+
-            // |                                   |
-            // |               r3                  |
-            // |                                   |
-            // +---------+------------+------------+
-            // |         |            |            |
-            // |         | subtrahend |            |
-            // |         |            |            |
-            // +---------+------------+------------+
-            // |                                   |
-            // |               r4                  |
-            // |                                   |
-            // +-----------------------------------+
-            // @formatter:on
-            int height = intersection.y - minuend.y;
-            if (height > 0) {
-                differences.add(new Rectangle(minuend.x, minuend.y,
-                        minuend.width, height));
-            }
+        boolean fits = false;
 
-            height = minuend.y + minuend.height - intersection.y
-                    - intersection.height;
-            if (height > 0) {
-                differences.add(new Rectangle(minuend.x, intersection.y
-                        + intersection.height, minuend.width, height));
+        try {
+            expandBy(rect.width, rect.height, expansion);
+            fits = true;
+        } catch (SizeTooSmallException e) {
+            // The rotated rectangle may still fit.
+        }
+        try {
+            expandBy(rect.height, rect.width, rotatedExpansion);
+        } catch (SizeTooSmallException e) {
+            if (!fits) {
+                throw e;
             }
+            return expansion;
         }
 
-        return differences;
+        if (!fits
+                || (expandedArea(rotatedExpansion) < expandedArea(expansion))) {
+            rect.setSize(rect.height, rect.width);
+            return rotatedExpansion;
+        }
+        return expansion;
     }
 
     /**
-     * Sorts the specified list by rectangle are in ascending order and removes
-     * rectangles covered by bigger rectangles.
+     * Returns the area of the sheet after it is expanded by the specified
+     * dimension.
      * 
-     * @param zones
-     *        the list of rectangles to remove overlapping rectangles in.
+     * @param expandBy
+     *        the expansion.
+     * @return the area after expansion.
      */
-    private void removeOverlappingZones(List<Rectangle> zones) {
-        // Sort rectangles by their area in ascending order to make removing
-        // overlapping rectangles easier.
-        Collections.sort(zones, new Comparator<Rectangle>() {
-            @Override
-            public int compare(Rectangle r1, Rectangle r2) {
-                return r1.width * r1.height - r2.width * r2.height;
-            }
-        });
-
-        Rectangle[] copy = zones.toArray(new Rectangle[zones.size()]);
-
-        for (int i = 0; i < copy.length; ++i) {
-            for (int j = i + 1; j < copy.length; ++j) {
-                // The list is sorted, therefore, the next element in the list
-                // will always be either bigger or the same size. If bigger
-                // rectangle covers smaller one then remove the small rectangle.
-                if (copy[j].contains(copy[i])) {
-                    zones.remove(copy[i]);
-                    break;
-                }
-            }
-        }
+    private long expandedArea(Dimension expandBy) {
+        return (long) (currentSize.width + expandBy.width)
+                * (currentSize.height + expandBy.height);
     }
 
     /**
-     * Clients should implement this method to define how sprites are packed
-     * into the sprite sheet.
+     * Sorts the specified zones by the keys provided by clients. Zones with
+     * equal keys keep their order.
      * 
      * @param zones
-     *        the list to sort.
+     *        the zones to sort.
      */
-    protected abstract void sortZones(List<Rectangle> zones);
+    protected void sortZones(ZoneList zones) {
+        for (int i = 0; i < zones.size(); ++i) {
+            zones.setKey(i, zoneSortKey(zones.getX(i), zones.getY(i),
+                    zones.getWidth(i), zones.getHeight(i)));
+        }
+        zones.sort();
+    }
 
     /**
-     * Sorts rectangles by the highest and left most, and removes bounds covered
-     * by bigger rectangles.
+     * Clients should implement this method to define the order in which zones
+     * are tried, zones with smaller keys first.
      * 
-     * @param list
-     *        a list to sort and filter.
+     * @param x
+     *        the zone x coordinate.
+     * @param y
+     *        the zone y coordinate.
+     * @param width
+     *        the zone width.
+     * @param height
+     *        the zone height.
+     * @return the sort key.
      */
-    private void sortAndFilterZones(List<Rectangle> list) {
-        removeOverlappingZones(list);
-        sortZones(list);
-    }
+    protected abstract int zoneSortKey(int x, int y, int width, int height);
 
     /**
-     * Recalculates each zone. It will modify <code>freeZones</code> list, so be
-     * careful when calling this while reading from <code>freeZones</code>.
+     * Recalculates each zone after the specified area becomes occupied, then
+     * removes zones covered by bigger zones and sorts the rest.
      * 
-     * @param rect
-     *        the rectangle representing occupied area.
+     * @param x
+     *        the x coordinate of the occupied area.
+     * @param y
+     *        the y coordinate of the occupied area.
+     * @param width
+     *        the width of the occupied area.
+     * @param height
+     *        the height of the occupied area.
      */
-    private void recalculateZones(Rectangle rect) {
-        List<Rectangle> newZones = new ArrayList<Rectangle>();
-
-        for (Rectangle zone : freeZones) {
-            newZones.addAll(subtract(zone, rect));
-        }
+    private void recalculateZones(int x, int y, int width, int height) {
+        newZones.clear();
+        freeZones.subtract(x, y, width, height, newZones);
+        newZones.removeCovered();
+        sortZones(newZones);
 
-        sortAndFilterZones(newZones);
+        ZoneList oldZones = freeZones;
         freeZones = newZones;
+        newZones = oldZones;
     }
 
     /**
      * Calculates the width and height by which sheet has to be expanded to fit
-     * the specified rectangle.
+     * a rectangle of the specified size.
      * 
-     * @param rect
-     *        the rectangle that has to fit after the expansion.
+     * @param width
+     *        the width of the rectangle that has to fit after the expansion.
+     * @param height
+     *        the height of the rectangle that has to fit after the expansion.
+     * @param expansion
+     *        receives the width and height to expand by.
      * @throws SizeTooSmallException
      *         when sheet size is too small to fit all sprites.
      */
-    protected abstract Dimension expandBy(Rectangle rect)
+    protected abstract void expandBy(int width, int height, Dimension expansion)
             throws SizeTooSmallException;
 
+    /**
+     * Orders sprites by width, or by the longer side when sprites may be
+     * rotated.
+     */
     @Override
-    public void pack(Sheet sheet, Constraints constraints)
-            throws IllegalArgumentException, SizeTooSmallException {
-        validateNotNull(sheet, Messages.NULL);
-        validateNotNull(constraints, Messages.NULL);
-
-        Sprite[] sprites = new SpriteFilter().filter(sheet);
-        if (0 == sprites.length) {
-            return;
+    protected int naturalSortKey(int width, int height) {
+        if ((null != constraints) && constraints.allowRotation()) {
+            return Math.max(width, height);
         }
+        return width;
+    }
 
-        List<Sprite> spriteList = Arrays.asList(sprites);
-        sortSprites(spriteList);
+    @Override
+    public void arrange(Layout layout, Constraints constraints)
+            throws IllegalArgumentException, SizeTooSmallException {
+        validateNotNull(layout, Messages.NULL);
+        validateNotNull(constraints, Messages.NULL);
 
         this.constraints = constraints;
         flushCache();
 
-        for (Sprite sprite : spriteList) {
-            Point location = computeLocation(sprite.getBounds());
+        boolean rotate = constraints.allowRotation();
+
+        for (int i : sortSprites(layout)) {
+            size.setSize(layout.getSpriteWidth(i), layout.getSpriteHeight(i));
+            int zone = computeLocation(size, rotate);
 
-            if (null != location) {
-                sprite.setLocation(location);
-                recalculateZones(sprite.getBounds());
-            } else {
+            if (zone < 0) {
                 // Expand sprite sheet and try again.
-                Dimension expandBy = expandBy(sprite.getBounds());
+                Dimension expandBy = expandBy(size, rotate);
 
                 currentSize.setSize(currentSize.width + expandBy.width,
                         currentSize.height + expandBy.height);
 
                 expandZones(expandBy);
 
-                location = computeLocation(sprite.getBounds());
-                if (null == location) {
+                zone = computeLocation(size, false);
+                if (zone < 0) {
                     throw new SizeTooSmallException(
                             Messages.PACKER_SHEET_SIZE_TOO_SMALL);
                 }
-
-                sprite.setLocation(location);
-                recalculateZones(sprite.getBounds());
             }
+
+            int x = freeZones.getX(zone);
+            int y = freeZones.getY(zone);
+
+            layout.setRotated(i, size.width != layout.getSpriteWidth(i));
+            layout.setLocation(i, x, y);
+            recalculateZones(x, y, size.width, size.height);
         }
 
-        sheet.setWidth(currentSize.width);
-        sheet.setHeight(currentSize.height);
+        layout.setSize(currentSize.width, currentSize.height);
     }
 
 }
@@ -0,0 +1,336 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import java.util.Arrays;
+
+/**
+ * A list of free zones stored as parallel arrays of primitive coordinates.
+ * Zones are never boxed into objects; the arrays grow as needed and are reused
+ * after the list is cleared, so a list which has reached its working size
+ * doesn't allocate any more memory.
+ * <p>
+ * Zones are sorted in place by integer keys. Sorting is stable, i.e. zones
+ * with equal keys keep their relative order.
+ * </p>
+ */
+public class ZoneList {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] xs;
+    private int[] ys;
+    private int[] widths;
+    private int[] heights;
+    private int size;
+
+    // Scratch arrays used for sorting.
+    private long[] keys;
+    private int[] buffer;
+
+    /**
+     * Creates a new instance of ZoneList, which is initially empty.
+     */
+    public ZoneList() {
+        xs = new int[INITIAL_CAPACITY];
+        ys = new int[INITIAL_CAPACITY];
+        widths = new int[INITIAL_CAPACITY];
+        heights = new int[INITIAL_CAPACITY];
+        keys = new long[INITIAL_CAPACITY];
+        buffer = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns the number of zones in this list.
+     * 
+     * @return the number of zones.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the x coordinate of the zone at the specified index.
+     * 
+     * @param i
+     *        the zone index.
+     * @return the x coordinate.
+     */
+    public int getX(int i) {
+        return xs[i];
+    }
+
+    /**
+     * Returns the y coordinate of the zone at the specified index.
+     * 
+     * @param i
+     *        the zone index.
+     * @return the y coordinate.
+     */
+    public int getY(int i) {
+        return ys[i];
+    }
+
+    /**
+     * Returns the width of the zone at the specified index.
+     * 
+     * @param i
+     *        the zone index.
+     * @return the zone width.
+     */
+    public int getWidth(int i) {
+        return widths[i];
+    }
+
+    /**
+     * Returns the height of the zone at the specified index.
+     * 
+     * @param i
+     *        the zone index.
+     * @return the zone height.
+     */
+    public int getHeight(int i) {
+        return heights[i];
+    }
+
+    /**
+     * Changes the size of the zone at the specified index.
+     * 
+     * @param i
+     *        the zone index.
+     * @param width
+     *        the new width.
+     * @param height
+     *        the new height.
+     */
+    public void setSize(int i, int width, int height) {
+        widths[i] = width;
+        heights[i] = height;
+    }
+
+    /**
+     * Removes all zones from this list. The memory is kept for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Appends a zone to this list.
+     * 
+     * @param x
+     *        the zone x coordinate.
+     * @param y
+     *        the zone y coordinate.
+     * @param width
+     *        the zone width.
+     * @param height
+     *        the zone height.
+     */
+    public void add(int x, int y, int width, int height) {
+        if (size == xs.length) {
+            int capacity = size << 1;
+
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            heights = Arrays.copyOf(heights, capacity);
+            keys = new long[capacity];
+            buffer = new int[capacity];
+        }
+
+        xs[size] = x;
+        ys[size] = y;
+        widths[size] = width;
+        heights[size] = height;
+        ++size;
+    }
+
+    /**
+     * Returns <code>true</code> if the zone at index <code>i</code> completely
+     * covers the zone at index <code>j</code>.
+     * 
+     * @param i
+     *        the index of the covering zone.
+     * @param j
+     *        the index of the covered zone.
+     * @return <code>true</code> if zone is covered, otherwise
+     *         <code>false</code>.
+     */
+    public boolean contains(int i, int j) {
+        return (xs[j] >= xs[i]) && (ys[j] >= ys[i])
+                && (xs[j] + widths[j] <= xs[i] + widths[i])
+                && (ys[j] + heights[j] <= ys[i] + heights[i]);
+    }
+
+    /**
+     * Subtracts the specified rectangle from every zone in this list and
+     * appends the differences to another list. A zone which doesn't intersect
+     * the rectangle is appended as it is, a zone which is covered by the
+     * rectangle leaves no difference. Otherwise, the difference of each zone
+     * is made of up to four zones, r1, r2, r3 and r4, in that order,
+     * 
+     * <pre>
+     * +---------+------------+------------+
+     * |         |            |            |
+     * |   r1    | subtrahend |     r2     |
+     * |         |            |            |
+     * +---------+------------+------------+
+     * 
+     * +-----------------------------------+
+     * |               r3                  |
+     * +---------+------------+------------+
+     * |         | subtrahend |            |
+     * +---------+------------+------------+
+     * |               r4                  |
+     * +-----------------------------------+
+     * </pre>
+     * 
+     * @param x
+     *        the x coordinate of the rectangle to subtract.
+     * @param y
+     *        the y coordinate of the rectangle to subtract.
+     * @param width
+     *        the width of the rectangle to subtract.
+     * @param height
+     *        the height of the rectangle to subtract.
+     * @param differences
+     *        the list which receives the differences, must not be this list.
+     */
+    public void subtract(int x, int y, int width, int height,
+            ZoneList differences) {
+        int right = x + width;
+        int bottom = y + height;
+
+        for (int i = 0; i < size; ++i) {
+            int zoneX = xs[i];
+            int zoneY = ys[i];
+            int zoneRight = zoneX + widths[i];
+            int zoneBottom = zoneY + heights[i];
+
+            if ((width <= 0) || (height <= 0) || (right <= zoneX)
+                    || (bottom <= zoneY) || (zoneRight <= x)
+                    || (zoneBottom <= y)) {
+                differences.add(zoneX, zoneY, widths[i], heights[i]);
+            } else if ((zoneX < x) || (zoneY < y) || (zoneRight > right)
+                    || (zoneBottom > bottom)) {
+                int left = Math.max(zoneX, x);
+                int top = Math.max(zoneY, y);
+                int intersectionRight = Math.min(zoneRight, right);
+                int intersectionBottom = Math.min(zoneBottom, bottom);
+
+                if (left > zoneX) {
+                    differences.add(zoneX, zoneY, left - zoneX, heights[i]);
+                }
+                if (zoneRight > intersectionRight) {
+                    differences.add(intersectionRight, zoneY, zoneRight
+                            - intersectionRight, heights[i]);
+                }
+                if (top > zoneY) {
+                    differences.add(zoneX, zoneY, widths[i], top - zoneY);
+                }
+                if (zoneBottom > intersectionBottom) {
+                    differences.add(zoneX, intersectionBottom, widths[i],
+                            zoneBottom - intersectionBottom);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes zones which are completely covered by other zones. Zones are
+     * left sorted by area in ascending order.
+     */
+    public void removeCovered() {
+        for (int i = 0; i < size; ++i) {
+            setKey(i, widths[i] * heights[i]);
+        }
+        sort();
+
+        // Zones are sorted, therefore, a zone can only be covered by the zones
+        // following it. Removed zones are compacted towards the start of the
+        // arrays, behind the zones still to be checked.
+        int kept = 0;
+
+        for (int i = 0; i < size; ++i) {
+            boolean covered = false;
+
+            for (int j = i + 1; j < size; ++j) {
+                if (contains(j, i)) {
+                    covered = true;
+                    break;
+                }
+            }
+
+            if (!covered) {
+                xs[kept] = xs[i];
+                ys[kept] = ys[i];
+                widths[kept] = widths[i];
+                heights[kept] = heights[i];
+                ++kept;
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * Sets the key by which the zone at the specified index is sorted by the
+     * next call to <code>sort()</code>.
+     * 
+     * @param i
+     *        the zone index.
+     * @param key
+     *        the sort key.
+     */
+    public void setKey(int i, int key) {
+        // The index in the lower half keeps sorting stable.
+        keys[i] = ((long) key << 32) | i;
+    }
+
+    /**
+     * Sorts zones by their keys in ascending order. Zones with equal keys keep
+     * their relative order.
+     */
+    public void sort() {
+        Arrays.sort(keys, 0, size);
+
+        xs = permute(xs);
+        ys = permute(ys);
+        widths = permute(widths);
+        heights = permute(heights);
+    }
+
+    /**
+     * Reorders the specified array into the order of sorted keys.
+     * 
+     * @param values
+     *        the array to reorder.
+     * @return the reordered array. The specified array becomes the scratch
+     *         buffer.
+     */
+    private int[] permute(int[] values) {
+        int[] permuted = buffer;
+
+        for (int i = 0; i < size; ++i) {
+            permuted[i] = values[(int) keys[i]];
+        }
+        buffer = values;
+        return permuted;
+    }
+
+}
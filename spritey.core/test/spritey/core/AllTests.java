@@ -20,20 +20,51 @@ package spritey.core;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import spritey.core.io.BlockEncoderTests;
+import spritey.core.io.CompositorTests;
+import spritey.core.io.ImageSnifferTests;
+import spritey.core.io.ImageWriterTests;
 import spritey.core.io.MetadataWriterTests;
+import spritey.core.io.MipmapGeneratorTests;
+import spritey.core.io.PathFilterTests;
+import spritey.core.io.PixelConverterTests;
+import spritey.core.io.PngWriterTests;
+import spritey.core.io.QuantizerTests;
+import spritey.core.io.SpriteCacheTests;
+import spritey.core.io.SpriteStoreTests;
+import spritey.core.io.TextureWriterTests;
 import spritey.core.packer.ConstraintsTest;
+import spritey.core.packer.DeduplicatorTests;
 import spritey.core.packer.DiagonalFitMaintainAspectRatioAndPowerOfTwoStrategyTests;
 import spritey.core.packer.DiagonalFitMaintainPowerOfTwoStrategyTests;
+import spritey.core.packer.FreeZoneIndexTests;
+import spritey.core.packer.GuillotineStrategyTests;
 import spritey.core.packer.HighestFitMaintainAspectRatioStrategyTests;
 import spritey.core.packer.HighestFitStrategyTests;
+import spritey.core.packer.MaxRectsStrategyTests;
+import spritey.core.packer.PackerTests;
+import spritey.core.packer.RepackerTests;
+import spritey.core.packer.SkylineStrategyTests;
+import spritey.core.packer.TrimmerTests;
+import spritey.core.packer.ZoneListTests;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({ NodeTests.class, SheetTests.class, GroupTests.class,
-        SpriteTests.class, HighestFitStrategyTests.class,
+        SpriteTests.class, FileSpriteTests.class, HighestFitStrategyTests.class,
         ConstraintsTest.class,
         HighestFitMaintainAspectRatioStrategyTests.class,
         DiagonalFitMaintainPowerOfTwoStrategyTests.class,
         DiagonalFitMaintainAspectRatioAndPowerOfTwoStrategyTests.class,
-        MetadataWriterTests.class })
+        MaxRectsStrategyTests.class, FreeZoneIndexTests.class,
+        SkylineStrategyTests.class, GuillotineStrategyTests.class,
+        PackerTests.class, RepackerTests.class, TrimmerTests.class,
+        DeduplicatorTests.class, ZoneListTests.class,
+        MetadataWriterTests.class, ImageSnifferTests.class,
+        PathFilterTests.class,
+        SpriteCacheTests.class, SpriteStoreTests.class,
+        CompositorTests.class, PngWriterTests.class,
+        QuantizerTests.class, PixelConverterTests.class,
+        BlockEncoderTests.class, TextureWriterTests.class,
+        MipmapGeneratorTests.class, ImageWriterTests.class })
 public class AllTests {
 }
@@ -0,0 +1,278 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spritey.core.io.SpriteCache;
+import spritey.core.io.SpriteStore;
+
+/**
+ * Tests the implementation of FileSprite.
+ */
+public class FileSpriteTests {
+
+    File file;
+
+    @Before
+    public void initialize() throws IOException {
+        file = File.createTempFile("sprite", ".png");
+
+        BufferedImage image = new BufferedImage(5, 6,
+                BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(2, 3, 0xff00ff00);
+        ImageIO.write(image, "png", file);
+    }
+
+    @After
+    public void cleanUp() {
+        file.delete();
+    }
+
+    @Test
+    public void constructorWithFile() throws IOException {
+        FileSprite sprite = new FileSprite(file);
+
+        assertEquals(file.getName(), sprite.getName());
+        assertEquals(file, sprite.getFile());
+        assertEquals(new Dimension(5, 6), sprite.getSize());
+    }
+
+    @Test
+    public void probe() throws IOException {
+        assertEquals(new Dimension(5, 6), FileSprite.probe(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void probeFileWhichIsNotImage() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[] { 1, 2, 3, 4 });
+        } finally {
+            out.close();
+        }
+        FileSprite.probe(file);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorWithNullFile() throws IOException {
+        new FileSprite(null);
+    }
+
+    @Test
+    public void getImage() throws IOException {
+        FileSprite sprite = new FileSprite("sprite", file);
+        Image image = sprite.getImage();
+
+        assertEquals(BufferedImage.TYPE_INT_ARGB,
+                ((BufferedImage) image).getType());
+        assertEquals(0xff00ff00, ((BufferedImage) image).getRGB(2, 3));
+        assertSame(image, sprite.getImage());
+    }
+
+    @Test
+    public void getImageFromCache() throws IOException {
+        File directory = File.createTempFile("cache", "");
+        directory.delete();
+        SpriteCache cache = new SpriteCache(directory);
+
+        try {
+            FileSprite sprite = new FileSprite("sprite", file);
+            sprite.setCache(cache);
+            sprite.getImage();
+            assertNotNull(cache.get(file));
+
+            sprite = new FileSprite("sprite", file);
+            sprite.setCache(cache);
+            assertEquals(0xff00ff00,
+                    ((BufferedImage) sprite.getImage()).getRGB(2, 3));
+        } finally {
+            cache.clear();
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void getImageFromStore() throws IOException {
+        SpriteStore store = new SpriteStore();
+        FileSprite sprite = new FileSprite("sprite", file);
+        sprite.setStore(store);
+
+        assertArrayEquals(new int[] { 0, 0xff00ff00 },
+                sprite.getRGB(new Rectangle(1, 3, 2, 1), null));
+        assertEquals(4 * 5 * 6, store.getSize());
+
+        // Pixels are decoded once, later reads come from the store.
+        file.delete();
+        assertEquals(0xff00ff00,
+                ((BufferedImage) sprite.getImage()).getRGB(2, 3));
+        assertEquals(4 * 5 * 6, store.getSize());
+    }
+
+    @Test
+    public void release() throws IOException {
+        SpriteStore store = new SpriteStore();
+        FileSprite sprite = new FileSprite("sprite", file);
+        sprite.setStore(store);
+
+        sprite.getRGB(new Rectangle(0, 0, 5, 6), null);
+        sprite.release();
+        assertEquals(0, store.getSize());
+
+        // Pixels are decoded again into the released space.
+        assertArrayEquals(new int[] { 0xff00ff00 },
+                sprite.getRGB(new Rectangle(2, 3, 1, 1), null));
+        assertEquals(4 * 5 * 6, store.getSize());
+    }
+
+    @Test
+    public void setStoreReleasesPixels() throws IOException {
+        SpriteStore store = new SpriteStore();
+        FileSprite sprite = new FileSprite("sprite", file);
+        sprite.setStore(store);
+
+        sprite.getRGB(new Rectangle(0, 0, 5, 6), null);
+        sprite.setStore(new SpriteStore());
+        assertEquals(0, store.getSize());
+    }
+
+    @Test
+    public void getImageWhenFileIsDeleted() throws IOException {
+        FileSprite sprite = new FileSprite("sprite", file);
+        file.delete();
+
+        assertNull(sprite.getImage());
+    }
+
+    /**
+     * Replaces the test file with the first 60 bytes of a 64x64 image of
+     * noise, whose header is intact but whose pixels can't be decoded.
+     * 
+     * @throws IOException
+     *         when the file can't be written.
+     */
+    private void truncate() throws IOException {
+        Random random = new Random(1);
+        BufferedImage image = new BufferedImage(64, 64,
+                BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 64; ++y) {
+            for (int x = 0; x < 64; ++x) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes.toByteArray(), 0, 60);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void decodeTruncatedFile() throws IOException {
+        truncate();
+        FileSprite sprite = new FileSprite("sprite", file);
+
+        assertEquals(new Dimension(64, 64), sprite.getSize());
+        assertNull(sprite.getImage());
+        sprite.decode();
+    }
+
+    @Test(expected = IOException.class)
+    public void getRGBOfTruncatedFile() throws IOException {
+        truncate();
+        FileSprite sprite = new FileSprite("sprite", file);
+        sprite.setStore(new SpriteStore());
+
+        sprite.getRGB(new Rectangle(0, 0, 64, 64), null);
+    }
+
+    /**
+     * Replaces the test file with a 4x4 image, as if it was exported again at
+     * another size after the sprite was created.
+     * 
+     * @throws IOException
+     *         when the file can't be written.
+     */
+    private void resize() throws IOException {
+        ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB),
+                "png", file);
+    }
+
+    @Test(expected = IOException.class)
+    public void decodeResizedFile() throws IOException {
+        FileSprite sprite = new FileSprite("sprite", file);
+        resize();
+
+        assertNull(sprite.getImage());
+        sprite.decode();
+    }
+
+    @Test(expected = IOException.class)
+    public void getRGBOfResizedFile() throws IOException {
+        FileSprite sprite = new FileSprite("sprite", file);
+        sprite.setStore(new SpriteStore());
+        resize();
+
+        sprite.getRGB(new Rectangle(0, 0, 5, 6), null);
+    }
+
+    @Test(expected = IOException.class)
+    public void decodeCachedImageOfOtherSize() throws IOException {
+        File directory = File.createTempFile("cache", "");
+        directory.delete();
+        SpriteCache cache = new SpriteCache(directory);
+
+        try {
+            cache.put(file, new BufferedImage(4, 4,
+                    BufferedImage.TYPE_INT_ARGB));
+
+            FileSprite sprite = new FileSprite("sprite", file);
+            sprite.setCache(cache);
+            sprite.decode();
+        } finally {
+            cache.clear();
+            directory.delete();
+        }
+    }
+
+}
@@ -121,4 +121,57 @@ public class SheetTests {
         assertEquals("", sheet.getDescription());
     }
 
+    @Test
+    public void defaultPageCount() {
+        assertEquals(Sheet.DEFAULT_PAGE_COUNT, sheet.getPageCount());
+    }
+
+    @Test
+    public void setAndGetPageCount() {
+        sheet.setPageCount(3);
+        assertEquals(3, sheet.getPageCount());
+        assertEquals(0, sheet.getPageWidth(2));
+        assertEquals(0, sheet.getPageHeight(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setPageCountTooSmall() {
+        sheet.setPageCount(Sheet.MIN_PAGE_COUNT - 1);
+    }
+
+    @Test
+    public void setAndGetPageSize() {
+        sheet.setPageCount(2);
+        sheet.setPageSize(0, 10, 15);
+        sheet.setPageSize(1, 20, 25);
+
+        assertEquals(10, sheet.getWidth());
+        assertEquals(15, sheet.getHeight());
+        assertEquals(10, sheet.getPageWidth(0));
+        assertEquals(15, sheet.getPageHeight(0));
+        assertEquals(20, sheet.getPageWidth(1));
+        assertEquals(25, sheet.getPageHeight(1));
+    }
+
+    @Test
+    public void setPageCountKeepsPageSizes() {
+        sheet.setPageCount(3);
+        sheet.setPageSize(1, 20, 25);
+        sheet.setPageCount(2);
+
+        assertEquals(20, sheet.getPageWidth(1));
+        assertEquals(25, sheet.getPageHeight(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getPageWidthOfMissingPage() {
+        sheet.getPageWidth(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setNegativePageSize() {
+        sheet.setPageCount(2);
+        sheet.setPageSize(1, -1, 5);
+    }
+
 }
@@ -19,10 +19,13 @@ package spritey.core;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.awt.Dimension;
@@ -92,8 +95,24 @@ public class SpriteTests {
     public void getSize() {
         when(image.getWidth(null)).thenReturn(5);
         when(image.getHeight(null)).thenReturn(6);
+        sprite = new Sprite(image);
 
         assertEquals(new Dimension(5, 6), sprite.getSize());
+        assertEquals(5, sprite.getWidth());
+        assertEquals(6, sprite.getHeight());
+    }
+
+    @Test
+    public void getSizeIsReadOnce() {
+        Image image = mock(Image.class);
+        when(image.getWidth(null)).thenReturn(5);
+        when(image.getHeight(null)).thenReturn(6);
+        sprite = new Sprite(image);
+        sprite.getSize();
+        sprite.getArea();
+
+        verify(image, times(1)).getWidth(null);
+        verify(image, times(1)).getHeight(null);
     }
 
     @Test
@@ -104,32 +123,35 @@ public class SpriteTests {
     }
 
     @Test(expected = RuntimeException.class)
-    public void getSizeWhenImageHasNotFinishedLoading() {
+    public void setImageWhenImageHasNotFinishedLoading() {
         when(image.getWidth(null)).thenReturn(-1);
         when(image.getHeight(null)).thenReturn(-1);
-        sprite.getSize();
+        new Sprite(image);
     }
 
     @Test
     public void getArea() {
         when(image.getWidth(null)).thenReturn(5);
         when(image.getHeight(null)).thenReturn(6);
+        sprite = new Sprite(image);
 
         assertEquals(30, sprite.getArea());
     }
 
     @Test
-    public void getAreaWhenImageIsNull() {
-        when(sprite.getImage()).thenReturn(null);
+    public void constructorWithNameAndSize() {
+        sprite = new Sprite("sprite", 5, 6);
 
-        assertEquals(0, sprite.getArea());
+        assertEquals("sprite", sprite.getName());
+        assertNull(sprite.getImage());
+        assertEquals(new Dimension(5, 6), sprite.getSize());
+        assertEquals(new Dimension(5, 6), sprite.getSourceSize());
+        assertEquals(30, sprite.getArea());
     }
 
-    @Test(expected = RuntimeException.class)
-    public void getAreaWhenImageHasNotFinishedLoading() {
-        when(image.getWidth(null)).thenReturn(-1);
-        when(image.getHeight(null)).thenReturn(-1);
-        sprite.getArea();
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorWithNegativeSize() {
+        new Sprite("sprite", -1, 6);
     }
 
     @Test
@@ -150,6 +172,19 @@ public class SpriteTests {
         assertFalse(sprite.isVisible());
     }
 
+    @Test
+    public void setAndGetPage() {
+        assertEquals(Sprite.DEFAULT_PAGE, sprite.getPage());
+
+        sprite.setPage(3);
+        assertEquals(3, sprite.getPage());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setNegativePage() {
+        sprite.setPage(-1);
+    }
+
     @Test
     public void getBounds() {
         when(sprite.getLocation()).thenReturn(new Point(0, 0));
@@ -161,4 +196,83 @@ public class SpriteTests {
         assertEquals(new Rectangle(-1, -1, 0, 0), sprite.getBounds());
     }
 
+    @Test
+    public void setAndGetRotated() {
+        assertFalse(sprite.isRotated());
+
+        sprite.setRotated(true);
+        assertTrue(sprite.isRotated());
+    }
+
+    @Test
+    public void getBoundsWhenRotated() {
+        when(sprite.getLocation()).thenReturn(new Point(1, 2));
+        doReturn(new Dimension(5, 6)).when(sprite).getSize();
+        sprite.setRotated(true);
+
+        assertEquals(new Rectangle(1, 2, 6, 5), sprite.getBounds());
+    }
+
+    @Test
+    public void setAndGetTrim() {
+        doReturn(new Dimension(10, 8)).when(sprite).getSourceSize();
+        assertFalse(sprite.isTrimmed());
+        assertEquals(new Rectangle(0, 0, 10, 8), sprite.getTrim());
+
+        sprite.setTrim(new Rectangle(1, 2, 3, 4));
+        assertTrue(sprite.isTrimmed());
+        assertEquals(new Rectangle(1, 2, 3, 4), sprite.getTrim());
+        assertEquals(new Dimension(3, 4), sprite.getSize());
+        assertEquals(new Dimension(10, 8), sprite.getSourceSize());
+        assertEquals(12, sprite.getArea());
+
+        sprite.setTrim(new Rectangle(0, 0, 10, 8));
+        assertFalse(sprite.isTrimmed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setTrimOutsideImage() {
+        doReturn(new Dimension(10, 8)).when(sprite).getSourceSize();
+        sprite.setTrim(new Rectangle(8, 0, 3, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setTrimToNull() {
+        sprite.setTrim(null);
+    }
+
+    @Test
+    public void aliasFollowsOriginal() {
+        Sprite original = new Sprite(image);
+        original.setLocation(new Point(3, 4));
+        original.setPage(2);
+        original.setRotated(true);
+
+        assertFalse(sprite.isAlias());
+        sprite.setOriginal(original);
+        assertTrue(sprite.isAlias());
+        assertEquals(original, sprite.getOriginal());
+        assertEquals(new Point(3, 4), sprite.getLocation());
+        assertEquals(2, sprite.getPage());
+        assertTrue(sprite.isRotated());
+
+        sprite.setOriginal(null);
+        assertFalse(sprite.isAlias());
+        assertEquals(Sprite.DEFAULT_PAGE, sprite.getPage());
+        assertFalse(sprite.isRotated());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setOriginalToItself() {
+        sprite.setOriginal(sprite);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setOriginalToAlias() {
+        Sprite alias = new Sprite(image);
+        alias.setOriginal(new Sprite(image));
+
+        sprite.setOriginal(alias);
+    }
+
 }
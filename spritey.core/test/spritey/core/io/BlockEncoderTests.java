@@ -0,0 +1,395 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of BlockEncoder by decoding encoded blocks.
+ */
+public class BlockEncoderTests {
+
+    static final int[] FORMATS = { ImageWriter.FORMAT_BC1,
+            ImageWriter.FORMAT_BC3, ImageWriter.FORMAT_ETC2_RGB,
+            ImageWriter.FORMAT_ETC2_RGBA };
+
+    static final int[][] ETC_TABLES = { { 2, 8 }, { 5, 17 }, { 9, 29 },
+            { 13, 42 }, { 18, 60 }, { 24, 80 }, { 33, 106 }, { 47, 183 } };
+
+    static final int[][] EAC_TABLES = { { -3, -6, -9, -15, 2, 5, 8, 14 },
+            { -3, -7, -10, -13, 2, 6, 9, 12 }, { -2, -5, -8, -13, 1, 4, 7, 12 },
+            { -2, -4, -6, -13, 1, 3, 5, 12 }, { -3, -6, -8, -12, 2, 5, 7, 11 },
+            { -3, -7, -9, -11, 2, 6, 8, 10 }, { -4, -7, -8, -11, 3, 6, 7, 10 },
+            { -3, -5, -8, -11, 2, 4, 7, 10 }, { -2, -6, -8, -10, 1, 5, 7, 9 },
+            { -2, -5, -8, -10, 1, 4, 7, 9 }, { -2, -4, -8, -10, 1, 3, 7, 9 },
+            { -2, -5, -7, -10, 1, 4, 6, 9 }, { -3, -4, -7, -10, 2, 3, 6, 9 },
+            { -1, -2, -3, -10, 0, 1, 2, 9 }, { -4, -6, -8, -9, 3, 5, 7, 8 },
+            { -3, -5, -7, -9, 2, 4, 6, 8 } };
+
+    /**
+     * Encodes a block in the specified format.
+     */
+    static byte[] encode(int format, boolean quality, int[] block) {
+        BlockEncoder encoder = new BlockEncoder(format, quality);
+        byte[] out = new byte[encoder.getBlockBytes()];
+        encoder.encode(block, out, 0);
+        return out;
+    }
+
+    /**
+     * Decodes a block of the specified format into ARGB pixels. Alpha is
+     * opaque for formats without alpha.
+     */
+    static int[] decode(int format, byte[] data, int pos) {
+        int[] pixels = new int[16];
+        Arrays.fill(pixels, 0xff000000);
+
+        switch (format) {
+        case ImageWriter.FORMAT_BC1:
+            decodeBc1(data, pos, pixels);
+            break;
+        case ImageWriter.FORMAT_BC3:
+            decodeBc3Alpha(data, pos, pixels);
+            decodeBc1(data, pos + 8, pixels);
+            break;
+        case ImageWriter.FORMAT_ETC2_RGB:
+            decodeEtc(data, pos, pixels);
+            break;
+        default:
+            decodeEac(data, pos, pixels);
+            decodeEtc(data, pos + 8, pixels);
+            break;
+        }
+        return pixels;
+    }
+
+    static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    static int[] expand565(int c) {
+        int r = (c >> 11) & 31;
+        int g = (c >> 5) & 63;
+        int b = c & 31;
+        return new int[] { (r << 3) | (r >> 2), (g << 2) | (g >> 4),
+                (b << 3) | (b >> 2) };
+    }
+
+    static void decodeBc1(byte[] data, int pos, int[] pixels) {
+        int c0 = (data[pos] & 0xff) | ((data[pos + 1] & 0xff) << 8);
+        int c1 = (data[pos + 2] & 0xff) | ((data[pos + 3] & 0xff) << 8);
+        int[][] palette = new int[4][];
+        palette[0] = expand565(c0);
+        palette[1] = expand565(c1);
+        palette[2] = new int[3];
+        palette[3] = new int[3];
+
+        for (int c = 0; c < 3; ++c) {
+            if (c0 > c1) {
+                palette[2][c] = (2 * palette[0][c] + palette[1][c]) / 3;
+                palette[3][c] = (palette[0][c] + 2 * palette[1][c]) / 3;
+            } else {
+                palette[2][c] = (palette[0][c] + palette[1][c]) / 2;
+            }
+        }
+
+        for (int i = 0; i < 16; ++i) {
+            int index = (data[pos + 4 + i / 4] >> (2 * (i % 4))) & 3;
+            int[] color = palette[index];
+            pixels[i] = (pixels[i] & 0xff000000) | (color[0] << 16)
+                    | (color[1] << 8) | color[2];
+        }
+    }
+
+    static void decodeBc3Alpha(byte[] data, int pos, int[] pixels) {
+        int a0 = data[pos] & 0xff;
+        int a1 = data[pos + 1] & 0xff;
+        int[] palette = new int[8];
+        palette[0] = a0;
+        palette[1] = a1;
+        if (a0 > a1) {
+            for (int k = 1; k < 7; ++k) {
+                palette[k + 1] = ((7 - k) * a0 + k * a1) / 7;
+            }
+        } else {
+            for (int k = 1; k < 5; ++k) {
+                palette[k + 1] = ((5 - k) * a0 + k * a1) / 5;
+            }
+            palette[7] = 255;
+        }
+
+        long bits = 0;
+        for (int i = 0; i < 6; ++i) {
+            bits |= (long) (data[pos + 2 + i] & 0xff) << (8 * i);
+        }
+        for (int i = 0; i < 16; ++i) {
+            int alpha = palette[(int) (bits >> (3 * i)) & 7];
+            pixels[i] = (pixels[i] & 0xffffff) | (alpha << 24);
+        }
+    }
+
+    static long readLong(byte[] data, int pos) {
+        long word = 0;
+        for (int i = 0; i < 8; ++i) {
+            word = (word << 8) | (data[pos + i] & 0xff);
+        }
+        return word;
+    }
+
+    static void decodeEtc(byte[] data, int pos, int[] pixels) {
+        long word = readLong(data, pos);
+        int high = (int) (word >>> 32);
+        boolean differential = 0 != (high & 2);
+        boolean flip = 0 != (high & 1);
+        int[][] bases = new int[2][3];
+
+        for (int c = 0; c < 3; ++c) {
+            int shift = 24 - 8 * c;
+            if (differential) {
+                int first = (high >>> (shift + 3)) & 31;
+                int delta = ((high >>> shift) & 7) << 29 >> 29;
+                int second = first + delta;
+
+                // Overflowing values select other ETC2 modes.
+                assertTrue((second >= 0) && (second <= 31));
+                bases[0][c] = (first << 3) | (first >> 2);
+                bases[1][c] = (second << 3) | (second >> 2);
+            } else {
+                bases[0][c] = ((high >>> (shift + 4)) & 15) * 17;
+                bases[1][c] = ((high >>> shift) & 15) * 17;
+            }
+        }
+
+        int[] tables = { (high >>> 5) & 7, (high >>> 2) & 7 };
+        for (int x = 0; x < 4; ++x) {
+            for (int y = 0; y < 4; ++y) {
+                int p = x * 4 + y;
+                int msb = (int) (word >>> (16 + p)) & 1;
+                int lsb = (int) (word >>> p) & 1;
+                int half = flip ? y / 2 : x / 2;
+                int modifier = ETC_TABLES[tables[half]][lsb];
+                if (1 == msb) {
+                    modifier = -modifier;
+                }
+
+                int[] base = bases[half];
+                int i = y * 4 + x;
+                pixels[i] = (pixels[i] & 0xff000000)
+                        | (clamp(base[0] + modifier) << 16)
+                        | (clamp(base[1] + modifier) << 8)
+                        | clamp(base[2] + modifier);
+            }
+        }
+    }
+
+    static void decodeEac(byte[] data, int pos, int[] pixels) {
+        long word = readLong(data, pos);
+        int base = (int) (word >>> 56) & 0xff;
+        int multiplier = (int) (word >>> 52) & 15;
+        int[] table = EAC_TABLES[(int) (word >>> 48) & 15];
+
+        for (int x = 0; x < 4; ++x) {
+            for (int y = 0; y < 4; ++y) {
+                int p = x * 4 + y;
+                int index = (int) (word >>> (45 - 3 * p)) & 7;
+                int i = y * 4 + x;
+                pixels[i] = (pixels[i] & 0xffffff)
+                        | (clamp(base + table[index] * multiplier) << 24);
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of squared differences of color channels of pixels
+     * which aren't fully transparent.
+     */
+    static long colorError(int[] expected, int[] actual) {
+        long error = 0;
+        for (int i = 0; i < 16; ++i) {
+            if (0 != (expected[i] >>> 24)) {
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int d = ((expected[i] >> shift) & 0xff)
+                            - ((actual[i] >> shift) & 0xff);
+                    error += d * d;
+                }
+            }
+        }
+        return error;
+    }
+
+    /**
+     * Creates a block with a gradient between two random colors.
+     */
+    static int[] gradient(Random random, boolean alpha) {
+        int[] from = new int[4];
+        int[] to = new int[4];
+        for (int c = 0; c < 4; ++c) {
+            from[c] = random.nextInt(256);
+            to[c] = clamp(from[c] + random.nextInt(97) - 48);
+        }
+        if (!alpha) {
+            from[3] = 255;
+            to[3] = 255;
+        }
+
+        int[] block = new int[16];
+        for (int i = 0; i < 16; ++i) {
+            int t = (i % 4) + (i / 4);
+            int argb = 0;
+            for (int c = 0; c < 4; ++c) {
+                argb |= (from[c] + (to[c] - from[c]) * t / 6) << (8 * c);
+            }
+            block[i] = argb;
+        }
+        return block;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithRawFormat() {
+        new BlockEncoder(ImageWriter.FORMAT_RGB565, false);
+    }
+
+    @Test
+    public void getBlockBytes() {
+        assertEquals(8, new BlockEncoder(ImageWriter.FORMAT_BC1, false)
+                .getBlockBytes());
+        assertEquals(16, new BlockEncoder(ImageWriter.FORMAT_BC3, false)
+                .getBlockBytes());
+        assertEquals(8, new BlockEncoder(ImageWriter.FORMAT_ETC2_RGB, true)
+                .getBlockBytes());
+        assertEquals(16, new BlockEncoder(ImageWriter.FORMAT_ETC2_RGBA, true)
+                .getBlockBytes());
+    }
+
+    @Test
+    public void encodeSolidBlocks() {
+        int[] block = new int[16];
+        Arrays.fill(block, 0x803c78b4);
+
+        for (int format : FORMATS) {
+            int[] decoded = decode(format, encode(format, false, block), 0);
+
+            for (int i = 0; i < 16; ++i) {
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int d = ((block[i] >> shift) & 0xff)
+                            - ((decoded[i] >> shift) & 0xff);
+                    assertTrue(Math.abs(d) <= 8);
+                }
+            }
+
+            if ((ImageWriter.FORMAT_BC3 == format)
+                    || (ImageWriter.FORMAT_ETC2_RGBA == format)) {
+                for (int pixel : decoded) {
+                    assertEquals(0x80, pixel >>> 24);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void encodeGradients() {
+        for (int format : FORMATS) {
+            Random random = new Random(42);
+            long fastError = 0;
+            long qualityError = 0;
+
+            for (int n = 0; n < 200; ++n) {
+                int[] block = gradient(random, false);
+                fastError += colorError(block, decode(format, encode(format,
+                        false, block), 0));
+                qualityError += colorError(block, decode(format, encode(
+                        format, true, block), 0));
+            }
+
+            // Less than 6 levels per channel on average.
+            assertTrue(fastError < 200 * 16 * 3 * 36);
+            assertTrue(qualityError <= fastError);
+        }
+    }
+
+    @Test
+    public void encodeNoiseInValidModes() {
+        Random random = new Random(7);
+
+        for (int n = 0; n < 500; ++n) {
+            int[] block = new int[16];
+            for (int i = 0; i < 16; ++i) {
+                block[i] = random.nextInt();
+            }
+
+            for (boolean quality : new boolean[] { false, true }) {
+                // The decoder checks differential blocks don't overflow.
+                decode(ImageWriter.FORMAT_ETC2_RGBA, encode(
+                        ImageWriter.FORMAT_ETC2_RGBA, quality, block), 0);
+
+                // BC3 color blocks are always decoded in the four color mode.
+                byte[] bc3 = encode(ImageWriter.FORMAT_BC3, quality, block);
+                int c0 = (bc3[8] & 0xff) | ((bc3[9] & 0xff) << 8);
+                int c1 = (bc3[10] & 0xff) | ((bc3[11] & 0xff) << 8);
+                assertTrue((c0 > c1) || ((c0 == c1) && (0 == bc3[12])
+                        && (0 == bc3[13]) && (0 == bc3[14]) && (0 == bc3[15])));
+            }
+        }
+    }
+
+    @Test
+    public void encodeAlpha() {
+        Random random = new Random(3);
+
+        for (int format : new int[] { ImageWriter.FORMAT_BC3,
+                ImageWriter.FORMAT_ETC2_RGBA }) {
+            for (int n = 0; n < 100; ++n) {
+                int[] block = gradient(random, true);
+                int[] decoded = decode(format, encode(format, false, block), 0);
+
+                for (int i = 0; i < 16; ++i) {
+                    int d = (block[i] >>> 24) - (decoded[i] >>> 24);
+                    assertTrue(Math.abs(d) <= 8);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void transparentPixelsDoNotAffectColors() {
+        int[] block = new int[16];
+        for (int i = 0; i < 16; ++i) {
+            block[i] = ((i % 4) < 2) ? 0x0000ff00 : 0xffff0000;
+        }
+
+        for (int format : new int[] { ImageWriter.FORMAT_BC3,
+                ImageWriter.FORMAT_ETC2_RGBA }) {
+            for (boolean quality : new boolean[] { false, true }) {
+                int[] decoded = decode(format, encode(format, quality, block),
+                        0);
+
+                for (int i = 0; i < 16; ++i) {
+                    assertEquals(block[i] >>> 24, decoded[i] >>> 24);
+                }
+                assertTrue(colorError(block, decoded) <= 8 * 3 * 16);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import spritey.core.Sprite;
+
+/**
+ * Tests the implementation of Compositor.
+ */
+public class CompositorTests {
+
+    /**
+     * Creates an image filled with random pixels, a quarter of which are
+     * opaque and a quarter fully transparent.
+     * 
+     * @param random
+     *        the random number generator.
+     * @param type
+     *        the image type.
+     * @return the image.
+     */
+    private static BufferedImage createImage(Random random, int type) {
+        BufferedImage image = new BufferedImage(3 + random.nextInt(20),
+                3 + random.nextInt(20), type);
+
+        for (int y = 0; y < image.getHeight(); ++y) {
+            for (int x = 0; x < image.getWidth(); ++x) {
+                int rgb = random.nextInt();
+                switch (random.nextInt(4)) {
+                case 0:
+                    rgb |= 0xff000000;
+                    break;
+                case 1:
+                    rgb &= 0x00ffffff;
+                    break;
+                }
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Composes random sprites onto a sheet of the specified type and compares
+     * the result with the sheet drawn by Java2D.
+     * 
+     * @param sheetType
+     *        the sheet image type.
+     * @param spriteType
+     *        the sprite image type.
+     * @param background
+     *        the background color, or <code>null</code> for none.
+     */
+    private void compareWithDrawing(int sheetType, int spriteType,
+            Color background) throws IOException {
+        Random random = new Random(sheetType * 31 + spriteType);
+        BufferedImage expected = new BufferedImage(200, 200, sheetType);
+        BufferedImage actual = new BufferedImage(200, 200, sheetType);
+
+        if (null != background) {
+            for (BufferedImage image : new BufferedImage[] { expected,
+                    actual }) {
+                Graphics gfx = image.getGraphics();
+                gfx.setColor(background);
+                gfx.fillRect(0, 0, 200, 200);
+                gfx.dispose();
+            }
+        }
+
+        ImageWriter writer = new ImageWriter();
+        Compositor compositor = new Compositor(actual);
+        Graphics gfx = expected.getGraphics();
+
+        for (int i = 0; i < 64; ++i) {
+            BufferedImage image = createImage(random, spriteType);
+            Sprite sprite = new Sprite(image);
+            int x = random.nextInt(image.getWidth());
+            int y = random.nextInt(image.getHeight());
+
+            sprite.setTrim(new Rectangle(x, y, image.getWidth() - x
+                    - random.nextInt(image.getWidth() - x), image.getHeight()
+                    - y - random.nextInt(image.getHeight() - y)));
+            sprite.setRotated(random.nextBoolean());
+            sprite.setLocation(new Point((i % 8) * 25, (i / 8) * 25));
+
+            writer.draw(sprite, gfx);
+            assertTrue(Compositor.isComposable(sprite));
+            compositor.composite(sprite);
+        }
+        gfx.dispose();
+
+        assertArrayEquals(
+                expected.getRGB(0, 0, 200, 200, null, 0, 200),
+                actual.getRGB(0, 0, 200, 200, null, 0, 200));
+    }
+
+    @Test
+    public void compositeOntoTransparentSheet() throws IOException {
+        compareWithDrawing(BufferedImage.TYPE_INT_ARGB,
+                BufferedImage.TYPE_INT_ARGB, null);
+    }
+
+    @Test
+    public void compositeOntoOpaqueSheet() throws IOException {
+        compareWithDrawing(BufferedImage.TYPE_INT_RGB,
+                BufferedImage.TYPE_INT_ARGB, new Color(40, 90, 200));
+    }
+
+    @Test
+    public void compositeImageWhichIsNotIntArgb() throws IOException {
+        compareWithDrawing(BufferedImage.TYPE_INT_ARGB,
+                BufferedImage.TYPE_4BYTE_ABGR, null);
+        compareWithDrawing(BufferedImage.TYPE_INT_RGB,
+                BufferedImage.TYPE_4BYTE_ABGR, Color.WHITE);
+    }
+
+    @Test
+    public void compositeInBands() throws IOException {
+        Random random = new Random(7);
+        BufferedImage whole = new BufferedImage(200, 200,
+                BufferedImage.TYPE_INT_ARGB);
+        BufferedImage banded = new BufferedImage(200, 200,
+                BufferedImage.TYPE_INT_ARGB);
+        Compositor compositor = new Compositor(whole);
+        Sprite[] sprites = new Sprite[64];
+
+        for (int i = 0; i < sprites.length; ++i) {
+            sprites[i] = new Sprite(createImage(random,
+                    BufferedImage.TYPE_INT_ARGB));
+            sprites[i].setRotated(random.nextBoolean());
+            sprites[i].setLocation(new Point((i % 8) * 25, (i / 8) * 25));
+            compositor.composite(sprites[i]);
+        }
+
+        // Bands of uneven height, each composed by its own compositor.
+        for (int top = 0; top < 200;) {
+            int bottom = Math.min(200, top + 1 + random.nextInt(30));
+            Compositor band = new Compositor(banded);
+
+            for (Sprite sprite : sprites) {
+                band.composite(sprite, top, bottom);
+            }
+            top = bottom;
+        }
+
+        assertArrayEquals(whole.getRGB(0, 0, 200, 200, null, 0, 200),
+                banded.getRGB(0, 0, 200, 200, null, 0, 200));
+    }
+
+    @Test
+    public void supports() {
+        assertTrue(Compositor.supports(new BufferedImage(1, 1,
+                BufferedImage.TYPE_INT_ARGB)));
+        assertTrue(Compositor.supports(new BufferedImage(1, 1,
+                BufferedImage.TYPE_INT_RGB)));
+        assertFalse(Compositor.supports(new BufferedImage(1, 1,
+                BufferedImage.TYPE_BYTE_INDEXED)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createForUnsupportedImage() {
+        new Compositor(new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY));
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of ImageSniffer.
+ */
+public class ImageSnifferTests {
+
+    @Test
+    public void isImage() {
+        assertTrue(sniff(0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'));
+        assertTrue(sniff('G', 'I', 'F', '8', '9', 'a', 1, 0));
+        assertTrue(sniff('G', 'I', 'F', '8', '7', 'a'));
+        assertTrue(sniff(0xff, 0xd8, 0xff, 0xe0));
+        assertTrue(sniff('B', 'M', 0, 0));
+    }
+
+    @Test
+    public void isNotImage() {
+        assertFalse(sniff('8', 'B', 'P', 'S', 0, 1));
+        assertFalse(sniff('G', 'I', 'F', '8', '8', 'a'));
+        assertFalse(sniff(0x89, 'P', 'N', 'G'));
+        assertFalse(sniff('B'));
+        assertFalse(sniff());
+    }
+
+    @Test
+    public void isImageFile() throws IOException {
+        File file = File.createTempFile("sniff", ".bin");
+        try {
+            ImageIO.write(new BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB),
+                    "png", file);
+            assertTrue(ImageSniffer.isImage(file.toPath()));
+
+            file.delete();
+            file.createNewFile();
+            assertFalse(ImageSniffer.isImage(file.toPath()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Checks whether the specified bytes start with an image signature.
+     * 
+     * @param bytes
+     *        the header bytes.
+     * @return <code>true</code> if header belongs to an image.
+     */
+    private static boolean sniff(int... bytes) {
+        byte[] header = new byte[ImageSniffer.HEADER_LENGTH];
+        for (int i = 0; i < bytes.length; ++i) {
+            header[i] = (byte) bytes[i];
+        }
+        return ImageSniffer.isImage(header, bytes.length);
+    }
+
+}
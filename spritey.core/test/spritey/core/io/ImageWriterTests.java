@@ -0,0 +1,187 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import spritey.core.FileSprite;
+import spritey.core.Sheet;
+import spritey.core.Sprite;
+
+/**
+ * Tests the implementation of ImageWriter.
+ */
+public class ImageWriterTests {
+
+    ImageWriter writer;
+
+    @Mock
+    Sheet sheet;
+
+    @Before
+    public void initialize() {
+        MockitoAnnotations.initMocks(this);
+        writer = new ImageWriter();
+    }
+
+    @Test
+    public void getLevelFile() {
+        File file = new File("sheets", "a.png");
+
+        assertEquals(file, writer.getLevelFile(file, 0));
+        assertEquals(new File("sheets", "a_mip1.png"),
+                writer.getLevelFile(file, 1));
+        assertEquals(new File("sheets", "a_mip12"),
+                writer.getLevelFile(new File("sheets", "a"), 12));
+    }
+
+    @Test
+    public void cancel() {
+        assertFalse(writer.isCancelled());
+
+        writer.cancel();
+        assertTrue(writer.isCancelled());
+    }
+
+    @Test(expected = InterruptedIOException.class)
+    public void writeWhenCancelled() throws IOException {
+        writer.cancel();
+        writer.write(sheet, 0, new File("a.png"));
+    }
+
+    /**
+     * Writes an opaque sheet holding a translucent sprite in the specified
+     * raw format.
+     * 
+     * @param format
+     *        the pixel format.
+     * @return the bytes written.
+     * @throws IOException
+     *         when the sheet can't be written.
+     */
+    private byte[] writeOpaqueSheet(int format) throws IOException {
+        BufferedImage image = new BufferedImage(4, 4,
+                BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 4; ++y) {
+            for (int x = 0; x < 4; ++x) {
+                image.setRGB(x, y, 0x80ff0000);
+            }
+        }
+
+        Sprite sprite = new Sprite("sprite", image);
+        sprite.setLocation(new Point(2, 2));
+        Sheet real = new Sheet();
+        real.setBackground(Color.WHITE);
+        real.setWidth(8);
+        real.setHeight(8);
+        real.addChildren(sprite);
+
+        File file = File.createTempFile("sheet", ".raw");
+        try {
+            writer.setFormat(format);
+            writer.write(real, 0, file);
+            return Files.readAllBytes(file.toPath());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void writeOpaqueSheetAsRgba4444() throws IOException {
+        byte[] bytes = writeOpaqueSheet(ImageWriter.FORMAT_RGBA4444);
+
+        assertEquals(8 * 8 * 2, bytes.length);
+        // Alpha is in the low bits of the first byte of each pixel.
+        for (int i = 0; i < bytes.length; i += 2) {
+            assertEquals(0xf, bytes[i] & 0xf);
+        }
+    }
+
+    @Test
+    public void writeOpaqueSheetAsA8() throws IOException {
+        byte[] bytes = writeOpaqueSheet(ImageWriter.FORMAT_A8);
+
+        assertEquals(8 * 8, bytes.length);
+        for (byte alpha : bytes) {
+            assertEquals(0xff, alpha & 0xff);
+        }
+    }
+
+    @Test
+    public void writeSpriteWhoseFileCannotBeDecoded() throws IOException {
+        Random random = new Random(1);
+        BufferedImage image = new BufferedImage(8, 8,
+                BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 8; ++y) {
+            for (int x = 0; x < 8; ++x) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+
+        // The header is intact, so the size can still be probed.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        File spriteFile = File.createTempFile("sprite", ".png");
+        File sheetFile = File.createTempFile("sheet", ".png");
+        FileOutputStream out = new FileOutputStream(spriteFile);
+        try {
+            out.write(bytes.toByteArray(), 0, 60);
+        } finally {
+            out.close();
+        }
+
+        try {
+            FileSprite sprite = new FileSprite(spriteFile);
+            sprite.setLocation(new Point(0, 0));
+            Sheet real = new Sheet();
+            real.setWidth(8);
+            real.setHeight(8);
+            real.addChildren(sprite);
+
+            writer.write(real, 0, sheetFile);
+            fail("Sprite which cannot be decoded was written.");
+        } catch (IOException e) {
+            assertEquals(IOException.class, e.getClass());
+        } finally {
+            spriteFile.delete();
+            sheetFile.delete();
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of MipmapGenerator.
+ */
+public class MipmapGeneratorTests {
+
+    @Test
+    public void getLevelCount() {
+        assertEquals(1, MipmapGenerator.getLevelCount(1, 1));
+        assertEquals(2, MipmapGenerator.getLevelCount(2, 1));
+        assertEquals(3, MipmapGenerator.getLevelCount(5, 3));
+        assertEquals(11, MipmapGenerator.getLevelCount(1024, 16));
+    }
+
+    @Test
+    public void levelSizes() {
+        MipmapGenerator generator = new MipmapGenerator(13, 4, false);
+
+        assertEquals(4, generator.getLevelCount());
+        assertEquals(6, generator.getWidth(1));
+        assertEquals(2, generator.getHeight(1));
+        assertEquals(3, generator.getWidth(2));
+        assertEquals(1, generator.getHeight(2));
+        assertEquals(1, generator.getWidth(3));
+        assertEquals(1, generator.getHeight(3));
+    }
+
+    @Test
+    public void averageInLinearLight() {
+        MipmapGenerator generator = new MipmapGenerator(2, 2, false);
+        generator.addRows(new int[] { 0xffffffff, 0xff000000, 0xff000000,
+                0xffffffff }, 0, 2, 2);
+
+        // Half of white is brighter than 128 in sRGB.
+        assertArrayEquals(new int[] { 0xffbcbcbc }, generator.getLevel(1));
+    }
+
+    @Test
+    public void averageWeightedByAlpha() {
+        MipmapGenerator generator = new MipmapGenerator(2, 2, false);
+        generator.addRows(new int[] { 0xffff0000, 0x00000000, 0x00000000,
+                0x00000000 }, 0, 2, 2);
+
+        // Transparent pixels don't darken the color.
+        assertArrayEquals(new int[] { 0x40ff0000 }, generator.getLevel(1));
+    }
+
+    @Test
+    public void averageOpaque() {
+        MipmapGenerator generator = new MipmapGenerator(2, 1, true);
+        generator.addRows(new int[] { 0x00123456, 0x00123456 }, 0, 2, 1);
+
+        assertArrayEquals(new int[] { 0xff123456 }, generator.getLevel(1));
+    }
+
+    @Test
+    public void addRowsInBands() {
+        int width = 7;
+        int height = 10;
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; ++i) {
+            pixels[i] = 0xff000000 | (i * 0x010203);
+        }
+
+        MipmapGenerator whole = new MipmapGenerator(width, height, false);
+        whole.addRows(pixels, 0, width, height);
+
+        MipmapGenerator banded = new MipmapGenerator(width, height, false);
+        banded.addRows(pixels, 0, width, 4);
+        assertFalse(banded.isComplete());
+        banded.addRows(pixels, 4 * width, width, 6);
+        assertTrue(banded.isComplete());
+
+        for (int level = 1; level < whole.getLevelCount(); ++level) {
+            assertArrayEquals(whole.getLevel(level), banded.getLevel(level));
+        }
+    }
+
+    @Test
+    public void levelsOfUniformImage() {
+        int[] pixels = new int[300 * 200];
+        Arrays.fill(pixels, 0x80336699);
+
+        MipmapGenerator generator = new MipmapGenerator(300, 200, false);
+        generator.addRows(pixels, 0, 300, 200);
+
+        for (int level = 1; level < generator.getLevelCount(); ++level) {
+            int[] expected = new int[generator.getWidth(level)
+                    * generator.getHeight(level)];
+            Arrays.fill(expected, 0x80336699);
+            assertArrayEquals(expected, generator.getLevel(level));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithEmptySize() {
+        new MipmapGenerator(0, 4, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addOddRows() {
+        new MipmapGenerator(4, 4, false).addRows(new int[4 * 3], 0, 4, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addTooManyRows() {
+        new MipmapGenerator(4, 4, false).addRows(new int[4 * 6], 0, 4, 6);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getLevelWithRowsMissing() {
+        MipmapGenerator generator = new MipmapGenerator(4, 4, false);
+        generator.addRows(new int[4 * 2], 0, 4, 2);
+        generator.getLevel(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getFullSizeLevel() {
+        MipmapGenerator generator = new MipmapGenerator(4, 4, false);
+        generator.addRows(new int[4 * 4], 0, 4, 4);
+        generator.getLevel(0);
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of PathFilter.
+ */
+public class PathFilterTests {
+
+    Path start;
+    PathFilter filter;
+
+    @Before
+    public void initialize() {
+        start = Paths.get("art");
+        filter = new PathFilter();
+    }
+
+    @Test
+    public void matchesName() {
+        List<PathMatcher> matchers = PathFilter.toMatchers("*.png");
+
+        assertTrue(PathFilter.matches(matchers, start.resolve("hero.png"),
+                start));
+        assertTrue(PathFilter.matches(matchers,
+                start.resolve(Paths.get("chars", "hero.png")), start));
+        assertFalse(PathFilter.matches(matchers, start.resolve("hero.gif"),
+                start));
+        assertFalse(PathFilter.matches(matchers,
+                start.resolve(Paths.get("hero.png", "notes.txt")), start));
+    }
+
+    @Test
+    public void matchesRelativePath() {
+        List<PathMatcher> matchers = PathFilter.toMatchers("chars/*.png");
+
+        assertTrue(PathFilter.matches(matchers,
+                start.resolve(Paths.get("chars", "hero.png")), start));
+        assertFalse(PathFilter.matches(matchers, start.resolve("hero.png"),
+                start));
+        assertFalse(PathFilter.matches(matchers,
+                start.resolve(Paths.get("chars", "big", "hero.png")), start));
+
+        matchers = PathFilter.toMatchers("chars/**");
+        assertTrue(PathFilter.matches(matchers,
+                start.resolve(Paths.get("chars", "big", "hero.png")), start));
+        assertFalse(PathFilter.matches(matchers,
+                start.resolve(Paths.get("tiles", "grass.png")), start));
+    }
+
+    @Test
+    public void matchesNone() {
+        List<PathMatcher> matchers = PathFilter.toMatchers((String[]) null);
+
+        assertFalse(PathFilter.matches(matchers, start.resolve("hero.png"),
+                start));
+    }
+
+    @Test
+    public void acceptAll() {
+        assertTrue(filter.acceptFile(start.resolve("hero.png"), start));
+        assertTrue(filter.acceptDirectory(start.resolve("chars"), start));
+    }
+
+    @Test
+    public void acceptIncluded() {
+        filter.setIncludes("*.png", "tiles/*.gif");
+
+        assertTrue(filter.acceptFile(start.resolve("hero.png"), start));
+        assertTrue(filter.acceptFile(
+                start.resolve(Paths.get("tiles", "grass.gif")), start));
+        assertFalse(filter.acceptFile(start.resolve("grass.gif"), start));
+        // Includes never skip directories, files in them may still match.
+        assertTrue(filter.acceptDirectory(start.resolve("chars"), start));
+    }
+
+    @Test
+    public void acceptExcluded() {
+        filter.setIncludes("*.png");
+        filter.setExcludes("*_old.png", ".svn");
+
+        assertFalse(filter.acceptFile(start.resolve("hero_old.png"), start));
+        assertTrue(filter.acceptFile(start.resolve("hero.png"), start));
+        assertFalse(filter.acceptDirectory(
+                start.resolve(Paths.get("chars", ".svn")), start));
+        assertTrue(filter.acceptDirectory(start.resolve("chars"), start));
+    }
+
+    @Test
+    public void acceptExcludedStart() {
+        filter.setExcludes("art");
+
+        assertTrue(filter.acceptDirectory(start, start));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setIncludesInvalid() {
+        filter.setIncludes("*.{png");
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of PixelConverter.
+ */
+public class PixelConverterTests {
+
+    @Test
+    public void reduce() {
+        assertEquals(0, PixelConverter.reduce(0, 15, 16));
+        assertEquals(15, PixelConverter.reduce(255, 15, 16));
+        assertEquals(8, PixelConverter.reduce(128, 15, 16));
+        assertEquals(7, PixelConverter.reduce(119, 15, 16));
+        assertEquals(31, PixelConverter.reduce(255, 31, 1));
+        assertEquals(0, PixelConverter.reduce(0, 63, 31));
+    }
+
+    @Test
+    public void convertToRgba4444() {
+        PixelConverter converter = new PixelConverter(
+                ImageWriter.FORMAT_RGBA4444, false);
+
+        assertEquals(2, converter.getBytesPerPixel());
+        assertArrayEquals(new byte[] { 0x4f, 0x12, 0x08, 0x0f },
+                converter.convert(new int[] { 0xff112244, 0x8000ff00 }, 0, 2,
+                        2, 1, 0));
+    }
+
+    @Test
+    public void convertToRgb565() {
+        PixelConverter converter = new PixelConverter(
+                ImageWriter.FORMAT_RGB565, false);
+
+        assertArrayEquals(new byte[] { (byte) 0xe0, 0x07, 0x1f, 0x00,
+                0x00, (byte) 0xf8 }, converter.convert(new int[] {
+                0x0000ff00, 0xff0000ff, 0x12ff0000 }, 0, 3, 3, 1, 0));
+    }
+
+    @Test
+    public void convertToA8() {
+        PixelConverter converter = new PixelConverter(ImageWriter.FORMAT_A8,
+                true);
+
+        assertEquals(1, converter.getBytesPerPixel());
+        assertArrayEquals(new byte[] { 0x12, (byte) 0xff, 0x00 },
+                converter.convert(new int[] { 0x12345678, 0xff000000,
+                        0x00ffffff }, 0, 3, 3, 1, 0));
+    }
+
+    @Test
+    public void ditherKeepsAverage() {
+        int[] pixels = new int[16];
+        Arrays.fill(pixels, 0xff646464);
+        PixelConverter converter = new PixelConverter(
+                ImageWriter.FORMAT_RGBA4444, true);
+
+        byte[] bytes = converter.convert(pixels, 0, 4, 4, 4, 0);
+
+        int sum = 0;
+        for (int i = 0; i < bytes.length; i += 2) {
+            sum += (bytes[i + 1] >> 4) & 0xf;
+        }
+        // 100 is 5.88 out of 15, so the block averages close to it.
+        assertEquals(100.0, sum * 17.0 / 16, 255.0 / 15 / 16 * 2);
+        assertTrue(sum != 16 * PixelConverter.reduce(100, 15, 16));
+    }
+
+    @Test
+    public void ditherAlignsBands() {
+        int[] pixels = new int[8 * 10];
+        for (int i = 0; i < pixels.length; ++i) {
+            pixels[i] = 0xff000000 | (i * 0x030507);
+        }
+        PixelConverter converter = new PixelConverter(
+                ImageWriter.FORMAT_RGB565, true);
+
+        byte[] whole = converter.convert(pixels, 0, 8, 8, 10, 0);
+        byte[] top = converter.convert(pixels, 0, 8, 8, 3, 0);
+        byte[] bottom = converter.convert(pixels, 3 * 8, 8, 8, 7, 3);
+
+        byte[] banded = Arrays.copyOf(top, whole.length);
+        System.arraycopy(bottom, 0, banded, top.length, bottom.length);
+        assertArrayEquals(whole, banded);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidFormat() {
+        new PixelConverter(ImageWriter.FORMAT_AUTO, false);
+    }
+
+}
@@ -0,0 +1,274 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of PngWriter.
+ */
+public class PngWriterTests {
+
+    ByteArrayOutputStream out;
+    WritableByteChannel channel;
+
+    @Before
+    public void initialize() {
+        out = new ByteArrayOutputStream();
+        channel = Channels.newChannel(out);
+    }
+
+    /**
+     * Creates pixels of a gradient with varying alpha, so that every filter
+     * type gets a chance to be chosen.
+     * 
+     * @param width
+     *        the image width.
+     * @param height
+     *        the image height.
+     * @return the pixels.
+     */
+    private static int[] createPixels(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int a = (x * 37 + y * 11) & 0xff;
+                pixels[y * width + x] = (a << 24) | (x << 16) | (y << 8)
+                        | ((x * y) & 0xff);
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Decodes the written image.
+     * 
+     * @return the decoded image.
+     * @throws IOException
+     *         when image cannot be decoded.
+     */
+    private BufferedImage read() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void writeWithAlpha() throws IOException {
+        int[] pixels = createPixels(40, 30);
+        PngWriter png = new PngWriter(channel, 40, 30, true);
+
+        // Rows arrive in uneven bands.
+        png.writeRows(pixels, 0, 40, 7);
+        png.writeRows(pixels, 7 * 40, 40, 20);
+        png.writeRows(pixels, 27 * 40, 40, 3);
+        png.finish();
+
+        BufferedImage image = read();
+        assertEquals(40, image.getWidth());
+        assertEquals(30, image.getHeight());
+        assertTrue(image.getColorModel().hasAlpha());
+        assertArrayEquals(pixels, image.getRGB(0, 0, 40, 30, null, 0, 40));
+    }
+
+    @Test
+    public void writeWithoutAlpha() throws IOException {
+        int[] pixels = createPixels(40, 30);
+        PngWriter png = new PngWriter(channel, 40, 30, false, 9);
+
+        png.writeRows(pixels, 0, 40, 30);
+        png.finish();
+
+        BufferedImage image = read();
+        assertFalse(image.getColorModel().hasAlpha());
+        for (int i = 0; i < pixels.length; ++i) {
+            pixels[i] |= 0xff000000;
+        }
+        assertArrayEquals(pixels, image.getRGB(0, 0, 40, 30, null, 0, 40));
+    }
+
+    @Test
+    public void writeFromWiderScanline() throws IOException {
+        int[] pixels = createPixels(50, 10);
+        PngWriter png = new PngWriter(channel, 20, 10, true);
+
+        png.writeRows(pixels, 5, 50, 10);
+        png.finish();
+
+        BufferedImage image = read();
+        for (int y = 0; y < 10; ++y) {
+            for (int x = 0; x < 20; ++x) {
+                assertEquals(pixels[y * 50 + x + 5], image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void writeLargeImage() throws IOException {
+        // Compressed data spans several IDAT chunks.
+        int[] pixels = createPixels(256, 256);
+        for (int i = 0; i < pixels.length; ++i) {
+            pixels[i] ^= i * 0x9e3779b9;
+        }
+        PngWriter png = new PngWriter(channel, 256, 256, true, 0);
+
+        png.writeRows(pixels, 0, 256, 256);
+        png.finish();
+
+        assertArrayEquals(pixels, read().getRGB(0, 0, 256, 256, null, 0, 256));
+    }
+
+    @Test
+    public void idatIsSingleZlibStream() throws IOException,
+            DataFormatException {
+        int[] pixels = createPixels(300, 200);
+        PngWriter png = new PngWriter(channel, 300, 200, true);
+
+        // Several segments in each call.
+        png.writeRows(pixels, 0, 300, 120);
+        png.writeRows(pixels, 120 * 300, 300, 80);
+        png.finish();
+
+        // Concatenate IDAT chunks, skipping the signature and header.
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        buffer.position(8);
+        while (buffer.hasRemaining()) {
+            int length = buffer.getInt();
+            byte[] type = new byte[4];
+            buffer.get(type);
+            if ("IDAT".equals(new String(type, "US-ASCII"))) {
+                stream.write(buffer.array(), buffer.position(), length);
+            }
+            buffer.position(buffer.position() + length + 4);
+        }
+
+        // Inflater verifies the checksum at the end of the stream.
+        Inflater inflater = new Inflater();
+        inflater.setInput(stream.toByteArray());
+        byte[] data = new byte[200 * (300 * 4 + 1) + 1];
+        int length = 0;
+        while (!inflater.finished()) {
+            length += inflater.inflate(data, length, data.length - length);
+        }
+        inflater.end();
+
+        assertEquals(200 * (300 * 4 + 1), length);
+    }
+
+    @Test
+    public void combineAdler() {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (byte) (i * 31 + (i >> 7));
+        }
+
+        Adler32 whole = new Adler32();
+        whole.update(data);
+        Adler32 first = new Adler32();
+        first.update(data, 0, 70000);
+        Adler32 second = new Adler32();
+        second.update(data, 70000, 30000);
+
+        assertEquals(whole.getValue(), PngWriter.combineAdler(
+                first.getValue(), second.getValue(), 30000));
+    }
+
+    @Test
+    public void writeIndexed() throws IOException {
+        IndexColorModel palette = new IndexColorModel(8, 3, new byte[] { 0,
+                (byte) 200, 10 }, new byte[] { 0, 100, 20 }, new byte[] { 0,
+                50, 30 }, new byte[] { 0, (byte) 255, (byte) 128 });
+        byte[] indices = new byte[30 * 20];
+        for (int i = 0; i < indices.length; ++i) {
+            indices[i] = (byte) ((i / 7) % 3);
+        }
+        PngWriter png = new PngWriter(channel, 30, 20, palette);
+
+        png.writeIndices(indices, 0, 30, 5);
+        png.writeIndices(indices, 5 * 30, 30, 15);
+        png.finish();
+
+        BufferedImage image = read();
+        assertTrue(image.getColorModel() instanceof IndexColorModel);
+        for (int i = 0; i < indices.length; ++i) {
+            assertEquals(palette.getRGB(indices[i]), image.getRGB(i % 30,
+                    i / 30));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void writePixelsToIndexedImage() throws IOException {
+        IndexColorModel palette = new IndexColorModel(8, 1, new byte[1],
+                new byte[1], new byte[1]);
+        PngWriter png = new PngWriter(channel, 4, 2, palette);
+
+        png.writeRows(new int[8], 0, 4, 2);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void writeIndicesToTruecolorImage() throws IOException {
+        PngWriter png = new PngWriter(channel, 4, 2, true);
+
+        png.writeIndices(new byte[8], 0, 4, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writeTooManyRows() throws IOException {
+        PngWriter png = new PngWriter(channel, 4, 2, true);
+
+        png.writeRows(new int[12], 0, 4, 3);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void finishWithRowsMissing() throws IOException {
+        PngWriter png = new PngWriter(channel, 4, 2, true);
+
+        png.writeRows(new int[4], 0, 4, 1);
+        png.finish();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidSize() throws IOException {
+        new PngWriter(channel, 0, 2, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithNullChannel() throws IOException {
+        new PngWriter(null, 4, 2, true);
+    }
+
+}
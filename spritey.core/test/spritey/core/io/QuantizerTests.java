@@ -0,0 +1,174 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Transparency;
+import java.awt.image.IndexColorModel;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of Quantizer.
+ */
+public class QuantizerTests {
+
+    /**
+     * Maps the specified pixels and returns the palette colors they map to.
+     * 
+     * @param quantizer
+     *        the quantizer the pixels have been added to.
+     * @param pixels
+     *        the pixels, a single row.
+     * @return the mapped colors.
+     */
+    private static int[] remap(Quantizer quantizer, int[] pixels) {
+        byte[] indices = new byte[pixels.length];
+        quantizer.map(pixels, 0, pixels.length, pixels.length, 1, indices, 0);
+
+        IndexColorModel model = quantizer.getColorModel();
+        int[] colors = new int[pixels.length];
+        for (int i = 0; i < pixels.length; ++i) {
+            colors[i] = model.getRGB(indices[i] & 0xff);
+        }
+        return colors;
+    }
+
+    /**
+     * Creates pixels of a gradient with thousands of colors.
+     * 
+     * @param width
+     *        the image width.
+     * @param height
+     *        the image height.
+     * @return the pixels.
+     */
+    private static int[] createGradient(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                pixels[y * width + x] = 0xff000000 | ((x * 4) << 16)
+                        | ((y * 4) << 8) | ((x + y) * 2);
+            }
+        }
+        return pixels;
+    }
+
+    @Test
+    public void keepExactColors() {
+        int[] pixels = { 0xff102030, 0x80405060, 0xff102030, 0x00ffffff,
+                0xff000000, 0x01020304 };
+        Quantizer quantizer = new Quantizer(256, Transparency.TRANSLUCENT);
+
+        quantizer.add(pixels, 0, pixels.length, pixels.length, 1);
+
+        IndexColorModel model = quantizer.getColorModel();
+        assertEquals(5, model.getMapSize());
+        assertEquals(0, model.getTransparentPixel());
+        assertArrayEquals(new int[] { 0xff102030, 0x80405060, 0xff102030, 0,
+                0xff000000, 0x01020304 }, remap(quantizer, pixels));
+    }
+
+    @Test
+    public void reduceManyColors() {
+        int[] pixels = createGradient(64, 64);
+        Quantizer quantizer = new Quantizer(256, Transparency.OPAQUE);
+
+        quantizer.add(pixels, 0, 64, 64, 64);
+
+        assertTrue(quantizer.getColorModel().getMapSize() <= 256);
+
+        int[] colors = remap(quantizer, pixels);
+        for (int i = 0; i < pixels.length; ++i) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                int d = ((pixels[i] >>> shift) & 0xff)
+                        - ((colors[i] >>> shift) & 0xff);
+                assertTrue(Math.abs(d) <= 24);
+            }
+        }
+    }
+
+    @Test
+    public void addInBands() {
+        int[] pixels = createGradient(64, 64);
+        Quantizer whole = new Quantizer(64, Transparency.OPAQUE);
+        Quantizer banded = new Quantizer(64, Transparency.OPAQUE);
+
+        whole.add(pixels, 0, 64, 64, 64);
+        banded.add(pixels, 0, 64, 64, 10);
+        banded.add(pixels, 10 * 64, 64, 64, 54);
+
+        assertArrayEquals(remap(whole, pixels), remap(banded, pixels));
+    }
+
+    @Test
+    public void ignoreAlphaWhenOpaque() {
+        int[] pixels = { 0x00102030, 0x80405060 };
+        Quantizer quantizer = new Quantizer(16, Transparency.OPAQUE);
+
+        quantizer.add(pixels, 0, 2, 2, 1);
+
+        assertEquals(-1, quantizer.getColorModel().getTransparentPixel());
+        assertArrayEquals(new int[] { 0xff102030, 0xff405060 }, remap(
+                quantizer, pixels));
+    }
+
+    @Test
+    public void thresholdAlphaWhenBitmask() {
+        int[] pixels = { 0x7f102030, 0x80405060 };
+        Quantizer quantizer = new Quantizer(16, Transparency.BITMASK);
+
+        quantizer.add(pixels, 0, 2, 2, 1);
+
+        assertArrayEquals(new int[] { 0, 0xff405060 }, remap(quantizer,
+                pixels));
+    }
+
+    @Test
+    public void mapColorsNotAdded() {
+        int[] pixels = { 0xff000000, 0xffffffff };
+        Quantizer quantizer = new Quantizer(16, Transparency.OPAQUE);
+
+        quantizer.add(pixels, 0, 2, 2, 1);
+
+        assertArrayEquals(new int[] { 0xff000000, 0xffffffff }, remap(
+                quantizer, new int[] { 0xff101010, 0xfff0f0f0 }));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithTooManyColors() {
+        new Quantizer(257, Transparency.OPAQUE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidTransparency() {
+        new Quantizer(256, 42);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addAfterPaletteIsBuilt() {
+        Quantizer quantizer = new Quantizer(256, Transparency.OPAQUE);
+
+        quantizer.getColorModel();
+        quantizer.add(new int[1], 0, 1, 1, 1);
+    }
+
+}
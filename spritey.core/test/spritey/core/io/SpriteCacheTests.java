@@ -0,0 +1,170 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of SpriteCache.
+ */
+public class SpriteCacheTests {
+
+    File directory;
+    File file;
+    BufferedImage image;
+    SpriteCache cache;
+
+    @Before
+    public void initialize() throws IOException {
+        directory = File.createTempFile("cache", "");
+        directory.delete();
+        file = File.createTempFile("sprite", ".png");
+
+        image = new BufferedImage(3, 2, BufferedImage.TYPE_4BYTE_ABGR);
+        image.setRGB(0, 0, 0xff112233);
+        image.setRGB(2, 1, 0x80445566);
+
+        cache = new SpriteCache(directory);
+    }
+
+    @After
+    public void cleanUp() {
+        cache.clear();
+        directory.delete();
+        file.delete();
+    }
+
+    @Test
+    public void putAndGet() {
+        assertNull(cache.get(file));
+
+        cache.put(file, image);
+        BufferedImage cached = cache.get(file);
+
+        assertNotNull(cached);
+        assertEquals(3, cached.getWidth());
+        assertEquals(2, cached.getHeight());
+        assertEquals(0xff112233, cached.getRGB(0, 0));
+        assertEquals(0x80445566, cached.getRGB(2, 1));
+        assertEquals(0, cached.getRGB(1, 0));
+        assertEquals(16 + 4 * 6, cache.getUsage());
+    }
+
+    @Test
+    public void getWhenFileChanged() throws IOException {
+        cache.put(file, image);
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(1);
+        } finally {
+            out.close();
+        }
+        assertNull(cache.get(file));
+    }
+
+    @Test
+    public void usageSurvivesRestart() {
+        cache.put(file, image);
+
+        assertEquals(cache.getUsage(), new SpriteCache(directory).getUsage());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws IOException {
+        File other = File.createTempFile("sprite", ".png");
+        try {
+            cache.put(file, image);
+            cache.put(other, image);
+            new File(directory, directory.list()[0]).setLastModified(0);
+            new File(directory, directory.list()[1]).setLastModified(0);
+
+            // Using the entry makes the other one least recently used.
+            cache.get(file);
+            cache.setBudget(cache.getUsage() - 1);
+
+            assertNotNull(cache.get(file));
+            assertNull(cache.get(other));
+            assertEquals(16 + 4 * 6, cache.getUsage());
+        } finally {
+            other.delete();
+        }
+    }
+
+    @Test
+    public void evictInOrderOfUseKeptInMemory() throws IOException {
+        File other = File.createTempFile("sprite", ".png");
+        try {
+            cache.put(file, image);
+            File entry = new File(directory, directory.list()[0]);
+            cache.put(other, image);
+            cache.get(file);
+
+            // Times on disk are only read when the cache is created.
+            entry.setLastModified(0);
+            cache.setBudget(cache.getUsage() - 1);
+
+            assertNotNull(cache.get(file));
+            assertNull(cache.get(other));
+        } finally {
+            other.delete();
+        }
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedAfterRestart() throws IOException {
+        File other = File.createTempFile("sprite", ".png");
+        try {
+            cache.put(file, image);
+            new File(directory, directory.list()[0]).setLastModified(1000);
+            cache.put(other, image);
+            cache.get(other);
+
+            long usage = cache.getUsage();
+            cache = new SpriteCache(directory, usage - 1);
+
+            assertNull(cache.get(file));
+            assertNotNull(cache.get(other));
+            assertEquals(usage / 2, cache.getUsage());
+        } finally {
+            other.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setNegativeBudget() {
+        cache.setBudget(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putNullImage() {
+        cache.put(file, null);
+    }
+
+}
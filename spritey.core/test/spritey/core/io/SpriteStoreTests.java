@@ -0,0 +1,174 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of SpriteStore.
+ */
+public class SpriteStoreTests {
+
+    SpriteStore store;
+
+    @Before
+    public void initialize() {
+        // Room for 8 pixels per chunk.
+        store = new SpriteStore(32);
+    }
+
+    /**
+     * Creates an image where each pixel holds its own coordinates.
+     * 
+     * @param width
+     *        the image width.
+     * @param height
+     *        the image height.
+     * @return the image.
+     */
+    private static BufferedImage createImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                image.setRGB(x, y, 0xff000000 | (x << 8) | y);
+            }
+        }
+        return image;
+    }
+
+    @Test
+    public void putAndGet() {
+        long offset = store.put(createImage(3, 2));
+
+        assertArrayEquals(new int[] { 0xff000000, 0xff000100, 0xff000200,
+                0xff000001, 0xff000101, 0xff000201 }, store.getRGB(offset, 3,
+                new Rectangle(0, 0, 3, 2), null));
+        assertEquals(24, store.getSize());
+    }
+
+    @Test
+    public void getArea() {
+        long offset = store.put(createImage(3, 2));
+        int[] pixels = new int[2];
+
+        store.getRGB(offset, 3, new Rectangle(1, 1, 2, 1), pixels);
+        assertArrayEquals(new int[] { 0xff000101, 0xff000201 }, pixels);
+    }
+
+    @Test
+    public void putAcrossChunks() {
+        long first = store.put(createImage(2, 2));
+        long big = store.put(createImage(4, 3));
+        long second = store.put(createImage(2, 2));
+        long third = store.put(createImage(3, 1));
+
+        Rectangle area = new Rectangle(0, 0, 2, 2);
+        int[] expected = store.getRGB(first, 2, area, null);
+
+        // Small images keep filling the chunk, big ones get their own.
+        assertArrayEquals(expected, store.getRGB(second, 2, area, null));
+        assertEquals(first >>> 32, second >>> 32);
+        assertEquals(0xff000302,
+                store.getRGB(big, 4, new Rectangle(3, 2, 1, 1), null)[0]);
+        assertEquals(0xff000200,
+                store.getRGB(third, 3, new Rectangle(2, 0, 1, 1), null)[0]);
+        assertEquals(4 * (4 + 12 + 4 + 3), store.getSize());
+    }
+
+    @Test
+    public void releaseReusesSpace() {
+        long first = store.put(createImage(2, 2));
+        long second = store.put(createImage(2, 2));
+
+        store.release(first, 2, 2);
+        assertEquals(16, store.getSize());
+
+        // Released space is taken before the rest of the chunk.
+        long third = store.put(createImage(3, 1));
+        long fourth = store.put(createImage(1, 1));
+
+        assertEquals(first, third);
+        assertEquals(first + 3, fourth);
+        assertEquals(0xff000200,
+                store.getRGB(third, 3, new Rectangle(2, 0, 1, 1), null)[0]);
+        assertEquals(0xff000101,
+                store.getRGB(second, 2, new Rectangle(1, 1, 1, 1), null)[0]);
+        assertEquals(32, store.getSize());
+    }
+
+    @Test
+    public void releaseMergesAdjacentSpace() {
+        long first = store.put(createImage(1, 2));
+        long second = store.put(createImage(2, 1));
+        long third = store.put(createImage(2, 2));
+
+        store.release(first, 1, 2);
+        store.release(third, 2, 2);
+        store.release(second, 2, 1);
+
+        // The whole chunk is free again, in one piece.
+        long fourth = store.put(createImage(4, 2));
+
+        assertEquals(first, fourth);
+        assertEquals(32, store.getSize());
+    }
+
+    @Test
+    public void releaseImageWithOwnChunk() {
+        long small = store.put(createImage(2, 2));
+        long big = store.put(createImage(4, 3));
+
+        store.release(big, 4, 3);
+        assertEquals(16, store.getSize());
+
+        // The chunk is gone, big images never share space.
+        long next = store.put(createImage(4, 3));
+        assertEquals((big >>> 32) + 1, next >>> 32);
+        assertEquals(0xff000302,
+                store.getRGB(next, 4, new Rectangle(3, 2, 1, 1), null)[0]);
+        assertEquals(0xff000101,
+                store.getRGB(small, 2, new Rectangle(1, 1, 1, 1), null)[0]);
+    }
+
+    @Test
+    public void clear() {
+        store.put(createImage(2, 2));
+        store.clear();
+
+        assertEquals(0, store.getSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putNullImage() {
+        store.put(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithInvalidChunkSize() {
+        new SpriteStore(3);
+    }
+
+}
@@ -0,0 +1,243 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of TextureWriter.
+ */
+public class TextureWriterTests {
+
+    ByteArrayOutputStream out;
+    WritableByteChannel channel;
+
+    @Before
+    public void initialize() {
+        out = new ByteArrayOutputStream();
+        channel = Channels.newChannel(out);
+    }
+
+    /**
+     * Returns the written bytes as a little endian buffer.
+     */
+    private ByteBuffer written() {
+        return ByteBuffer.wrap(out.toByteArray()).order(
+                ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithNullChannel() throws IOException {
+        new TextureWriter(null, 4, 4, ImageWriter.FORMAT_BC1,
+                TextureWriter.CONTAINER_KTX, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithEmptySize() throws IOException {
+        new TextureWriter(channel, 0, 4, ImageWriter.FORMAT_BC1,
+                TextureWriter.CONTAINER_KTX, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithUnknownContainer() throws IOException {
+        new TextureWriter(channel, 4, 4, ImageWriter.FORMAT_BC1, 2, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createDdsWithEtc() throws IOException {
+        new TextureWriter(channel, 4, 4, ImageWriter.FORMAT_ETC2_RGB,
+                TextureWriter.CONTAINER_DDS, false);
+    }
+
+    @Test
+    public void supports() {
+        assertTrue(TextureWriter.supports(ImageWriter.FORMAT_ETC2_RGBA,
+                TextureWriter.CONTAINER_KTX));
+        assertTrue(TextureWriter.supports(ImageWriter.FORMAT_BC3,
+                TextureWriter.CONTAINER_DDS));
+        assertTrue(!TextureWriter.supports(ImageWriter.FORMAT_ETC2_RGB,
+                TextureWriter.CONTAINER_DDS));
+        assertTrue(!TextureWriter.supports(ImageWriter.FORMAT_RGB565,
+                TextureWriter.CONTAINER_KTX));
+    }
+
+    @Test
+    public void writeKtx() throws IOException {
+        TextureWriter writer = new TextureWriter(channel, 6, 5,
+                ImageWriter.FORMAT_ETC2_RGBA, TextureWriter.CONTAINER_KTX,
+                false);
+        writer.writeRows(new int[6 * 5], 0, 6, 5);
+        writer.finish();
+
+        ByteBuffer ktx = written();
+        byte[] identifier = new byte[12];
+        ktx.get(identifier);
+        assertArrayEquals(new byte[] { (byte) 0xab, 'K', 'T', 'X', ' ', '1',
+                '1', (byte) 0xbb, '\r', '\n', 0x1a, '\n' }, identifier);
+        assertEquals(0x04030201, ktx.getInt());
+        assertEquals(0, ktx.getInt(16));
+        assertEquals(0x9278, ktx.getInt(28));
+        assertEquals(0x1908, ktx.getInt(32));
+        assertEquals(6, ktx.getInt(36));
+        assertEquals(5, ktx.getInt(40));
+        assertEquals(1, ktx.getInt(52));
+        assertEquals(1, ktx.getInt(56));
+
+        // Two by two blocks of 16 bytes follow the image size.
+        assertEquals(2 * 2 * 16, ktx.getInt(64));
+        assertEquals(68 + 2 * 2 * 16, ktx.capacity());
+    }
+
+    @Test
+    public void writeDds() throws IOException {
+        TextureWriter writer = new TextureWriter(channel, 8, 4,
+                ImageWriter.FORMAT_BC1, TextureWriter.CONTAINER_DDS, true);
+        writer.writeRows(new int[8 * 4], 0, 8, 4);
+        writer.finish();
+
+        ByteBuffer dds = written();
+        assertEquals(0x20534444, dds.getInt(0));
+        assertEquals(124, dds.getInt(4));
+        assertEquals(4, dds.getInt(12));
+        assertEquals(8, dds.getInt(16));
+        assertEquals(2 * 8, dds.getInt(20));
+        assertEquals(32, dds.getInt(76));
+        assertEquals(0x31545844, dds.getInt(84));
+        assertEquals(128 + 2 * 8, dds.capacity());
+    }
+
+    @Test
+    public void writeKtxMipmaps() throws IOException {
+        TextureWriter writer = new TextureWriter(channel, 8, 4,
+                ImageWriter.FORMAT_BC1, TextureWriter.CONTAINER_KTX, 4, false);
+        writer.writeRows(new int[8 * 4], 0, 8, 4);
+        assertEquals(0, writer.getLevel());
+        writer.writeRows(new int[4 * 2], 0, 4, 2);
+        assertEquals(1, writer.getLevel());
+        assertEquals(4, writer.getLevelWidth());
+        assertEquals(2, writer.getLevelHeight());
+        writer.writeRows(new int[2], 0, 2, 1);
+        writer.writeRows(new int[1], 0, 1, 1);
+        assertEquals(3, writer.getLevel());
+        assertEquals(1, writer.getLevelHeight());
+        writer.finish();
+
+        ByteBuffer ktx = written();
+        assertEquals(4, ktx.getInt(56));
+
+        // Each level is preceded by its size, a level has at least a block.
+        assertEquals(2 * 8, ktx.getInt(64));
+        assertEquals(8, ktx.getInt(68 + 2 * 8));
+        assertEquals(8, ktx.getInt(68 + 3 * 8 + 4));
+        assertEquals(8, ktx.getInt(68 + 4 * 8 + 8));
+        assertEquals(68 + 5 * 8 + 12, ktx.capacity());
+    }
+
+    @Test
+    public void writeDdsMipmaps() throws IOException {
+        TextureWriter writer = new TextureWriter(channel, 4, 4,
+                ImageWriter.FORMAT_BC3, TextureWriter.CONTAINER_DDS, 3, false);
+        writer.writeRows(new int[4 * 4], 0, 4, 4);
+        writer.writeRows(new int[2 * 2], 0, 2, 2);
+        writer.writeRows(new int[1], 0, 1, 1);
+        writer.finish();
+
+        ByteBuffer dds = written();
+        assertTrue(0 != (dds.getInt(8) & 0x20000));
+        assertEquals(3, dds.getInt(28));
+        assertEquals(0x401008, dds.getInt(108));
+        assertEquals(128 + 3 * 16, dds.capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithTooManyLevels() throws IOException {
+        new TextureWriter(channel, 8, 4, ImageWriter.FORMAT_BC1,
+                TextureWriter.CONTAINER_KTX, 5, false);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void finishWithLevelsMissing() throws IOException {
+        TextureWriter writer = new TextureWriter(channel, 4, 4,
+                ImageWriter.FORMAT_BC1, TextureWriter.CONTAINER_KTX, 2, false);
+        writer.writeRows(new int[4 * 4], 0, 4, 4);
+        writer.finish();
+    }
+
+    @Test
+    public void writeRowsInBands() throws IOException {
+        int[] pixels = new int[5 * 10];
+        for (int i = 0; i < pixels.length; ++i) {
+            pixels[i] = 0xff000000 | (i * 5);
+        }
+
+        TextureWriter writer = new TextureWriter(channel, 5, 10,
+                ImageWriter.FORMAT_BC1, TextureWriter.CONTAINER_KTX, false);
+        writer.writeRows(pixels, 0, 5, 4);
+        writer.writeRows(pixels, 20, 5, 4);
+        writer.writeRows(pixels, 40, 5, 2);
+        writer.finish();
+
+        byte[] blocks = Arrays.copyOfRange(out.toByteArray(), 68,
+                out.size());
+        assertEquals(2 * 3 * 8, blocks.length);
+
+        // Blocks overhanging the texture repeat its last row and column.
+        int[] corner = BlockEncoderTests.decode(ImageWriter.FORMAT_BC1,
+                blocks, 5 * 8);
+        for (int i = 0; i < 16; ++i) {
+            int expected = pixels[Math.min(8 + i / 4, 9) * 5 + 4];
+            assertTrue(Math.abs((corner[i] & 0xff) - (expected & 0xff)) <= 8);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writeRowsNotAligned() throws IOException {
+        TextureWriter writer = new TextureWriter(channel, 4, 8,
+                ImageWriter.FORMAT_BC1, TextureWriter.CONTAINER_KTX, false);
+        writer.writeRows(new int[4 * 3], 0, 4, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writeTooManyRows() throws IOException {
+        TextureWriter writer = new TextureWriter(channel, 4, 4,
+                ImageWriter.FORMAT_BC1, TextureWriter.CONTAINER_KTX, false);
+        writer.writeRows(new int[4 * 8], 0, 4, 8);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void finishWithRowsMissing() throws IOException {
+        TextureWriter writer = new TextureWriter(channel, 4, 8,
+                ImageWriter.FORMAT_BC1, TextureWriter.CONTAINER_KTX, false);
+        writer.writeRows(new int[4 * 4], 0, 4, 4);
+        writer.finish();
+    }
+
+}
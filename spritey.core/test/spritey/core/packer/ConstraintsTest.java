@@ -50,6 +50,10 @@ public class ConstraintsTest {
                 constraints.maintainPowerOfTwo());
         assertEquals(Constraints.DEFAULT_MAINTAIN_ASPECT_RATIO,
                 constraints.maintainAspectRatio());
+        assertEquals(Constraints.DEFAULT_ALGORITHM, constraints.getAlgorithm());
+        assertEquals(Constraints.DEFAULT_FIT_RULE, constraints.getFitRule());
+        assertEquals(Constraints.DEFAULT_SPLIT_RULE,
+                constraints.getSplitRule());
     }
 
     @Test
@@ -62,6 +66,33 @@ public class ConstraintsTest {
         assertEquals(false, constraints.maintainAspectRatio());
     }
 
+    @Test
+    public void copyConstructor() {
+        Constraints original = new Constraints(128, 256, true, false);
+        original.setAllowRotation(true);
+        original.setAlgorithm(Constraints.GUILLOTINE);
+
+        Constraints copy = new Constraints(original);
+        assertEquals(original, copy);
+        assertEquals(original.hashCode(), copy.hashCode());
+
+        copy.setTrimTransparency(true);
+        assertFalse(original.equals(copy));
+
+        copy = new Constraints(original);
+        copy.setAlignment(4);
+        assertFalse(original.equals(copy));
+
+        copy = new Constraints(original);
+        copy.setPadding(2);
+        assertFalse(original.equals(copy));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void copyConstructorWithNull() {
+        new Constraints(null);
+    }
+
     @Test
     public void setAndGetMaxWidth() {
         constraints.setMaxWidth(Constraints.MAX_MAXIMUM_WIDTH - 1);
@@ -208,6 +239,96 @@ public class ConstraintsTest {
         assertFalse(constraints.maintainAspectRatio());
     }
 
+    @Test
+    public void setAllowRotation() {
+        assertFalse(constraints.allowRotation());
+
+        constraints.setAllowRotation(true);
+        assertTrue(constraints.allowRotation());
+
+        constraints.setAllowRotation(false);
+        assertFalse(constraints.allowRotation());
+    }
+
+    @Test
+    public void setAlignment() {
+        assertEquals(1, constraints.getAlignment());
+
+        constraints.setAlignment(4);
+        assertEquals(4, constraints.getAlignment());
+        assertEquals(0, constraints.align(0));
+        assertEquals(4, constraints.align(1));
+        assertEquals(8, constraints.align(8));
+        assertEquals(12, constraints.align(9));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setAlignmentNotPowerOfTwo() {
+        constraints.setAlignment(3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setAlignmentTooBig() {
+        constraints.setAlignment(Constraints.MAX_ALIGNMENT * 2);
+    }
+
+    @Test
+    public void setPadding() {
+        assertEquals(0, constraints.getPadding());
+
+        constraints.setPadding(2);
+        assertEquals(2, constraints.getPadding());
+        assertEquals(0, constraints.align(0));
+        assertEquals(3, constraints.align(1));
+
+        constraints.setAlignment(4);
+        assertEquals(4, constraints.align(1));
+        assertEquals(12, constraints.align(8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setPaddingNegative() {
+        constraints.setPadding(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setPaddingTooBig() {
+        constraints.setPadding(Constraints.MAX_PADDING + 1);
+    }
+
+    @Test
+    public void setTrimTransparency() {
+        assertFalse(constraints.trimTransparency());
+
+        constraints.setTrimTransparency(true);
+        assertTrue(constraints.trimTransparency());
+
+        constraints.setTrimTransparency(false);
+        assertFalse(constraints.trimTransparency());
+    }
+
+    @Test
+    public void setRemoveDuplicates() {
+        assertFalse(constraints.removeDuplicates());
+
+        constraints.setRemoveDuplicates(true);
+        assertTrue(constraints.removeDuplicates());
+
+        constraints.setRemoveDuplicates(false);
+        assertFalse(constraints.removeDuplicates());
+    }
+
+    @Test
+    public void setMultiplePages() {
+        assertFalse(constraints.allowMultiplePages());
+
+        constraints.setMultiplePages(true);
+        assertTrue(constraints.allowMultiplePages());
+
+        constraints.setMultiplePages(false);
+        assertFalse(constraints.allowMultiplePages());
+    }
+
     @Test
     public void isPowerOfTwo() {
         assertTrue(Constraints.isPowerOfTwo(1));
@@ -262,4 +383,59 @@ public class ConstraintsTest {
         assertEquals(4096, Constraints.nextPowerOfTwo(2048));
     }
 
+    @Test
+    public void setAndGetAlgorithm() {
+        constraints.setAlgorithm(Constraints.MAX_RECTS);
+        assertEquals(Constraints.MAX_RECTS, constraints.getAlgorithm());
+
+        constraints.setAlgorithm(Constraints.SKYLINE);
+        assertEquals(Constraints.SKYLINE, constraints.getAlgorithm());
+
+        constraints.setAlgorithm(Constraints.GUILLOTINE);
+        assertEquals(Constraints.GUILLOTINE, constraints.getAlgorithm());
+
+        constraints.setAlgorithm(Constraints.AUTO);
+        assertEquals(Constraints.AUTO, constraints.getAlgorithm());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setAlgorithmUnknown() {
+        constraints.setAlgorithm(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setAlgorithmAboveAuto() {
+        constraints.setAlgorithm(Constraints.AUTO + 1);
+    }
+
+    @Test
+    public void setAndGetFitRule() {
+        constraints.setFitRule(Constraints.BEST_SHORT_SIDE_FIT);
+        assertEquals(Constraints.BEST_SHORT_SIDE_FIT, constraints.getFitRule());
+
+        constraints.setFitRule(Constraints.BEST_AREA_FIT);
+        assertEquals(Constraints.BEST_AREA_FIT, constraints.getFitRule());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setFitRuleUnknown() {
+        constraints.setFitRule(2);
+    }
+
+    @Test
+    public void setAndGetSplitRule() {
+        constraints.setSplitRule(Constraints.SHORTER_AXIS_SPLIT);
+        assertEquals(Constraints.SHORTER_AXIS_SPLIT,
+                constraints.getSplitRule());
+
+        constraints.setSplitRule(Constraints.SHORTER_LEFTOVER_AXIS_SPLIT);
+        assertEquals(Constraints.SHORTER_LEFTOVER_AXIS_SPLIT,
+                constraints.getSplitRule());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setSplitRuleUnknown() {
+        constraints.setSplitRule(-1);
+    }
+
 }
@@ -0,0 +1,251 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spritey.core.FileSprite;
+import spritey.core.Sprite;
+import spritey.core.io.SpriteStore;
+
+/**
+ * Tests the implementation of Deduplicator.
+ */
+public class DeduplicatorTests {
+
+    Deduplicator deduplicator;
+
+    @Before
+    public void initialize() {
+        deduplicator = new Deduplicator();
+    }
+
+    /**
+     * Creates a transparent image of the specified type with a single pixel.
+     */
+    private BufferedImage createImage(int type, int width, int height, int x,
+            int y, int rgb) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        image.setRGB(x, y, rgb);
+        return image;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deduplicateNull() {
+        deduplicator.deduplicate(null);
+    }
+
+    @Test
+    public void deduplicateIdenticalSprites() {
+        Sprite[] sprites = new Sprite[40];
+        for (int i = 0; i < sprites.length; ++i) {
+            sprites[i] = new Sprite(createImage(BufferedImage.TYPE_INT_ARGB,
+                    5, 3, 1, 2, 0xff000000 | (i % 4)));
+        }
+
+        assertEquals(36 * 15 * 4, deduplicator.deduplicate(sprites));
+
+        for (int i = 0; i < sprites.length; ++i) {
+            if (i < 4) {
+                assertFalse(sprites[i].isAlias());
+            } else {
+                assertEquals(sprites[i % 4], sprites[i].getOriginal());
+            }
+        }
+    }
+
+    @Test
+    public void deduplicateDifferentTypes() {
+        Sprite sprite1 = new Sprite(createImage(BufferedImage.TYPE_INT_ARGB, 6,
+                4, 2, 1, 0xff123456));
+        Sprite sprite2 = new Sprite(createImage(
+                BufferedImage.TYPE_4BYTE_ABGR, 6, 4, 2, 1, 0xff123456));
+
+        assertEquals(deduplicator.hash(sprite1), deduplicator.hash(sprite2));
+        assertEquals(96, deduplicator.deduplicate(new Sprite[] { sprite1,
+                sprite2 }));
+        assertEquals(sprite1, sprite2.getOriginal());
+    }
+
+    @Test
+    public void deduplicateDifferentSizes() {
+        Sprite sprite1 = new Sprite(new BufferedImage(6, 4,
+                BufferedImage.TYPE_INT_ARGB));
+        Sprite sprite2 = new Sprite(new BufferedImage(4, 6,
+                BufferedImage.TYPE_INT_ARGB));
+
+        assertEquals(0, deduplicator.deduplicate(new Sprite[] { sprite1,
+                sprite2 }));
+        assertFalse(sprite2.isAlias());
+    }
+
+    @Test
+    public void deduplicateTrimmedSprites() {
+        Sprite sprite1 = new Sprite(createImage(BufferedImage.TYPE_INT_ARGB,
+                10, 10, 2, 3, 0xffff0000));
+        Sprite sprite2 = new Sprite(createImage(BufferedImage.TYPE_INT_ARGB,
+                8, 8, 5, 1, 0xffff0000));
+        sprite1.setTrim(new Rectangle(2, 3, 1, 1));
+        sprite2.setTrim(new Rectangle(5, 1, 1, 1));
+
+        assertTrue(deduplicator.equal(sprite1, sprite2));
+        assertEquals(4, deduplicator.deduplicate(new Sprite[] { sprite1,
+                sprite2 }));
+        assertEquals(sprite1, sprite2.getOriginal());
+    }
+
+    @Test
+    public void deduplicateSubimages() {
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_ARGB, 10, 10,
+                6, 6, 0xff00ff00);
+        image.setRGB(1, 1, 0xff00ff00);
+        Sprite sprite1 = new Sprite(image.getSubimage(0, 0, 3, 3));
+        Sprite sprite2 = new Sprite(image.getSubimage(5, 5, 3, 3));
+
+        assertTrue(deduplicator.equal(sprite1, sprite2));
+    }
+
+    @Test
+    public void deduplicateStoredSprites() throws IOException {
+        SpriteStore store = new SpriteStore();
+        FileSprite[] sprites = new FileSprite[3];
+        File[] files = new File[sprites.length];
+
+        try {
+            for (int i = 0; i < sprites.length; ++i) {
+                files[i] = File.createTempFile("sprite", ".png");
+                ImageIO.write(createImage(BufferedImage.TYPE_INT_ARGB, 6, 4,
+                        2, 1, (i < 2) ? 0xff123456 : 0xff654321), "png",
+                        files[i]);
+                sprites[i] = spy(new FileSprite(files[i]));
+                sprites[i].setStore(store);
+                sprites[i].setTrim(new Rectangle(1, 1, 3, 2));
+            }
+
+            assertEquals(24, deduplicator.deduplicate(sprites));
+            assertEquals(sprites[0], sprites[1].getOriginal());
+            assertFalse(sprites[2].isAlias());
+
+            // Pixels are read from the store, never copied into an image.
+            for (FileSprite sprite : sprites) {
+                verify(sprite, never()).getImage();
+            }
+        } finally {
+            for (File file : files) {
+                if (null != file) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void deduplicateAgainAfterTrimChanges() {
+        Sprite sprite1 = new Sprite(createImage(BufferedImage.TYPE_INT_ARGB,
+                10, 10, 2, 3, 0xffff0000));
+        Sprite sprite2 = new Sprite(createImage(BufferedImage.TYPE_INT_ARGB,
+                8, 8, 5, 1, 0xffff0000));
+        Sprite[] sprites = new Sprite[] { sprite1, sprite2 };
+        sprite1.setTrim(new Rectangle(2, 3, 1, 1));
+        sprite2.setTrim(new Rectangle(5, 1, 1, 1));
+
+        assertEquals(4, deduplicator.deduplicate(sprites));
+        assertEquals(sprite1, sprite2.getOriginal());
+
+        sprite2.setTrim(new Rectangle(4, 1, 1, 1));
+        assertEquals(0, deduplicator.deduplicate(sprites));
+        assertFalse(sprite2.isAlias());
+
+        sprite2.setTrim(new Rectangle(5, 1, 1, 1));
+        assertEquals(4, deduplicator.deduplicate(sprites));
+        assertEquals(sprite1, sprite2.getOriginal());
+    }
+
+    @Test
+    public void deduplicateAgainReadsOnlyChangedSprites() throws IOException {
+        FileSprite[] sprites = new FileSprite[3];
+        File[] files = new File[sprites.length];
+
+        try {
+            for (int i = 0; i < sprites.length; ++i) {
+                files[i] = File.createTempFile("sprite", ".png");
+                ImageIO.write(createImage(BufferedImage.TYPE_INT_ARGB, 6, 4,
+                        2, 1, (i < 2) ? 0xff123456 : 0xff654321), "png",
+                        files[i]);
+                sprites[i] = spy(new FileSprite(files[i]));
+            }
+
+            assertEquals(96, deduplicator.deduplicate(sprites));
+            reset((Object[]) sprites);
+
+            assertEquals(96, deduplicator.deduplicate(sprites));
+            assertEquals(sprites[0], sprites[1].getOriginal());
+            for (FileSprite sprite : sprites) {
+                verify(sprite, never()).decode();
+            }
+
+            // Sprite whose file changes is read again.
+            files[2].setLastModified(files[2].lastModified() + 2000);
+            reset((Object[]) sprites);
+
+            assertEquals(96, deduplicator.deduplicate(sprites));
+            verify(sprites[0], never()).decode();
+            verify(sprites[1], never()).decode();
+            verify(sprites[2]).decode();
+        } finally {
+            for (File file : files) {
+                if (null != file) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void restore() {
+        Sprite sprite1 = new Sprite(new BufferedImage(2, 2,
+                BufferedImage.TYPE_INT_ARGB));
+        Sprite sprite2 = new Sprite(new BufferedImage(2, 2,
+                BufferedImage.TYPE_INT_ARGB));
+        Sprite[] sprites = new Sprite[] { sprite1, sprite2 };
+
+        deduplicator.deduplicate(sprites);
+        assertTrue(sprite2.isAlias());
+
+        deduplicator.restore(sprites);
+        assertNull(sprite2.getOriginal());
+    }
+
+}
@@ -57,6 +57,7 @@ public class DiagonalFitMaintainAspectRatioAndPowerOfTwoStrategyTests {
         final Point NEW_LOCATION = new Point(0, 0);
 
         Sprite sprite = mock(Sprite.class);
+        doReturn(SPRITE_BOUNDS.getSize()).when(sprite).getSize();
         doReturn(SPRITE_BOUNDS).when(sprite).getBounds();
         doReturn(new Node[0]).when(sprite).getChildren();
 
@@ -75,6 +76,7 @@ public class DiagonalFitMaintainAspectRatioAndPowerOfTwoStrategyTests {
         final Rectangle SPRITE_BOUNDS = new Rectangle(-1, -1, 3, 4);
 
         Sprite sprite = mock(Sprite.class);
+        doReturn(SPRITE_BOUNDS.getSize()).when(sprite).getSize();
         doReturn(SPRITE_BOUNDS).when(sprite).getBounds();
         doReturn(new Node[0]).when(sprite).getChildren();
 
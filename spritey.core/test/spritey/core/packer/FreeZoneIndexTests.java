@@ -0,0 +1,183 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of FreeZoneIndex.
+ */
+public class FreeZoneIndexTests {
+
+    FreeZoneIndex index;
+
+    @Before
+    public void initialize() {
+        index = new FreeZoneIndex(256, 256);
+        index.add(new Rectangle(0, 0, 256, 256));
+    }
+
+    @Test
+    public void addCoveredZone() {
+        assertFalse(index.add(new Rectangle(10, 10, 5, 5)));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void occupyTopLeftCorner() {
+        index.occupy(new Rectangle(0, 0, 100, 50));
+
+        assertEquals(2, index.size());
+        assertEquals(new Rectangle(100, 0, 156, 256), index.findHighest(1, 1));
+        assertEquals(new Rectangle(0, 50, 256, 206),
+                index.findHighest(200, 1));
+    }
+
+    @Test
+    public void occupyDropsCoveredPieces() {
+        index.occupy(new Rectangle(0, 0, 100, 100));
+        index.occupy(new Rectangle(100, 0, 100, 50));
+
+        // The zone below the second rectangle is covered by the zone spanning
+        // the whole width below the first rectangle, except for the part to
+        // the right of the first rectangle.
+        assertEquals(3, index.size());
+        assertEquals(new Rectangle(200, 0, 56, 256), index.findHighest(1, 1));
+        assertEquals(new Rectangle(100, 50, 156, 206),
+                index.findHighest(150, 150));
+        assertEquals(new Rectangle(0, 100, 256, 156),
+                index.findHighest(200, 1));
+    }
+
+    @Test
+    public void findHighestWhenNothingFits() {
+        index.occupy(new Rectangle(0, 0, 256, 200));
+
+        assertNull(index.findHighest(10, 60));
+    }
+
+    /**
+     * Returns the highest and left most zone which fits a rectangle of the
+     * specified size by scanning all zones.
+     * 
+     * @param width
+     *        the rectangle width.
+     * @param height
+     *        the rectangle height.
+     * @return the zone, or <code>null</code> if none fits.
+     */
+    private Rectangle scanHighest(int width, int height) {
+        Rectangle best = null;
+        Rectangle bin = new Rectangle(0, 0, 256, 256);
+
+        for (Rectangle zone : index.intersecting(bin)) {
+            if ((zone.width < width) || (zone.height < height)) {
+                continue;
+            }
+
+            // Zones sharing a corner are ordered by their size.
+            int[] key = { zone.y, zone.x, zone.width, zone.height };
+            int[] bestKey = (null != best) ? new int[] { best.y, best.x,
+                    best.width, best.height } : null;
+            int i = 0;
+
+            while ((null != bestKey) && (i < 3) && (key[i] == bestKey[i])) {
+                ++i;
+            }
+            if ((null == bestKey) || (key[i] < bestKey[i])) {
+                best = zone;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void findHighestMatchesScanOfAllZones() {
+        Random random = new Random(3);
+
+        for (int i = 0; i < 300; ++i) {
+            index.occupy(new Rectangle(random.nextInt(256),
+                    random.nextInt(256), 1 + random.nextInt(24),
+                    1 + random.nextInt(24)));
+
+            for (int j = 0; j < 8; ++j) {
+                int width = 1 + random.nextInt(1 << random.nextInt(8));
+                int height = 1 + random.nextInt(1 << random.nextInt(8));
+
+                assertEquals(scanHighest(width, height),
+                        index.findHighest(width, height));
+            }
+        }
+    }
+
+    @Test
+    public void intersectingReportsZoneOnce() {
+        index.occupy(new Rectangle(0, 0, 20, 20));
+
+        // The query spans many cells, all of them overlapped by the zone below
+        // the occupied rectangle.
+        List<Rectangle> zones = index.intersecting(new Rectangle(0, 30, 15,
+                200));
+
+        assertEquals(1, zones.size());
+        assertTrue(zones.contains(new Rectangle(0, 20, 256, 236)));
+    }
+
+    @Test
+    public void findLeastGrowth() {
+        index.occupy(new Rectangle(0, 0, 100, 50));
+
+        assertEquals(new Rectangle(100, 0, 156, 256),
+                index.findLeastGrowth(20, 20, 100, 50));
+        assertEquals(new Rectangle(0, 50, 256, 206),
+                index.findLeastGrowth(100, 10, 100, 50));
+        assertNull(index.findLeastGrowth(257, 1, 100, 50));
+    }
+
+    @Test
+    public void releaseRestoresWholeBin() {
+        Rectangle rect = new Rectangle(0, 0, 100, 50);
+        index.occupy(rect);
+        index.release(rect);
+
+        assertEquals(1, index.size());
+        assertEquals(new Rectangle(0, 0, 256, 256),
+                index.findHighest(256, 256));
+    }
+
+    @Test
+    public void releaseMergesWithNeighbours() {
+        index.occupy(new Rectangle(0, 0, 100, 256));
+        index.occupy(new Rectangle(150, 0, 106, 256));
+        index.release(new Rectangle(0, 0, 100, 256));
+
+        assertEquals(1, index.size());
+        assertEquals(new Rectangle(0, 0, 150, 256), index.findHighest(1, 1));
+    }
+
+}
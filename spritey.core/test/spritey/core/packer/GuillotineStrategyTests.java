@@ -0,0 +1,198 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.awt.Dimension;
+import java.awt.Point;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import spritey.core.Node;
+import spritey.core.Sheet;
+import spritey.core.Sprite;
+
+/**
+ * Tests the implementation of GuillotineStrategy.
+ */
+public class GuillotineStrategyTests {
+
+    GuillotineStrategy strategy;
+
+    @Mock
+    Sheet sheet;
+
+    @Before
+    public void initialize() {
+        MockitoAnnotations.initMocks(this);
+        strategy = new GuillotineStrategy();
+    }
+
+    /**
+     * Creates a mock sprite of the specified size.
+     */
+    private Sprite mockSprite(int width, int height) {
+        Sprite sprite = mock(Sprite.class);
+        doReturn(new Dimension(width, height)).when(sprite).getSize();
+        doReturn(new Node[0]).when(sprite).getChildren();
+        return sprite;
+    }
+
+    @Test
+    public void packOneSprite() throws SizeTooSmallException {
+        Sprite sprite = mockSprite(3, 4);
+
+        Sprite[] sprites = new Sprite[] { sprite };
+        doReturn(sprites).when(sheet).getChildren();
+
+        strategy.pack(sheet, new Constraints());
+
+        verify(sprite).setLocation(new Point(0, 0));
+        verify(sheet).setWidth(3);
+        verify(sheet).setHeight(4);
+    }
+
+    @Test(expected = SizeTooSmallException.class)
+    public void packOneSpriteDoesNotFit() throws SizeTooSmallException {
+        Sprite sprite = mockSprite(3, 4);
+
+        Sprite[] sprites = new Sprite[] { sprite };
+        doReturn(sprites).when(sheet).getChildren();
+
+        strategy.pack(sheet, new Constraints(2, 2, false, false));
+    }
+
+    @Test
+    public void packTwoSprites() throws SizeTooSmallException {
+        Sprite sprite1 = mockSprite(3, 4);
+        Sprite sprite2 = mockSprite(5, 5);
+
+        Sprite[] sprites = new Sprite[] { sprite1, sprite2 };
+        doReturn(sprites).when(sheet).getChildren();
+
+        strategy.pack(sheet, new Constraints());
+
+        verify(sprite1).setLocation(new Point(5, 0));
+        verify(sprite2).setLocation(new Point(0, 0));
+        verify(sheet).setWidth(8);
+        verify(sheet).setHeight(5);
+    }
+
+    @Test(expected = SizeTooSmallException.class)
+    public void packTwoSpritesOneFitsOneDoesNot() throws SizeTooSmallException {
+        Sprite sprite1 = mockSprite(3, 4);
+        Sprite sprite2 = mockSprite(5, 5);
+
+        Sprite[] sprites = new Sprite[] { sprite1, sprite2 };
+        doReturn(sprites).when(sheet).getChildren();
+
+        strategy.pack(sheet, new Constraints(5, 5, false, false));
+    }
+
+    @Test
+    public void packWithShorterAxisSplit() throws SizeTooSmallException {
+        strategy = new GuillotineStrategy(Constraints.BEST_AREA_FIT,
+                Constraints.SHORTER_AXIS_SPLIT);
+
+        Sprite sprite1 = mockSprite(5, 1);
+        Sprite sprite2 = mockSprite(1, 5);
+        Sprite sprite3 = mockSprite(1, 1);
+
+        Sprite[] sprites = new Sprite[] { sprite1, sprite2, sprite3 };
+        doReturn(sprites).when(sheet).getChildren();
+
+        strategy.pack(sheet, new Constraints());
+
+        verify(sprite1).setLocation(new Point(0, 0));
+        verify(sprite2).setLocation(new Point(5, 0));
+        verify(sprite3).setLocation(new Point(0, 1));
+        verify(sheet).setWidth(6);
+        verify(sheet).setHeight(5);
+    }
+
+    @Test
+    public void packWithShorterLeftoverAxisSplit()
+            throws SizeTooSmallException {
+        strategy = new GuillotineStrategy(Constraints.BEST_AREA_FIT,
+                Constraints.SHORTER_LEFTOVER_AXIS_SPLIT);
+
+        Sprite sprite1 = mockSprite(5, 1);
+        Sprite sprite2 = mockSprite(1, 5);
+        Sprite sprite3 = mockSprite(1, 1);
+
+        Sprite[] sprites = new Sprite[] { sprite1, sprite2, sprite3 };
+        doReturn(sprites).when(sheet).getChildren();
+
+        strategy.pack(sheet, new Constraints());
+
+        verify(sprite1).setLocation(new Point(0, 0));
+        verify(sprite2).setLocation(new Point(0, 1));
+        verify(sprite3).setLocation(new Point(5, 0));
+        verify(sheet).setWidth(6);
+        verify(sheet).setHeight(6);
+    }
+
+    @Test
+    public void packWithBestAreaFit() throws SizeTooSmallException {
+        strategy = new GuillotineStrategy(Constraints.BEST_AREA_FIT,
+                Constraints.SHORTER_LEFTOVER_AXIS_SPLIT);
+
+        Sprite sprite1 = mockSprite(3, 4);
+        Sprite sprite2 = mockSprite(2, 2);
+        Sprite sprite3 = mockSprite(5, 5);
+
+        Sprite[] sprites = new Sprite[] { sprite1, sprite2, sprite3 };
+        doReturn(sprites).when(sheet).getChildren();
+
+        strategy.pack(sheet, new Constraints());
+
+        verify(sprite1).setLocation(new Point(5, 0));
+        verify(sprite2).setLocation(new Point(5, 4));
+        verify(sprite3).setLocation(new Point(0, 0));
+        verify(sheet).setWidth(8);
+        verify(sheet).setHeight(6);
+    }
+
+    @Test
+    public void packWithBestShortSideFit() throws SizeTooSmallException {
+        strategy = new GuillotineStrategy(Constraints.BEST_SHORT_SIDE_FIT,
+                Constraints.SHORTER_LEFTOVER_AXIS_SPLIT);
+
+        Sprite sprite1 = mockSprite(3, 4);
+        Sprite sprite2 = mockSprite(2, 2);
+        Sprite sprite3 = mockSprite(5, 5);
+
+        Sprite[] sprites = new Sprite[] { sprite1, sprite2, sprite3 };
+        doReturn(sprites).when(sheet).getChildren();
+
+        strategy.pack(sheet, new Constraints());
+
+        verify(sprite1).setLocation(new Point(5, 0));
+        verify(sprite2).setLocation(new Point(0, 5));
+        verify(sprite3).setLocation(new Point(0, 0));
+        verify(sheet).setWidth(8);
+        verify(sheet).setHeight(7);
+    }
+
+}
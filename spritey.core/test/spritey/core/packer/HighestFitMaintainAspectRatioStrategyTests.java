@@ -56,6 +56,7 @@ public class HighestFitMaintainAspectRatioStrategyTests {
         final Point NEW_LOCATION = new Point(0, 0);
 
         Sprite sprite = mock(Sprite.class);
+        doReturn(SPRITE_BOUNDS.getSize()).when(sprite).getSize();
         doReturn(SPRITE_BOUNDS).when(sprite).getBounds();
         doReturn(new Node[0]).when(sprite).getChildren();
 
@@ -74,6 +75,7 @@ public class HighestFitMaintainAspectRatioStrategyTests {
         final Rectangle SPRITE_BOUNDS = new Rectangle(-1, -1, 3, 4);
 
         Sprite sprite = mock(Sprite.class);
+        doReturn(SPRITE_BOUNDS.getSize()).when(sprite).getSize();
         doReturn(SPRITE_BOUNDS).when(sprite).getBounds();
         doReturn(new Node[0]).when(sprite).getChildren();
 
@@ -18,8 +18,6 @@
 package spritey.core.packer;
 
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -27,8 +25,6 @@ import static org.mockito.Mockito.verify;
 import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -56,117 +52,36 @@ public class HighestFitStrategyTests {
     }
 
     @Test
-    public void subtractNonOverlappingRectangle() {
-        final Rectangle BIG_RECT = new Rectangle(0, 0, 10, 10);
-
-        List<Rectangle> zones = strategy.subtract(BIG_RECT, new Rectangle(11,
-                10, 5, 5));
-
-        assertNotNull(zones);
-        assertEquals(BIG_RECT, zones.get(0));
-    }
-
-    @Test
-    public void subtractIntersectingRectangle() {
-        List<Rectangle> zones = strategy.subtract(new Rectangle(0, 0, 10, 10),
-                new Rectangle(5, 2, 10, 5));
-
-        assertNotNull(zones);
-        assertEquals(3, zones.size());
-        assertTrue(zones.contains(new Rectangle(0, 0, 5, 10)));
-        assertTrue(zones.contains(new Rectangle(0, 0, 10, 2)));
-        assertTrue(zones.contains(new Rectangle(0, 7, 10, 3)));
-    }
-
-    @Test
-    public void subtractContainedRectangle() {
-        List<Rectangle> zones = strategy.subtract(new Rectangle(0, 0, 10, 10),
-                new Rectangle(2, 3, 6, 5));
-
-        assertNotNull(zones);
-        assertEquals(4, zones.size());
-        assertTrue(zones.contains(new Rectangle(0, 0, 10, 3)));
-        assertTrue(zones.contains(new Rectangle(0, 0, 2, 10)));
-        assertTrue(zones.contains(new Rectangle(0, 8, 10, 2)));
-        assertTrue(zones.contains(new Rectangle(8, 0, 2, 10)));
-    }
-
-    @Test
-    public void subtractTopLeftOverlappingRectangle() {
-        List<Rectangle> zones = strategy.subtract(new Rectangle(0, 0, 10, 10),
-                new Rectangle(0, 0, 5, 5));
-
-        assertNotNull(zones);
-        assertEquals(2, zones.size());
-        assertTrue(zones.contains(new Rectangle(0, 5, 10, 5)));
-        assertTrue(zones.contains(new Rectangle(5, 0, 5, 10)));
-    }
-
-    @Test
-    public void subtractTopRightOverlappingRectangle() {
-        List<Rectangle> zones = strategy.subtract(new Rectangle(0, 0, 10, 10),
-                new Rectangle(5, 0, 5, 5));
-
-        assertNotNull(zones);
-        assertEquals(2, zones.size());
-        assertTrue(zones.contains(new Rectangle(0, 5, 10, 5)));
-        assertTrue(zones.contains(new Rectangle(0, 0, 5, 10)));
-    }
-
-    @Test
-    public void subtractBottomLeftOverlappingRectangle() {
-        List<Rectangle> zones = strategy.subtract(new Rectangle(0, 0, 10, 10),
-                new Rectangle(0, 5, 5, 5));
-
-        assertNotNull(zones);
-        assertEquals(2, zones.size());
-        assertTrue(zones.contains(new Rectangle(0, 0, 10, 5)));
-        assertTrue(zones.contains(new Rectangle(5, 0, 5, 10)));
-    }
-
-    @Test
-    public void subtractBottomRightOverlappingRectangle() {
-        List<Rectangle> zones = strategy.subtract(new Rectangle(0, 0, 10, 10),
-                new Rectangle(5, 5, 5, 5));
-
-        assertNotNull(zones);
-        assertEquals(2, zones.size());
-        assertTrue(zones.contains(new Rectangle(0, 0, 10, 5)));
-        assertTrue(zones.contains(new Rectangle(0, 0, 5, 10)));
-    }
-
-    @Test(expected = IllegalArgumentException.class)
-    public void subtractWhenMinuendRectangleIsNull() {
-        strategy.subtract(null, new Rectangle(5, 5, 5, 5));
+    public void sortZones() {
+        ZoneList zones = new ZoneList();
+        zones.add(0, 0, 2, 4);
+        zones.add(0, 0, 2, 2);
+        zones.add(1, 0, 5, 5);
+        zones.add(6, 5, 10, 5);
+        zones.add(5, 5, 5, 5);
+        zones.add(6, 5, 5, 5);
+        zones.add(25, 25, 5, 5);
+
+        strategy.sortZones(zones);
+
+        assertEquals(7, zones.size());
+        assertZone(zones, 0, 0, 0, 2, 4);
+        assertZone(zones, 1, 0, 0, 2, 2);
+        assertZone(zones, 2, 1, 0, 5, 5);
+        assertZone(zones, 3, 5, 5, 5, 5);
+        assertZone(zones, 4, 6, 5, 10, 5);
+        assertZone(zones, 5, 6, 5, 5, 5);
+        assertZone(zones, 6, 25, 25, 5, 5);
     }
 
-    @Test(expected = IllegalArgumentException.class)
-    public void subtractWhenSubtrahendRectangleIsNull() {
-        strategy.subtract(new Rectangle(5, 5, 5, 5), null);
-    }
-
-    @Test
-    public void sortZones() {
-        List<Rectangle> list = new ArrayList<Rectangle>();
-        list.add(new Rectangle(0, 0, 2, 4));
-        list.add(new Rectangle(0, 0, 2, 2));
-        list.add(new Rectangle(1, 0, 5, 5));
-        list.add(new Rectangle(6, 5, 10, 5));
-        list.add(new Rectangle(5, 5, 5, 5));
-        list.add(new Rectangle(6, 5, 5, 5));
-        list.add(new Rectangle(25, 25, 5, 5));
-
-        strategy.sortZones(list);
-
-        assertNotNull(list);
-        assertEquals(7, list.size());
-        assertEquals(new Rectangle(0, 0, 2, 4), list.get(0));
-        assertEquals(new Rectangle(0, 0, 2, 2), list.get(1));
-        assertEquals(new Rectangle(1, 0, 5, 5), list.get(2));
-        assertEquals(new Rectangle(5, 5, 5, 5), list.get(3));
-        assertEquals(new Rectangle(6, 5, 10, 5), list.get(4));
-        assertEquals(new Rectangle(6, 5, 5, 5), list.get(5));
-        assertEquals(new Rectangle(25, 25, 5, 5), list.get(6));
+    /**
+     * Asserts that the zone at the specified index has the specified bounds.
+     */
+    private void assertZone(ZoneList zones, int i, int x, int y, int width,
+            int height) {
+        assertEquals(new Rectangle(x, y, width, height), new Rectangle(
+                zones.getX(i), zones.getY(i), zones.getWidth(i),
+                zones.getHeight(i)));
     }
 
     @Test
@@ -175,6 +90,7 @@ public class HighestFitStrategyTests {
         final Point NEW_LOCATION = new Point(0, 0);
 
         Sprite sprite = mock(Sprite.class);
+        doReturn(SPRITE_BOUNDS.getSize()).when(sprite).getSize();
         doReturn(SPRITE_BOUNDS).when(sprite).getBounds();
         doReturn(new Node[0]).when(sprite).getChildren();
 
@@ -193,6 +109,7 @@ public class HighestFitStrategyTests {
         final Rectangle SPRITE_BOUNDS = new Rectangle(-1, -1, 3, 4);
 
         Sprite sprite = mock(Sprite.class);
+        doReturn(SPRITE_BOUNDS.getSize()).when(sprite).getSize();
         doReturn(SPRITE_BOUNDS).when(sprite).getBounds();
         doReturn(new Node[0]).when(sprite).getChildren();
 
@@ -259,4 +176,54 @@ public class HighestFitStrategyTests {
         strategy.pack(sheet, new Constraints(5, 5, false, false));
     }
 
+    @Test
+    public void packTwoSpritesWithRotation() throws SizeTooSmallException {
+        final Dimension SPRITE1_SIZE = new Dimension(6, 2);
+        final Dimension SPRITE2_SIZE = new Dimension(2, 6);
+
+        Sprite sprite1 = mock(Sprite.class);
+        doReturn(SPRITE1_SIZE).when(sprite1).getSize();
+        doReturn(new Node[0]).when(sprite1).getChildren();
+
+        Sprite sprite2 = mock(Sprite.class);
+        doReturn(SPRITE2_SIZE).when(sprite2).getSize();
+        doReturn(new Node[0]).when(sprite2).getChildren();
+
+        Sprite[] sprites = new Sprite[] { sprite1, sprite2 };
+        doReturn(sprites).when(sheet).getChildren();
+
+        Constraints constraints = new Constraints();
+        constraints.setAllowRotation(true);
+
+        strategy.pack(sheet, constraints);
+
+        // Lying the second sprite down adds 6x2 instead of 2x6 to the sheet.
+        verify(sprite1).setLocation(new Point(0, 0));
+        verify(sprite1).setRotated(false);
+        verify(sprite2).setLocation(new Point(0, 2));
+        verify(sprite2).setRotated(true);
+        verify(sheet).setWidth(6);
+        verify(sheet).setHeight(4);
+    }
+
+    @Test
+    public void packSpriteWhichOnlyFitsRotated() throws SizeTooSmallException {
+        Sprite sprite = mock(Sprite.class);
+        doReturn(new Dimension(2, 6)).when(sprite).getSize();
+        doReturn(new Node[0]).when(sprite).getChildren();
+
+        Sprite[] sprites = new Sprite[] { sprite };
+        doReturn(sprites).when(sheet).getChildren();
+
+        Constraints constraints = new Constraints(8, 3, false, false);
+        constraints.setAllowRotation(true);
+
+        strategy.pack(sheet, constraints);
+
+        verify(sprite).setLocation(new Point(0, 0));
+        verify(sprite).setRotated(true);
+        verify(sheet).setWidth(6);
+        verify(sheet).setHeight(2);
+    }
+
 }
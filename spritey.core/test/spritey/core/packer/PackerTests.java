@@ -0,0 +1,408 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import spritey.core.FileSprite;
+import spritey.core.Node;
+import spritey.core.Sheet;
+import spritey.core.Sprite;
+
+/**
+ * Tests the implementation of Packer.
+ */
+public class PackerTests {
+
+    Packer packer;
+    Constraints constraints;
+
+    @Mock
+    Sheet sheet;
+
+    @Before
+    public void initialize() {
+        MockitoAnnotations.initMocks(this);
+        packer = new Packer();
+        constraints = new Constraints();
+        constraints.setAlgorithm(Constraints.AUTO);
+    }
+
+    /**
+     * Creates a mock sprite of the specified size.
+     */
+    private Sprite mockSprite(int width, int height) {
+        Sprite sprite = mock(Sprite.class);
+        doReturn(new Dimension(width, height)).when(sprite).getSize();
+        doReturn(new Node[0]).when(sprite).getChildren();
+        return sprite;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void packNullSheet() throws SizeTooSmallException {
+        packer.pack(null, constraints);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void packNullConstraints() throws SizeTooSmallException {
+        packer.pack(sheet, null);
+    }
+
+    @Test
+    public void autoPackOneSprite() throws SizeTooSmallException {
+        Sprite sprite = mockSprite(3, 4);
+
+        Sprite[] sprites = new Sprite[] { sprite };
+        doReturn(sprites).when(sheet).getChildren();
+
+        packer.pack(sheet, constraints);
+
+        verify(sprite).setLocation(new Point(0, 0));
+        verify(sheet).setWidth(3);
+        verify(sheet).setHeight(4);
+    }
+
+    @Test
+    public void autoPackTwoSpritesPicksSmallestSheet()
+            throws SizeTooSmallException {
+        Sprite sprite1 = mockSprite(3, 4);
+        Sprite sprite2 = mockSprite(5, 5);
+
+        Sprite[] sprites = new Sprite[] { sprite1, sprite2 };
+        doReturn(sprites).when(sheet).getChildren();
+
+        packer.pack(sheet, constraints);
+
+        // Sprites are located exactly once, by the winning layout only.
+        verify(sprite1).setLocation(any(Point.class));
+        verify(sprite2).setLocation(any(Point.class));
+        verify(sheet).setWidth(8);
+        verify(sheet).setHeight(5);
+    }
+
+    @Test
+    public void autoPackSpritesDoNotFit() {
+        Sprite sprite1 = mockSprite(3, 4);
+        Sprite sprite2 = mockSprite(5, 5);
+
+        Sprite[] sprites = new Sprite[] { sprite1, sprite2 };
+        doReturn(sprites).when(sheet).getChildren();
+
+        constraints.setMaxWidth(5);
+        constraints.setMaxHeight(5);
+
+        try {
+            packer.pack(sheet, constraints);
+        } catch (SizeTooSmallException e) {
+            verify(sprite1, never()).setLocation(any(Point.class));
+            verify(sprite2, never()).setLocation(any(Point.class));
+            return;
+        }
+        fail();
+    }
+
+    @Test
+    public void packMultiplePages() throws SizeTooSmallException {
+        Sprite sprite1 = mockSprite(5, 5);
+        Sprite sprite2 = mockSprite(5, 4);
+        Sprite sprite3 = mockSprite(5, 3);
+
+        Sprite[] sprites = new Sprite[] { sprite1, sprite2, sprite3 };
+        doReturn(sprites).when(sheet).getChildren();
+
+        constraints = new Constraints(8, 8, false, false);
+        constraints.setMultiplePages(true);
+
+        packer.pack(sheet, constraints);
+
+        // The second sprite doesn't fit under the first one, but the third
+        // does, so the second sprite spills onto the next page.
+        verify(sheet).setPageCount(2);
+        verify(sprite1).setPage(0);
+        verify(sprite2).setPage(1);
+        verify(sprite3).setPage(0);
+        verify(sprite2).setLocation(new Point(0, 0));
+        verify(sheet).setPageSize(0, 5, 8);
+        verify(sheet).setPageSize(1, 5, 4);
+    }
+
+    @Test
+    public void packMultiplePagesWhenSpritesFitOnePage()
+            throws SizeTooSmallException {
+        Sprite sprite1 = mockSprite(3, 4);
+        Sprite sprite2 = mockSprite(5, 5);
+
+        Sprite[] sprites = new Sprite[] { sprite1, sprite2 };
+        doReturn(sprites).when(sheet).getChildren();
+
+        constraints = new Constraints();
+        constraints.setAlgorithm(Constraints.MAX_RECTS);
+        constraints.setMultiplePages(true);
+
+        packer.pack(sheet, constraints);
+
+        verify(sheet).setPageCount(1);
+        verify(sheet).setWidth(8);
+        verify(sheet).setHeight(5);
+    }
+
+    @Test(expected = SizeTooSmallException.class)
+    public void packMultiplePagesSpriteTooBig() throws SizeTooSmallException {
+        Sprite sprite = mockSprite(9, 3);
+
+        Sprite[] sprites = new Sprite[] { sprite };
+        doReturn(sprites).when(sheet).getChildren();
+
+        constraints = new Constraints(8, 8, false, false);
+        constraints.setMultiplePages(true);
+
+        packer.pack(sheet, constraints);
+    }
+
+    @Test
+    public void packTrimmedSprite() throws SizeTooSmallException {
+        BufferedImage image = new BufferedImage(10, 10,
+                BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(2, 3, 0xffffffff);
+        image.setRGB(5, 4, 0xffffffff);
+
+        Sheet sheet = new Sheet();
+        Sprite sprite = new Sprite(image);
+        sheet.addChildren(sprite);
+
+        constraints.setAlgorithm(Constraints.MAX_RECTS);
+        constraints.setTrimTransparency(true);
+        packer.pack(sheet, constraints);
+
+        assertEquals(new Rectangle(2, 3, 4, 2), sprite.getTrim());
+        assertEquals(4, sheet.getWidth());
+        assertEquals(2, sheet.getHeight());
+
+        constraints.setTrimTransparency(false);
+        packer.pack(sheet, constraints);
+
+        assertFalse(sprite.isTrimmed());
+        assertEquals(10, sheet.getWidth());
+        assertEquals(10, sheet.getHeight());
+    }
+
+    @Test
+    public void packDuplicateSprites() throws SizeTooSmallException {
+        BufferedImage image1 = new BufferedImage(4, 3,
+                BufferedImage.TYPE_INT_ARGB);
+        BufferedImage image2 = new BufferedImage(4, 3,
+                BufferedImage.TYPE_INT_ARGB);
+        image1.setRGB(1, 1, 0xff00ff00);
+        image2.setRGB(1, 1, 0xff00ff00);
+
+        Sheet sheet = new Sheet();
+        Sprite sprite1 = new Sprite(image1);
+        Sprite sprite2 = new Sprite(image2);
+        sprite1.setName("sprite1");
+        sprite2.setName("sprite2");
+        sheet.addChildren(sprite1, sprite2);
+
+        constraints.setRemoveDuplicates(true);
+        packer.pack(sheet, constraints);
+
+        assertEquals(sprite1, sprite2.getOriginal());
+        assertEquals(sprite1.getLocation(), sprite2.getLocation());
+        assertEquals(48, packer.getDeduplicatedBytes());
+        assertEquals(4, sheet.getWidth());
+        assertEquals(3, sheet.getHeight());
+
+        constraints.setRemoveDuplicates(false);
+        packer.pack(sheet, constraints);
+
+        assertFalse(sprite2.isAlias());
+        assertEquals(0, packer.getDeduplicatedBytes());
+        assertEquals(12 * 2, sheet.getWidth() * sheet.getHeight());
+    }
+
+    @Test
+    public void incrementalPackKeepsLocations() throws SizeTooSmallException {
+        Sheet sheet = new Sheet();
+        Sprite[] sprites = new Sprite[20];
+        for (int i = 0; i < sprites.length; ++i) {
+            sprites[i] = new Sprite("sprite" + i, new BufferedImage(
+                    4 + i % 5, 3 + i % 7, BufferedImage.TYPE_INT_ARGB));
+            sheet.addChildren(sprites[i]);
+        }
+
+        packer.setIncremental(true);
+        packer.pack(sheet, constraints);
+
+        Point[] locations = new Point[sprites.length];
+        for (int i = 0; i < sprites.length; ++i) {
+            locations[i] = sprites[i].getLocation();
+        }
+
+        packer.setRepackThreshold(0.1f);
+        Sprite sprite = new Sprite("added", new BufferedImage(2, 2,
+                BufferedImage.TYPE_INT_ARGB));
+        sheet.addChildren(sprite);
+        packer.pack(sheet, constraints);
+
+        Rectangle sheetBounds = new Rectangle(0, 0, sheet.getWidth(),
+                sheet.getHeight());
+        assertTrue(sheetBounds.contains(sprite.getBounds()));
+        for (int i = 0; i < sprites.length; ++i) {
+            assertEquals(locations[i], sprites[i].getLocation());
+            assertFalse(sprites[i].getBounds().intersects(sprite.getBounds()));
+        }
+    }
+
+    @Test
+    public void incrementalPackReadsOnlyAddedSprites() throws IOException,
+            SizeTooSmallException {
+        FileSprite[] sprites = new FileSprite[21];
+        File[] files = new File[sprites.length];
+
+        constraints.setTrimTransparency(true);
+        constraints.setRemoveDuplicates(true);
+        packer.setIncremental(true);
+        packer.setRepackThreshold(0.1f);
+
+        try {
+            Sheet sheet = new Sheet();
+            for (int i = 0; i < sprites.length; ++i) {
+                BufferedImage image = new BufferedImage(4 + i % 5, 3 + i % 7,
+                        BufferedImage.TYPE_INT_ARGB);
+                image.setRGB(1, 1, 0xff000000 | (i % 10));
+
+                files[i] = File.createTempFile("sprite", ".png");
+                ImageIO.write(image, "png", files[i]);
+                sprites[i] = spy(new FileSprite("sprite" + i, files[i]));
+            }
+
+            for (int i = 0; i < 20; ++i) {
+                sheet.addChildren(sprites[i]);
+            }
+            packer.pack(sheet, constraints);
+            reset((Object[]) sprites);
+
+            sheet.addChildren(sprites[20]);
+            packer.pack(sheet, constraints);
+
+            // Only the sprite the added one duplicates is read, to compare
+            // their pixels.
+            assertEquals(sprites[0], sprites[20].getOriginal());
+            verify(sprites[0]).decode();
+            for (int i = 1; i < 20; ++i) {
+                verify(sprites[i], never()).decode();
+            }
+        } finally {
+            for (File file : files) {
+                if (null != file) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void packAlignsSprites() throws SizeTooSmallException {
+        constraints.setAlignment(4);
+        constraints.setAllowRotation(true);
+
+        for (int algorithm = Constraints.WIDEST_FIRST;
+                algorithm <= Constraints.AUTO; ++algorithm) {
+            constraints.setAlgorithm(algorithm);
+
+            Sheet sheet = new Sheet();
+            Sprite[] sprites = new Sprite[20];
+            for (int i = 0; i < sprites.length; ++i) {
+                sprites[i] = new Sprite("sprite" + i, new BufferedImage(
+                        1 + i % 9, 2 + i % 5, BufferedImage.TYPE_INT_ARGB));
+                sheet.addChildren(sprites[i]);
+            }
+
+            packer.pack(sheet, constraints);
+
+            for (int i = 0; i < sprites.length; ++i) {
+                Rectangle bounds = sprites[i].getBounds();
+                assertEquals(0, bounds.x % 4);
+                assertEquals(0, bounds.y % 4);
+
+                // Sprites don't share blocks of 4x4 pixels.
+                bounds.setSize(constraints.align(bounds.width),
+                        constraints.align(bounds.height));
+                for (int j = 0; j < i; ++j) {
+                    assertFalse(bounds.intersects(sprites[j].getBounds()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void packPadsSprites() throws SizeTooSmallException {
+        constraints.setPadding(3);
+        constraints.setAllowRotation(true);
+
+        for (int algorithm = Constraints.WIDEST_FIRST;
+                algorithm <= Constraints.AUTO; ++algorithm) {
+            constraints.setAlgorithm(algorithm);
+
+            Sheet sheet = new Sheet();
+            Sprite[] sprites = new Sprite[20];
+            for (int i = 0; i < sprites.length; ++i) {
+                sprites[i] = new Sprite("sprite" + i, new BufferedImage(
+                        1 + i % 9, 2 + i % 5, BufferedImage.TYPE_INT_ARGB));
+                sheet.addChildren(sprites[i]);
+            }
+
+            packer.pack(sheet, constraints);
+
+            // Sprites are at least the padding apart.
+            for (int i = 0; i < sprites.length; ++i) {
+                Rectangle padded = sprites[i].getBounds();
+                padded.grow(3, 3);
+                for (int j = 0; j < sprites.length; ++j) {
+                    if (i != j) {
+                        assertFalse(padded.intersects(sprites[j].getBounds()));
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spritey.core.Sheet;
+import spritey.core.Sprite;
+
+/**
+ * Tests the implementation of Repacker.
+ */
+public class RepackerTests {
+
+    Repacker repacker;
+    Constraints constraints;
+    Sheet sheet;
+
+    @Before
+    public void initialize() {
+        repacker = new Repacker();
+        constraints = new Constraints();
+        sheet = new Sheet();
+    }
+
+    /**
+     * Creates a sprite of the specified size at the specified location.
+     */
+    private Sprite createSprite(int width, int height, int x, int y) {
+        Sprite sprite = new Sprite(new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB));
+        sprite.setLocation(new Point(x, y));
+        return sprite;
+    }
+
+    /**
+     * Records a sheet of the specified size.
+     */
+    private void record(int width, int height, Sprite... sprites) {
+        sheet.setWidth(width);
+        sheet.setHeight(height);
+        repacker.record(sheet, sprites, constraints);
+    }
+
+    @Test
+    public void repackWithoutRecord() {
+        Sprite sprite = createSprite(4, 4, 0, 0);
+
+        assertFalse(repacker.repack(sheet, new Sprite[] { sprite },
+                constraints));
+    }
+
+    @Test
+    public void repackAddedSpriteIntoGap() {
+        Sprite sprite1 = createSprite(4, 4, 0, 0);
+        Sprite sprite2 = createSprite(4, 4, 4, 4);
+        record(8, 8, sprite1, sprite2);
+
+        Sprite sprite3 = createSprite(4, 4, -1, -1);
+        assertTrue(repacker.repack(sheet, new Sprite[] { sprite1, sprite2,
+                sprite3 }, constraints));
+
+        assertEquals(new Point(0, 0), sprite1.getLocation());
+        assertEquals(new Point(4, 4), sprite2.getLocation());
+        assertEquals(new Point(4, 0), sprite3.getLocation());
+        assertEquals(8, sheet.getWidth());
+        assertEquals(8, sheet.getHeight());
+    }
+
+    @Test
+    public void repackReusesAreaOfRemovedSprite() {
+        Sprite sprite1 = createSprite(4, 4, 0, 0);
+        Sprite sprite2 = createSprite(4, 4, 4, 0);
+        Sprite sprite3 = createSprite(4, 4, 0, 4);
+        Sprite sprite4 = createSprite(4, 4, 4, 4);
+        record(8, 8, sprite1, sprite2, sprite3, sprite4);
+
+        Sprite sprite5 = createSprite(4, 4, -1, -1);
+        assertTrue(repacker.repack(sheet, new Sprite[] { sprite1, sprite3,
+                sprite4, sprite5 }, constraints));
+
+        assertEquals(new Point(4, 0), sprite5.getLocation());
+        assertEquals(8, sheet.getWidth());
+        assertEquals(8, sheet.getHeight());
+    }
+
+    @Test
+    public void repackGrowsSheet() {
+        Sprite sprite1 = createSprite(4, 4, 0, 0);
+        record(4, 4, sprite1);
+
+        Sprite sprite2 = createSprite(2, 4, -1, -1);
+        assertTrue(repacker.repack(sheet, new Sprite[] { sprite1, sprite2 },
+                constraints));
+
+        assertEquals(new Point(4, 0), sprite2.getLocation());
+        assertEquals(6, sheet.getWidth());
+        assertEquals(4, sheet.getHeight());
+    }
+
+    @Test
+    public void repackTooSparse() {
+        Sprite sprite1 = createSprite(4, 4, 0, 0);
+        record(4, 4, sprite1);
+
+        // The sprite grows the sheet to 7x4, which is less than 90% occupied.
+        Sprite sprite2 = createSprite(3, 3, -1, -1);
+        assertFalse(repacker.repack(sheet, new Sprite[] { sprite1, sprite2 },
+                constraints));
+
+        assertEquals(Sprite.DEFAULT_LOCATION, sprite2.getLocation());
+        assertEquals(4, sheet.getWidth());
+    }
+
+    @Test
+    public void repackWithChangedConstraints() {
+        Sprite sprite = createSprite(4, 4, 0, 0);
+        record(4, 4, sprite);
+
+        constraints.setAllowRotation(true);
+        assertFalse(repacker.repack(sheet, new Sprite[] { sprite },
+                constraints));
+
+        constraints.setAllowRotation(false);
+        assertFalse(repacker.repack(sheet, new Sprite[] { sprite },
+                constraints));
+    }
+
+    @Test
+    public void repackRotatedSprite() {
+        constraints.setAllowRotation(true);
+        Sprite sprite1 = createSprite(4, 2, 0, 0);
+        Sprite sprite2 = createSprite(4, 2, 0, 4);
+        record(4, 6, sprite1, sprite2);
+
+        Sprite sprite3 = createSprite(2, 4, -1, -1);
+        assertTrue(repacker.repack(sheet, new Sprite[] { sprite1, sprite2,
+                sprite3 }, constraints));
+
+        assertEquals(new Point(0, 2), sprite3.getLocation());
+        assertTrue(sprite3.isRotated());
+    }
+
+    @Test
+    public void repackAlignedSprite() {
+        constraints.setAlignment(4);
+        Sprite sprite1 = createSprite(3, 4, 0, 0);
+        Sprite sprite2 = createSprite(4, 4, 4, 4);
+        record(8, 8, sprite1, sprite2);
+
+        Sprite sprite3 = createSprite(2, 3, -1, -1);
+        assertTrue(repacker.repack(sheet, new Sprite[] { sprite1, sprite2,
+                sprite3 }, constraints));
+
+        // The first sprite takes a whole block, the added one goes next to it.
+        assertEquals(new Point(4, 0), sprite3.getLocation());
+        assertEquals(8, sheet.getWidth());
+        assertEquals(8, sheet.getHeight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setThresholdToZero() {
+        repacker.setThreshold(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setThresholdAboveOne() {
+        repacker.setThreshold(1.5f);
+    }
+
+}
@@ -0,0 +1,222 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spritey.core.FileSprite;
+import spritey.core.Sprite;
+import spritey.core.io.SpriteStore;
+
+/**
+ * Tests the implementation of Trimmer.
+ */
+public class TrimmerTests {
+
+    Trimmer trimmer;
+
+    @Before
+    public void initialize() {
+        trimmer = new Trimmer();
+    }
+
+    /**
+     * Creates a transparent image of the specified type with an opaque box.
+     */
+    private BufferedImage createImage(int type, int width, int height,
+            Rectangle box) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = box.y; y < box.y + box.height; ++y) {
+            for (int x = box.x; x < box.x + box.width; ++x) {
+                image.setRGB(x, y, 0x80ff0000);
+            }
+        }
+        return image;
+    }
+
+    @Test
+    public void computeTrimOfArgbImage() {
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_ARGB, 10, 8,
+                new Rectangle(2, 3, 5, 4));
+
+        assertEquals(new Rectangle(2, 3, 5, 4), trimmer.computeTrim(image));
+    }
+
+    @Test
+    public void computeTrimOfSubimage() {
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_ARGB, 10, 8,
+                new Rectangle(2, 3, 5, 4));
+
+        assertEquals(new Rectangle(1, 2, 4, 3),
+                trimmer.computeTrim(image.getSubimage(1, 1, 5, 5)));
+    }
+
+    @Test
+    public void computeTrimOfAbgrImage() {
+        BufferedImage image = createImage(BufferedImage.TYPE_4BYTE_ABGR, 10,
+                8, new Rectangle(0, 1, 10, 2));
+
+        assertEquals(new Rectangle(0, 1, 10, 2), trimmer.computeTrim(image));
+    }
+
+    @Test
+    public void computeTrimOfIndexedImage() {
+        IndexColorModel model = new IndexColorModel(8, 2, new byte[] { 0,
+                (byte) 255 }, new byte[] { 0, 0 }, new byte[] { 0, 0 }, 0);
+        BufferedImage image = new BufferedImage(6, 6,
+                BufferedImage.TYPE_BYTE_INDEXED, model);
+        image.getRaster().setSample(4, 1, 0, 1);
+        image.getRaster().setSample(3, 5, 0, 1);
+
+        assertEquals(new Rectangle(3, 1, 2, 5), trimmer.computeTrim(image));
+    }
+
+    @Test
+    public void computeTrimOfOpaqueImage() {
+        BufferedImage image = new BufferedImage(7, 3,
+                BufferedImage.TYPE_INT_RGB);
+
+        assertEquals(new Rectangle(0, 0, 7, 3), trimmer.computeTrim(image));
+    }
+
+    @Test
+    public void computeTrimOfTransparentImage() {
+        BufferedImage image = new BufferedImage(7, 3,
+                BufferedImage.TYPE_INT_ARGB);
+
+        assertEquals(new Rectangle(0, 0, 1, 1), trimmer.computeTrim(image));
+    }
+
+    @Test
+    public void trimAndUntrim() {
+        Sprite[] sprites = new Sprite[40];
+        for (int i = 0; i < sprites.length; ++i) {
+            sprites[i] = new Sprite(createImage(BufferedImage.TYPE_INT_ARGB,
+                    20, 20, new Rectangle(i % 10, 1, 5, 5)));
+        }
+
+        trimmer.trim(sprites);
+
+        for (int i = 0; i < sprites.length; ++i) {
+            assertTrue(sprites[i].isTrimmed());
+            assertEquals(new Rectangle(i % 10, 1, 5, 5), sprites[i].getTrim());
+        }
+
+        trimmer.untrim(sprites);
+
+        for (Sprite sprite : sprites) {
+            assertFalse(sprite.isTrimmed());
+            assertEquals(new Rectangle(0, 0, 20, 20), sprite.getTrim());
+        }
+    }
+
+    @Test
+    public void trimStoredSprites() throws IOException {
+        SpriteStore store = new SpriteStore();
+        FileSprite[] sprites = new FileSprite[20];
+        File[] files = new File[sprites.length];
+
+        try {
+            for (int i = 0; i < sprites.length; ++i) {
+                files[i] = File.createTempFile("sprite", ".png");
+                ImageIO.write(createImage(BufferedImage.TYPE_INT_ARGB,
+                        10 + i, 12, new Rectangle(i % 10, 2, 3, 4)), "png",
+                        files[i]);
+                sprites[i] = spy(new FileSprite(files[i]));
+                sprites[i].setStore(store);
+            }
+
+            trimmer.trim(sprites);
+
+            // Pixels are read from the store, never copied into an image.
+            for (int i = 0; i < sprites.length; ++i) {
+                assertEquals(new Rectangle(i % 10, 2, 3, 4),
+                        sprites[i].getTrim());
+                verify(sprites[i], never()).getImage();
+            }
+        } finally {
+            for (File file : files) {
+                if (null != file) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void trimAgainScansOnlyChangedSprites() throws IOException {
+        FileSprite[] sprites = new FileSprite[2];
+        File[] files = new File[sprites.length];
+
+        try {
+            for (int i = 0; i < sprites.length; ++i) {
+                files[i] = File.createTempFile("sprite", ".png");
+                ImageIO.write(createImage(BufferedImage.TYPE_INT_ARGB, 10, 12,
+                        new Rectangle(i, 2, 3, 4)), "png", files[i]);
+                sprites[i] = spy(new FileSprite(files[i]));
+            }
+
+            trimmer.trim(sprites);
+            trimmer.untrim(sprites);
+            reset((Object[]) sprites);
+
+            trimmer.trim(sprites);
+            for (int i = 0; i < sprites.length; ++i) {
+                assertEquals(new Rectangle(i, 2, 3, 4), sprites[i].getTrim());
+                verify(sprites[i], never()).getImage();
+            }
+
+            // Sprite whose file changes is scanned again.
+            files[1].setLastModified(files[1].lastModified() + 2000);
+            reset((Object[]) sprites);
+
+            trimmer.trim(sprites);
+            verify(sprites[0], never()).getImage();
+            verify(sprites[1]).getImage();
+        } finally {
+            for (File file : files) {
+                if (null != file) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void trimNull() {
+        trimmer.trim(null);
+    }
+
+}
@@ -0,0 +1,192 @@
+/**
+ * This source file is part of Spritey - the sprite sheet creator.
+ * 
+ * Copyright 2011 Maksym Bykovskyy.
+ * 
+ * Spritey is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Spritey is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * Spritey. If not, see <http://www.gnu.org/licenses/>.
+ */
+package spritey.core.packer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of ZoneList.
+ */
+public class ZoneListTests {
+
+    ZoneList zones;
+    ZoneList differences;
+
+    @Before
+    public void initialize() {
+        zones = new ZoneList();
+        differences = new ZoneList();
+    }
+
+    /**
+     * Returns zones of the specified list as rectangles.
+     */
+    private List<Rectangle> toList(ZoneList zones) {
+        List<Rectangle> list = new ArrayList<Rectangle>();
+        for (int i = 0; i < zones.size(); ++i) {
+            list.add(new Rectangle(zones.getX(i), zones.getY(i), zones
+                    .getWidth(i), zones.getHeight(i)));
+        }
+        return list;
+    }
+
+    @Test
+    public void addBeyondInitialCapacity() {
+        for (int i = 0; i < 100; ++i) {
+            zones.add(i, i + 1, i + 2, i + 3);
+        }
+
+        assertEquals(100, zones.size());
+        assertEquals(new Rectangle(99, 100, 101, 102), toList(zones).get(99));
+
+        zones.clear();
+        assertEquals(0, zones.size());
+    }
+
+    @Test
+    public void subtractNonOverlappingRectangle() {
+        zones.add(0, 0, 10, 10);
+        zones.subtract(11, 10, 5, 5, differences);
+
+        assertEquals(1, differences.size());
+        assertEquals(new Rectangle(0, 0, 10, 10), toList(differences).get(0));
+    }
+
+    @Test
+    public void subtractIntersectingRectangle() {
+        zones.add(0, 0, 10, 10);
+        zones.subtract(5, 2, 10, 5, differences);
+
+        List<Rectangle> list = toList(differences);
+        assertEquals(3, list.size());
+        assertTrue(list.contains(new Rectangle(0, 0, 5, 10)));
+        assertTrue(list.contains(new Rectangle(0, 0, 10, 2)));
+        assertTrue(list.contains(new Rectangle(0, 7, 10, 3)));
+    }
+
+    @Test
+    public void subtractContainedRectangle() {
+        zones.add(0, 0, 10, 10);
+        zones.subtract(2, 3, 6, 5, differences);
+
+        List<Rectangle> list = toList(differences);
+        assertEquals(4, list.size());
+        assertEquals(new Rectangle(0, 0, 2, 10), list.get(0));
+        assertEquals(new Rectangle(8, 0, 2, 10), list.get(1));
+        assertEquals(new Rectangle(0, 0, 10, 3), list.get(2));
+        assertEquals(new Rectangle(0, 8, 10, 2), list.get(3));
+    }
+
+    @Test
+    public void subtractTopLeftOverlappingRectangle() {
+        zones.add(0, 0, 10, 10);
+        zones.subtract(0, 0, 5, 5, differences);
+
+        List<Rectangle> list = toList(differences);
+        assertEquals(2, list.size());
+        assertTrue(list.contains(new Rectangle(0, 5, 10, 5)));
+        assertTrue(list.contains(new Rectangle(5, 0, 5, 10)));
+    }
+
+    @Test
+    public void subtractTopRightOverlappingRectangle() {
+        zones.add(0, 0, 10, 10);
+        zones.subtract(5, 0, 5, 5, differences);
+
+        List<Rectangle> list = toList(differences);
+        assertEquals(2, list.size());
+        assertTrue(list.contains(new Rectangle(0, 5, 10, 5)));
+        assertTrue(list.contains(new Rectangle(0, 0, 5, 10)));
+    }
+
+    @Test
+    public void subtractBottomLeftOverlappingRectangle() {
+        zones.add(0, 0, 10, 10);
+        zones.subtract(0, 5, 5, 5, differences);
+
+        List<Rectangle> list = toList(differences);
+        assertEquals(2, list.size());
+        assertTrue(list.contains(new Rectangle(0, 0, 10, 5)));
+        assertTrue(list.contains(new Rectangle(5, 0, 5, 10)));
+    }
+
+    @Test
+    public void subtractBottomRightOverlappingRectangle() {
+        zones.add(0, 0, 10, 10);
+        zones.subtract(5, 5, 5, 5, differences);
+
+        List<Rectangle> list = toList(differences);
+        assertEquals(2, list.size());
+        assertTrue(list.contains(new Rectangle(0, 0, 10, 5)));
+        assertTrue(list.contains(new Rectangle(0, 0, 5, 10)));
+    }
+
+    @Test
+    public void subtractCoveringRectangle() {
+        zones.add(2, 2, 4, 4);
+        zones.add(20, 20, 4, 4);
+        zones.subtract(0, 0, 10, 10, differences);
+
+        assertEquals(1, differences.size());
+        assertEquals(new Rectangle(20, 20, 4, 4), toList(differences).get(0));
+    }
+
+    @Test
+    public void removeCovered() {
+        zones.add(0, 0, 10, 10);
+        zones.add(2, 2, 3, 3);
+        zones.add(5, 0, 20, 2);
+        zones.add(0, 0, 10, 10);
+
+        zones.removeCovered();
+
+        List<Rectangle> list = toList(zones);
+        assertEquals(2, list.size());
+        assertEquals(new Rectangle(5, 0, 20, 2), list.get(0));
+        assertEquals(new Rectangle(0, 0, 10, 10), list.get(1));
+    }
+
+    @Test
+    public void sortIsStable() {
+        zones.add(0, 0, 1, 1);
+        zones.add(1, 0, 1, 1);
+        zones.add(2, 0, 1, 1);
+        zones.add(3, 0, 1, 1);
+        zones.setKey(0, 5);
+        zones.setKey(1, 2);
+        zones.setKey(2, 5);
+        zones.setKey(3, 2);
+
+        zones.sort();
+
+        List<Rectangle> list = toList(zones);
+        assertEquals(1, list.get(0).x);
+        assertEquals(3, list.get(1).x);
+        assertEquals(0, list.get(2).x);
+        assertEquals(2, list.get(3).x);
+    }
+
+}
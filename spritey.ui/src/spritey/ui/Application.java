@@ -17,14 +17,22 @@
  */
 package spritey.ui;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
 
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.resource.ImageRegistry;
 import org.eclipse.jface.wizard.WizardDialog;
 import org.eclipse.swt.widgets.Shell;
 
+import spritey.core.io.ImageWriter;
+import spritey.core.io.SpriteCache;
+import spritey.core.io.SpriteStore;
+import spritey.core.packer.Constraints;
 import spritey.ui.dialogs.ModelessWizardDialog;
 import spritey.ui.wizards.SpriteSheetWizard;
 
@@ -56,7 +64,46 @@ public class Application {
     public static final String EDIT_IMG_PATH = "icons/edit.png";
     public static final String LOCK_IMG_PATH = "icons/lock.png";
 
+    public static final String CACHE_DIR_PATH = ".spritey/cache";
+    // System property overriding the sprite cache budget, in bytes.
+    public static final String CACHE_BUDGET_PROPERTY = "spritey.cache.budget";
+
+    // System property which, when true, keeps sprite pixels off the heap.
+    public static final String STORE_PROPERTY = "spritey.store";
+
+    // System property which, when true, initially chooses to write PNG sheets
+    // with a palette in the wizard.
+    public static final String INDEXED_PNG_PROPERTY = "spritey.png.indexed";
+
+    // System property selecting the texture format initially chosen in the
+    // wizard, one of rgba4444, rgb565 or a8 for raw textures, or bc1, bc3,
+    // etc2 or etc2a for block compressed textures.
+    public static final String FORMAT_PROPERTY = "spritey.format";
+
+    // System property which, when true, initially chooses to dither raw
+    // texture formats in the wizard.
+    public static final String DITHER_PROPERTY = "spritey.dither";
+
+    // System property which, when true, initially chooses to encode block
+    // compressed textures in the slower quality mode in the wizard.
+    public static final String HIGH_QUALITY_PROPERTY = "spritey.quality";
+
+    // System property which, when true, initially chooses to write a full
+    // chain of mipmaps along with sheet images in the wizard.
+    public static final String MIPMAPS_PROPERTY = "spritey.mipmaps";
+
+    // System property which initially chooses the number of pixels kept
+    // between sprites in the wizard.
+    public static final String PADDING_PROPERTY = "spritey.padding";
+
+    // System properties holding glob patterns of files to load and of files
+    // and directories to skip when adding folders, separated by the platform
+    // path separator, e.g. "*.png:*.gif".
+    public static final String INCLUDES_PROPERTY = "spritey.includes";
+    public static final String EXCLUDES_PROPERTY = "spritey.excludes";
+
     private static ImageRegistry imageRegistry;
+    private static SpriteCache spriteCache;
 
     /**
      * Returns an instance of image registry.
@@ -72,6 +119,103 @@ public class Application {
         return imageRegistry;
     }
 
+    /**
+     * Returns the cache of decoded sprites, kept in the user's home directory.
+     * The disk budget can be set with the CACHE_BUDGET_PROPERTY system
+     * property.
+     * 
+     * @return the sprite cache.
+     */
+    public static synchronized SpriteCache getSpriteCache() {
+        if (null == spriteCache) {
+            spriteCache = new SpriteCache(new File(
+                    System.getProperty("user.home"), CACHE_DIR_PATH),
+                    Long.getLong(CACHE_BUDGET_PROPERTY,
+                            SpriteCache.DEFAULT_BUDGET));
+        }
+
+        return spriteCache;
+    }
+
+    /**
+     * Returns the pixel format sheet images are written in until another is
+     * chosen in the wizard, selected by the FORMAT_PROPERTY system property.
+     * 
+     * @return one of the format constants declared in ImageWriter,
+     *         FORMAT_AUTO when the property isn't set or is unknown.
+     */
+    public static int getImageFormat() {
+        String format = System.getProperty(FORMAT_PROPERTY, "");
+
+        if (format.equalsIgnoreCase("rgba4444")) {
+            return ImageWriter.FORMAT_RGBA4444;
+        } else if (format.equalsIgnoreCase("rgb565")) {
+            return ImageWriter.FORMAT_RGB565;
+        } else if (format.equalsIgnoreCase("a8")) {
+            return ImageWriter.FORMAT_A8;
+        } else if (format.equalsIgnoreCase("bc1")) {
+            return ImageWriter.FORMAT_BC1;
+        } else if (format.equalsIgnoreCase("bc3")) {
+            return ImageWriter.FORMAT_BC3;
+        } else if (format.equalsIgnoreCase("etc2")) {
+            return ImageWriter.FORMAT_ETC2_RGB;
+        } else if (format.equalsIgnoreCase("etc2a")) {
+            return ImageWriter.FORMAT_ETC2_RGBA;
+        }
+        return ImageWriter.FORMAT_AUTO;
+    }
+
+    /**
+     * Returns the number of pixels kept between sprites until another is
+     * chosen in the wizard, selected by the PADDING_PROPERTY system property.
+     * 
+     * @param padding
+     *        the padding returned when the property isn't set.
+     * @return the padding, clamped to the MIN_PADDING and MAX_PADDING range
+     *         declared in Constraints.
+     */
+    public static int getPadding(int padding) {
+        padding = Integer.getInteger(PADDING_PROPERTY, padding);
+        return Math.max(Constraints.MIN_PADDING, Math.min(padding,
+                Constraints.MAX_PADDING));
+    }
+
+    /**
+     * Returns glob patterns selected by the specified system property.
+     * Patterns are separated by the platform path separator, as commas
+     * appear within glob groups.
+     * 
+     * @param property
+     *        the name of the property, INCLUDES_PROPERTY or EXCLUDES_PROPERTY.
+     * @return the glob patterns, empty when the property isn't set.
+     */
+    public static String[] getGlobs(String property) {
+        List<String> globs = new ArrayList<String>();
+
+        for (String glob : System.getProperty(property, "").split(
+                Pattern.quote(File.pathSeparator))) {
+            if (!glob.trim().isEmpty()) {
+                globs.add(glob.trim());
+            }
+        }
+        return globs.toArray(new String[globs.size()]);
+    }
+
+    /**
+     * Creates a store which keeps sprite pixels off the heap. The store is
+     * only used when the STORE_PROPERTY system property is set to true. The
+     * caller owns the store and should clear it once its sprites are gone.
+     * 
+     * @return a new sprite store, or <code>null</code> when pixels are kept
+     *         on the heap.
+     */
+    public static SpriteStore createSpriteStore() {
+        if (Boolean.getBoolean(STORE_PROPERTY)) {
+            return new SpriteStore();
+        }
+        return null;
+    }
+
     /**
      * Initializes specified image registry with images frequently used by the
      * application.
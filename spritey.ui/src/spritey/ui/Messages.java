@@ -32,6 +32,7 @@ public class Messages {
     public static String SPRITE_SHEET_WIZARD_BUILD;
     public static String SPRITE_SHEET_WIZARD_CLOSE;
     public static String SPRITE_SHEET_WIZARD_BUILT_SUCCESSFULLY;
+    public static String SPRITE_SHEET_WIZARD_DEDUPLICATED;
 
     public static String NEW_SHEET_PAGE_TITLE;
     public static String NEW_SHEET_PAGE_DESCRIPTION;
@@ -40,10 +41,35 @@ public class Messages {
     public static String NEW_SHEET_PAGE_MAX_HEIGHT;
     public static String NEW_SHEET_PAGE_POWER_OF_TWO;
     public static String NEW_SHEET_PAGE_ASPECT_RATIO;
+    public static String NEW_SHEET_PAGE_MULTIPLE_PAGES;
+    public static String NEW_SHEET_PAGE_ROTATION;
+    public static String NEW_SHEET_PAGE_TRIM;
+    public static String NEW_SHEET_PAGE_DUPLICATES;
+    public static String NEW_SHEET_PAGE_ALGORITHM;
+    public static String NEW_SHEET_PAGE_WIDEST_FIRST;
+    public static String NEW_SHEET_PAGE_MAX_RECTS;
+    public static String NEW_SHEET_PAGE_SKYLINE;
+    public static String NEW_SHEET_PAGE_GUILLOTINE;
+    public static String NEW_SHEET_PAGE_AUTO;
+    public static String NEW_SHEET_PAGE_PADDING;
     public static String NEW_SHEET_PAGE_BACKGROUND;
     public static String NEW_SHEET_PAGE_COMMENT;
     public static String NEW_SHEET_PAGE_TRANSPARENT;
     public static String NEW_SHEET_PAGE_CHOOSE_COLOR;
+    public static String NEW_SHEET_PAGE_OUTPUT;
+    public static String NEW_SHEET_PAGE_FORMAT;
+    public static String NEW_SHEET_PAGE_FORMAT_AUTO;
+    public static String NEW_SHEET_PAGE_FORMAT_RGBA4444;
+    public static String NEW_SHEET_PAGE_FORMAT_RGB565;
+    public static String NEW_SHEET_PAGE_FORMAT_A8;
+    public static String NEW_SHEET_PAGE_FORMAT_BC1;
+    public static String NEW_SHEET_PAGE_FORMAT_BC3;
+    public static String NEW_SHEET_PAGE_FORMAT_ETC2_RGB;
+    public static String NEW_SHEET_PAGE_FORMAT_ETC2_RGBA;
+    public static String NEW_SHEET_PAGE_INDEXED_PNG;
+    public static String NEW_SHEET_PAGE_DITHER;
+    public static String NEW_SHEET_PAGE_HIGH_QUALITY;
+    public static String NEW_SHEET_PAGE_MIPMAPS;
 
     public static String ADD_SPRITES_PAGE_TITLE;
     public static String ADD_SPRITES_PAGE_DESCRIPTION;
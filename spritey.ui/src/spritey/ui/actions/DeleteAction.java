@@ -24,8 +24,11 @@ import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Image;
 
+import spritey.core.FileSprite;
 import spritey.core.Node;
+import spritey.core.Sprite;
 import spritey.core.filter.Filter;
+import spritey.core.filter.SpriteFilter;
 import spritey.ui.Application;
 import spritey.ui.Messages;
 import spritey.ui.pages.WizardPageEx;
@@ -145,6 +148,13 @@ public abstract class DeleteAction extends SelectionListenerAction {
 
             for (Object o : list) {
                 ((Node) o).getParent().removeChild((Node) o);
+
+                // Pixels of deleted sprites are no longer needed.
+                for (Sprite sprite : new SpriteFilter().filter((Node) o)) {
+                    if (sprite instanceof FileSprite) {
+                        ((FileSprite) sprite).release();
+                    }
+                }
             }
 
             refreshAndSelect(getSelectionTarget(parent, index));
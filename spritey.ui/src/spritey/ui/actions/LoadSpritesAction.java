@@ -23,6 +23,8 @@ import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.Viewer;
 
 import spritey.core.Node;
+import spritey.core.io.SpriteStore;
+import spritey.ui.Application;
 import spritey.ui.InternalError;
 import spritey.ui.operations.LoadSpritesOperation;
 import spritey.ui.pages.WizardPageEx;
@@ -33,6 +35,7 @@ import spritey.ui.pages.WizardPageEx;
 public abstract class LoadSpritesAction extends SelectionListenerAction {
 
     private WizardPageEx page;
+    private SpriteStore store;
 
     /**
      * Creates a new instance of AddFolderAction.
@@ -56,6 +59,16 @@ public abstract class LoadSpritesAction extends SelectionListenerAction {
         return page;
     }
 
+    /**
+     * Sets the store pixels of loaded sprites are kept in.
+     * 
+     * @param store
+     *        the store, or <code>null</code> to keep pixels on the heap.
+     */
+    public void setStore(SpriteStore store) {
+        this.store = store;
+    }
+
     /**
      * Loads sprites from the file system.
      * 
@@ -67,6 +80,12 @@ public abstract class LoadSpritesAction extends SelectionListenerAction {
         if ((null != paths) && (0 < paths.length)) {
             try {
                 LoadSpritesOperation operation = new LoadSpritesOperation(paths);
+                operation.setCache(Application.getSpriteCache());
+                operation.setStore(store);
+                operation.setIncludes(Application
+                        .getGlobs(Application.INCLUDES_PROPERTY));
+                operation.setExcludes(Application
+                        .getGlobs(Application.EXCLUDES_PROPERTY));
                 getPage().getContainer().run(true, true, operation);
 
                 return operation.getRoot().getChildren();
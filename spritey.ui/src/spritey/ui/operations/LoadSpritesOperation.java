@@ -17,31 +17,240 @@
  */
 package spritey.ui.operations;
 
-import java.awt.Image;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-
-import javax.imageio.ImageIO;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 
+import spritey.core.FileSprite;
 import spritey.core.Group;
 import spritey.core.Node;
 import spritey.core.Sprite;
+import spritey.core.io.ImageSniffer;
+import spritey.core.io.PathFilter;
+import spritey.core.io.SpriteCache;
+import spritey.core.io.SpriteStore;
 
 /**
  * Operation for loading sprites.
+ * <p>
+ * Loading is pipelined: while directories are walked each file is handed to a
+ * pool of workers which check its signature and read its image header.
+ * Results are then attached to their groups in the order files were found,
+ * so the tree is the same regardless of which worker finishes first.
+ * </p>
  */
 public class LoadSpritesOperation implements IRunnableWithProgress {
 
+    // How long to wait for a worker before checking for cancellation, in
+    // milliseconds.
+    private static final long POLL_INTERVAL = 100;
+
+    // Progress is split between walking the paths and loading the files
+    // found, whose number is only known once walking is done.
+    private static final int TOTAL_WORK = 100;
+    private static final int WALK_WORK = 20;
+
+    // While walking, every file found advances progress by one tick out of
+    // this many left, as the number of files isn't known yet.
+    private static final int WALK_TICKS = 100;
+
+    /**
+     * A file or directory found while walking the paths.
+     */
+    private static class Entry {
+
+        File file;
+        Future<Sprite> sprite;
+        List<Entry> children;
+
+        Entry(File file) {
+            this.file = file;
+        }
+
+    }
+
+    /**
+     * Builds entries while walking a path. Directory attributes read by the
+     * walk are reused, and files are submitted to the workers as soon as they
+     * are visited.
+     */
+    private class Walker extends SimpleFileVisitor<Path> {
+
+        Path start;
+        ExecutorService workers;
+        SubMonitor monitor;
+        Deque<Entry> directories;
+        Entry result;
+
+        Walker(Path start, ExecutorService workers, SubMonitor monitor) {
+            this.start = start;
+            this.workers = workers;
+            this.monitor = monitor;
+            directories = new ArrayDeque<Entry>();
+        }
+
+        /**
+         * Adds the specified entry to the directory being walked.
+         * 
+         * @param entry
+         *        the entry to add.
+         */
+        private void add(Entry entry) {
+            if (directories.isEmpty()) {
+                result = entry;
+            } else {
+                directories.peek().children.add(entry);
+            }
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir,
+                BasicFileAttributes attrs) {
+            if (monitor.isCanceled()) {
+                return FileVisitResult.TERMINATE;
+            } else if (!filter.acceptDirectory(dir, start)) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+
+            monitor.subTask(dir.toString());
+            Entry entry = new Entry(dir.toFile());
+            entry.children = new ArrayList<Entry>();
+            add(entry);
+            directories.push(entry);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+            directories.pop();
+            return monitor.isCanceled() ? FileVisitResult.TERMINATE
+                    : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path file,
+                BasicFileAttributes attrs) {
+            if (monitor.isCanceled()) {
+                return FileVisitResult.TERMINATE;
+            } else if (!attrs.isRegularFile()
+                    || !filter.acceptFile(file, start)) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            Entry entry = new Entry(file.toFile());
+            entry.sprite = workers.submit(new Callable<Sprite>() {
+                @Override
+                public Sprite call() throws Exception {
+                    // Skip files which aren't images before any image reader
+                    // gets to look at them.
+                    if (!ImageSniffer.isImage(file)) {
+                        return null;
+                    }
+                    FileSprite sprite = new FileSprite(file.toFile());
+                    sprite.setCache(cache);
+                    sprite.setStore(store);
+                    return sprite;
+                }
+            });
+            add(entry);
+            fileCount++;
+            monitor.setWorkRemaining(WALK_TICKS);
+            monitor.worked(1);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            // Skip files which cannot be read.
+            return FileVisitResult.CONTINUE;
+        }
+
+    }
+
     private String[] paths;
     private Node root;
+    private int fileCount;
+
+    private PathFilter filter;
+    private SpriteCache cache;
+    private SpriteStore store;
 
     public LoadSpritesOperation(String... paths) {
         this.paths = paths;
         root = new Node("root");
+        filter = new PathFilter();
+    }
+
+    /**
+     * Sets the cache which loaded sprites read their pixels from, so files
+     * decoded in an earlier run aren't decoded again.
+     * 
+     * @param cache
+     *        the cache, or <code>null</code> to always decode files.
+     */
+    public void setCache(SpriteCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the store which loaded sprites keep their pixels in, off the heap.
+     * 
+     * @param store
+     *        the store, or <code>null</code> to keep pixels on the heap.
+     */
+    public void setStore(SpriteStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Sets glob patterns of files to load, e.g. <code>*.png</code> or
+     * <code>exports/**</code>. A pattern is matched against the file name and
+     * against the path relative to the loaded directory. When no patterns are
+     * set all files are loaded.
+     * 
+     * @param globs
+     *        the glob patterns of files to load.
+     * @throws IllegalArgumentException
+     *         when a pattern is not a valid glob.
+     */
+    public void setIncludes(String... globs) {
+        filter.setIncludes(globs);
+    }
+
+    /**
+     * Sets glob patterns of files and directories to skip. Patterns are
+     * matched the same way as includes, and excludes take precedence.
+     * 
+     * @param globs
+     *        the glob patterns of files and directories to skip.
+     * @throws IllegalArgumentException
+     *         when a pattern is not a valid glob.
+     */
+    public void setExcludes(String... globs) {
+        filter.setExcludes(globs);
     }
 
     /**
@@ -56,54 +265,136 @@ public class LoadSpritesOperation implements IRunnableWithProgress {
     @Override
     public void run(IProgressMonitor monitor) throws InvocationTargetException,
             InterruptedException {
-        monitor.beginTask("", IProgressMonitor.UNKNOWN);
+        ExecutorService workers = Executors.newFixedThreadPool(Runtime
+                .getRuntime().availableProcessors());
 
-        for (String path : paths) {
-            if (null != path) {
-                processFile(root, new File(path), monitor);
+        try {
+            List<Entry> entries = new ArrayList<Entry>();
+            fileCount = 0;
+
+            SubMonitor progress = SubMonitor.convert(monitor, TOTAL_WORK);
+            SubMonitor walking = progress.newChild(WALK_WORK);
+
+            for (String path : paths) {
+                if (null != path) {
+                    Entry entry = walk(Paths.get(path), workers, walking);
+                    if (null != entry) {
+                        entries.add(entry);
+                    }
+                }
+                if (monitor.isCanceled()) {
+                    return;
+                }
+            }
+
+            // Files are loaded one unit of work each.
+            SubMonitor loading = progress.newChild(TOTAL_WORK - WALK_WORK);
+            loading.setWorkRemaining(fileCount);
+
+            for (Entry entry : entries) {
+                processEntry(root, entry, loading);
                 if (monitor.isCanceled()) {
                     break;
                 }
             }
+        } finally {
+            workers.shutdownNow();
+            monitor.done();
         }
-
-        monitor.done();
     }
 
-    private void processFile(Node parent, File file, IProgressMonitor monitor) {
-        monitor.subTask(file.getAbsolutePath());
+    /**
+     * Walks the specified path and submits every image file found to the
+     * workers.
+     * 
+     * @param path
+     *        the file or directory to walk.
+     * @param workers
+     *        the workers which load sprites.
+     * @param monitor
+     *        the progress monitor.
+     * @return the entry for the path, or <code>null</code> when path cannot be
+     *         read, is filtered out or walking was cancelled.
+     */
+    private Entry walk(Path path, ExecutorService workers, SubMonitor monitor) {
+        Walker walker = new Walker(path, workers, monitor);
+
+        try {
+            Files.walkFileTree(path,
+                    EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                    Integer.MAX_VALUE, walker);
+        } catch (IOException e) {
+            // Do nothing.
+        }
+        return monitor.isCanceled() ? null : walker.result;
+    }
 
+    /**
+     * Attaches the sprite or group of the specified entry to the parent,
+     * waiting for workers to load it.
+     * 
+     * @param parent
+     *        the node to attach to.
+     * @param entry
+     *        the entry to attach.
+     * @param monitor
+     *        the progress monitor.
+     * @throws InterruptedException
+     *         when interrupted while waiting for a worker.
+     */
+    private void processEntry(Node parent, Entry entry,
+            IProgressMonitor monitor) throws InterruptedException {
         if (monitor.isCanceled()) {
             return;
-        } else if (file.canRead()) {
-            if (file.isDirectory() && (null != file.listFiles())) {
-                Node node = new Group(file.getName());
-
-                for (File child : file.listFiles()) {
-                    processFile(node, child, monitor);
-                    if (monitor.isCanceled()) {
-                        return;
-                    }
-                }
-                // Only add group when it contains at least one child.
-                if (node.isBranch()) {
-                    parent.addChildren(node);
-                }
-            } else {
-                try {
-                    Image image = ImageIO.read(file);
+        } else if (null != entry.children) {
+            Node node = new Group(entry.file.getName());
 
-                    if (null != image) {
-                        Node node = new Sprite(file.getName(), image);
-                        parent.addChildren(node);
-                    }
-                } catch (IOException e) {
-                    // Do nothing.
-                } catch (IllegalArgumentException e) {
-                    // Do nothing.
+            for (Entry child : entry.children) {
+                processEntry(node, child, monitor);
+                if (monitor.isCanceled()) {
+                    return;
                 }
             }
+            // Only add group when it contains at least one child.
+            if (node.isBranch()) {
+                parent.addChildren(node);
+            }
+        } else {
+            monitor.subTask(entry.file.getAbsolutePath());
+
+            Sprite sprite = waitFor(entry.sprite, monitor);
+            if (null != sprite) {
+                parent.addChildren(sprite);
+            }
+            monitor.worked(1);
+        }
+    }
+
+    /**
+     * Waits for the specified sprite to be loaded.
+     * 
+     * @param sprite
+     *        the sprite being loaded.
+     * @param monitor
+     *        the progress monitor.
+     * @return the sprite, or <code>null</code> when file is not an image or
+     *         loading was cancelled.
+     * @throws InterruptedException
+     *         when interrupted while waiting.
+     */
+    private Sprite waitFor(Future<Sprite> sprite, IProgressMonitor monitor)
+            throws InterruptedException {
+        while (!monitor.isCanceled()) {
+            try {
+                return sprite.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Check for cancellation and wait again.
+            } catch (ExecutionException e) {
+                // Do nothing, file is not an image.
+                return null;
+            }
         }
+        return null;
     }
 
 }
@@ -20,9 +20,17 @@ package spritey.ui.operations;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -34,19 +42,29 @@ import org.eclipse.osgi.util.NLS;
 import spritey.core.Sheet;
 import spritey.core.io.ImageWriter;
 import spritey.core.io.MetadataWriter;
+import spritey.core.io.TextureWriter;
 import spritey.core.io.Writer;
 import spritey.core.packer.Constraints;
 import spritey.core.packer.Packer;
 import spritey.core.packer.SizeTooSmallException;
+import spritey.ui.Application;
 import spritey.ui.Messages;
 
 /**
- * Operation for saving sprite sheet to a disk.
+ * Operation for saving sprite sheet to a disk. Once sprites are packed, the
+ * sheet images and metadata are written concurrently on worker threads.
+ * Cancelling the operation abandons the image being encoded.
  */
 public class SaveSheetOperation implements IRunnableWithProgress {
 
     private static final String PLUGIN_ID = "SAVE_SHEET_OPERATION";
     private static final int TOTAL_WORK = 3;
+    private static final long POLL_INTERVAL = 100;
+
+    // The alignment which keeps sprites apart in the first two levels of
+    // mipmaps, as every box of pixels downsampled into them then lies within
+    // the space taken by a single sprite.
+    private static final int MIPMAP_ALIGNMENT = 4;
 
     private Packer packer;
 
@@ -58,51 +76,120 @@ public class SaveSheetOperation implements IRunnableWithProgress {
     private File imageFile;
     private File metadataFile;
 
+    private int format;
+    private boolean indexedPng;
+    private boolean dither;
+    private boolean highQuality;
+    private boolean mipmaps;
+
     private List<IStatus> errors;
 
     /**
      * Creates an instance of SaveSheetOperation.
      * 
+     * @param packer
+     *        the packer to pack sprite sheet with.
+     * @param constraints
+     *        the constraints to pack sprite sheet with.
+     * @param sheet
+     *        the sprite sheet to save.
      * @param imageFile
      *        file to write image data to.
      * @param metadataFile
      *        file to write meta data to.
-     * @param overwriteCallback
-     *        the overwrite callback.
+     * @param overwriteQuery
+     *        the query asked whether existing files should be overwritten.
      */
-    public SaveSheetOperation(Constraints constraints, Sheet sheet,
-            File imageFile, File metadataFile, OverwriteQuery overwriteQuery) {
+    public SaveSheetOperation(Packer packer, Constraints constraints,
+            Sheet sheet, File imageFile, File metadataFile,
+            OverwriteQuery overwriteQuery) {
+        this.packer = packer;
         this.constraints = constraints;
         this.sheet = sheet;
         this.imageFile = imageFile;
         this.metadataFile = metadataFile;
         this.overwriteQuery = overwriteQuery;
 
-        packer = new Packer();
+        format = Application.getImageFormat();
+        indexedPng = Boolean.getBoolean(Application.INDEXED_PNG_PROPERTY);
+        dither = Boolean.getBoolean(Application.DITHER_PROPERTY);
+        highQuality = Boolean.getBoolean(Application.HIGH_QUALITY_PROPERTY);
+        mipmaps = Boolean.getBoolean(Application.MIPMAPS_PROPERTY);
         overwrite = -1;
-        errors = new ArrayList<IStatus>();
+        // Problems are added by workers writing files concurrently.
+        errors = Collections.synchronizedList(new ArrayList<IStatus>());
     }
 
     /**
-     * Saves the sprite sheet to the specified file with a help of the writer.
+     * Sets the pixel format sheet images are written in. Defaults to the
+     * format selected by the FORMAT_PROPERTY system property.
+     * 
+     * @param format
+     *        one of the format constants declared in ImageWriter.
+     */
+    public void setImageFormat(int format) {
+        this.format = format;
+    }
+
+    /**
+     * Sets whether PNG images are written with a palette. Defaults to the
+     * value of the INDEXED_PNG_PROPERTY system property.
+     * 
+     * @param indexedPng
+     *        <code>true</code> to index PNG images.
+     */
+    public void setIndexedPng(boolean indexedPng) {
+        this.indexedPng = indexedPng;
+    }
+
+    /**
+     * Sets whether reduced precision texture formats are dithered. Defaults
+     * to the value of the DITHER_PROPERTY system property.
+     * 
+     * @param dither
+     *        <code>true</code> to dither textures.
+     */
+    public void setDither(boolean dither) {
+        this.dither = dither;
+    }
+
+    /**
+     * Sets whether block compressed textures are encoded in the slower quality
+     * mode. Defaults to the value of the HIGH_QUALITY_PROPERTY system property.
+     * 
+     * @param highQuality
+     *        <code>true</code> to encode textures in quality mode.
+     */
+    public void setHighQuality(boolean highQuality) {
+        this.highQuality = highQuality;
+    }
+
+    /**
+     * Sets whether a full chain of mipmaps is written along with sheet images.
+     * Defaults to the value of the MIPMAPS_PROPERTY system property.
+     * 
+     * @param mipmaps
+     *        <code>true</code> to write mipmaps.
+     */
+    public void setMipmaps(boolean mipmaps) {
+        this.mipmaps = mipmaps;
+    }
+
+    /**
+     * Asks whether the specified file should be overwritten when it exists,
+     * unless overwriting has already been decided for all files.
      * 
      * @param file
      *        the file to save to.
-     * @param writer
-     *        the writer to use for writing.
-     * @param monitor
-     *        the progress monitor.
-     * 
+     * @return <code>true</code> if the file should be written, otherwise
+     *         <code>false</code>.
      * @throws InterruptedException
-     *         when this operation is cancelled or interrupted.
+     *         when this operation is cancelled.
      */
-    protected void save(File file, Writer writer, IProgressMonitor monitor)
-            throws InterruptedException {
-        monitor.subTask(NLS.bind(Messages.SAVE_AS_SAVING, file.getPath()));
-
+    protected boolean confirmOverwrite(File file) throws InterruptedException {
         if (file.exists()) {
             if (OverwriteQuery.NO_ALL == overwrite) {
-                return;
+                return false;
             } else if (OverwriteQuery.ALL != overwrite) {
                 overwrite = overwriteQuery.queryOverwrite(file.getPath());
 
@@ -110,23 +197,69 @@ public class SaveSheetOperation implements IRunnableWithProgress {
                     throw new InterruptedException();
                 } else if ((OverwriteQuery.NO == overwrite)
                         || (OverwriteQuery.NO_ALL == overwrite)) {
-                    return;
+                    return false;
                 }
             }
         }
+        return true;
+    }
 
+    /**
+     * Saves the sprite sheet to the specified file with a help of the writer,
+     * adding problems to the status of this operation. Called on worker
+     * threads. Cancelled writing isn't a problem.
+     * 
+     * @param file
+     *        the file to save to.
+     * @param writer
+     *        the writer to use for writing.
+     */
+    protected void save(File file, Writer writer) {
         try {
             writer.write(sheet, file);
+        } catch (InterruptedIOException e) {
+            // Cancelled, the writer has deleted the incomplete file.
         } catch (FileNotFoundException e) {
             errors.add(new Status(IStatus.ERROR, PLUGIN_ID, NLS.bind(
                     Messages.SAVE_AS_OPEN_FILE_FAILED, file.getPath())));
         } catch (IOException e) {
             errors.add(new Status(IStatus.ERROR, PLUGIN_ID, NLS.bind(
-                    Messages.SAVE_AS_WRITING_FAILED, file.getPath())));
+                    Messages.SAVE_AS_WRITING_FAILED, file.getPath()), e));
         }
+    }
 
-        if (monitor.isCanceled()) {
-            throw new InterruptedException();
+    /**
+     * Waits for the specified task to complete. When this operation is
+     * cancelled, the image writer is cancelled too and the task is waited
+     * for until it gives up, so that no file is left open.
+     * 
+     * @param task
+     *        the task writing files.
+     * @param imageWriter
+     *        the writer of sheet images.
+     * @param monitor
+     *        the progress monitor.
+     * @throws InvocationTargetException
+     *         when the task fails with an unexpected exception.
+     * @throws InterruptedException
+     *         when interrupted while waiting.
+     */
+    private void waitFor(Future<?> task, ImageWriter imageWriter,
+            IProgressMonitor monitor) throws InvocationTargetException,
+            InterruptedException {
+        while (true) {
+            if (monitor.isCanceled()) {
+                imageWriter.cancel();
+            }
+
+            try {
+                task.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                // Check for cancellation and wait again.
+            } catch (ExecutionException e) {
+                throw new InvocationTargetException(e.getCause());
+            }
         }
     }
 
@@ -136,8 +269,26 @@ public class SaveSheetOperation implements IRunnableWithProgress {
         monitor.beginTask("", TOTAL_WORK);
         monitor.subTask(Messages.SAVE_AS_PACKING);
 
+        int alignment = constraints.getAlignment();
+        Constraints packing = constraints;
+
+        // Keep sprites in whole blocks of block compressed textures.
+        if (ImageWriter.isBlockCompressed(format)) {
+            alignment = Math.max(alignment, TextureWriter.BLOCK_SIZE);
+        }
+        // Keep sprites from bleeding into each other across mipmap levels.
+        // More padding keeps them apart in more levels.
+        if (mipmaps) {
+            alignment = Math.max(alignment, Math.max(MIPMAP_ALIGNMENT,
+                    Integer.highestOneBit(constraints.getPadding())));
+        }
+        if (alignment != constraints.getAlignment()) {
+            packing = new Constraints(constraints);
+            packing.setAlignment(alignment);
+        }
+
         try {
-            packer.pack(sheet, constraints);
+            packer.pack(sheet, packing);
         } catch (SizeTooSmallException e) {
             errors.add(new Status(IStatus.ERROR, PLUGIN_ID, e.getMessage()));
             monitor.setCanceled(true);
@@ -146,15 +297,84 @@ public class SaveSheetOperation implements IRunnableWithProgress {
 
         monitor.worked(1);
 
-        save(imageFile, new ImageWriter(), monitor);
-        monitor.worked(1);
+        final ImageWriter imageWriter = new ImageWriter();
+        imageWriter.setIndexedPng(indexedPng);
+        imageWriter.setFormat(format);
+        imageWriter.setDither(dither);
+        imageWriter.setHighQuality(highQuality);
+        imageWriter.setMipmaps(mipmaps);
 
-        save(metadataFile, new MetadataWriter(), monitor);
-        monitor.worked(1);
+        // Overwriting is decided up front, so writers never wait for the user.
+        final List<File> pageFiles = new ArrayList<File>();
+        for (int page = 0; page < sheet.getPageCount(); ++page) {
+            File file = imageWriter.getPageFile(sheet, imageFile, page);
+            pageFiles.add(confirmOverwrite(file) ? file : null);
+        }
+        boolean writeMetadata = confirmOverwrite(metadataFile);
+
+        // Metadata is written while images are encoded, rather than after.
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<?> images = workers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < pageFiles.size(); ++i) {
+                        final int page = i;
+
+                        if (imageWriter.isCancelled()) {
+                            break;
+                        } else if (null != pageFiles.get(page)) {
+                            save(pageFiles.get(page), new Writer() {
+                                @Override
+                                public void write(Sheet sheet, File file)
+                                        throws FileNotFoundException,
+                                        IOException {
+                                    imageWriter.write(sheet, page, file);
+                                }
+                            });
+                        }
+                    }
+                }
+            });
+            Future<?> metadata = null;
+            if (writeMetadata) {
+                metadata = workers.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        save(metadataFile, new MetadataWriter());
+                    }
+                });
+            }
+
+            monitor.subTask(NLS.bind(Messages.SAVE_AS_SAVING,
+                    imageFile.getPath()));
+            waitFor(images, imageWriter, monitor);
+            monitor.worked(1);
+
+            if (null != metadata) {
+                waitFor(metadata, imageWriter, monitor);
+            }
+            monitor.worked(1);
+        } finally {
+            workers.shutdown();
+        }
 
+        if (monitor.isCanceled()) {
+            throw new InterruptedException();
+        }
         monitor.done();
     }
 
+    /**
+     * Returns the number of bytes saved by packing identical sprites once.
+     * 
+     * @return the number of deduplicated bytes.
+     */
+    public long getDeduplicatedBytes() {
+        return packer.getDeduplicatedBytes();
+    }
+
     /**
      * Returns the status of this operation. If there were multiple problems,
      * the result is a multi-status object containing status object for each
@@ -50,6 +50,7 @@ import spritey.core.Sprite;
 import spritey.core.filter.AbstractFilter;
 import spritey.core.filter.Filter;
 import spritey.core.filter.SpriteFilter;
+import spritey.core.io.SpriteStore;
 import spritey.ui.Application;
 import spritey.ui.InternalError;
 import spritey.ui.Messages;
@@ -60,6 +61,7 @@ import spritey.ui.actions.CreateGroupAction;
 import spritey.ui.actions.DeleteGroupsAction;
 import spritey.ui.actions.DeleteSpritesAction;
 import spritey.ui.actions.ExpandAllAction;
+import spritey.ui.actions.LoadSpritesAction;
 import spritey.ui.actions.RenameAction;
 import spritey.ui.actions.SelectAllTableAction;
 import spritey.ui.actions.SelectAllTreeAction;
@@ -79,6 +81,7 @@ public class AddSpritesPage extends WizardPageEx {
     private TreeViewer groups;
     private TableViewer sprites;
     private Sheet sheet;
+    private SpriteStore store;
 
     public AddSpritesPage(NewSheetPage newSheetPage) {
         super(NAME);
@@ -87,6 +90,7 @@ public class AddSpritesPage extends WizardPageEx {
         setPageComplete(false);
 
         sheet = newSheetPage.getSheet();
+        store = newSheetPage.getSpriteStore();
     }
 
     @Override
@@ -159,8 +163,10 @@ public class AddSpritesPage extends WizardPageEx {
         groups.addDropSupport(DND.DROP_MOVE, transfer, new ViewerDropAssistant(
                 groups));
 
-        IAction addSprites = new AddSpritesAction(groups, this);
-        IAction addFolder = new AddFolderAction(groups, this);
+        LoadSpritesAction addSprites = new AddSpritesAction(groups, this);
+        LoadSpritesAction addFolder = new AddFolderAction(groups, this);
+        addSprites.setStore(store);
+        addFolder.setStore(store);
         IAction createGroup = new CreateGroupAction(groups);
         IAction deleteGroups = new DeleteGroupsAction(groups, this);
 
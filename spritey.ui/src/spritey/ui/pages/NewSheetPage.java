@@ -43,6 +43,7 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.ColorDialog;
+import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Label;
@@ -51,6 +52,8 @@ import org.eclipse.swt.widgets.MenuItem;
 import org.eclipse.swt.widgets.Text;
 
 import spritey.core.Sheet;
+import spritey.core.io.ImageWriter;
+import spritey.core.io.SpriteStore;
 import spritey.core.packer.Constraints;
 import spritey.ui.Application;
 import spritey.ui.Messages;
@@ -68,11 +71,28 @@ public class NewSheetPage extends WizardPage {
     private Text heightText;
     private Button powerOfTwoCheck;
     private Button aspectRatioCheck;
+    private Button multiplePagesCheck;
+    private Button rotationCheck;
+    private Button trimCheck;
+    private Button duplicatesCheck;
+    private Combo algorithmCombo;
+    private Text paddingText;
+    private Combo formatCombo;
+    private Button indexedPngCheck;
+    private Button ditherCheck;
+    private Button highQualityCheck;
+    private Button mipmapsCheck;
     private Text commentText;
 
     private Constraints constraints;
     private Sheet sheet;
+    private SpriteStore store;
     private Color background;
+    private int format;
+    private boolean indexedPng;
+    private boolean dither;
+    private boolean highQuality;
+    private boolean mipmaps;
 
     /**
      * Creates a new instance of NewSheetPage.
@@ -83,8 +103,16 @@ public class NewSheetPage extends WizardPage {
         setDescription(Messages.NEW_SHEET_PAGE_DESCRIPTION);
 
         constraints = new Constraints();
+        constraints.setPadding(Application.getPadding(constraints
+                .getPadding()));
         sheet = new Sheet();
+        store = Application.createSpriteStore();
         background = sheet.getBackground();
+        format = Application.getImageFormat();
+        indexedPng = Boolean.getBoolean(Application.INDEXED_PNG_PROPERTY);
+        dither = Boolean.getBoolean(Application.DITHER_PROPERTY);
+        highQuality = Boolean.getBoolean(Application.HIGH_QUALITY_PROPERTY);
+        mipmaps = Boolean.getBoolean(Application.MIPMAPS_PROPERTY);
     }
 
     @Override
@@ -95,6 +123,7 @@ public class NewSheetPage extends WizardPage {
         container.setLayout(new GridLayout(1, false));
 
         createSizeConstraintsControls(container);
+        createOutputControls(container);
         createBackgroundControls(container);
         createCommentControls(container);
 
@@ -111,15 +140,31 @@ public class NewSheetPage extends WizardPage {
         text = heightText.getText();
         int height = text.isEmpty() ? 0 : Integer.valueOf(text);
 
+        text = paddingText.getText();
+        int padding = text.isEmpty() ? 0 : Integer.valueOf(text);
+
         try {
             constraints.setMaxWidth(width);
             constraints.setMaxHeight(height);
             constraints.setMaintainPowerOfTwo(powerOfTwoCheck.getSelection());
             constraints.setMaintainAspectRatio(aspectRatioCheck.getSelection());
+            constraints.setMultiplePages(multiplePagesCheck.getSelection());
+            constraints.setAllowRotation(rotationCheck.getSelection());
+            constraints.setTrimTransparency(trimCheck.getSelection());
+            constraints.setRemoveDuplicates(duplicatesCheck.getSelection());
+            constraints.setAlgorithm(algorithmCombo.getSelectionIndex());
+            constraints.setPadding(padding);
 
             sheet.setBackground(background);
             sheet.setDescription(commentText.getText());
 
+            format = formatCombo.getSelectionIndex();
+            indexedPng = indexedPngCheck.getSelection();
+            dither = ditherCheck.getSelection();
+            highQuality = highQualityCheck.getSelection();
+            mipmaps = mipmapsCheck.getSelection();
+            updateOutputOptions();
+
             setErrorMessage(null);
             setPageComplete(true);
         } catch (IllegalArgumentException e) {
@@ -178,6 +223,35 @@ public class NewSheetPage extends WizardPage {
         heightText.setText(String.valueOf(Constraints.MAX_MAXIMUM_HEIGHT));
         heightText.addVerifyListener(digitValidator);
         heightText.addModifyListener(sizeModifier);
+
+        Label algorithmLabel = new Label(container, SWT.NONE);
+        algorithmLabel.setText(Messages.NEW_SHEET_PAGE_ALGORITHM);
+
+        // Items are listed in the order of algorithm constants declared in
+        // Constraints, so that selection index is the algorithm.
+        algorithmCombo = new Combo(container, SWT.READ_ONLY);
+        algorithmCombo.setItems(new String[] {
+                Messages.NEW_SHEET_PAGE_WIDEST_FIRST,
+                Messages.NEW_SHEET_PAGE_MAX_RECTS,
+                Messages.NEW_SHEET_PAGE_SKYLINE,
+                Messages.NEW_SHEET_PAGE_GUILLOTINE,
+                Messages.NEW_SHEET_PAGE_AUTO });
+        algorithmCombo.select(constraints.getAlgorithm());
+        algorithmCombo.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                validatePage();
+            }
+        });
+
+        Label paddingLabel = new Label(container, SWT.NONE);
+        paddingLabel.setText(Messages.NEW_SHEET_PAGE_PADDING);
+
+        paddingText = new Text(container, SWT.BORDER);
+        paddingText.setTextLimit(3);
+        paddingText.setText(String.valueOf(constraints.getPadding()));
+        paddingText.addVerifyListener(digitValidator);
+        paddingText.addModifyListener(sizeModifier);
     }
 
     /**
@@ -208,6 +282,22 @@ public class NewSheetPage extends WizardPage {
         aspectRatioCheck = new Button(container, SWT.CHECK);
         aspectRatioCheck.setText(Messages.NEW_SHEET_PAGE_ASPECT_RATIO);
         aspectRatioCheck.addSelectionListener(selectionListener);
+
+        multiplePagesCheck = new Button(container, SWT.CHECK);
+        multiplePagesCheck.setText(Messages.NEW_SHEET_PAGE_MULTIPLE_PAGES);
+        multiplePagesCheck.addSelectionListener(selectionListener);
+
+        rotationCheck = new Button(container, SWT.CHECK);
+        rotationCheck.setText(Messages.NEW_SHEET_PAGE_ROTATION);
+        rotationCheck.addSelectionListener(selectionListener);
+
+        trimCheck = new Button(container, SWT.CHECK);
+        trimCheck.setText(Messages.NEW_SHEET_PAGE_TRIM);
+        trimCheck.addSelectionListener(selectionListener);
+
+        duplicatesCheck = new Button(container, SWT.CHECK);
+        duplicatesCheck.setText(Messages.NEW_SHEET_PAGE_DUPLICATES);
+        duplicatesCheck.addSelectionListener(selectionListener);
     }
 
     /**
@@ -226,6 +316,116 @@ public class NewSheetPage extends WizardPage {
         createOptionsControls(group);
     }
 
+    /**
+     * Creates format controls.
+     * 
+     * @param parent
+     *        the parent widget.
+     */
+    private void createFormatControls(Composite parent) {
+        GridLayout layout = new GridLayout(2, false);
+        layout.marginWidth = layout.marginHeight = 0;
+
+        Composite container = new Composite(parent, SWT.NONE);
+        container.setLayout(layout);
+        container.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+
+        Label formatLabel = new Label(container, SWT.NONE);
+        formatLabel.setText(Messages.NEW_SHEET_PAGE_FORMAT);
+
+        // Items are listed in the order of format constants declared in
+        // ImageWriter, so that selection index is the format.
+        formatCombo = new Combo(container, SWT.READ_ONLY);
+        formatCombo.setItems(new String[] {
+                Messages.NEW_SHEET_PAGE_FORMAT_AUTO,
+                Messages.NEW_SHEET_PAGE_FORMAT_RGBA4444,
+                Messages.NEW_SHEET_PAGE_FORMAT_RGB565,
+                Messages.NEW_SHEET_PAGE_FORMAT_A8,
+                Messages.NEW_SHEET_PAGE_FORMAT_BC1,
+                Messages.NEW_SHEET_PAGE_FORMAT_BC3,
+                Messages.NEW_SHEET_PAGE_FORMAT_ETC2_RGB,
+                Messages.NEW_SHEET_PAGE_FORMAT_ETC2_RGBA });
+        formatCombo.select(format);
+        formatCombo.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                validatePage();
+            }
+        });
+    }
+
+    /**
+     * Creates output options controls.
+     * 
+     * @param parent
+     *        the parent widget.
+     */
+    private void createOutputOptionsControls(Composite parent) {
+        GridLayout layout = new GridLayout(1, false);
+        layout.marginWidth = layout.marginHeight = 0;
+
+        Composite container = new Composite(parent, SWT.NONE);
+        container.setLayout(layout);
+        container.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+
+        SelectionListener selectionListener = new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                validatePage();
+            }
+        };
+
+        indexedPngCheck = new Button(container, SWT.CHECK);
+        indexedPngCheck.setText(Messages.NEW_SHEET_PAGE_INDEXED_PNG);
+        indexedPngCheck.setSelection(indexedPng);
+        indexedPngCheck.addSelectionListener(selectionListener);
+
+        ditherCheck = new Button(container, SWT.CHECK);
+        ditherCheck.setText(Messages.NEW_SHEET_PAGE_DITHER);
+        ditherCheck.setSelection(dither);
+        ditherCheck.addSelectionListener(selectionListener);
+
+        highQualityCheck = new Button(container, SWT.CHECK);
+        highQualityCheck.setText(Messages.NEW_SHEET_PAGE_HIGH_QUALITY);
+        highQualityCheck.setSelection(highQuality);
+        highQualityCheck.addSelectionListener(selectionListener);
+
+        mipmapsCheck = new Button(container, SWT.CHECK);
+        mipmapsCheck.setText(Messages.NEW_SHEET_PAGE_MIPMAPS);
+        mipmapsCheck.setSelection(mipmaps);
+        mipmapsCheck.addSelectionListener(selectionListener);
+
+        updateOutputOptions();
+    }
+
+    /**
+     * Enables only output options which apply to the selected format.
+     */
+    private void updateOutputOptions() {
+        boolean isRaw = (ImageWriter.FORMAT_AUTO != format)
+                && !ImageWriter.isBlockCompressed(format);
+
+        indexedPngCheck.setEnabled(ImageWriter.FORMAT_AUTO == format);
+        ditherCheck.setEnabled(isRaw);
+        highQualityCheck.setEnabled(ImageWriter.isBlockCompressed(format));
+    }
+
+    /**
+     * Creates a group of output controls.
+     * 
+     * @param parent
+     *        the parent widget.
+     */
+    private void createOutputControls(Composite parent) {
+        Group group = new Group(parent, SWT.NONE);
+        group.setLayout(new GridLayout(2, true));
+        group.setText(Messages.NEW_SHEET_PAGE_OUTPUT);
+        group.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+        createFormatControls(group);
+        createOutputOptionsControls(group);
+    }
+
     /**
      * Creates background controls.
      * 
@@ -365,6 +565,25 @@ public class NewSheetPage extends WizardPage {
         return sheet;
     }
 
+    /**
+     * Returns the store which keeps pixels of the sheet's sprites off the
+     * heap. The store is cleared when the page is disposed.
+     * 
+     * @return the sprite store, or <code>null</code> when pixels are kept on
+     *         the heap.
+     */
+    public SpriteStore getSpriteStore() {
+        return store;
+    }
+
+    @Override
+    public void dispose() {
+        if (null != store) {
+            store.clear();
+        }
+        super.dispose();
+    }
+
     /**
      * Returns constraints set for sprite sheet packer.
      * 
@@ -374,4 +593,55 @@ public class NewSheetPage extends WizardPage {
         return constraints;
     }
 
+    /**
+     * Returns the pixel format sheet images are written in.
+     * 
+     * @return one of the format constants declared in ImageWriter.
+     */
+    public int getImageFormat() {
+        return format;
+    }
+
+    /**
+     * Returns whether PNG images are written with a palette.
+     * 
+     * @return <code>true</code> if PNG images are indexed, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isIndexedPng() {
+        return indexedPng;
+    }
+
+    /**
+     * Returns whether reduced precision texture formats are dithered.
+     * 
+     * @return <code>true</code> if textures are dithered, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isDither() {
+        return dither;
+    }
+
+    /**
+     * Returns whether block compressed textures are encoded in the slower
+     * quality mode.
+     * 
+     * @return <code>true</code> if textures are encoded in quality mode,
+     *         otherwise <code>false</code>.
+     */
+    public boolean isHighQuality() {
+        return highQuality;
+    }
+
+    /**
+     * Returns whether a full chain of mipmaps is written along with sheet
+     * images.
+     * 
+     * @return <code>true</code> if mipmaps are written, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isMipmaps() {
+        return mipmaps;
+    }
+
 }
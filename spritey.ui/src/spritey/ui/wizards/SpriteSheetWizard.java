@@ -29,6 +29,7 @@ import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Shell;
 
+import spritey.core.packer.Packer;
 import spritey.ui.InternalError;
 import spritey.ui.Messages;
 import spritey.ui.operations.OverwriteQuery;
@@ -46,6 +47,8 @@ public class SpriteSheetWizard extends Wizard {
     private AddSpritesPage addSpritesPage;
     private SaveAsPage saveAsPage;
 
+    private Packer packer;
+
     private boolean isOverwrite;
 
     /**
@@ -55,6 +58,11 @@ public class SpriteSheetWizard extends Wizard {
         newSheetPage = new NewSheetPage();
         addSpritesPage = new AddSpritesPage(newSheetPage);
         saveAsPage = new SaveAsPage();
+
+        // The wizard stays open after the sheet is built, so the packer is
+        // kept to place only sprites added since the last save.
+        packer = new Packer();
+        packer.setIncremental(true);
     }
 
     @Override
@@ -110,10 +118,15 @@ public class SpriteSheetWizard extends Wizard {
         };
 
         try {
-            SaveSheetOperation op = new SaveSheetOperation(
+            SaveSheetOperation op = new SaveSheetOperation(packer,
                     newSheetPage.getConstraints(), newSheetPage.getSheet(),
                     saveAsPage.getImageFile(), saveAsPage.getMetadataFile(),
                     callback);
+            op.setImageFormat(newSheetPage.getImageFormat());
+            op.setIndexedPng(newSheetPage.isIndexedPng());
+            op.setDither(newSheetPage.isDither());
+            op.setHighQuality(newSheetPage.isHighQuality());
+            op.setMipmaps(newSheetPage.isMipmaps());
             getContainer().run(true, true, op);
 
             Shell parent = getContainer().getShell();
@@ -133,10 +146,15 @@ public class SpriteSheetWizard extends Wizard {
                             status.getMessage(), SWT.SHEET);
                 }
             } else {
+                String message = Messages.SPRITE_SHEET_WIZARD_BUILT_SUCCESSFULLY;
+                if (op.getDeduplicatedBytes() > 0) {
+                    message = NLS.bind(
+                            Messages.SPRITE_SHEET_WIZARD_DEDUPLICATED,
+                            op.getDeduplicatedBytes());
+                }
+
                 MessageDialog.open(MessageDialog.INFORMATION, parent,
-                        Messages.SPRITE_SHEET_WIZARD_TITLE,
-                        Messages.SPRITE_SHEET_WIZARD_BUILT_SUCCESSFULLY,
-                        SWT.SHEET);
+                        Messages.SPRITE_SHEET_WIZARD_TITLE, message, SWT.SHEET);
             }
         } catch (InterruptedException e) {
             return false;